@@ -258,7 +258,7 @@ void CatalogServer::GatherCatalogUpdatesThread() {
         LOG(ERROR) << status.GetErrorMsg();
       } else {
         // Use the catalog objects to build a topic update list.
-        BuildTopicUpdates(catalog_objects.objects);
+        BuildTopicUpdates(catalog_objects);
         catalog_objects_min_version_ = last_sent_catalog_version_;
         catalog_objects_max_version_ = catalog_objects.max_catalog_version;
       }
@@ -269,11 +269,15 @@ void CatalogServer::GatherCatalogUpdatesThread() {
   }
 }
 
-void CatalogServer::BuildTopicUpdates(const vector<TCatalogObject>& catalog_objects) {
+void CatalogServer::BuildTopicUpdates(const TGetAllCatalogObjectsResponse& response) {
+  if (response.__isset.is_delta && response.is_delta) {
+    BuildTopicUpdatesFromDelta(response);
+    return;
+  }
   unordered_set<string> current_entry_keys;
 
   // Add any new/updated catalog objects to the topic.
-  BOOST_FOREACH(const TCatalogObject& catalog_object, catalog_objects) {
+  BOOST_FOREACH(const TCatalogObject& catalog_object, response.objects) {
     const string& entry_key = TCatalogObjectToEntryKey(catalog_object);
     if (entry_key.empty()) {
       LOG_EVERY_N(WARNING, 60) << "Unable to build topic entry key for TCatalogObject: "
@@ -314,6 +318,45 @@ void CatalogServer::BuildTopicUpdates(const vector<TCatalogObject>& catalog_obje
   catalog_topic_entry_keys_.swap(current_entry_keys);
 }
 
+void CatalogServer::BuildTopicUpdatesFromDelta(
+    const TGetAllCatalogObjectsResponse& response) {
+  // Add the new/updated catalog objects to the topic.
+  BOOST_FOREACH(const TCatalogObject& catalog_object, response.objects) {
+    const string& entry_key = TCatalogObjectToEntryKey(catalog_object);
+    if (entry_key.empty()) {
+      LOG_EVERY_N(WARNING, 60) << "Unable to build topic entry key for TCatalogObject: "
+                               << ThriftDebugString(catalog_object);
+    }
+    catalog_topic_entry_keys_.insert(entry_key);
+    if (catalog_object.catalog_version <= last_sent_catalog_version_) continue;
+
+    VLOG(1) << "Publishing update: " << entry_key << "@"
+            << catalog_object.catalog_version;
+
+    pending_topic_updates_.push_back(TTopicItem());
+    TTopicItem& item = pending_topic_updates_.back();
+    item.key = entry_key;
+    Status status = thrift_serializer_.Serialize(&catalog_object, &item.value);
+    if (!status.ok()) {
+      LOG(ERROR) << "Error serializing topic value: " << status.GetErrorMsg();
+      pending_topic_updates_.pop_back();
+    }
+  }
+
+  // Publish the deletion of the removed catalog objects. Objects that were never
+  // published, e.g. because they were added and removed between two updates, are
+  // skipped.
+  BOOST_FOREACH(const TCatalogObject& catalog_object, response.deleted_objects) {
+    const string& entry_key = TCatalogObjectToEntryKey(catalog_object);
+    if (catalog_topic_entry_keys_.erase(entry_key) == 0) continue;
+    pending_topic_updates_.push_back(TTopicItem());
+    TTopicItem& item = pending_topic_updates_.back();
+    item.key = entry_key;
+    VLOG(1) << "Publishing deletion: " << entry_key;
+    // Don't set a value to mark this item as deleted.
+  }
+}
+
 // TODO: Create utility function for rendering the Catalog handler so it can
 // be shared between CatalogServer and ImpalaServer
 void CatalogServer::CatalogPathHandler(const Webserver::ArgumentMap& args,
@@ -161,8 +161,17 @@ class CatalogServer {
   // "TABLE:foo.bar". Encoding the object type information in the key ensures the keys
   // are unique, as well as helps to determine what object type was removed in a state
   // store delta update (since the state store only sends key names for deleted items).
+  // If the response is a delta (is_delta is set), the topic update is built by
+  // BuildTopicUpdatesFromDelta() instead.
   // Must hold catalog_lock_ when calling this function.
-  void BuildTopicUpdates(const std::vector<TCatalogObject>& catalog_objects);
+  void BuildTopicUpdates(const TGetAllCatalogObjectsResponse& response);
+
+  // Builds the next topic update from a delta response, which only contains the objects
+  // that changed since last_sent_catalog_version_ and lists removed objects explicitly.
+  // Updates catalog_topic_entry_keys_ in place rather than recomputing it from the
+  // complete set of catalog objects.
+  // Must hold catalog_lock_ when calling this function.
+  void BuildTopicUpdatesFromDelta(const TGetAllCatalogObjectsResponse& response);
 
   void CatalogPathHandler(const Webserver::ArgumentMap& args,
       std::stringstream* output);
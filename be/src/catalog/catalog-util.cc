@@ -37,6 +37,8 @@ TCatalogObjectType::type TCatalogObjectTypeFromName(const string& name) {
     return TCatalogObjectType::FUNCTION;
   } else if (upper == "CATALOG") {
     return TCatalogObjectType::CATALOG;
+  } else if (upper == "HDFS_PARTITION_DELTA") {
+    return TCatalogObjectType::HDFS_PARTITION_DELTA;
   }
   return TCatalogObjectType::UNKNOWN;
 }
@@ -79,6 +81,20 @@ Status TCatalogObjectFromObjectName(const TCatalogObjectType::type& object_type,
       catalog_object->table.__set_tbl_name(object_name.substr(pos + 1));
       break;
     }
+    case TCatalogObjectType::HDFS_PARTITION_DELTA: {
+      // The object name is the fully qualified name of the delta's table.
+      catalog_object->__set_type(object_type);
+      catalog_object->__set_partition_delta(THdfsPartitionDelta());
+      int pos = object_name.find(".");
+      if (pos == string::npos || pos >= object_name.size() - 1) {
+        stringstream error_msg;
+        error_msg << "Invalid table name: " << object_name;
+        return Status(error_msg.str());
+      }
+      catalog_object->partition_delta.table.__set_db_name(object_name.substr(0, pos));
+      catalog_object->partition_delta.table.__set_tbl_name(object_name.substr(pos + 1));
+      break;
+    }
     case TCatalogObjectType::FUNCTION: {
       // The key looks like: <db>.fn(<args>). We need to parse out the
       // db, fn and signature.
@@ -121,6 +137,10 @@ string TCatalogObjectToEntryKey(const TCatalogObject& catalog_object) {
     case TCatalogObjectType::VIEW:
       entry_key << catalog_object.table.db_name << "." << catalog_object.table.tbl_name;
       break;
+    case TCatalogObjectType::HDFS_PARTITION_DELTA:
+      entry_key << catalog_object.partition_delta.table.db_name << "."
+                << catalog_object.partition_delta.table.tbl_name;
+      break;
     case TCatalogObjectType::FUNCTION:
       entry_key << catalog_object.fn.name.db_name << "."
                 << catalog_object.fn.signature;
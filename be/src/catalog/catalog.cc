@@ -31,12 +31,30 @@ DEFINE_bool(load_catalog_in_background, true,
 DEFINE_int32(num_metadata_loading_threads, 16,
     "(Advanced) The number of metadata loading threads (degree of parallelism) to use "
     "when loading catalog metadata.");
+DEFINE_int32(num_file_metadata_loading_threads, 16,
+    "(Advanced) The number of threads shared by all table loads that list partition "
+    "directories and load file block locations from the NameNode. Bounds the number "
+    "of concurrent file metadata requests issued by the catalog server.");
+DEFINE_int32(max_concurrent_metastore_table_fetches, 16,
+    "(Advanced) The maximum number of table loads that fetch their table definition "
+    "from the Hive Metastore at the same time. Set to 1 for metastores that do not "
+    "support concurrent getTable() calls (HIVE-5457).");
+DEFINE_string(catalog_snapshot_dir, "",
+    "(Advanced) Local directory the catalog server periodically writes a snapshot of its "
+    "loaded table metadata to. On startup, tables are restored from the snapshot and "
+    "revalidated incrementally in the background, regardless of "
+    "--load_catalog_in_background, instead of being reloaded from scratch. Restored "
+    "tables are not sent to the impalads until they are revalidated. If empty, "
+    "catalog snapshots are disabled.");
+DEFINE_int32(catalog_snapshot_interval_s, 600,
+    "(Advanced) Interval, in seconds, at which the catalog server writes a snapshot of "
+    "its table metadata if it changed. Only used if --catalog_snapshot_dir is set.");
 
 DECLARE_int32(non_impala_java_vlog);
 
 Catalog::Catalog() {
   JniMethodDescriptor methods[] = {
-    {"<init>", "(ZIII)V", &catalog_ctor_},
+    {"<init>", "(ZIIILjava/lang/String;III)V", &catalog_ctor_},
     {"updateCatalog", "([B)[B", &update_metastore_id_},
     {"execDdl", "([B)[B", &exec_ddl_id_},
     {"resetMetadata", "([B)[B", &reset_metadata_id_},
@@ -60,8 +78,15 @@ Catalog::Catalog() {
 
   jboolean load_in_background = FLAGS_load_catalog_in_background;
   jint num_metadata_loading_threads = FLAGS_num_metadata_loading_threads;
+  jint num_file_metadata_loading_threads = FLAGS_num_file_metadata_loading_threads;
+  jint max_concurrent_table_fetches = FLAGS_max_concurrent_metastore_table_fetches;
+  jstring snapshot_dir = jni_env->NewStringUTF(FLAGS_catalog_snapshot_dir.c_str());
+  EXIT_IF_EXC(jni_env);
+  jint snapshot_interval_s = FLAGS_catalog_snapshot_interval_s;
   jobject catalog = jni_env->NewObject(catalog_class_, catalog_ctor_,
-      load_in_background, num_metadata_loading_threads, FlagToTLogLevel(FLAGS_v),
+      load_in_background, num_metadata_loading_threads,
+      num_file_metadata_loading_threads, max_concurrent_table_fetches, snapshot_dir,
+      snapshot_interval_s, FlagToTLogLevel(FLAGS_v),
       FlagToTLogLevel(FLAGS_non_impala_java_vlog));
   EXIT_IF_EXC(jni_env);
   EXIT_IF_ERROR(JniUtil::LocalToGlobalRef(jni_env, catalog, &catalog_));
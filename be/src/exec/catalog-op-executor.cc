@@ -15,6 +15,8 @@
 #include "exec/catalog-op-executor.h"
 
 #include <sstream>
+#include <boost/algorithm/string.hpp>
+#include <boost/foreach.hpp>
 
 #include "common/status.h"
 #include "runtime/lib-cache.h"
@@ -27,9 +29,15 @@
 #include <thrift/protocol/TDebugProtocol.h>
 
 using namespace std;
+using namespace boost;
+using namespace boost::algorithm;
 using namespace impala;
 using namespace apache::hive::service::cli::thrift;
 
+// Number of columns of the column stats query of COMPUTE STATS per column of the
+// table. Must match ComputeStatsStmt.NUM_STATS_PER_COLUMN in the FE.
+static const int NUM_STATS_PER_COLUMN = 7;
+
 DECLARE_int32(catalog_service_port);
 DECLARE_string(catalog_service_host);
 
@@ -90,7 +98,22 @@ Status CatalogOpExecutor::ExecComputeStats(
 
   // Fill the alteration request based on the child-query results.
   SetTableStats(tbl_stats_schema, tbl_stats_data, &update_stats_params);
-  SetColumnStats(col_stats_schema, col_stats_data, &update_stats_params);
+  if (compute_stats_params.is_incremental) {
+    update_stats_params.__set_is_incremental(true);
+    update_stats_params.__set_partition_fingerprints(
+        compute_stats_params.partition_fingerprints);
+    // The table stats query returns the row count followed by the partition-key values.
+    SetIncrementalColumnStats(col_stats_schema, col_stats_data,
+        tbl_stats_schema.columns.size() - 1, &update_stats_params);
+  } else {
+    SetColumnStats(col_stats_schema, col_stats_data, &update_stats_params);
+  }
+  if (compute_stats_params.__isset.sample_percent) {
+    // The stats were computed from a sample, the catalog scales them to the table.
+    update_stats_params.__set_sample_percent(compute_stats_params.sample_percent);
+    update_stats_params.__set_partition_sample_fractions(
+        compute_stats_params.partition_sample_fractions);
+  }
 
   // Execute the 'alter table update stats' request.
   RETURN_IF_ERROR(Exec(catalog_op_req));
@@ -128,6 +151,13 @@ void CatalogOpExecutor::HandleDropFunction(const TDropFunctionParams& request) {
   }
 }
 
+// Returns the partition-key value of a stats query result. NULL values are returned
+// as empty strings, which the catalog maps to the table's null partition-key value
+// like all other partition-key values (see PartitionStatsUtil.canonicalPartitionKey()).
+static string PartitionKeyValue(const TStringValue& value) {
+  return value.__isset.value ? value.value : "";
+}
+
 void CatalogOpExecutor::SetTableStats(const TTableSchema& tbl_stats_schema,
     const TRowSet& tbl_stats_data, TAlterTableUpdateStatsParams* params) {
   // Accumulate total number of rows in the table.
@@ -144,7 +174,7 @@ void CatalogOpExecutor::SetTableStats(const TTableSchema& tbl_stats_schema,
     for (int j = 1; j < row.colVals.size(); ++j) {
       // The partition-key values have been explicitly cast to string in the select list.
       DCHECK(row.colVals[j].__isset.stringVal);
-      partition_key_vals.push_back(row.colVals[j].stringVal.value);
+      partition_key_vals.push_back(PartitionKeyValue(row.colVals[j].stringVal));
     }
     params->partition_stats[partition_key_vals].__set_num_rows(num_rows);
     total_num_rows += num_rows;
@@ -156,6 +186,17 @@ void CatalogOpExecutor::SetTableStats(const TTableSchema& tbl_stats_schema,
   params->__isset.table_stats = true;
 }
 
+void CatalogOpExecutor::SetColumnRange(
+    const apache::hive::service::cli::thrift::TColumnValue& min_value,
+    const apache::hive::service::cli::thrift::TColumnValue& max_value,
+    TColumnStats* col_stats) {
+  // Both are NULL for non-numeric columns and for columns without non-NULL values.
+  if (!min_value.doubleVal.__isset.value) return;
+  DCHECK(max_value.doubleVal.__isset.value);
+  col_stats->__set_min_value(min_value.doubleVal.value);
+  col_stats->__set_max_value(max_value.doubleVal.value);
+}
+
 void CatalogOpExecutor::SetColumnStats(const TTableSchema& col_stats_schema,
     const TRowSet& col_stats_data, TAlterTableUpdateStatsParams* params) {
   // Expect exactly one result row.
@@ -165,8 +206,10 @@ void CatalogOpExecutor::SetColumnStats(const TTableSchema& col_stats_schema,
   // Set per-column stats. For a column at position i in its source table,
   // the NDVs and the number of NULLs are at position i and i + 1 of the
   // col_stats_row, respectively. Positions i + 2 and i + 3 contain the max/avg
-  // length for string columns, and -1 for non-string columns.
-  for (int i = 0; i < col_stats_row.colVals.size(); i += 4) {
+  // length for string columns, and -1 for non-string columns. Positions i + 4 to
+  // i + 6 contain the min value, max value and histogram of numeric columns, and NULL
+  // for other columns or if the column has no non-NULL values.
+  for (int i = 0; i < col_stats_row.colVals.size(); i += NUM_STATS_PER_COLUMN) {
     // The NDVs are written as a string column by the estimation function.
     StringParser::ParseResult parse_result;
     const string& ndvs_str = col_stats_row.colVals[i].stringVal.value;
@@ -179,11 +222,62 @@ void CatalogOpExecutor::SetColumnStats(const TTableSchema& col_stats_schema,
     col_stats.__set_num_nulls(col_stats_row.colVals[i + 1].i64Val.value);
     col_stats.__set_max_size(col_stats_row.colVals[i + 2].i32Val.value);
     col_stats.__set_avg_size(col_stats_row.colVals[i + 3].doubleVal.value);
+    SetColumnRange(col_stats_row.colVals[i + 4], col_stats_row.colVals[i + 5],
+        &col_stats);
+    const TStringValue& histogram = col_stats_row.colVals[i + 6].stringVal;
+    if (histogram.__isset.value) {
+      vector<string> bounds;
+      split(bounds, histogram.value, is_any_of(","));
+      BOOST_FOREACH(const string& bound, bounds) {
+        StringParser::ParseResult parse_result;
+        double value = StringParser::StringToFloat<double>(bound.data(), bound.size(),
+            &parse_result);
+        DCHECK_EQ(StringParser::PARSE_SUCCESS, parse_result);
+        col_stats.histogram_bounds.push_back(value);
+      }
+      col_stats.__isset.histogram_bounds = true;
+    }
     params->column_stats[col_stats_schema.columns[i].columnName] = col_stats;
   }
   params->__isset.column_stats = true;
 }
 
+void CatalogOpExecutor::SetIncrementalColumnStats(
+    const TTableSchema& col_stats_schema, const TRowSet& col_stats_data,
+    int num_partition_cols, TAlterTableUpdateStatsParams* params) {
+  BOOST_FOREACH(const TRow& row, col_stats_data.rows) {
+    int num_stats_cols = row.colVals.size() - num_partition_cols;
+    DCHECK_GE(num_stats_cols, 0);
+    DCHECK_EQ(0, num_stats_cols % NUM_STATS_PER_COLUMN);
+    // The partition-key values have been explicitly cast to string in the select list.
+    vector<string> partition_key_vals;
+    partition_key_vals.reserve(num_partition_cols);
+    for (int j = num_stats_cols; j < row.colVals.size(); ++j) {
+      partition_key_vals.push_back(PartitionKeyValue(row.colVals[j].stringVal));
+    }
+
+    // The column stats are laid out as in SetColumnStats(), except that the first
+    // column of each group holds the HyperLogLog registers instead of the NDVs, and
+    // that there are no histograms because they cannot be merged.
+    TPartitionStats& part_stats = params->partition_incremental_stats[partition_key_vals];
+    for (int i = 0; i < num_stats_cols; i += NUM_STATS_PER_COLUMN) {
+      TIntermediateColumnStats col_stats;
+      col_stats.__set_intermediate_ndv(row.colVals[i].stringVal.value);
+      col_stats.__set_num_nulls(row.colVals[i + 1].i64Val.value);
+      col_stats.__set_max_size(row.colVals[i + 2].i32Val.value);
+      col_stats.__set_avg_size(row.colVals[i + 3].doubleVal.value);
+      if (row.colVals[i + 4].doubleVal.__isset.value) {
+        col_stats.__set_min_value(row.colVals[i + 4].doubleVal.value);
+        col_stats.__set_max_value(row.colVals[i + 5].doubleVal.value);
+      }
+      part_stats.intermediate_col_stats[col_stats_schema.columns[i].columnName] =
+          col_stats;
+    }
+    part_stats.__isset.intermediate_col_stats = true;
+  }
+  params->__isset.partition_incremental_stats = true;
+}
+
 Status CatalogOpExecutor::GetCatalogObject(const TCatalogObject& object_desc,
     TCatalogObject* result) {
   const TNetworkAddress& address =
@@ -82,6 +82,19 @@ class CatalogOpExecutor {
       const apache::hive::service::cli::thrift::TTableSchema& col_stats_schema,
       const apache::hive::service::cli::thrift::TRowSet& col_stats_data,
       TAlterTableUpdateStatsParams* params);
+  // Sets the min and max value of col_stats from the corresponding values of the
+  // column stats query, unless they are NULL.
+  static void SetColumnRange(
+      const apache::hive::service::cli::thrift::TColumnValue& min_value,
+      const apache::hive::service::cli::thrift::TColumnValue& max_value,
+      TColumnStats* col_stats);
+  // Used instead of SetColumnStats() for COMPUTE INCREMENTAL STATS. The column stats
+  // query returns one row of mergeable column stats per partition, followed by the
+  // num_partition_cols partition-key values of the partition.
+  static void SetIncrementalColumnStats(
+      const apache::hive::service::cli::thrift::TTableSchema& col_stats_schema,
+      const apache::hive::service::cli::thrift::TRowSet& col_stats_data,
+      int num_partition_cols, TAlterTableUpdateStatsParams* params);
 
   // Response from executing the DDL request, see ddl_exec_response().
   boost::scoped_ptr<TDdlExecResponse> exec_response_;
@@ -15,6 +15,8 @@
 #include "exprs/aggregate-functions.h"
 
 #include <math.h>
+#include <algorithm>
+#include <iomanip>
 #include <sstream>
 
 #include "common/logging.h"
@@ -36,6 +38,31 @@ static const StringVal DEFAULT_STRING_CONCAT_DELIM((uint8_t*)", ", 2);
 // much when between [6,12]
 const int HLL_PRECISION = 10;
 
+// Number of sampled values from which histograms are computed, and number of buckets
+// of the computed histograms. Must match ColumnStats.HISTOGRAM_NUM_BUCKETS in the FE.
+const int HISTOGRAM_SAMPLE_SIZE = 1024;
+const int HISTOGRAM_NUM_BUCKETS = 32;
+
+// Intermediate state of the histogram aggregate function.
+struct HistogramState {
+  // Number of non-NULL input values.
+  int64_t num_values;
+  // State of the random number generator that selects the sampled values. Seeded with
+  // a constant so that the sample only depends on the input.
+  uint64_t rng_state;
+  // Number of values in 'samples'.
+  int32_t num_samples;
+  double samples[HISTOGRAM_SAMPLE_SIZE];
+};
+
+// Returns a pseudo-random number (xorshift64*).
+static inline uint64_t NextRandom(HistogramState* state) {
+  state->rng_state ^= state->rng_state >> 12;
+  state->rng_state ^= state->rng_state << 25;
+  state->rng_state ^= state->rng_state >> 27;
+  return state->rng_state * 2685821657736338717ULL;
+}
+
 void AggregateFunctions::InitNull(FunctionContext*, AnyVal* dst) {
   dst->is_null = true;
 }
@@ -496,6 +523,91 @@ StringVal AggregateFunctions::HllFinalize(FunctionContext* ctx, const StringVal&
   return result_str;
 }
 
+void AggregateFunctions::HistogramInit(FunctionContext* ctx, StringVal* dst) {
+  dst->is_null = false;
+  dst->ptr = ctx->Allocate(sizeof(HistogramState));
+  dst->len = sizeof(HistogramState);
+  HistogramState* state = reinterpret_cast<HistogramState*>(dst->ptr);
+  state->num_values = 0;
+  state->rng_state = 0x9E3779B97F4A7C15ULL;
+  state->num_samples = 0;
+}
+
+void AggregateFunctions::HistogramUpdate(FunctionContext* ctx, const DoubleVal& src,
+    StringVal* dst) {
+  if (src.is_null) return;
+  DCHECK(!dst->is_null);
+  DCHECK_EQ(dst->len, sizeof(HistogramState));
+  HistogramState* state = reinterpret_cast<HistogramState*>(dst->ptr);
+  ++state->num_values;
+  if (state->num_samples < HISTOGRAM_SAMPLE_SIZE) {
+    state->samples[state->num_samples++] = src.val;
+    return;
+  }
+  // Replace a sampled value with probability sample size / number of values.
+  uint64_t idx = NextRandom(state) % state->num_values;
+  if (idx < HISTOGRAM_SAMPLE_SIZE) state->samples[idx] = src.val;
+}
+
+void AggregateFunctions::HistogramMerge(FunctionContext* ctx, const StringVal& src,
+    StringVal* dst) {
+  DCHECK(!dst->is_null);
+  DCHECK(!src.is_null);
+  DCHECK_EQ(dst->len, sizeof(HistogramState));
+  DCHECK_EQ(src.len, sizeof(HistogramState));
+  HistogramState* dst_state = reinterpret_cast<HistogramState*>(dst->ptr);
+  HistogramState src_state;
+  memcpy(&src_state, src.ptr, sizeof(HistogramState));
+  int64_t num_values = dst_state->num_values + src_state.num_values;
+  if (num_values == 0) return;
+  // Take a number of values from each sample that is proportional to the number of
+  // input values it represents. The values are picked at random from the samples.
+  int num_samples = min<int64_t>(HISTOGRAM_SAMPLE_SIZE, num_values);
+  int num_dst_samples = min<int64_t>(dst_state->num_samples,
+      round(static_cast<double>(num_samples) * dst_state->num_values / num_values));
+  int num_src_samples = min(src_state.num_samples, num_samples - num_dst_samples);
+  num_dst_samples = min(dst_state->num_samples, num_samples - num_src_samples);
+  for (int i = 0; i < num_dst_samples; ++i) {
+    int j = i + NextRandom(dst_state) % (dst_state->num_samples - i);
+    swap(dst_state->samples[i], dst_state->samples[j]);
+  }
+  for (int i = 0; i < num_src_samples; ++i) {
+    int j = i + NextRandom(dst_state) % (src_state.num_samples - i);
+    swap(src_state.samples[i], src_state.samples[j]);
+    dst_state->samples[num_dst_samples + i] = src_state.samples[i];
+  }
+  dst_state->num_samples = num_dst_samples + num_src_samples;
+  dst_state->num_values = num_values;
+}
+
+StringVal AggregateFunctions::HistogramFinalize(FunctionContext* ctx,
+    const StringVal& src) {
+  DCHECK(!src.is_null);
+  DCHECK_EQ(src.len, sizeof(HistogramState));
+  HistogramState* state = reinterpret_cast<HistogramState*>(src.ptr);
+  if (state->num_samples == 0) {
+    ctx->Free(src.ptr);
+    return StringVal::null();
+  }
+  sort(state->samples, state->samples + state->num_samples);
+
+  // Output the bounds of the buckets as ascii string, with enough digits to
+  // reproduce the values.
+  stringstream out;
+  out << setprecision(17);
+  for (int i = 0; i <= HISTOGRAM_NUM_BUCKETS; ++i) {
+    int idx = min<int64_t>(state->num_samples - 1,
+        static_cast<int64_t>(i) * state->num_samples / HISTOGRAM_NUM_BUCKETS);
+    if (i > 0) out << ",";
+    out << state->samples[idx];
+  }
+  string out_str = out.str();
+  StringVal result_str(ctx, out_str.size());
+  memcpy(result_str.ptr, out_str.c_str(), result_str.len);
+  ctx->Free(src.ptr);
+  return result_str;
+}
+
 // Stamp out the templates for the types we need.
 template void AggregateFunctions::InitZero<BigIntVal>(FunctionContext*, BigIntVal* dst);
 
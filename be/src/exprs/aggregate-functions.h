@@ -91,6 +91,17 @@ class AggregateFunctions {
   static void HllUpdate(FunctionContext*, const T& src, StringVal* dst);
   static void HllMerge(FunctionContext*, const StringVal& src, StringVal* dst);
   static StringVal HllFinalize(FunctionContext*, const StringVal& src);
+
+  // Equi-depth histogram of the non-NULL input values, used by COMPUTE STATS.
+  // The intermediate value is a fixed-size uniform random sample of the input values
+  // (reservoir sampling), so the histogram is approximate for large inputs. Finalize
+  // returns the comma-separated bounds of HISTOGRAM_NUM_BUCKETS buckets that each
+  // contain about the same number of values, starting with the smallest and ending
+  // with the largest sampled value, or NULL if there were no non-NULL input values.
+  static void HistogramInit(FunctionContext*, StringVal* slot);
+  static void HistogramUpdate(FunctionContext*, const DoubleVal& src, StringVal* dst);
+  static void HistogramMerge(FunctionContext*, const StringVal& src, StringVal* dst);
+  static StringVal HistogramFinalize(FunctionContext*, const StringVal& src);
 };
 
 }
@@ -46,9 +46,14 @@ DEFINE_string(authorized_proxy_user_config, "",
     "separated list of short usernames, or '*' to indicate all users. For example: "
     "hue=user1,user2;admin=*");
 
+DEFINE_int32(plan_cache_size, 0, "Maximum number of query plans cached by the "
+    "frontend. Repeated queries whose referenced tables, views and functions are "
+    "unchanged skip analysis and planning. If 0, plans are not cached.");
+
 Frontend::Frontend() {
   JniMethodDescriptor methods[] = {
-    {"<init>", "(ZLjava/lang/String;Ljava/lang/String;Ljava/lang/String;II)V", &fe_ctor_},
+    {"<init>", "(ZLjava/lang/String;Ljava/lang/String;Ljava/lang/String;III)V",
+        &fe_ctor_},
     {"createExecRequest", "([B)[B", &create_exec_request_id_},
     {"getExplainPlan", "([B)Ljava/lang/String;", &get_explain_plan_id_},
     {"getHadoopConfig", "(Z)Ljava/lang/String;", &get_hadoop_config_id_},
@@ -63,7 +68,8 @@ Frontend::Frontend() {
     {"getCatalogObject", "([B)[B", &get_catalog_object_id_},
     {"execHiveServer2MetadataOp", "([B)[B", &exec_hs2_metadata_op_id_},
     {"setCatalogInitialized", "()V", &set_catalog_initialized_id_},
-    {"loadTableData", "([B)[B", &load_table_data_id_}};
+    {"loadTableData", "([B)[B", &load_table_data_id_},
+    {"closeSession", "([B)V", &close_session_id_}};
 
   JNIEnv* jni_env = getJNIEnv();
   // create instance of java class JniFrontend
@@ -85,7 +91,7 @@ Frontend::Frontend() {
 
   jobject fe = jni_env->NewObject(fe_class_, fe_ctor_, lazy, server_name,
       policy_file_path, policy_provider_class_name, FlagToTLogLevel(FLAGS_v),
-      FlagToTLogLevel(FLAGS_non_impala_java_vlog));
+      FlagToTLogLevel(FLAGS_non_impala_java_vlog), FLAGS_plan_cache_size);
   EXIT_IF_EXC(jni_env);
   EXIT_IF_ERROR(JniUtil::LocalToGlobalRef(jni_env, fe, &fe_));
 }
@@ -211,3 +217,7 @@ Status Frontend::SetCatalogInitialized() {
   RETURN_ERROR_IF_EXC(jni_env);
   return Status::OK;
 }
+
+Status Frontend::CloseSession(const TUniqueId& session_id) {
+  return JniUtil::CallJniMethod(fe_, close_session_id_, session_id);
+}
@@ -132,6 +132,9 @@ class Frontend {
   // server.
   Status SetCatalogInitialized();
 
+  // Releases the frontend state of the given session, i.e., its prepared statements.
+  Status CloseSession(const TUniqueId& session_id);
+
  private:
   // Descriptor of Java Frontend class itself, used to create a new instance.
   jclass fe_class_;
@@ -152,6 +155,7 @@ class Frontend {
   jmethodID exec_hs2_metadata_op_id_; // JniFrontend.execHiveServer2MetadataOp
   jmethodID load_table_data_id_; // JniFrontend.loadTableData
   jmethodID set_catalog_initialized_id_; // JniFrontend.setCatalogInitialized
+  jmethodID close_session_id_; // JniFrontend.closeSession
   jmethodID fe_ctor_;
 };
 
@@ -786,6 +786,12 @@ Status ImpalaServer::CloseSessionInternal(const TUniqueId& session_id,
     session_state->closed = true;
   }
   CancelSessionQueries(session_state.get());
+  // Release the session's prepared statements.
+  Status status = frontend_->CloseSession(session_id);
+  if (!status.ok()) {
+    LOG(WARNING) << "Error releasing the prepared statements of session "
+                 << session_id << ": " << status.GetErrorMsg();
+  }
   return Status::OK;
 }
 
@@ -121,6 +121,15 @@ Status ImpalaServer::QueryExecState::Exec(TExecRequest* exec_request) {
   profile_.AddChild(&server_profile_);
   summary_profile_.AddInfoString("Query Type", PrintTStmtType(stmt_type()));
   summary_profile_.AddInfoString("Query State", PrintQueryState(query_state_));
+  if (exec_request_.__isset.plan_cache_stats) {
+    const TPlanCacheStats& stats = exec_request_.plan_cache_stats;
+    int64_t num_lookups = stats.num_hits + stats.num_misses;
+    summary_profile_.AddInfoString("Plan Cache", Substitute(
+        "$0, saved planning time: $1ms (cumulative: $2 hits in $3 lookups, saved "
+        "planning time: $4ms)", stats.hit ? "hit" : "miss",
+        stats.saved_planning_time_ms, stats.num_hits, num_lookups,
+        stats.total_saved_planning_time_ms));
+  }
 
   switch (exec_request->stmt_type) {
     case TStmtType::QUERY:
@@ -231,6 +240,11 @@ Status ImpalaServer::QueryExecState::ExecLocalCatalogOp(
       SetResultSet(vector<string>(1, response));
       return Status::OK;
     }
+    case TCatalogOpType::PREPARE:
+    case TCatalogOpType::DEALLOCATE:
+      // The frontend keeps the prepared statements of each session and already
+      // added or removed the statement while creating the exec request.
+      return Status::OK;
     default: {
       stringstream ss;
       ss << "Unexpected TCatalogOpType: " << catalog_op.op_type;
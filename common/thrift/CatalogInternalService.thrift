@@ -16,6 +16,7 @@ namespace cpp impala
 namespace java com.cloudera.impala.thrift
 
 include "CatalogObjects.thrift"
+include "hive_metastore.thrift"
 
 // Contains structures used internally by the Catalog Server.
 
@@ -30,4 +31,26 @@ struct TGetAllCatalogObjectsResponse {
 
   // List of catalog objects (empty list if no objects detected in the Catalog).
   2: required list<CatalogObjects.TCatalogObject> objects
+
+  // True if the response only contains the objects that changed after the requested
+  // catalog version, rather than all objects in the Catalog. In that case objects
+  // removed from the Catalog are listed in deleted_objects.
+  3: optional bool is_delta
+
+  // List of catalog objects that were removed after the requested catalog version.
+  // Only set if is_delta is true.
+  4: optional list<CatalogObjects.TCatalogObject> deleted_objects
+}
+
+// Snapshot of a loaded table in the Catalog Server's cache. Written to local disk by
+// the Catalog Server so that it can restore its cache on restart, rather than reloading
+// all table metadata from the metastore and the file system.
+struct TCatalogSnapshotTable {
+  // Complete thrift representation of the table, as sent in catalog updates.
+  1: required CatalogObjects.TTable table
+
+  // The metastore partitions of an HDFS table, keyed by the ids of the partitions in
+  // 'table'. These are not part of TTable, but are required to incrementally reload
+  // the partitions of the table.
+  2: optional map<i64, hive_metastore.Partition> metastore_partitions
 }
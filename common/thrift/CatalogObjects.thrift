@@ -32,6 +32,7 @@ enum TCatalogObjectType {
   TABLE,
   VIEW,
   FUNCTION,
+  HDFS_PARTITION_DELTA,
 }
 
 enum TTableType {
@@ -120,6 +121,44 @@ struct TColumnStats {
 
   // Estimated number of null values.
   4: required i64 num_nulls
+
+  // Smallest and largest value of numeric columns. Not set if unknown.
+  5: optional double min_value
+  6: optional double max_value
+
+  // Bounds of an equi-depth histogram of the non-null values of numeric columns: each
+  // of the buckets between two consecutive bounds contains about the same number of
+  // values. The first and last bounds are the smallest and largest value.
+  7: optional list<double> histogram_bounds
+}
+
+// Mergeable stats of a column within a single partition, computed by
+// COMPUTE INCREMENTAL STATS.
+struct TIntermediateColumnStats {
+  // HyperLogLog registers of the column values, as computed by ndv_no_finalize().
+  1: optional binary intermediate_ndv
+
+  // Number of null values.
+  2: optional i64 num_nulls
+
+  // Max and average size of the non-null values, -1 for fixed-length types.
+  3: optional i32 max_size
+  4: optional double avg_size
+
+  // Smallest and largest value of numeric columns. Not set if unknown or if the
+  // partition has no non-null values.
+  5: optional double min_value
+  6: optional double max_value
+}
+
+// Stats of a single partition that are persisted by COMPUTE INCREMENTAL STATS, so
+// that the table-level stats can be recomputed without scanning the partition again.
+struct TPartitionStats {
+  // Number of rows in the partition.
+  1: optional TTableStats stats
+
+  // Maps from column name to the column's stats within the partition.
+  2: optional map<string, TIntermediateColumnStats> intermediate_col_stats
 }
 
 struct TColumn {
@@ -193,6 +232,10 @@ struct THdfsPartition {
 
   // Statistics on this partition, e.g., number of rows in this partition.
   13: optional TTableStats stats
+
+  // Fingerprint of the partition's files at the time COMPUTE INCREMENTAL STATS was
+  // last run on it. Not set if the partition has no incremental stats.
+  14: optional string incremental_stats_fingerprint
 }
 
 struct THdfsTable {
@@ -274,6 +317,24 @@ struct TTable {
   12: optional hive_metastore.Table metastore_table
 }
 
+// Partition-level changes to an HDFS table, relative to a complete version of the
+// table that was previously sent in a catalog update (the base version). Used to
+// propagate changes that only affect some of the partitions of a table without sending
+// all partitions. Changes are cumulative: the delta covers all changes since the base
+// version and can be applied to any version of the table >= the base version.
+struct THdfsPartitionDelta {
+  // Catalog version of the complete table this delta applies to.
+  1: required i64 base_catalog_version
+
+  // The table with all of its table-level metadata, but only with the partitions
+  // that were added or modified since the base version (and the default partition).
+  2: required TTable table
+
+  // Names of the partitions that were dropped since the base version, in the format
+  // returned by HdfsPartition.getPartitionName().
+  3: required list<string> dropped_partition_names
+}
+
 // Represents a database.
 struct TDatabase {
   // Name of the database. Case insensitive, expected to be stored as lowercase.
@@ -308,4 +369,7 @@ struct TCatalogObject {
 
   // Set iff object type is FUNCTION
   6: optional Types.TFunction fn
+
+  // Set iff object type is HDFS_PARTITION_DELTA
+  7: optional THdfsPartitionDelta partition_delta
 }
@@ -295,7 +295,9 @@ enum TCatalogOpType {
   SHOW_FUNCTIONS,
   RESET_METADATA,
   DDL,
-  SHOW_CREATE_TABLE
+  SHOW_CREATE_TABLE,
+  PREPARE,
+  DEALLOCATE
 }
 
 struct TCatalogOpRequest {
@@ -380,6 +382,22 @@ struct TAccessEvent {
   3: required string privilege
 }
 
+// Plan cache statistics of a request, reported in the query profile.
+struct TPlanCacheStats {
+  // True if the TExecRequest was served from the plan cache.
+  1: required bool hit
+
+  // Parsing, analysis and planning time saved by serving the request from the plan
+  // cache. Zero if hit is false.
+  2: required i64 saved_planning_time_ms
+
+  // Cumulative statistics of the plan cache since the impalad started. Misses are
+  // only counted for statements that were subsequently cached.
+  3: required i64 num_hits
+  4: required i64 num_misses
+  5: required i64 total_saved_planning_time_ms
+}
+
 // Result of call to createExecRequest()
 struct TExecRequest {
   1: required Types.TStmtType stmt_type
@@ -406,6 +424,9 @@ struct TExecRequest {
   // List of catalog objects accessed by this request. May be empty in this
   // case that the query did not access any Catalog objects.
   8: optional list<TAccessEvent> access_events
+
+  // Set if the plan cache is enabled and the statement can be served from it.
+  9: optional TPlanCacheStats plan_cache_stats
 }
 
 // A UDF may include optional prepare and close functions in addition the main evaluation
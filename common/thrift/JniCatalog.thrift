@@ -191,6 +191,28 @@ struct TAlterTableUpdateStatsParams {
 
   // Column-level stats. Maps from column name to column stats.
   4: optional map<string, CatalogObjects.TColumnStats> column_stats
+
+  // Set by COMPUTE INCREMENTAL STATS. If true, column_stats is not set; instead the
+  // table-level stats are computed by merging the incremental stats of all partitions.
+  5: optional bool is_incremental
+
+  // Set by COMPUTE INCREMENTAL STATS. The fingerprints of the files of the partitions
+  // that were scanned, keyed by partition-key values. See TComputeStatsParams.
+  6: optional map<list<string>, string> partition_fingerprints
+
+  // Set by COMPUTE INCREMENTAL STATS. The mergeable column stats of the scanned
+  // partitions, keyed by partition-key values.
+  7: optional map<list<string>, CatalogObjects.TPartitionStats>
+      partition_incremental_stats
+
+  // Set by COMPUTE STATS with a TABLESAMPLE clause. The stats were computed from a
+  // sample of about this percent of the bytes of each partition.
+  8: optional i32 sample_percent
+
+  // Set by COMPUTE STATS with a TABLESAMPLE clause. The fraction of the bytes of each
+  // partition that was sampled, keyed by partition-key values. The row counts and
+  // column stats are scaled by these fractions to estimate the stats of the table.
+  9: optional map<list<string>, double> partition_sample_fractions
 }
 
 // Parameters for all ALTER TABLE commands.
@@ -335,6 +357,23 @@ struct TComputeStatsParams {
 
   // Query for gethering per-column NDVs and number of NULLs.
   3: required string col_stats_query
+
+  // True for COMPUTE INCREMENTAL STATS. The queries then only scan the partitions in
+  // partition_fingerprints, and the column stats query returns one row of mergeable
+  // stats per partition, followed by the partition-key values.
+  4: optional bool is_incremental
+
+  // Set for COMPUTE INCREMENTAL STATS. Maps the partition-key values of the scanned
+  // partitions to the fingerprints of their files at the time of analysis.
+  5: optional map<list<string>, string> partition_fingerprints
+
+  // Set for COMPUTE STATS with a TABLESAMPLE clause. The queries then only scan a
+  // sample of about this percent of the bytes of each partition.
+  6: optional i32 sample_percent
+
+  // Set for COMPUTE STATS with a TABLESAMPLE clause. Maps the partition-key values of
+  // each partition to the fraction of its bytes that the queries scan.
+  7: optional map<list<string>, double> partition_sample_fractions
 }
 
 // Parameters of DROP DATABASE commands
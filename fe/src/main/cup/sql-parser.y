@@ -31,6 +31,9 @@ import com.google.common.collect.Lists;
 parser code {:
   private Symbol errorToken;
 
+  // parameter placeholders of the statement in the order of their appearance
+  private final List<PlaceholderExpr> placeholders = new ArrayList<PlaceholderExpr>();
+
   // list of expected tokens ids from current parsing state
   // for generating syntax error message
   private final List<Integer> expectedTokenIds = new ArrayList<Integer>();
@@ -46,6 +49,14 @@ parser code {:
     }
   }
 
+  // Keywords that are not reserved words are subsumed by IDENTIFIER in the expected
+  // tokens of error messages, see ident_or_keyword.
+  private boolean isNonReservedKeyword(Integer tokenId) {
+    return tokenId.intValue() == SqlParserSymbols.KW_DEALLOCATE ||
+        tokenId.intValue() == SqlParserSymbols.KW_EXECUTE ||
+        tokenId.intValue() == SqlParserSymbols.KW_PREPARE;
+  }
+
   private String getErrorTypeMessage(int lastTokenId) {
     String msg = null;
     switch(lastTokenId) {
@@ -91,6 +102,17 @@ parser code {:
     throw new Exception(getErrorTypeMessage(cur_token.sym));
   }
 
+  /**
+   * Creates a parameter placeholder for the next '?' of the statement.
+   */
+  public PlaceholderExpr createPlaceholder() {
+    PlaceholderExpr placeholder = new PlaceholderExpr(placeholders.size());
+    placeholders.add(placeholder);
+    return placeholder;
+  }
+
+  public List<PlaceholderExpr> getPlaceholders() { return placeholders; }
+
   /**
    * Manually throw a parse error on a given symbol for special circumstances.
    *
@@ -182,8 +204,10 @@ parser code {:
     result.append("Expected: ");
     String expectedToken = null;
     Integer tokenId = null;
+    boolean identExpected = expectedTokenIds.contains(SqlParserSymbols.IDENT);
     for (int i = 0; i < expectedTokenIds.size(); ++i) {
       tokenId = expectedTokenIds.get(i);
+      if (identExpected && isNonReservedKeyword(tokenId)) continue;
       if (reportExpectedToken(tokenId)) {
        expectedToken = SqlScanner.tokenIdMap.get(tokenId);
          result.append(expectedToken + ", ");
@@ -202,27 +226,28 @@ terminal
   KW_ADD, KW_AGGREGATE, KW_ALL, KW_ALTER, KW_AND, KW_AS, KW_ASC, KW_AVRO, KW_BETWEEN,
   KW_BIGINT, KW_BINARY, KW_BOOLEAN, KW_BY, KW_CASE, KW_CAST, KW_CHANGE, KW_CHAR,
   KW_CLOSE_FN, KW_COLUMN, KW_COLUMNS, KW_COMMENT, KW_COMPUTE, KW_CREATE, KW_CROSS,
-  KW_DATA, KW_DATABASE, KW_DATABASES, KW_DATE, KW_DATETIME, KW_DECIMAL, KW_DELIMITED,
-  KW_DESC, KW_DESCRIBE, KW_DISTINCT, KW_DIV, KW_DOUBLE, KW_DROP, KW_ELSE, KW_END,
-  KW_ESCAPED, KW_EXISTS, KW_EXPLAIN, KW_EXTERNAL, KW_FALSE, KW_FIELDS, KW_FILEFORMAT,
-  KW_FINALIZE_FN, KW_FIRST, KW_FLOAT, KW_FORMAT, KW_FORMATTED, KW_FROM, KW_FULL,
-  KW_FUNCTION, KW_FUNCTIONS, KW_GROUP, KW_HAVING, KW_IF, KW_IN, KW_INIT_FN, KW_INNER,
-  KW_INPATH, KW_INSERT, KW_INT, KW_INTERMEDIATE, KW_INTERVAL, KW_INTO, KW_INVALIDATE,
-  KW_IS, KW_JOIN, KW_LAST, KW_LEFT, KW_LIKE, KW_LIMIT, KW_LINES, KW_LOAD, KW_LOCATION,
-  KW_MERGE_FN, KW_METADATA, KW_NOT, KW_NULL, KW_NULLS, KW_OFFSET, KW_ON, KW_OR,
-  KW_ORDER, KW_OUTER, KW_OVERWRITE, KW_PARQUET, KW_PARQUETFILE, KW_PARTITION,
-  KW_PARTITIONED, KW_PARTITIONS, KW_PREPARE_FN, KW_RCFILE, KW_REFRESH, KW_REGEXP,
-  KW_RENAME, KW_REPLACE, KW_RETURNS, KW_RIGHT, KW_RLIKE, KW_ROW, KW_SCHEMA, KW_SCHEMAS,
-  KW_SELECT, KW_SEMI, KW_SEQUENCEFILE, KW_SERDEPROPERTIES, KW_SERIALIZE_FN, KW_SET,
-  KW_SHOW, KW_SMALLINT, KW_STORED, KW_STRAIGHT_JOIN, KW_STRING, KW_SYMBOL, KW_TABLE,
-  KW_TABLES, KW_TBLPROPERTIES, KW_TERMINATED, KW_TEXTFILE, KW_THEN, KW_TIMESTAMP,
-  KW_TINYINT, KW_STATS, KW_TO, KW_TRUE, KW_UNION, KW_UPDATE_FN, KW_USE, KW_USING,
-  KW_VALUES, KW_VIEW, KW_WHEN, KW_WHERE, KW_WITH;
+  KW_DATA, KW_DATABASE, KW_DATABASES, KW_DATE, KW_DATETIME, KW_DEALLOCATE, KW_DECIMAL,
+  KW_DELIMITED, KW_DESC, KW_DESCRIBE, KW_DISTINCT, KW_DIV, KW_DOUBLE, KW_DROP, KW_ELSE,
+  KW_END, KW_ESCAPED, KW_EXECUTE, KW_EXISTS, KW_EXPLAIN, KW_EXTERNAL, KW_FALSE, KW_FIELDS,
+  KW_FILEFORMAT, KW_FINALIZE_FN, KW_FIRST, KW_FLOAT, KW_FORMAT, KW_FORMATTED, KW_FROM,
+  KW_FULL, KW_FUNCTION, KW_FUNCTIONS, KW_GROUP, KW_HAVING, KW_IF, KW_IN, KW_INCREMENTAL,
+  KW_INIT_FN, KW_INNER, KW_INPATH, KW_INSERT, KW_INT, KW_INTERMEDIATE, KW_INTERVAL,
+  KW_INTO, KW_INVALIDATE, KW_IS, KW_JOIN, KW_LAST, KW_LEFT, KW_LIKE, KW_LIMIT, KW_LINES,
+  KW_LOAD, KW_LOCATION, KW_MERGE_FN, KW_METADATA, KW_NOT, KW_NULL, KW_NULLS, KW_OFFSET,
+  KW_ON, KW_OR, KW_ORDER, KW_OUTER, KW_OVERWRITE, KW_PARQUET, KW_PARQUETFILE,
+  KW_PARTITION, KW_PARTITIONED, KW_PARTITIONS, KW_PREPARE, KW_PREPARE_FN, KW_RCFILE,
+  KW_REFRESH, KW_REGEXP, KW_RENAME, KW_REPLACE, KW_RETURNS, KW_RIGHT, KW_RLIKE, KW_ROW,
+  KW_SCHEMA, KW_SCHEMAS, KW_SELECT, KW_SEMI, KW_SEQUENCEFILE, KW_SERDEPROPERTIES,
+  KW_SERIALIZE_FN, KW_SET, KW_SHOW, KW_SMALLINT, KW_STORED, KW_STRAIGHT_JOIN, KW_STRING,
+  KW_SYMBOL, KW_TABLE, KW_TABLES, KW_TABLESAMPLE, KW_TBLPROPERTIES, KW_TERMINATED,
+  KW_TEXTFILE, KW_THEN, KW_TIMESTAMP, KW_TINYINT, KW_STATS, KW_TO, KW_TRUE, KW_UNION,
+  KW_UPDATE_FN, KW_USE, KW_USING, KW_VALUES, KW_VIEW, KW_WHEN, KW_WHERE, KW_WITH;
 
 terminal COMMA, DOT, DOTDOTDOT, STAR, LPAREN, RPAREN, LBRACKET, RBRACKET,
   DIVIDE, MOD, ADD, SUBTRACT;
 terminal BITAND, BITOR, BITXOR, BITNOT;
 terminal EQUAL, NOT, LESSTHAN, GREATERTHAN;
+terminal PLACEHOLDER;
 terminal String IDENT;
 terminal String NUMERIC_OVERFLOW;
 terminal BigInteger INTEGER_LITERAL;
@@ -246,6 +271,9 @@ nonterminal List<UnionOperand> union_operand_list;
 nonterminal List<UnionOperand> values_operand_list;
 // USE stmt
 nonterminal UseStmt use_stmt;
+nonterminal PrepareStmt prepare_stmt;
+nonterminal ExecuteStmt execute_stmt;
+nonterminal DeallocateStmt deallocate_stmt;
 nonterminal ShowTablesStmt show_tables_stmt;
 nonterminal ShowDbsStmt show_dbs_stmt;
 nonterminal ShowPartitionsStmt show_partitions_stmt;
@@ -266,6 +294,7 @@ nonterminal Boolean opt_straight_join;
 nonterminal Expr expr, non_pred_expr, arithmetic_expr, timestamp_arithmetic_expr;
 nonterminal ArrayList<Expr> expr_list;
 nonterminal String alias_clause;
+nonterminal String ident_or_keyword;
 nonterminal ArrayList<String> ident_list;
 nonterminal ArrayList<String> opt_ident_list;
 nonterminal TableName table_name;
@@ -297,6 +326,7 @@ nonterminal ViewRef with_table_ref;
 nonterminal JoinOperator join_operator;
 nonterminal opt_inner, opt_outer;
 nonterminal ArrayList<String> opt_plan_hints;
+nonterminal TableSampleClause opt_tablesample;
 nonterminal ColumnType column_type;
 nonterminal Expr sign_chain_expr;
 nonterminal InsertStmt insert_stmt;
@@ -444,6 +474,12 @@ stmt ::=
   {: RESULT = load; :}
   | reset_metadata_stmt: reset_metadata
   {: RESULT = reset_metadata; :}
+  | prepare_stmt:prepare
+  {: RESULT = prepare; :}
+  | execute_stmt:execute
+  {: RESULT = execute; :}
+  | deallocate_stmt:deallocate
+  {: RESULT = deallocate; :}
   ;
 
 load_stmt ::=
@@ -535,9 +571,11 @@ alter_tbl_stmt ::=
     RESULT = new AlterTableAddPartitionStmt(table, partition,
         location, if_not_exists);
   :}
-  | KW_ALTER KW_TABLE table_name:table KW_DROP optional_kw_column IDENT:col_name
+  | KW_ALTER KW_TABLE table_name:table KW_DROP optional_kw_column
+    ident_or_keyword:col_name
   {: RESULT = new AlterTableDropColStmt(table, col_name); :}
-  | KW_ALTER KW_TABLE table_name:table KW_CHANGE optional_kw_column IDENT:col_name
+  | KW_ALTER KW_TABLE table_name:table KW_CHANGE optional_kw_column
+    ident_or_keyword:col_name
     column_def:col_def
   {: RESULT = new AlterTableChangeColStmt(table, col_name, col_def); :}
   | KW_ALTER KW_TABLE table_name:table KW_DROP if_exists_val:if_exists
@@ -576,7 +614,7 @@ replace_existing_cols_val ::=
   ;
 
 create_db_stmt ::=
-  KW_CREATE db_or_schema_kw if_not_exists_val:if_not_exists IDENT:db_name
+  KW_CREATE db_or_schema_kw if_not_exists_val:if_not_exists ident_or_keyword:db_name
   comment_val:comment location_val:location
   {: RESULT = new CreateDbStmt(db_name, comment, location, if_not_exists); :}
   ;
@@ -785,7 +823,7 @@ column_def_list ::=
   ;
 
 column_def ::=
-  IDENT:col_name column_type:targetType comment_val:comment
+  ident_or_keyword:col_name column_type:targetType comment_val:comment
   {: RESULT = new ColumnDesc(col_name, targetType, comment); :}
   ;
 
@@ -819,7 +857,7 @@ view_column_def_list ::=
   ;
 
 view_column_def ::=
-  IDENT:col_name comment_val:comment
+  ident_or_keyword:col_name comment_val:comment
   {: RESULT = new ColumnDesc(col_name, null, comment); :}
   ;
 
@@ -831,12 +869,14 @@ alter_view_stmt ::=
   ;
 
 compute_stats_stmt ::=
-  KW_COMPUTE KW_STATS table_name:table
-  {: RESULT = new ComputeStatsStmt(table); :}
+  KW_COMPUTE KW_STATS table_name:table opt_tablesample:sample
+  {: RESULT = new ComputeStatsStmt(table, false, sample); :}
+  | KW_COMPUTE KW_INCREMENTAL KW_STATS table_name:table
+  {: RESULT = new ComputeStatsStmt(table, true, null); :}
   ;
 
 drop_db_stmt ::=
-  KW_DROP db_or_schema_kw if_exists_val:if_exists IDENT:db_name
+  KW_DROP db_or_schema_kw if_exists_val:if_exists ident_or_keyword:db_name
   {: RESULT = new DropDbStmt(db_name, if_exists); :}
   ;
 
@@ -918,7 +958,7 @@ static_partition_key_value_list ::=
 
 partition_key_value ::=
   // Dynamic partition key values.
-  IDENT:column
+  ident_or_keyword:column
   {: RESULT = new PartitionKeyValue(column, null); :}
   | static_partition_key_value:partition
   {: RESULT = partition; :}
@@ -926,7 +966,7 @@ partition_key_value ::=
 
 static_partition_key_value ::=
   // Static partition key values.
-  IDENT:column EQUAL expr:e
+  ident_or_keyword:column EQUAL expr:e
   {: RESULT = new PartitionKeyValue(column, e); :}
   ;
 
@@ -1060,7 +1100,7 @@ with_clause ::=
   ;
 
 with_table_ref ::=
-  IDENT:alias KW_AS LPAREN query_stmt:query RPAREN
+  ident_or_keyword:alias KW_AS LPAREN query_stmt:query RPAREN
   {: RESULT = new ViewRef(alias, query); :}
   | STRING_LITERAL:alias KW_AS LPAREN query_stmt:query RPAREN
   {: RESULT = new ViewRef(alias, query); :}
@@ -1185,8 +1225,27 @@ values_operand_list ::=
   :}
   ;
 
+prepare_stmt ::=
+  KW_PREPARE ident_or_keyword:name KW_AS query_stmt:query
+  {: RESULT = new PrepareStmt(name, query, parser.getPlaceholders()); :}
+  ;
+
+execute_stmt ::=
+  KW_EXECUTE ident_or_keyword:name
+  {: RESULT = new ExecuteStmt(name, new ArrayList<Expr>()); :}
+  | KW_EXECUTE ident_or_keyword:name KW_USING expr_list:params
+  {: RESULT = new ExecuteStmt(name, params); :}
+  ;
+
+deallocate_stmt ::=
+  KW_DEALLOCATE ident_or_keyword:name
+  {: RESULT = new DeallocateStmt(name); :}
+  | KW_DEALLOCATE KW_PREPARE ident_or_keyword:name
+  {: RESULT = new DeallocateStmt(name); :}
+  ;
+
 use_stmt ::=
-  KW_USE IDENT:db
+  KW_USE ident_or_keyword:db
   {: RESULT = new UseStmt(db); :}
   ;
 
@@ -1195,9 +1254,9 @@ show_tables_stmt ::=
   {: RESULT = new ShowTablesStmt(); :}
   | KW_SHOW KW_TABLES show_pattern:showPattern
   {: RESULT = new ShowTablesStmt(showPattern); :}
-  | KW_SHOW KW_TABLES KW_IN IDENT:db
+  | KW_SHOW KW_TABLES KW_IN ident_or_keyword:db
   {: RESULT = new ShowTablesStmt(db, null); :}
-  | KW_SHOW KW_TABLES KW_IN IDENT:db show_pattern:showPattern
+  | KW_SHOW KW_TABLES KW_IN ident_or_keyword:db show_pattern:showPattern
   {: RESULT = new ShowTablesStmt(db, showPattern); :}
   ;
 
@@ -1225,9 +1284,9 @@ show_functions_stmt ::=
   {: RESULT = new ShowFunctionsStmt(null, null, is_aggregate); :}
   | KW_SHOW opt_is_aggregate_fn:is_aggregate KW_FUNCTIONS show_pattern:showPattern
   {: RESULT = new ShowFunctionsStmt(null, showPattern, is_aggregate); :}
-  | KW_SHOW opt_is_aggregate_fn:is_aggregate KW_FUNCTIONS KW_IN IDENT:db
+  | KW_SHOW opt_is_aggregate_fn:is_aggregate KW_FUNCTIONS KW_IN ident_or_keyword:db
   {: RESULT = new ShowFunctionsStmt(db, null, is_aggregate); :}
-  | KW_SHOW opt_is_aggregate_fn:is_aggregate KW_FUNCTIONS KW_IN IDENT:db
+  | KW_SHOW opt_is_aggregate_fn:is_aggregate KW_FUNCTIONS KW_IN ident_or_keyword:db
       show_pattern:showPattern
   {: RESULT = new ShowFunctionsStmt(db, showPattern, is_aggregate); :}
   ;
@@ -1325,9 +1384,9 @@ select_list_item ::=
   ;
 
 alias_clause ::=
-  KW_AS IDENT:ident
+  KW_AS ident_or_keyword:ident
   {: RESULT = ident; :}
-  | IDENT:ident
+  | ident_or_keyword:ident
   {: RESULT = ident; :}
   | KW_AS STRING_LITERAL:l
   {: RESULT = l; :}
@@ -1340,23 +1399,23 @@ star_expr ::=
   // table_name DOT STAR doesn't work because of a reduce-reduce conflict
   // on IDENT [DOT]
   {: RESULT = SelectListItem.createStarItem(null); :}
-  | IDENT:tbl DOT STAR
+  | ident_or_keyword:tbl DOT STAR
   {: RESULT = SelectListItem.createStarItem(new TableName(null, tbl)); :}
-  | IDENT:db DOT IDENT:tbl DOT STAR
+  | ident_or_keyword:db DOT ident_or_keyword:tbl DOT STAR
   {: RESULT = SelectListItem.createStarItem(new TableName(db, tbl)); :}
   ;
 
 table_name ::=
-  IDENT:tbl
+  ident_or_keyword:tbl
   {: RESULT = new TableName(null, tbl); :}
-  | IDENT:db DOT IDENT:tbl
+  | ident_or_keyword:db DOT ident_or_keyword:tbl
   {: RESULT = new TableName(db, tbl); :}
   ;
 
 function_name ::=
-  IDENT:fn
+  ident_or_keyword:fn
   {: RESULT = new FunctionName(null, fn); :}
-  | IDENT:db DOT IDENT:fn
+  | ident_or_keyword:db DOT ident_or_keyword:fn
   {: RESULT = new FunctionName(db, fn); :}
   ;
 
@@ -1426,10 +1485,31 @@ inline_view_ref ::=
   ;
 
 base_table_ref ::=
-  table_name:name alias_clause:alias
-  {: RESULT = new BaseTableRef(name, alias); :}
-  | table_name:name
-  {: RESULT = new BaseTableRef(name, null); :}
+  table_name:name alias_clause:alias opt_tablesample:sample
+  {: RESULT = new BaseTableRef(name, alias, sample); :}
+  | table_name:name opt_tablesample:sample
+  {: RESULT = new BaseTableRef(name, null, sample); :}
+  ;
+
+// SYSTEM and PERCENT are parsed as identifiers so that they are not reserved words,
+// and we manually throw a parse error if they are not.
+opt_tablesample ::=
+  KW_TABLESAMPLE IDENT:method LPAREN INTEGER_LITERAL:percent RPAREN
+  {:
+    if (!method.equalsIgnoreCase("system")) {
+      parser.parseError("identifier", SqlParserSymbols.IDENT);
+    }
+    RESULT = new TableSampleClause(percent.longValue());
+  :}
+  | KW_TABLESAMPLE IDENT:method LPAREN INTEGER_LITERAL:percent IDENT:unit RPAREN
+  {:
+    if (!method.equalsIgnoreCase("system") || !unit.equalsIgnoreCase("percent")) {
+      parser.parseError("identifier", SqlParserSymbols.IDENT);
+    }
+    RESULT = new TableSampleClause(percent.longValue());
+  :}
+  | /* empty */
+  {: RESULT = null; :}
   ;
 
 join_operator ::=
@@ -1462,14 +1542,26 @@ opt_plan_hints ::=
   {: RESULT = null; :}
   ;
 
-ident_list ::=
+// An identifier, or a keyword that is not a reserved word.
+ident_or_keyword ::=
   IDENT:ident
+  {: RESULT = ident; :}
+  | KW_DEALLOCATE:kw
+  {: RESULT = (String) kw; :}
+  | KW_EXECUTE:kw
+  {: RESULT = (String) kw; :}
+  | KW_PREPARE:kw
+  {: RESULT = (String) kw; :}
+  ;
+
+ident_list ::=
+  ident_or_keyword:ident
   {:
     ArrayList<String> list = new ArrayList<String>();
     list.add(ident);
     RESULT = list;
   :}
-  | ident_list:list COMMA IDENT:ident
+  | ident_list:list COMMA ident_or_keyword:ident
   {:
     list.add(ident);
     RESULT = list;
@@ -1640,6 +1732,8 @@ non_pred_expr ::=
   {: RESULT = e; :}
   | literal:l
   {: RESULT = l; :}
+  | PLACEHOLDER
+  {: RESULT = parser.createPlaceholder(); :}
   | function_name:fn_name LPAREN RPAREN
   {: RESULT = new FunctionCallExpr(fn_name, new ArrayList<Expr>()); :}
   | function_name:fn_name LPAREN function_params:params RPAREN
@@ -1860,12 +1954,12 @@ compound_predicate ::=
   ;
 
 column_ref ::=
-  IDENT:col
+  ident_or_keyword:col
   {: RESULT = new SlotRef(null, col); :}
-  // table_name:tblName DOT IDENT:col causes reduce/reduce conflicts
-  | IDENT:tbl DOT IDENT:col
+  // table_name:tblName DOT ident_or_keyword:col causes reduce/reduce conflicts
+  | ident_or_keyword:tbl DOT ident_or_keyword:col
   {: RESULT = new SlotRef(new TableName(null, tbl), col); :}
-  | IDENT:db DOT IDENT:tbl DOT IDENT:col
+  | ident_or_keyword:db DOT ident_or_keyword:tbl DOT ident_or_keyword:col
   {: RESULT = new SlotRef(new TableName(db, tbl), col); :}
   ;
 
@@ -15,7 +15,9 @@
 package com.cloudera.impala.analysis;
 
 import java.io.StringReader;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +28,7 @@ import com.cloudera.impala.common.AnalysisException;
 import com.cloudera.impala.thrift.TAccessEvent;
 import com.cloudera.impala.thrift.TQueryContext;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 
 /**
  * Wrapper class for parser and analyzer.
@@ -35,17 +38,31 @@ public class AnalysisContext {
   private final ImpaladCatalog catalog_;
   private final TQueryContext queryCtxt_;
 
+  // Prepared statements of the session, by name.
+  private final Map<String, PrepareStmt> preparedStmts_;
+
   // Set in analyze()
   private AnalysisResult analysisResult_;
 
   public AnalysisContext(ImpaladCatalog catalog, TQueryContext queryCtxt) {
+    this(catalog, queryCtxt, Collections.<String, PrepareStmt>emptyMap());
+  }
+
+  public AnalysisContext(ImpaladCatalog catalog, TQueryContext queryCtxt,
+      Map<String, PrepareStmt> preparedStmts) {
     catalog_ = catalog;
     queryCtxt_ = queryCtxt;
+    preparedStmts_ = preparedStmts;
   }
 
   static public class AnalysisResult {
     private StatementBase stmt_;
     private Analyzer analyzer_;
+    // Bindings of the parameters if stmt_ is the query of a prepared statement bound
+    // to the parameter values of an EXECUTE statement, otherwise null.
+    private List<PlaceholderBinding> bindings_;
+    // Time spent parsing and analyzing the statement.
+    private long analysisTimeNs_;
 
     public boolean isAlterTableStmt() { return stmt_ instanceof AlterTableStmt; }
     public boolean isAlterViewStmt() { return stmt_ instanceof AlterViewStmt; }
@@ -79,6 +96,9 @@ public class AnalysisContext {
     }
     public boolean isDescribeStmt() { return stmt_ instanceof DescribeStmt; }
     public boolean isResetMetadataStmt() { return stmt_ instanceof ResetMetadataStmt; }
+    public boolean isPrepareStmt() { return stmt_ instanceof PrepareStmt; }
+    public boolean isDeallocateStmt() { return stmt_ instanceof DeallocateStmt; }
+    public boolean isExecuteStmt() { return stmt_ instanceof ExecuteStmt; }
     public boolean isExplainStmt() { return stmt_.isExplain(); }
 
     public boolean isCatalogOp() {
@@ -88,7 +108,8 @@ public class AnalysisContext {
           isDropDbStmt() || isDropTableOrViewStmt() || isResetMetadataStmt() ||
           isAlterTableStmt() || isAlterViewStmt() || isComputeStatsStmt() ||
           isCreateUdfStmt() || isCreateUdaStmt() || isShowFunctionsStmt() ||
-          isDropFunctionStmt() || isCreateTableAsSelectStmt();
+          isDropFunctionStmt() || isCreateTableAsSelectStmt() || isPrepareStmt() ||
+          isDeallocateStmt();
     }
 
     public boolean isDmlStmt() {
@@ -214,9 +235,27 @@ public class AnalysisContext {
       return (ShowCreateTableStmt) stmt_;
     }
 
+    public PrepareStmt getPrepareStmt() {
+      Preconditions.checkState(isPrepareStmt());
+      return (PrepareStmt) stmt_;
+    }
+
+    public DeallocateStmt getDeallocateStmt() {
+      Preconditions.checkState(isDeallocateStmt());
+      return (DeallocateStmt) stmt_;
+    }
+
+    public ExecuteStmt getExecuteStmt() {
+      Preconditions.checkState(isExecuteStmt());
+      return (ExecuteStmt) stmt_;
+    }
+
+    public List<PlaceholderBinding> getBindings() { return bindings_; }
+
     public StatementBase getStmt() { return stmt_; }
     public Analyzer getAnalyzer() { return analyzer_; }
     public List<TAccessEvent> getAccessEvents() { return analyzer_.getAccessEvents(); }
+    public long getAnalysisTimeNs() { return analysisTimeNs_; }
   }
 
   /**
@@ -232,6 +271,7 @@ public class AnalysisContext {
    */
   public void analyze(String stmt) throws AnalysisException,
       AuthorizationException {
+    long startTimeNs = System.nanoTime();
     analysisResult_ = new AnalysisResult();
     analysisResult_.analyzer_ = new Analyzer(catalog_, queryCtxt_);
 
@@ -240,7 +280,17 @@ public class AnalysisContext {
     try {
       analysisResult_.stmt_ = (StatementBase) parser.parse().value;
       if (analysisResult_.stmt_ == null) return;
+      if (analysisResult_.isExecuteStmt()) {
+        ExecuteStmt executeStmt = analysisResult_.getExecuteStmt();
+        PrepareStmt prepareStmt = preparedStmts_.get(executeStmt.getName());
+        if (prepareStmt == null) {
+          throw new AnalysisException(
+              "Prepared statement does not exist: " + executeStmt.getName());
+        }
+        executeStmt.setPrepareStmt(prepareStmt);
+      }
       analysisResult_.stmt_.analyze(analysisResult_.analyzer_);
+      analysisResult_.analysisTimeNs_ = System.nanoTime() - startTimeNs;
     } catch (AnalysisException e) {
       // Don't wrap AnalysisExceptions in another AnalysisException
       throw e;
@@ -252,6 +302,26 @@ public class AnalysisContext {
     }
   }
 
+  /**
+   * Analyzes the query of the prepared statement executed by 'executeStmt', an
+   * analyzed EXECUTE statement, bound to the parameter values of the execution. The
+   * result of analysis can be retrieved by calling getAnalysisResult().
+   */
+  public void analyzeExecutedQuery(ExecuteStmt executeStmt) throws AnalysisException,
+      AuthorizationException {
+    long startTimeNs = System.nanoTime();
+    analysisResult_ = new AnalysisResult();
+    analysisResult_.analyzer_ = new Analyzer(catalog_, queryCtxt_);
+    analysisResult_.bindings_ = Lists.newArrayList();
+    for (LiteralExpr value: executeStmt.getParamValues()) {
+      analysisResult_.bindings_.add(new PlaceholderBinding(value));
+    }
+    analysisResult_.stmt_ =
+        executeStmt.getPrepareStmt().bind(analysisResult_.bindings_);
+    analysisResult_.stmt_.analyze(analysisResult_.analyzer_);
+    analysisResult_.analysisTimeNs_ = System.nanoTime() - startTimeNs;
+  }
+
   public AnalysisResult getAnalysisResult() { return analysisResult_; }
   public Analyzer getAnalyzer() { return getAnalysisResult().getAnalyzer(); }
 }
\ No newline at end of file
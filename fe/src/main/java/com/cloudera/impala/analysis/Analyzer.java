@@ -15,7 +15,8 @@
 package com.cloudera.impala.analysis;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
@@ -33,6 +34,7 @@ import com.cloudera.impala.catalog.Column;
 import com.cloudera.impala.catalog.ColumnType;
 import com.cloudera.impala.catalog.DatabaseNotFoundException;
 import com.cloudera.impala.catalog.Db;
+import com.cloudera.impala.catalog.Function;
 import com.cloudera.impala.catalog.ImpaladCatalog;
 import com.cloudera.impala.catalog.Table;
 import com.cloudera.impala.catalog.TableLoadingException;
@@ -148,6 +150,13 @@ public class Analyzer {
     // accesses to catalog objects
     public List<TAccessEvent> accessEvents = Lists.newArrayList();
 
+    // map from full name to all tables and views referenced by the statement,
+    // including the ones referenced by view definitions
+    public final Map<String, Table> referencedTables = Maps.newHashMap();
+
+    // function resolutions: pairs of search descriptor and resolved function
+    public final List<Pair<Function, Function>> fnResolutions = Lists.newArrayList();
+
     // map from equivalence class id to the list of its member slots
     private final Map<EquivalenceClassId, ArrayList<SlotId>> equivClassMembers =
         Maps.newHashMap();
@@ -156,9 +165,8 @@ public class Analyzer {
     // only visible at the root Analyzer
     private final Map<SlotId, EquivalenceClassId> equivClassBySlotId = Maps.newHashMap();
 
-    // valueTransfer[slotA][slotB] is true if slotB always has the same value as slotA
-    // or the tuple containing slotB is NULL
-    private boolean[][] valueTransfer;
+    // value transfers between slots; see ValueTransferGraph
+    private ValueTransferGraph valueTransferGraph;
 
     private final List<Pair<SlotId, SlotId>> registeredValueTransfers =
         Lists.newArrayList();
@@ -845,7 +853,7 @@ public class Analyzer {
         //   materializes the OJ'd table)
         boolean reverseValueTransfer = true;
         for (int i = 0; i < srcSids.size(); ++i) {
-          if (!globalState_.valueTransfer[destSids.get(i).asInt()][srcSids.get(i).asInt()]) {
+          if (!hasValueTransfer(destSids.get(i), srcSids.get(i))) {
             reverseValueTransfer = false;
             break;
           }
@@ -889,7 +897,7 @@ public class Analyzer {
       SlotId srcSid = srcSids.get(0);
       for (SlotDescriptor destSlot: destTupleDesc.getSlots()) {
         if (ignoreSlots.contains(destSlot.getId())) continue;
-        if (globalState_.valueTransfer[srcSid.asInt()][destSlot.getId().asInt()]) {
+        if (hasValueTransfer(srcSid, destSlot.getId())) {
           allDestSids.add(Lists.newArrayList(destSlot.getId()));
         }
       }
@@ -911,7 +919,7 @@ public class Analyzer {
       for (SlotId srcSid: srcSids) {
         for (SlotDescriptor destSlot: destTupleDesc.getSlots()) {
           if (ignoreSlots.contains(destSlot.getId())) continue;
-          if (globalState_.valueTransfer[srcSid.asInt()][destSlot.getId().asInt()]
+          if (hasValueTransfer(srcSid, destSlot.getId())
               && !destSids.contains(destSlot.getId())) {
             destSids.add(destSlot.getId());
             break;
@@ -941,6 +949,8 @@ public class Analyzer {
    * TODO: Can we avoid dealing with the exceptions thrown by analysis and eval?
    */
   private boolean isTrueWithNullSlots(Expr p) {
+    // The assignment of 'p' depends on the result, so its bound values are fixed.
+    PlaceholderBinding.fixBoundValues(p);
     // Construct predicate with all SlotRefs substituted by NullLiterals.
     List<SlotRef> slotRefs = Lists.newArrayList();
     p.collect(Predicates.instanceOf(SlotRef.class), slotRefs);
@@ -986,20 +996,26 @@ public class Analyzer {
   }
 
   /**
-   * Populate globalState.valueTransfer based on the registered equi-join predicates
+   * Returns true if slot 'destSid' always has the same value as slot 'srcSid' or the
+   * tuple containing 'destSid' is NULL. Only valid after computeEquivClasses().
+   */
+  private boolean hasValueTransfer(SlotId srcSid, SlotId destSid) {
+    return globalState_.valueTransferGraph.hasValueTransfer(
+        srcSid.asInt(), destSid.asInt());
+  }
+
+  /**
+   * Populate globalState.valueTransferGraph based on the registered equi-join predicates
    * of the form <slotref> = <slotref>.
    */
   private void computeValueTransferGraph() {
     int numSlots = globalState_.descTbl.getMaxSlotId().asInt() + 1;
-    globalState_.valueTransfer = new boolean[numSlots][numSlots];
-    for (int i = 0; i < numSlots; ++i) {
-      Arrays.fill(globalState_.valueTransfer[i], false);
-      globalState_.valueTransfer[i][i] = true;
-    }
+    ValueTransferGraph graph = new ValueTransferGraph(numSlots);
+    globalState_.valueTransferGraph = graph;
     for (Pair<SlotId, SlotId> t: globalState_.registeredValueTransfers) {
       Preconditions.checkState(t.first.asInt() < numSlots);
       Preconditions.checkState(t.second.asInt() < numSlots);
-      globalState_.valueTransfer[t.first.asInt()][t.second.asInt()] = true;
+      graph.addEdge(t.first.asInt(), t.second.asInt());
     }
     Set<ExprId> analyzedIds = Sets.newHashSet();
 
@@ -1027,12 +1043,10 @@ public class Analyzer {
         Analyzer secondBlock = globalState_.blockBySlot.get(slotIds.second);
         LOG.trace("value transfer: from " + slotIds.first.toString());
         if (!(secondBlock.hasLimit_ && secondBlock.ancestors_.contains(firstBlock))) {
-          globalState_.valueTransfer[slotIds.first.asInt()][slotIds.second.asInt()] =
-              true;
+          graph.addEdge(slotIds.first.asInt(), slotIds.second.asInt());
         }
         if (!(firstBlock.hasLimit_ && firstBlock.ancestors_.contains(secondBlock))) {
-          globalState_.valueTransfer[slotIds.second.asInt()][slotIds.first.asInt()] =
-              true;
+          graph.addEdge(slotIds.second.asInt(), slotIds.first.asInt());
         }
         continue;
       }
@@ -1063,37 +1077,22 @@ public class Analyzer {
       Analyzer outerBlock = globalState_.blockBySlot.get(outerSlot);
       if (tblRef.getJoinOp() == JoinOperator.LEFT_OUTER_JOIN) {
         if (!(outerBlock.hasLimit_ && outerBlock.ancestors_.contains(innerBlock))) {
-          globalState_.valueTransfer[outerSlot.asInt()][innerSlot.asInt()] = true;
+          graph.addEdge(outerSlot.asInt(), innerSlot.asInt());
         }
       } else if (tblRef.getJoinOp() == JoinOperator.RIGHT_OUTER_JOIN) {
         if (!(innerBlock.hasLimit_ && innerBlock.ancestors_.contains(outerBlock))) {
-          globalState_.valueTransfer[innerSlot.asInt()][outerSlot.asInt()] = true;
+          graph.addEdge(innerSlot.asInt(), outerSlot.asInt());
         }
       }
     }
 
-    // compute the transitive closure
-    boolean changed = false;
-    do {
-      changed = false;
-      for (int i = 0; i < numSlots; ++i) {
-        for (int j = 0; j < numSlots; ++j) {
-          for (int k = 0; k < numSlots; ++k) {
-            if (globalState_.valueTransfer[i][j] && globalState_.valueTransfer[j][k]
-                && !globalState_.valueTransfer[i][k]) {
-              globalState_.valueTransfer[i][k] = true;
-              changed = true;
-            }
-          }
-        }
-      }
-    } while (changed);
+    graph.computeTransitiveClosure();
 
-    // TODO: remove
+    if (!LOG.isTraceEnabled()) return;
     for (int i = 0; i < numSlots; ++i) {
       List<String> strings = Lists.newArrayList();
       for (int j = 0; j < numSlots; ++j) {
-        if (i != j && globalState_.valueTransfer[i][j]) strings.add(Integer.toString(j));
+        if (i != j && graph.hasValueTransfer(i, j)) strings.add(Integer.toString(j));
       }
       if (!strings.isEmpty()) {
         LOG.trace("transfer from " + Integer.toString(i) + " to: "
@@ -1104,37 +1103,46 @@ public class Analyzer {
 
   public void computeEquivClasses() {
     computeValueTransferGraph();
+    ValueTransferGraph graph = globalState_.valueTransferGraph;
 
-    // we start out by assigning each slot to its own equiv class
+    // we start out by assigning each slot to its own equiv class; the class with id i
+    // starts out with slot i, which stays its first member until the class is merged
+    // into another one
     int numSlots = globalState_.descTbl.getMaxSlotId().asInt() + 1;
     IdGenerator<EquivalenceClassId> equivClassIdGenerator =
         EquivalenceClassId.createGenerator();
+    List<ArrayList<SlotId>> classMembers = Lists.newArrayListWithCapacity(numSlots);
     for (int i = 0; i < numSlots; ++i) {
       EquivalenceClassId id = equivClassIdGenerator.getNextId();
-      globalState_.equivClassMembers.put(id, Lists.newArrayList(new SlotId(i)));
+      Preconditions.checkState(id.asInt() == i);
+      ArrayList<SlotId> members = Lists.newArrayList(new SlotId(i));
+      classMembers.add(members);
+      globalState_.equivClassMembers.put(id, members);
     }
 
     // merge two classes if there is a value transfer between all members of the
-    // combined class; do this until there's nothing left to merge
+    // combined class; do this until there's nothing left to merge;
+    // in particular, this requires a value transfer between the first members of the
+    // two classes, so we only need to consider the classes of the slots connected
+    // to the first member of class 1
     boolean merged;
     do {
       merged = false;
-      for (Map.Entry<EquivalenceClassId, ArrayList<SlotId>> e1:
-          globalState_.equivClassMembers.entrySet()) {
-        for (Map.Entry<EquivalenceClassId, ArrayList<SlotId>> e2:
-            globalState_.equivClassMembers.entrySet()) {
-          if (e1.getKey() == e2.getKey()) continue;
-          List<SlotId> class1Members = e1.getValue();
-          if (class1Members.isEmpty()) continue;
-          List<SlotId> class2Members = e2.getValue();
+      for (int i = 0; i < numSlots; ++i) {
+        List<SlotId> class1Members = classMembers.get(i);
+        if (class1Members.isEmpty()) continue;
+        BitSet candidates = graph.getConnectedSlots(i);
+        for (int j = candidates.nextSetBit(0); j >= 0; j = candidates.nextSetBit(j + 1)) {
+          if (j == i) continue;
+          List<SlotId> class2Members = classMembers.get(j);
           if (class2Members.isEmpty()) continue;
 
           // check whether we can transfer values between all members
           boolean canMerge = true;
           for (SlotId class1Slot: class1Members) {
             for (SlotId class2Slot: class2Members) {
-              if (!globalState_.valueTransfer[class1Slot.asInt()][class2Slot.asInt()]
-                  && !globalState_.valueTransfer[class2Slot.asInt()][class1Slot.asInt()]) {
+              if (!hasValueTransfer(class1Slot, class2Slot)
+                  && !hasValueTransfer(class2Slot, class1Slot)) {
                 canMerge = false;
                 break;
               }
@@ -1359,6 +1367,19 @@ public class Analyzer {
    */
   public List<TAccessEvent> getAccessEvents() { return globalState_.accessEvents; }
   public void addAccessEvent(TAccessEvent event) { globalState_.accessEvents.add(event); }
+  public Collection<Table> getReferencedTables() {
+    return globalState_.referencedTables.values();
+  }
+
+  /**
+   * Registers that 'fn' was resolved for the function descriptor 'searchDesc'.
+   */
+  public void registerFnResolution(Function searchDesc, Function fn) {
+    globalState_.fnResolutions.add(Pair.create(searchDesc, fn));
+  }
+  public List<Pair<Function, Function>> getFnResolutions() {
+    return globalState_.fnResolutions;
+  }
 
   /**
    * Returns the Catalog Table object for the TableName at the given Privilege level.
@@ -1392,6 +1413,7 @@ public class Analyzer {
         throw new AnalysisException(
             "Table/view is missing metadata: " + table.getFullName());
       }
+      globalState_.referencedTables.put(table.getFullName(), table);
 
       if (addAccessEvent) {
         // Add an audit event for this access
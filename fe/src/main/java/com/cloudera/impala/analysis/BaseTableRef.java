@@ -17,6 +17,7 @@ package com.cloudera.impala.analysis;
 import java.util.List;
 
 import com.cloudera.impala.catalog.AuthorizationException;
+import com.cloudera.impala.catalog.HdfsTable;
 import com.cloudera.impala.common.AnalysisException;
 import com.cloudera.impala.common.InternalException;
 import com.google.common.base.Preconditions;
@@ -38,11 +39,19 @@ public class BaseTableRef extends TableRef {
   // to catalog entries (base table or view) from WITH-clause views.
   private boolean allowWithViewReplacement_ = true;
 
+  // Optional TABLESAMPLE clause. Null if the table is scanned completely.
+  private final TableSampleClause sampleClause_;
+
   public BaseTableRef(TableName name, String alias) {
+    this(name, alias, null);
+  }
+
+  public BaseTableRef(TableName name, String alias, TableSampleClause sampleClause) {
     super(alias);
     Preconditions.checkArgument(!name.toString().isEmpty());
     Preconditions.checkArgument(alias == null || !alias.isEmpty());
     this.name_ = name;
+    this.sampleClause_ = sampleClause;
   }
 
   /**
@@ -52,6 +61,7 @@ public class BaseTableRef extends TableRef {
     super(other);
     this.name_ = other.name_;
     this.allowWithViewReplacement_ = other.allowWithViewReplacement_;
+    this.sampleClause_ = other.sampleClause_;
   }
 
   /**
@@ -60,6 +70,7 @@ public class BaseTableRef extends TableRef {
    * default database from the analyzer will be used as the db name.
    */
   public TableName getName() { return name_; }
+  public TableSampleClause getSampleClause() { return sampleClause_; }
 
   /**
    * Register this table ref and then analyze the Join clause.
@@ -70,6 +81,14 @@ public class BaseTableRef extends TableRef {
     Preconditions.checkNotNull(getPrivilegeRequirement());
     desc_ = analyzer.registerBaseTableRef(this);
     isAnalyzed_ = true;  // true that we have assigned desc
+    if (sampleClause_ != null) {
+      if (!(desc_.getTable() instanceof HdfsTable)) {
+        throw new AnalysisException(String.format(
+            "TABLESAMPLE is only supported on HDFS tables: %s",
+            desc_.getTable().getFullName()));
+      }
+      sampleClause_.analyze(analyzer);
+    }
     try {
       analyzeJoin(analyzer);
     } catch (InternalException e) {
@@ -112,7 +131,8 @@ public class BaseTableRef extends TableRef {
     // This is needed for view compatibility between Impala and Hive.
     String aliasSql = null;
     if (alias_ != null) aliasSql = ToSqlUtils.getIdentSql(alias_);
-    return name_.toSql() + ((aliasSql != null) ? " " + aliasSql : "");
+    return name_.toSql() + ((aliasSql != null) ? " " + aliasSql : "") +
+        ((sampleClause_ != null) ? " " + sampleClause_.toSql() : "");
   }
 
   public String debugString() {
@@ -48,6 +48,8 @@ public class BetweenPredicate extends Predicate {
     this.isNotBetween_ = isNotBetween;
   }
 
+  public boolean isNotBetween() { return isNotBetween_; }
+
   @Override
   public void analyze(Analyzer analyzer) throws AnalysisException,
       AuthorizationException {
@@ -55,9 +57,6 @@ public class BetweenPredicate extends Predicate {
     super.analyze(analyzer);
     analyzer.castAllToCompatibleType(originalChildren_);
 
-    // TODO: improve with histograms
-    selectivity_ = Expr.DEFAULT_SELECTIVITY;
-
     // Rewrite between predicate into a conjunctive/disjunctive compound predicate.
     if (isNotBetween_) {
       // Rewrite into disjunction.
@@ -84,11 +83,35 @@ public class BetweenPredicate extends Predicate {
       // We should have already guaranteed that analysis will succeed.
       Preconditions.checkState(false, "Analysis failed in rewritten between predicate");
     }
+    computeSelectivity();
 
     // Make sure toThrift() picks up the children of the rewritten predicate.
     children_ = rewrittenPredicate_.getChildren();
   }
 
+  /**
+   * Estimates the selectivity from the range stats of the compared column if there
+   * are any, otherwise uses the default selectivity.
+   */
+  private void computeSelectivity() {
+    selectivity_ = Expr.DEFAULT_SELECTIVITY;
+    BinaryPredicate lower = (BinaryPredicate) rewrittenPredicate_.getChild(0);
+    BinaryPredicate upper = (BinaryPredicate) rewrittenPredicate_.getChild(1);
+    SlotRef lowerSlotRef = lower.getRangeSlotRef();
+    SlotRef upperSlotRef = upper.getRangeSlotRef();
+    if (lowerSlotRef == null || upperSlotRef == null ||
+        lowerSlotRef.getDesc() != upperSlotRef.getDesc()) {
+      return;
+    }
+    if (isNotBetween_) {
+      // The ranges of the two predicates are disjoint.
+      selectivity_ = Math.min(1.0, lower.getSelectivity() + upper.getSelectivity());
+    } else {
+      selectivity_ =
+          BinaryPredicate.estimateRangeSelectivity(Lists.newArrayList(lower, upper));
+    }
+  }
+
   @Override
   public List<Expr> getConjuncts() {
     return rewrittenPredicate_.getConjuncts();
@@ -14,14 +14,18 @@
 
 package com.cloudera.impala.analysis;
 
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.cloudera.impala.catalog.AuthorizationException;
+import com.cloudera.impala.catalog.ColumnStats;
 import com.cloudera.impala.catalog.ColumnType;
 import com.cloudera.impala.catalog.Db;
 import com.cloudera.impala.catalog.Function.CompareMode;
 import com.cloudera.impala.catalog.ScalarFunction;
+import com.cloudera.impala.catalog.Table;
 import com.cloudera.impala.common.AnalysisException;
 import com.cloudera.impala.common.Pair;
 import com.cloudera.impala.common.Reference;
@@ -138,12 +142,104 @@ public class BinaryPredicate extends Predicate {
       Preconditions.checkState(slotRefRef.getRef() != null);
       selectivity_ = 1.0 / slotRefRef.getRef().getNumDistinctValues();
       selectivity_ = Math.max(0, Math.min(1, selectivity_));
+    } else if (getRangeSlotRef() != null) {
+      selectivity_ = estimateRangeSelectivity(Lists.newArrayList(this));
     } else {
-      // TODO: improve using histograms, once they show up
       selectivity_ = Expr.DEFAULT_SELECTIVITY;
     }
   }
 
+  /**
+   * If this is a range predicate "<slotref> <op> <numeric literal>" or
+   * "<numeric literal> <op> <slotref>" with a <, <=, > or >= operator on a column with
+   * min/max stats, returns the slotref, otherwise null. The slotref may be wrapped in
+   * an implicit cast.
+   */
+  public SlotRef getRangeSlotRef() {
+    if (op_ != Operator.LT && op_ != Operator.LE && op_ != Operator.GT &&
+        op_ != Operator.GE) {
+      return null;
+    }
+    SlotRef slotRef = getChild(0).unwrapSlotRef(false);
+    if (slotRef == null) slotRef = getChild(1).unwrapSlotRef(false);
+    if (slotRef == null || getRangeLiteral() == null) return null;
+    if (slotRef.getDesc() == null || !slotRef.getDesc().getStats().hasMinMax()) {
+      return null;
+    }
+    return slotRef;
+  }
+
+  /**
+   * Returns the numeric literal operand of a range predicate, or null if there is none.
+   */
+  private Expr getRangeLiteral() {
+    for (Expr child: children_) {
+      if (child instanceof IntLiteral || child instanceof FloatLiteral) return child;
+    }
+    return null;
+  }
+
+  private static double getNumericValue(Expr literal) {
+    if (literal instanceof IntLiteral) return ((IntLiteral) literal).getValue();
+    return ((FloatLiteral) literal).getValue();
+  }
+
+  /**
+   * Estimates the selectivity of the conjunction of the given range predicates, which
+   * must all have the same slotref (see getRangeSlotRef()), from the column's min/max
+   * and histogram stats. Range predicates on the same column are estimated together
+   * because their selectivities are not independent, e.g., for the two halves of a
+   * BETWEEN predicate.
+   */
+  public static double estimateRangeSelectivity(List<BinaryPredicate> preds) {
+    Preconditions.checkState(!preds.isEmpty());
+    SlotDescriptor slotDesc = preds.get(0).getRangeSlotRef().getDesc();
+    double lower = Double.NEGATIVE_INFINITY;
+    double upper = Double.POSITIVE_INFINITY;
+    boolean lowerInclusive = false;
+    boolean upperInclusive = false;
+    for (BinaryPredicate pred: preds) {
+      Preconditions.checkState(pred.getRangeSlotRef().getDesc() == slotDesc);
+      double value = getNumericValue(pred.getRangeLiteral());
+      // Normalize the predicate to "<slotref> <op> <literal>".
+      Operator op = pred.op_;
+      if (pred.getChild(0).unwrapSlotRef(false) == null) {
+        if (op == Operator.LT) {
+          op = Operator.GT;
+        } else if (op == Operator.LE) {
+          op = Operator.GE;
+        } else if (op == Operator.GT) {
+          op = Operator.LT;
+        } else {
+          op = Operator.LE;
+        }
+      }
+      boolean isInclusive = op == Operator.LE || op == Operator.GE;
+      if (op == Operator.GT || op == Operator.GE) {
+        if (value > lower || value == lower && !isInclusive) {
+          lower = value;
+          lowerInclusive = isInclusive;
+        }
+      } else {
+        if (value < upper || value == upper && !isInclusive) {
+          upper = value;
+          upperInclusive = isInclusive;
+        }
+      }
+    }
+    ColumnStats stats = slotDesc.getStats();
+    double selectivity =
+        stats.estimateRangeSelectivity(lower, lowerInclusive, upper, upperInclusive);
+    // The range stats only cover the non-null values, which never satisfy the
+    // predicates.
+    Table table = slotDesc.getParent().getTable();
+    if (table != null && table.getNumRows() > 0 && stats.getNumNulls() > 0) {
+      selectivity *= Math.max(0.0,
+          1.0 - (double) stats.getNumNulls() / (double) table.getNumRows());
+    }
+    return selectivity;
+  }
+
   /**
    * If predicate is of the form "<slotref> <op> <expr>", returns expr,
    * otherwise returns null. Slotref may be wrapped in a CastExpr.
@@ -22,7 +22,7 @@ import com.cloudera.impala.thrift.TExprNodeType;
 import com.google.common.base.Objects;
 
 public class BoolLiteral extends LiteralExpr {
-  private final boolean value_;
+  private boolean value_;
 
   public BoolLiteral(boolean value) {
     this.value_ = value;
@@ -57,6 +57,11 @@ public class BoolLiteral extends LiteralExpr {
 
   public boolean getValue() { return value_; }
 
+  @Override
+  protected void setValue(LiteralExpr value) {
+    value_ = ((BoolLiteral) value).value_;
+  }
+
   @Override
   public String toSqlImpl() {
     return getStringValue();
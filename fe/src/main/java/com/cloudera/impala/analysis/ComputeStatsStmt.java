@@ -16,6 +16,7 @@ package com.cloudera.impala.analysis;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.hive.metastore.api.FieldSchema;
 import org.apache.log4j.Logger;
@@ -23,24 +24,44 @@ import org.apache.log4j.Logger;
 import com.cloudera.impala.authorization.Privilege;
 import com.cloudera.impala.catalog.AuthorizationException;
 import com.cloudera.impala.catalog.Column;
+import com.cloudera.impala.catalog.ColumnType;
 import com.cloudera.impala.catalog.HBaseTable;
+import com.cloudera.impala.catalog.HdfsPartition;
 import com.cloudera.impala.catalog.HdfsTable;
+import com.cloudera.impala.catalog.PartitionStatsUtil;
 import com.cloudera.impala.catalog.Table;
 import com.cloudera.impala.catalog.View;
 import com.cloudera.impala.common.AnalysisException;
+import com.cloudera.impala.thrift.ImpalaInternalServiceConstants;
 import com.cloudera.impala.thrift.TComputeStatsParams;
 import com.cloudera.impala.thrift.TTableName;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
- * Represents an COMPUTE STATS <table> statement for statistics collection. The
- * statement gathers all table and column stats for a given table and stores them in
- * the Metastore via the CatalogService. All existing stats for that table are replaced
- * and no existing stats are reused.
+ * Represents a COMPUTE [INCREMENTAL] STATS <table> statement for statistics collection.
+ * The statement gathers all table and column stats for a given table and stores them
+ * in the Metastore via the CatalogService.
  *
- * TODO: Allow more coarse/fine grained (db, column) and/or incremental stats collection.
+ * COMPUTE STATS replaces all existing stats of the table and does not reuse any
+ * existing stats.
+ *
+ * COMPUTE INCREMENTAL STATS only scans the partitions that have no incremental stats,
+ * or whose files changed since their incremental stats were computed. For each scanned
+ * partition, it computes mergeable column stats (HyperLogLog registers instead of
+ * NDVs), which the CatalogService persists in the partition's parameters and merges
+ * with the persisted stats of the other partitions into the table-level stats.
+ * On unpartitioned tables COMPUTE INCREMENTAL STATS is the same as COMPUTE STATS.
+ *
+ * COMPUTE STATS <table> TABLESAMPLE SYSTEM(<percent>) only scans a sample of the file
+ * blocks of each partition of an HDFS table (see HdfsPartition.sampleFileBlocks()).
+ * The fraction of the bytes of each partition that is sampled is passed to the
+ * CatalogService, which scales the row counts and NDVs computed from the sample to
+ * estimates for the whole partitions and table.
+ *
+ * TODO: Allow more coarse/fine grained (db, column) stats collection.
  */
 public class ComputeStatsStmt extends StatementBase {
   private static final Logger LOG = Logger.getLogger(ComputeStatsStmt.class);
@@ -50,11 +71,30 @@ public class ComputeStatsStmt extends StatementBase {
   private static String AVRO_SCHEMA_MSG_SUFFIX = "Please re-create the table with " +
           "column definitions, e.g., using the result of 'SHOW CREATE TABLE'";
 
+  // Number of columns of the column stats query per column of the table, see
+  // analyze(). Must match NUM_STATS_PER_COLUMN in be/src/exec/catalog-op-executor.cc.
+  private static final int NUM_STATS_PER_COLUMN = 7;
+
   protected final TableName tableName_;
 
+  // True for COMPUTE INCREMENTAL STATS. Reset during analysis if the table is not
+  // partitioned.
+  protected boolean isIncremental_;
+
+  // TABLESAMPLE clause of COMPUTE STATS, or null if all data is scanned.
+  protected final TableSampleClause sampleClause_;
+
   // Set during analysis.
   protected Table table_;
 
+  // For a sampled COMPUTE STATS, maps the partition-key values of each partition to
+  // the fraction of its bytes in the sample. Set during analysis.
+  protected Map<List<String>, Double> partitionSampleFractions_;
+
+  // For COMPUTE INCREMENTAL STATS, maps the partition-key values of the partitions to
+  // scan to the fingerprints of their files. Set during analysis.
+  protected Map<List<String>, String> partitionFingerprints_;
+
   // Query for getting the per-partition row count and the total row count.
   // Set during analysis.
   protected String tableStatsQueryStr_;
@@ -63,9 +103,17 @@ public class ComputeStatsStmt extends StatementBase {
   // Set during analysis.
   protected String columnStatsQueryStr_;
 
-  protected ComputeStatsStmt(TableName tableName) {
+  protected ComputeStatsStmt(TableName tableName, boolean isIncremental) {
+    this(tableName, isIncremental, null);
+  }
+
+  protected ComputeStatsStmt(TableName tableName, boolean isIncremental,
+      TableSampleClause sampleClause) {
     Preconditions.checkState(tableName != null && !tableName.isEmpty());
+    Preconditions.checkState(!isIncremental || sampleClause == null);
     this.tableName_ = tableName;
+    this.isIncremental_ = isIncremental;
+    this.sampleClause_ = sampleClause;
     this.table_ = null;
   }
 
@@ -77,6 +125,27 @@ public class ComputeStatsStmt extends StatementBase {
       throw new AnalysisException(String.format(
           "COMPUTE STATS not allowed on a view: %s", table_.getFullName()));
     }
+    if (isIncremental_ && !(table_ instanceof HdfsTable)) {
+      throw new AnalysisException(String.format(
+          "COMPUTE INCREMENTAL STATS is only supported on HDFS tables: %s",
+          table_.getFullName()));
+    }
+    if (table_.getNumClusteringCols() == 0) isIncremental_ = false;
+    if (sampleClause_ != null) {
+      if (!(table_ instanceof HdfsTable)) {
+        throw new AnalysisException(String.format(
+            "TABLESAMPLE is only supported on HDFS tables: %s", table_.getFullName()));
+      }
+      sampleClause_.analyze(analyzer);
+      computePartitionSampleFractions();
+    }
+    // The FROM clause of the child queries.
+    String fromSql = " FROM " + table_.getFullName();
+    if (sampleClause_ != null) fromSql += " " + sampleClause_.toSql();
+
+    // For COMPUTE INCREMENTAL STATS, a predicate that selects the partitions to scan.
+    String partitionFilter = null;
+    if (isIncremental_) partitionFilter = buildIncrementalPartitionFilter();
 
     // Query for getting the per-partition row count and the total row count.
     StringBuilder tableStatsQueryBuilder = new StringBuilder("SELECT ");
@@ -96,7 +165,10 @@ public class ComputeStatsStmt extends StatementBase {
       }
     }
     tableStatsQueryBuilder.append(Joiner.on(", ").join(tableStatsSelectList));
-    tableStatsQueryBuilder.append(" FROM " + table_.getFullName());
+    tableStatsQueryBuilder.append(fromSql);
+    if (partitionFilter != null) {
+      tableStatsQueryBuilder.append(" WHERE " + partitionFilter);
+    }
     if (!groupByCols.isEmpty()) {
       tableStatsQueryBuilder.append(" GROUP BY ");
       tableStatsQueryBuilder.append(Joiner.on(", ").join(groupByCols));
@@ -119,7 +191,10 @@ public class ComputeStatsStmt extends StatementBase {
       // NDV approximation function. Add explicit alias for later identification when
       // updating the Metastore.
       String colRefSql = ToSqlUtils.getIdentSql(c.getName());
-      columnStatsSelectList.add("NDV(" + colRefSql + ") AS " + colRefSql);
+      // COMPUTE INCREMENTAL STATS returns the HyperLogLog registers instead of the
+      // NDVs, so that they can be merged with those of other partitions.
+      String ndvFn = isIncremental_ ? "NDV_NO_FINALIZE" : "NDV";
+      columnStatsSelectList.add(ndvFn + "(" + colRefSql + ") AS " + colRefSql);
       // Count the number of NULL values.
       columnStatsSelectList.add("COUNT(IF(" + colRefSql + " IS NULL, 1, NULL))");
       // For STRING columns also compute the max and avg string length.
@@ -132,13 +207,128 @@ public class ComputeStatsStmt extends StatementBase {
         columnStatsSelectList.add("CAST(-1 as INT)");
         columnStatsSelectList.add("CAST(-1 as DOUBLE)");
       }
+      // For numeric columns compute the min and max value and, except for incremental
+      // stats, an equi-depth histogram. The planner uses them to estimate the
+      // selectivity of range predicates.
+      if (hasRangeStats(c.getType())) {
+        columnStatsSelectList.add("CAST(MIN(" + colRefSql + ") AS DOUBLE)");
+        columnStatsSelectList.add("CAST(MAX(" + colRefSql + ") AS DOUBLE)");
+      } else {
+        columnStatsSelectList.add("CAST(NULL AS DOUBLE)");
+        columnStatsSelectList.add("CAST(NULL AS DOUBLE)");
+      }
+      if (hasRangeStats(c.getType()) && !isIncremental_) {
+        columnStatsSelectList.add(
+            "EQUIDEPTH_HISTOGRAM(CAST(" + colRefSql + " AS DOUBLE))");
+      } else {
+        columnStatsSelectList.add("CAST(NULL AS STRING)");
+      }
+    }
+    Preconditions.checkState(columnStatsSelectList.size() % NUM_STATS_PER_COLUMN == 0);
+    // For COMPUTE INCREMENTAL STATS, compute the column stats per partition. The
+    // partition-key values follow the column stats in the select list.
+    if (isIncremental_) {
+      for (String groupByCol: groupByCols) {
+        columnStatsSelectList.add("CAST(" + groupByCol + " AS STRING)");
+      }
     }
     columnStatsQueryBuilder.append(Joiner.on(", ").join(columnStatsSelectList));
-    columnStatsQueryBuilder.append(" FROM " + table_.getFullName());
+    columnStatsQueryBuilder.append(fromSql);
+    if (isIncremental_) {
+      columnStatsQueryBuilder.append(" WHERE " + partitionFilter);
+      columnStatsQueryBuilder.append(" GROUP BY ");
+      columnStatsQueryBuilder.append(Joiner.on(", ").join(groupByCols));
+    }
     columnStatsQueryStr_ = columnStatsQueryBuilder.toString();
     LOG.debug(columnStatsQueryStr_);
   }
 
+  /**
+   * Returns true if the min/max value and histogram are computed for columns of the
+   * given type. Only integer and floating-point types have min/max column stats in
+   * the metastore.
+   */
+  private static boolean hasRangeStats(ColumnType type) {
+    return type.isIntegerType() || type.isFloatingPointType();
+  }
+
+  /**
+   * Collects the partitions that COMPUTE INCREMENTAL STATS needs to scan, i.e., those
+   * without current incremental stats, into partitionFingerprints_. Returns a predicate
+   * that selects these partitions.
+   */
+  private String buildIncrementalPartitionFilter() {
+    HdfsTable hdfsTable = (HdfsTable) table_;
+    partitionFingerprints_ = Maps.newHashMap();
+    List<String> partitionPredicates = Lists.newArrayList();
+    int numPartitions = 0;
+    for (HdfsPartition partition: hdfsTable.getPartitions()) {
+      if (partition.getId() == ImpalaInternalServiceConstants.DEFAULT_PARTITION_ID) {
+        continue;
+      }
+      ++numPartitions;
+      if (partition.hasCurrentIncrementalStats()) continue;
+      List<String> keyValues = Lists.newArrayList();
+      List<String> conjuncts = Lists.newArrayList();
+      for (int i = 0; i < partition.getPartitionValues().size(); ++i) {
+        LiteralExpr keyValue = partition.getPartitionValues().get(i);
+        keyValues.add(PartitionKeyValue.getPartitionKeyValueString(keyValue,
+            hdfsTable.getNullPartitionKeyValue()));
+        String colRefSql = ToSqlUtils.getIdentSql(table_.getColumns().get(i).getName());
+        conjuncts.add(colRefSql + getPartitionKeyPredicateSql(keyValue));
+      }
+      partitionFingerprints_.put(keyValues,
+          PartitionStatsUtil.computeFileFingerprint(partition.getFileDescriptors()));
+      partitionPredicates.add("(" + Joiner.on(" AND ").join(conjuncts) + ")");
+    }
+    LOG.debug(String.format("COMPUTE INCREMENTAL STATS %s: scanning %d of %d " +
+        "partitions", table_.getFullName(), partitionPredicates.size(), numPartitions));
+    if (partitionPredicates.isEmpty()) return "FALSE";
+    if (partitionPredicates.size() == numPartitions) return "TRUE";
+    return Joiner.on(" OR ").join(partitionPredicates);
+  }
+
+  /**
+   * Populates partitionSampleFractions_ with the fraction of the bytes of each
+   * partition that the sampled scans of the child queries read.
+   */
+  private void computePartitionSampleFractions() {
+    HdfsTable hdfsTable = (HdfsTable) table_;
+    partitionSampleFractions_ = Maps.newHashMap();
+    for (HdfsPartition partition: hdfsTable.getPartitions()) {
+      if (partition.getId() == ImpalaInternalServiceConstants.DEFAULT_PARTITION_ID) {
+        continue;
+      }
+      List<String> keyValues = Lists.newArrayList();
+      for (LiteralExpr keyValue: partition.getPartitionValues()) {
+        keyValues.add(PartitionKeyValue.getPartitionKeyValueString(keyValue,
+            hdfsTable.getNullPartitionKeyValue()));
+      }
+      double fraction = 1.0;
+      if (partition.getSize() > 0) {
+        fraction = (double) HdfsPartition.getSampledBytes(partition.sampleFileBlocks(
+            sampleClause_.getPercentBytes())) / partition.getSize();
+      }
+      partitionSampleFractions_.put(keyValues, fraction);
+    }
+  }
+
+  /**
+   * Returns the SQL of a predicate on a partition-key column that is true for the given
+   * partition-key value, without the column reference.
+   */
+  private static String getPartitionKeyPredicateSql(LiteralExpr keyValue) {
+    // Empty strings are stored as NULL partition-key values, see PartitionKeyValue.
+    if (keyValue instanceof NullLiteral || keyValue.getStringValue().isEmpty()) {
+      return " IS NULL";
+    }
+    if (keyValue instanceof StringLiteral) {
+      return " = '" + keyValue.getStringValue().replace("\\", "\\\\")
+          .replace("'", "\\'") + "'";
+    }
+    return " = " + keyValue.toSql();
+  }
+
   /**
    * Checks whether the column definitions from the CREATE TABLE stmt match the columns
    * in the Avro schema. If there is a mismatch, then COMPUTE STATS cannot update the
@@ -209,14 +399,30 @@ public class ComputeStatsStmt extends StatementBase {
   public String getTblStatsQuery() { return tableStatsQueryStr_; }
   public String getColStatsQuery() { return columnStatsQueryStr_; }
 
+  public boolean isIncremental() { return isIncremental_; }
+  public TableSampleClause getSampleClause() { return sampleClause_; }
+
   @Override
-  public String toSql() { return "COMPUTE STATS " + tableName_.toString(); }
+  public String toSql() {
+    String sql = "COMPUTE " + (isIncremental_ ? "INCREMENTAL " : "") + "STATS " +
+        tableName_.toString();
+    if (sampleClause_ != null) sql += " " + sampleClause_.toSql();
+    return sql;
+  }
 
   public TComputeStatsParams toThrift() {
     TComputeStatsParams params = new TComputeStatsParams();
     params.setTable_name(new TTableName(table_.getDb().getName(), table_.getName()));
     params.setTbl_stats_query(tableStatsQueryStr_);
     params.setCol_stats_query(columnStatsQueryStr_);
+    if (isIncremental_) {
+      params.setIs_incremental(true);
+      params.setPartition_fingerprints(partitionFingerprints_);
+    }
+    if (sampleClause_ != null) {
+      params.setSample_percent((int) sampleClause_.getPercentBytes());
+      params.setPartition_sample_fractions(partitionSampleFractions_);
+    }
     return params;
   }
 }
@@ -0,0 +1,33 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.analysis;
+
+/**
+ * Representation of a DEALLOCATE [PREPARE] name statement.
+ */
+public class DeallocateStmt extends StatementBase {
+  private final String name_;
+
+  public DeallocateStmt(String name) {
+    name_ = name.toLowerCase();
+  }
+
+  public String getName() { return name_; }
+
+  @Override
+  public String toSql() {
+    return "DEALLOCATE PREPARE " + name_;
+  }
+}
@@ -0,0 +1,88 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.analysis;
+
+import java.util.List;
+
+import com.cloudera.impala.catalog.AuthorizationException;
+import com.cloudera.impala.common.AnalysisException;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Representation of an EXECUTE name [USING expr, ...] statement. The parameters must
+ * be constant exprs; analysis evaluates them to the values that are bound to the
+ * placeholders of the prepared statement in the order of their appearance. The
+ * executed query is analyzed separately (see AnalysisContext.analyzeExecutedQuery()),
+ * and only if the plan of a previous execution cannot be re-bound to the values.
+ */
+public class ExecuteStmt extends StatementBase {
+  private final String name_;
+  private final List<Expr> params_;
+
+  // The executed prepared statement. Set by AnalysisContext before analysis.
+  private PrepareStmt prepareStmt_;
+
+  // Values of params_. Set in analyze().
+  private List<LiteralExpr> paramValues_;
+
+  public ExecuteStmt(String name, List<Expr> params) {
+    name_ = name.toLowerCase();
+    params_ = params;
+  }
+
+  public String getName() { return name_; }
+  public PrepareStmt getPrepareStmt() { return prepareStmt_; }
+  void setPrepareStmt(PrepareStmt prepareStmt) { prepareStmt_ = prepareStmt; }
+  public List<LiteralExpr> getParamValues() { return paramValues_; }
+
+  /**
+   * Evaluates the parameters.
+   */
+  @Override
+  public void analyze(Analyzer analyzer) throws AnalysisException,
+      AuthorizationException {
+    super.analyze(analyzer);
+    Preconditions.checkNotNull(prepareStmt_);
+    if (params_.size() != prepareStmt_.getNumParams()) {
+      throw new AnalysisException(String.format("Prepared statement '%s' expects " +
+          "%s parameters but %s were given.", name_, prepareStmt_.getNumParams(),
+          params_.size()));
+    }
+    List<LiteralExpr> values = Lists.newArrayList();
+    for (Expr param: params_) {
+      param.analyze(analyzer);
+      if (!param.isConstant()) {
+        throw new AnalysisException(
+            "Parameters of EXECUTE must be constant expressions: " + param.toSql());
+      }
+      values.add(LiteralExpr.create(param, analyzer.getQueryContext()));
+    }
+    paramValues_ = values;
+  }
+
+  @Override
+  public String toSql() {
+    StringBuilder strBuilder = new StringBuilder("EXECUTE " + name_);
+    if (!params_.isEmpty()) {
+      strBuilder.append(" USING ");
+      List<String> params = Lists.newArrayList();
+      for (Expr param: params_) params.add(param.toSql());
+      strBuilder.append(Joiner.on(", ").join(params));
+    }
+    return strBuilder.toString();
+  }
+}
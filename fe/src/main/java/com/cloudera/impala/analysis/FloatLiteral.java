@@ -93,6 +93,11 @@ public class FloatLiteral extends LiteralExpr {
     return value_;
   }
 
+  @Override
+  protected void setValue(LiteralExpr value) {
+    value_ = ((FloatLiteral) value).value_;
+  }
+
   @Override
   protected Expr uncheckedCastTo(ColumnType targetType) throws AnalysisException {
     Preconditions.checkState(targetType.isFloatingPointType() || targetType.isDecimal());
@@ -202,6 +202,7 @@ public class FunctionCallExpr extends Expr {
       argTypes = new ColumnType[0];
       Function searchDesc = new Function(fnName_, argTypes, ColumnType.INVALID, false);
       fn_ = db.getFunction(searchDesc, Function.CompareMode.IS_SUPERTYPE_OF);
+      analyzer.registerFnResolution(searchDesc, fn_);
       type_ = fn_.getReturnType();
       return;
     }
@@ -223,6 +224,7 @@ public class FunctionCallExpr extends Expr {
     if (fn_ == null || !fn_.userVisible()) {
       throw new AnalysisException(getFunctionNotFoundError(argTypes));
     }
+    analyzer.registerFnResolution(searchDesc, fn_);
 
     if (isAggregateFunction()) {
       // subexprs must not contain aggregates
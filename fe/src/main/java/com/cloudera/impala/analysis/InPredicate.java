@@ -38,6 +38,8 @@ public class InPredicate extends Predicate {
     this.isNotIn_ = isNotIn;
   }
 
+  public boolean isNotIn() { return isNotIn_; }
+
   @Override
   public void analyze(Analyzer analyzer) throws AnalysisException,
       AuthorizationException {
@@ -220,6 +220,7 @@ public class InlineViewRef extends TableRef {
     // then do not try to execute it.
     // TODO: return true in this case?
     if (expr.contains(Predicates.instanceOf(TupleIsNullPredicate.class))) return true;
+    PlaceholderBinding.fixBoundValues(expr);
 
     // Replace all SlotRefs in expr with NullLiterals, and wrap the result
     // with an IS NOT NULL predicate.
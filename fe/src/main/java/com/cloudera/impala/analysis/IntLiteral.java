@@ -77,6 +77,11 @@ public class IntLiteral extends LiteralExpr {
 
   public long getValue() { return value_.longValue(); }
 
+  @Override
+  protected void setValue(LiteralExpr value) {
+    value_ = ((IntLiteral) value).value_;
+  }
+
   @Override
   public String debugString() {
     return Objects.toStringHelper(this)
@@ -115,7 +120,9 @@ public class IntLiteral extends LiteralExpr {
       this.type_ = targetType;
       return this;
     } else if (targetType.isFloatingPointType()) {
-      return new FloatLiteral(new Double(value_.longValue()), targetType);
+      FloatLiteral result = new FloatLiteral(new Double(value_.longValue()), targetType);
+      result.setBinding(getBinding());
+      return result;
     } else if (targetType.isDecimal()) {
       return new CastExpr(targetType, this, true);
     }
@@ -37,6 +37,8 @@ public class IsNullPredicate extends Predicate {
     children_.add(e);
   }
 
+  public boolean isNotNull() { return isNotNull_; }
+
   @Override
   public boolean equals(Object obj) {
     if (!super.equals(obj)) return false;
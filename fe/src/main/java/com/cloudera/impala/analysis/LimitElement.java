@@ -43,6 +43,12 @@ class LimitElement {
     Preconditions.checkArgument(offsetExpr == null || limitExpr != null);
     this.limitExpr_ = limitExpr;
     this.offsetExpr_ = offsetExpr;
+    if (limitExpr instanceof PlaceholderExpr) {
+      ((PlaceholderExpr) limitExpr).setIsLimitParam();
+    }
+    if (offsetExpr instanceof PlaceholderExpr) {
+      ((PlaceholderExpr) offsetExpr).setIsLimitParam();
+    }
     isAnalyzed_ = false;
     limit_ = -1;
     offset_ = 0;
@@ -132,6 +138,8 @@ class LimitElement {
    */
   private static long evalIntegerExpr(Analyzer analyzer, Expr expr, String name)
       throws AnalysisException {
+    // The plan depends on the value, which may not change when re-binding.
+    PlaceholderBinding.fixBoundValues(expr);
     TColumnValue val = null;
     try {
       val = FeSupport.EvalConstExpr(expr, analyzer.getQueryContext());
@@ -31,12 +31,71 @@ import com.google.common.base.Preconditions;
  * ordering of HdfsPartitions whose partition-key values are represented as literals.
  */
 public abstract class LiteralExpr extends Expr implements Comparable<LiteralExpr> {
+  // Set if this literal is bound to a parameter placeholder of a prepared statement.
+  private PlaceholderBinding binding_;
 
   public LiteralExpr() {
     numDistinctValues_ = 1;
     isAnalyzed_ = true;
   }
 
+  public PlaceholderBinding getBinding() { return binding_; }
+
+  /**
+   * Binds this literal to the given placeholder binding, if not null.
+   */
+  void setBinding(PlaceholderBinding binding) {
+    binding_ = binding;
+    if (binding_ != null) binding_.addLiteral(this);
+  }
+
+  /**
+   * Copies of bound literals are bound to the same placeholder binding.
+   */
+  @Override
+  public Expr clone() {
+    LiteralExpr result = (LiteralExpr) super.clone();
+    if (binding_ != null) binding_.addLiteral(result);
+    return result;
+  }
+
+  /**
+   * Literals bound to different placeholders are never equal, regardless of their
+   * current values.
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (!super.equals(obj)) return false;
+    return ((LiteralExpr) obj).binding_ == binding_;
+  }
+
+  /**
+   * Sets the value of this literal to that of 'value', a literal of the same class and
+   * type. Only used to re-bind a literal bound to a placeholder.
+   */
+  protected void setValue(LiteralExpr value) {
+    throw new IllegalStateException("Cannot set the value of " + debugString());
+  }
+
+  /**
+   * Returns 'value' converted to the class and type of this literal, or null if that
+   * requires more than an implicit cast of 'value'.
+   */
+  LiteralExpr convertToMatch(LiteralExpr value) {
+    if (value.getClass() == getClass() && value.getType().equals(type_)) return value;
+    ColumnType compatibleType =
+        ColumnType.getAssignmentCompatibleType(value.getType(), type_);
+    if (!compatibleType.isValid() || !compatibleType.equals(type_)) return null;
+    Expr result;
+    try {
+      result = value.clone(null).castTo(type_);
+    } catch (AnalysisException e) {
+      return null;
+    }
+    if (result.getClass() != getClass() || !result.getType().equals(type_)) return null;
+    return (LiteralExpr) result;
+  }
+
   public static LiteralExpr create(String value, ColumnType type)
       throws AnalysisException, AuthorizationException {
     Preconditions.checkArgument(type.isValid());
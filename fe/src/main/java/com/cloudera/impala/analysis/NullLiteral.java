@@ -35,6 +35,11 @@ public class NullLiteral extends LiteralExpr {
     return obj instanceof NullLiteral;
   }
 
+  @Override
+  protected void setValue(LiteralExpr value) {
+    Preconditions.checkArgument(value instanceof NullLiteral);
+  }
+
   @Override
   public String toSqlImpl() {
     return getStringValue();
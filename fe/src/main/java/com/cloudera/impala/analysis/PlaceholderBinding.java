@@ -0,0 +1,119 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.analysis;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.cloudera.impala.catalog.ColumnType;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+
+/**
+ * Binding of a parameter placeholder of a prepared statement to a literal value (see
+ * PrepareStmt.bind()). Analysis and planning copy the bound literal and may convert it
+ * to other types; all of these copies refer to the binding. This allows an analyzed
+ * and planned statement to be re-bound to the parameter values of another execution
+ * by setting the values of the copies in place (see rebind()).
+ *
+ * A statement can only be re-bound to values that do not change its analysis: the
+ * type of a new value must be assignment compatible with the type of the bound value,
+ * and every copy must be able to take the new value without changing its class or
+ * type. Values that analysis depends on in other ways, e.g. the value of a LIMIT or
+ * of an ordinal in an ORDER BY clause, are fixed; a statement can only be re-bound to
+ * the same value of those (see fixBoundValues()).
+ */
+public class PlaceholderBinding {
+  // Bound value. Not a copy, i.e., its binding is not set.
+  private LiteralExpr value_;
+
+  // Copies of the bound literal, compared by identity. Weakly referenced, since
+  // analysis and planning also create copies that are discarded right away.
+  private final Set<LiteralExpr> literals_ = Collections.newSetFromMap(
+      new MapMaker().weakKeys().<LiteralExpr, Boolean>makeMap());
+
+  // True if analysis depends on value_ other than through the types of the copies.
+  private volatile boolean isValueFixed_ = false;
+
+  public PlaceholderBinding(LiteralExpr value) {
+    Preconditions.checkNotNull(value);
+    Preconditions.checkArgument(value.getBinding() == null);
+    value_ = value;
+  }
+
+  public LiteralExpr getValue() { return value_; }
+  public boolean isValueFixed() { return isValueFixed_; }
+
+  /**
+   * Returns a new copy of the bound literal.
+   */
+  LiteralExpr createLiteral() {
+    LiteralExpr result = (LiteralExpr) value_.clone(null);
+    result.setBinding(this);
+    return result;
+  }
+
+  /**
+   * Registers 'literal' as a copy of the bound literal.
+   */
+  void addLiteral(LiteralExpr literal) { literals_.add(literal); }
+
+  /**
+   * Marks the bindings of all bound literals in 'expr' as fixed. Must be called by
+   * analysis steps that evaluate 'expr' and depend on the result.
+   */
+  static void fixBoundValues(Expr expr) {
+    List<LiteralExpr> literals = Lists.newArrayList();
+    expr.collect(Predicates.instanceOf(LiteralExpr.class), literals);
+    for (LiteralExpr literal: literals) {
+      if (literal.getBinding() != null) literal.getBinding().isValueFixed_ = true;
+    }
+  }
+
+  /**
+   * Returns true if the statement can be re-bound to 'value', an analyzed literal
+   * without a binding.
+   */
+  public boolean canRebind(LiteralExpr value) {
+    Preconditions.checkArgument(value.getBinding() == null);
+    if (value.getClass() != value_.getClass()) return false;
+    if (isValueFixed_) {
+      return value.equals(value_) && value.getType().equals(value_.getType());
+    }
+    if (!value_.getType().equals(ColumnType.getAssignmentCompatibleType(
+        value.getType(), value_.getType()))) {
+      return false;
+    }
+    for (LiteralExpr literal: literals_) {
+      if (literal.convertToMatch(value) == null) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Sets the values of all copies of the bound literal to 'value'. Requires
+   * canRebind(value).
+   */
+  public void rebind(LiteralExpr value) {
+    Preconditions.checkState(canRebind(value));
+    for (LiteralExpr literal: literals_) {
+      literal.setValue(literal.convertToMatch(value));
+    }
+    value_ = value;
+  }
+}
@@ -0,0 +1,90 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.analysis;
+
+import java.math.BigInteger;
+
+import com.cloudera.impala.catalog.AuthorizationException;
+import com.cloudera.impala.common.AnalysisException;
+import com.cloudera.impala.thrift.TExprNode;
+import com.google.common.base.Objects;
+
+/**
+ * Parameter placeholder ('?') of a prepared statement. Placeholders never get
+ * analyzed; they are replaced with literals bound to a value whenever the prepared
+ * statement is cloned for analysis (see PrepareStmt.bind()): to the values of its
+ * parameters by EXECUTE, and to getPrepareValue() by PREPARE.
+ */
+public class PlaceholderExpr extends Expr {
+  // Position of the placeholder in the statement, starting at 0.
+  private final int index_;
+
+  // Binding of the literal to replace this placeholder with when cloning. Only set
+  // while binding.
+  private PlaceholderBinding binding_;
+
+  // True if this placeholder is the expr of a LIMIT or OFFSET clause.
+  private boolean isLimitParam_;
+
+  public PlaceholderExpr(int index) {
+    super();
+    index_ = index;
+  }
+
+  public int getIndex() { return index_; }
+  void setBinding(PlaceholderBinding binding) { binding_ = binding; }
+  void setIsLimitParam() { isLimitParam_ = true; }
+
+  /**
+   * Returns the value to bind this placeholder to when the prepared statement is
+   * analyzed by PREPARE, before the actual parameter values are known. NULL fits any
+   * type, except for LIMIT and OFFSET, which must be integers.
+   */
+  LiteralExpr getPrepareValue() {
+    return isLimitParam_ ? new IntLiteral(BigInteger.ZERO) : new NullLiteral();
+  }
+
+  @Override
+  public Expr clone(SubstitutionMap smap) {
+    if (binding_ != null) return binding_.createLiteral();
+    return super.clone(smap);
+  }
+
+  @Override
+  public void analyze(Analyzer analyzer) throws AnalysisException,
+      AuthorizationException {
+    throw new AnalysisException(
+        "Parameter placeholders ('?') are only allowed in PREPARE statements.");
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!super.equals(obj)) return false;
+    return ((PlaceholderExpr) obj).index_ == index_;
+  }
+
+  @Override
+  protected String toSqlImpl() { return "?"; }
+
+  @Override
+  public String debugString() {
+    return Objects.toStringHelper(this).add("index", index_).toString();
+  }
+
+  @Override
+  protected void toThrift(TExprNode msg) {
+    throw new IllegalStateException("Unbound parameter placeholder: " + index_);
+  }
+}
@@ -0,0 +1,84 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.analysis;
+
+import java.util.List;
+
+import com.cloudera.impala.catalog.AuthorizationException;
+import com.cloudera.impala.common.AnalysisException;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Representation of a PREPARE name AS query statement. The query may contain
+ * parameter placeholders ('?') in place of literals.
+ *
+ * The query is parsed once, when the statement is prepared, and bound to parameter
+ * values by cloning it. PREPARE analyzes a copy of the query bound to placeholder
+ * values, so that errors in the query are reported when it is prepared. The types of
+ * the parameters are only known once it is executed: the frontend analyzes and plans
+ * the query bound to the parameter values of the first EXECUTE, and re-binds that
+ * plan to the values of later executions (see PlaceholderBinding).
+ */
+public class PrepareStmt extends StatementBase {
+  private final String name_;
+  private final QueryStmt queryStmt_;
+
+  // Placeholders of queryStmt_ in the order of their appearance.
+  private final List<PlaceholderExpr> placeholders_;
+
+  public PrepareStmt(String name, QueryStmt queryStmt,
+      List<PlaceholderExpr> placeholders) {
+    name_ = name.toLowerCase();
+    queryStmt_ = queryStmt;
+    placeholders_ = ImmutableList.copyOf(placeholders);
+  }
+
+  public String getName() { return name_; }
+  public int getNumParams() { return placeholders_.size(); }
+
+  @Override
+  public void analyze(Analyzer analyzer) throws AnalysisException,
+      AuthorizationException {
+    super.analyze(analyzer);
+    List<PlaceholderBinding> bindings = Lists.newArrayList();
+    for (PlaceholderExpr placeholder: placeholders_) {
+      bindings.add(new PlaceholderBinding(placeholder.getPrepareValue()));
+    }
+    bind(bindings).analyze(analyzer);
+  }
+
+  /**
+   * Returns a copy of the prepared query in which the i-th placeholder is replaced
+   * by a literal bound to the i-th element of 'bindings'.
+   */
+  public synchronized QueryStmt bind(List<PlaceholderBinding> bindings) {
+    Preconditions.checkArgument(bindings.size() == placeholders_.size());
+    try {
+      for (int i = 0; i < bindings.size(); ++i) {
+        placeholders_.get(i).setBinding(bindings.get(i));
+      }
+      return queryStmt_.clone();
+    } finally {
+      for (PlaceholderExpr placeholder: placeholders_) placeholder.setBinding(null);
+    }
+  }
+
+  @Override
+  public String toSql() {
+    return "PREPARE " + name_ + " AS " + queryStmt_.toSql();
+  }
+}
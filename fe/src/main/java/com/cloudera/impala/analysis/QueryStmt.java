@@ -198,7 +198,13 @@ public abstract class QueryStmt extends StatementBase {
   }
 
   public ArrayList<OrderByElement> cloneOrderByElements() {
-    return orderByElements_ != null ? Lists.newArrayList(orderByElements_) : null;
+    if (orderByElements_ == null) return null;
+    ArrayList<OrderByElement> result = Lists.newArrayList();
+    for (OrderByElement e: orderByElements_) {
+      result.add(new OrderByElement(e.getExpr().clone(null), e.getIsAsc(),
+          e.getNullsFirstParam()));
+    }
+    return result;
   }
 
   public WithClause cloneWithClause() {
@@ -255,6 +255,10 @@ public class SelectStmt extends QueryStmt {
       BaseTableRef tblRef = (BaseTableRef) tblRefs.get(i);
       ViewRef viewDefinition = analyzer.findViewDefinition(tblRef, true);
       if (viewDefinition == null) continue;
+      if (tblRef.getSampleClause() != null) {
+        throw new AnalysisException(String.format(
+            "TABLESAMPLE is only supported on HDFS tables: %s", tblRef.getName()));
+      }
       // Instantiate the view to replace the original BaseTableRef.
       ViewRef viewRef = viewDefinition.instantiate(tblRef);
       viewRef.getViewStmt().setIsExplain(isExplain_);
@@ -622,6 +626,7 @@ public class SelectStmt extends QueryStmt {
       if (!(expr instanceof IntLiteral)) {
         continue;
       }
+      PlaceholderBinding.fixBoundValues(expr);
       long pos = ((IntLiteral) expr).getValue();
       if (pos < 1) {
         throw new AnalysisException(
@@ -31,7 +31,7 @@ import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 
 public class StringLiteral extends LiteralExpr {
-  private final String value_;
+  private String value_;
 
   public StringLiteral(String value) {
     this.value_ = value;
@@ -57,6 +57,11 @@ public class StringLiteral extends LiteralExpr {
 
   public String getValue() { return value_; }
 
+  @Override
+  protected void setValue(LiteralExpr value) {
+    value_ = ((StringLiteral) value).value_;
+  }
+
   public String getUnescapedValue() {
     // Unescape string exactly like Hive does. Hive's method assumes
     // quotes so we add them here to reuse Hive's code.
@@ -82,7 +87,9 @@ public class StringLiteral extends LiteralExpr {
     if (targetType.equals(this.type_)) {
       return this;
     } else if (targetType.isNumericType()) {
-      return convertToNumber();
+      LiteralExpr result = convertToNumber();
+      result.setBinding(getBinding());
+      return result;
     } else if (targetType.isDateType()) {
       // Let the BE do the cast so it is in Boost format
       return new CastExpr(targetType, this, true);
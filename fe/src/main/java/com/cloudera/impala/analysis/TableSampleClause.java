@@ -0,0 +1,45 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.analysis;
+
+import com.cloudera.impala.common.AnalysisException;
+
+/**
+ * Represents a TABLESAMPLE SYSTEM(<percent> [PERCENT]) clause of a table reference.
+ * A sampled scan of an HDFS table only reads a deterministic pseudo-random subset of
+ * the file blocks of each partition that contains about <percent> percent of the
+ * partition's bytes, see HdfsPartition.sampleFileBlocks().
+ */
+public class TableSampleClause implements ParseNode {
+  private final long percentBytes_;
+
+  public TableSampleClause(long percentBytes) {
+    percentBytes_ = percentBytes;
+  }
+
+  public long getPercentBytes() { return percentBytes_; }
+
+  @Override
+  public void analyze(Analyzer analyzer) throws AnalysisException {
+    if (percentBytes_ < 1 || percentBytes_ > 100) {
+      throw new AnalysisException(String.format(
+          "Invalid percent of bytes value '%s'. The percent of bytes to sample must " +
+          "be between 1 and 100.", percentBytes_));
+    }
+  }
+
+  @Override
+  public String toSql() { return "TABLESAMPLE SYSTEM(" + percentBytes_ + ")"; }
+}
@@ -483,6 +483,7 @@ public class UnionStmt extends QueryStmt {
     while (i.hasNext()) {
       Expr expr = i.next();
       if (!(expr instanceof IntLiteral)) continue;
+      PlaceholderBinding.fixBoundValues(expr);
       long pos = ((IntLiteral) expr).getValue();
       if (pos < 1) {
         throw new AnalysisException(
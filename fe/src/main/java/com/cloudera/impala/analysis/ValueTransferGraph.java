@@ -0,0 +1,234 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.analysis;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Directed graph of value transfers between slots, identified by their SlotId ints.
+ * An edge from slot a to slot b means that b always has the same value as a, or the
+ * tuple containing b is NULL. Every slot transfers its value to itself.
+ *
+ * Edges are added with addEdge(), after which computeTransitiveClosure() must be called
+ * once before querying the graph. The closure collapses each strongly connected
+ * component of the graph into a single node and computes the set of reachable slots of
+ * each component in reverse topological order, OR-ing the BitSets of its successors.
+ * Components consisting of a single slot without outgoing edges, which is the case for
+ * most slots, have no BitSet at all. This keeps the closure close to linear in the
+ * number of slots and edges for the sparse graphs of real queries, compared to the
+ * cubic closure of a dense boolean matrix.
+ */
+public class ValueTransferGraph {
+  /**
+   * Transitive closure of a graph.
+   */
+  private static class Closure {
+    // Component id of each slot.
+    public final int[] componentIds;
+    // Reachable slots of each component, indexed by component id. Null if the
+    // component only reaches its single member slot.
+    public final List<BitSet> reachableSlots;
+
+    public Closure(int[] componentIds, List<BitSet> reachableSlots) {
+      this.componentIds = componentIds;
+      this.reachableSlots = reachableSlots;
+    }
+
+    public boolean isReachable(int srcSlot, int destSlot) {
+      if (srcSlot == destSlot) return true;
+      BitSet reachable = reachableSlots.get(componentIds[srcSlot]);
+      return reachable != null && reachable.get(destSlot);
+    }
+
+    /**
+     * Adds the slots reachable from the given slot to 'slots'.
+     */
+    public void addReachableSlots(int slot, BitSet slots) {
+      BitSet reachable = reachableSlots.get(componentIds[slot]);
+      if (reachable == null) {
+        slots.set(slot);
+      } else {
+        slots.or(reachable);
+      }
+    }
+  }
+
+  private final int numSlots_;
+  // Source and destination slots of the edges; the i-th edge goes from
+  // edgeSrcs_[i] to edgeDests_[i].
+  private int[] edgeSrcs_ = new int[16];
+  private int[] edgeDests_ = new int[16];
+  private int numEdges_ = 0;
+
+  // Set by computeTransitiveClosure().
+  private Closure closure_;
+  // Closure of the graph with reversed edges. Computed on demand by getConnectedSlots().
+  private Closure reverseClosure_;
+
+  public ValueTransferGraph(int numSlots) {
+    Preconditions.checkArgument(numSlots >= 0);
+    numSlots_ = numSlots;
+  }
+
+  public int getNumSlots() { return numSlots_; }
+
+  /**
+   * Adds a value transfer from srcSlot to destSlot.
+   */
+  public void addEdge(int srcSlot, int destSlot) {
+    Preconditions.checkState(closure_ == null);
+    Preconditions.checkElementIndex(srcSlot, numSlots_);
+    Preconditions.checkElementIndex(destSlot, numSlots_);
+    if (srcSlot == destSlot) return;
+    if (numEdges_ == edgeSrcs_.length) {
+      edgeSrcs_ = Arrays.copyOf(edgeSrcs_, 2 * numEdges_);
+      edgeDests_ = Arrays.copyOf(edgeDests_, 2 * numEdges_);
+    }
+    edgeSrcs_[numEdges_] = srcSlot;
+    edgeDests_[numEdges_] = destSlot;
+    ++numEdges_;
+  }
+
+  public void computeTransitiveClosure() {
+    Preconditions.checkState(closure_ == null);
+    closure_ = computeClosure(edgeSrcs_, edgeDests_);
+  }
+
+  /**
+   * Returns true if there is a value transfer from srcSlot to destSlot, i.e., if
+   * destSlot is reachable from srcSlot.
+   */
+  public boolean hasValueTransfer(int srcSlot, int destSlot) {
+    Preconditions.checkNotNull(closure_);
+    return closure_.isReachable(srcSlot, destSlot);
+  }
+
+  /**
+   * Returns the slots that have a value transfer to or from the given slot, including
+   * the slot itself.
+   */
+  public BitSet getConnectedSlots(int slot) {
+    Preconditions.checkNotNull(closure_);
+    if (reverseClosure_ == null) reverseClosure_ = computeClosure(edgeDests_, edgeSrcs_);
+    BitSet result = new BitSet();
+    closure_.addReachableSlots(slot, result);
+    reverseClosure_.addReachableSlots(slot, result);
+    return result;
+  }
+
+  /**
+   * Computes the closure of the graph with the given edges, using an iterative version
+   * of Tarjan's strongly connected components algorithm. Tarjan's algorithm completes
+   * a component only after all components reachable from it, so the reachable slots of
+   * a component's successors are known when the component is completed.
+   */
+  private Closure computeClosure(int[] srcs, int[] dests) {
+    // Adjacency lists in compressed form: the successors of slot i are
+    // successors[offsets[i]] to successors[offsets[i + 1] - 1].
+    int[] offsets = new int[numSlots_ + 1];
+    for (int i = 0; i < numEdges_; ++i) ++offsets[srcs[i] + 1];
+    for (int i = 0; i < numSlots_; ++i) offsets[i + 1] += offsets[i];
+    int[] successors = new int[numEdges_];
+    int[] nextPos = Arrays.copyOf(offsets, numSlots_);
+    for (int i = 0; i < numEdges_; ++i) successors[nextPos[srcs[i]]++] = dests[i];
+
+    int[] componentIds = new int[numSlots_];
+    Arrays.fill(componentIds, -1);
+    List<BitSet> reachableSlots = Lists.newArrayList();
+    // Discovery index and lowest reachable discovery index of each slot; -1 if the
+    // slot has not been visited yet.
+    int[] index = new int[numSlots_];
+    Arrays.fill(index, -1);
+    int[] lowLink = new int[numSlots_];
+    int nextIndex = 0;
+    // Slots of the components that have not been completed yet.
+    int[] componentStack = new int[numSlots_];
+    int componentStackSize = 0;
+    // Slots of the current depth-first search path, and the position of the next
+    // successor to visit for each slot.
+    int[] searchStack = new int[numSlots_];
+    int[] successorPos = new int[numSlots_];
+
+    for (int root = 0; root < numSlots_; ++root) {
+      if (index[root] != -1) continue;
+      int depth = 0;
+      searchStack[0] = root;
+      index[root] = lowLink[root] = nextIndex++;
+      successorPos[root] = offsets[root];
+      componentStack[componentStackSize++] = root;
+      while (depth >= 0) {
+        int slot = searchStack[depth];
+        if (successorPos[slot] < offsets[slot + 1]) {
+          int successor = successors[successorPos[slot]++];
+          if (index[successor] == -1) {
+            index[successor] = lowLink[successor] = nextIndex++;
+            successorPos[successor] = offsets[successor];
+            componentStack[componentStackSize++] = successor;
+            searchStack[++depth] = successor;
+          } else if (componentIds[successor] == -1) {
+            // The successor is part of a component that is still on the stack.
+            lowLink[slot] = Math.min(lowLink[slot], index[successor]);
+          }
+          continue;
+        }
+
+        // All successors of 'slot' have been visited.
+        if (lowLink[slot] == index[slot]) {
+          // 'slot' is the root of a component, which consists of all slots above it
+          // on the component stack.
+          int componentId = reachableSlots.size();
+          int start = componentStackSize;
+          do {
+            componentIds[componentStack[--start]] = componentId;
+          } while (componentStack[start] != slot);
+          BitSet reachable = null;
+          for (int i = start; i < componentStackSize; ++i) {
+            int member = componentStack[i];
+            for (int j = offsets[member]; j < offsets[member + 1]; ++j) {
+              if (reachable == null) {
+                reachable = new BitSet();
+                reachable.set(slot);
+              }
+              if (componentIds[successors[j]] == componentId) {
+                reachable.set(successors[j]);
+              } else {
+                // The successor's component has already been completed.
+                BitSet succReachable = reachableSlots.get(componentIds[successors[j]]);
+                if (succReachable == null) {
+                  reachable.set(successors[j]);
+                } else {
+                  reachable.or(succReachable);
+                }
+              }
+            }
+          }
+          reachableSlots.add(reachable);
+          componentStackSize = start;
+        }
+        --depth;
+        if (depth >= 0) {
+          int parent = searchStack[depth];
+          lowLink[parent] = Math.min(lowLink[parent], lowLink[slot]);
+        }
+      }
+    }
+    return new Closure(componentIds, reachableSlots);
+  }
+}
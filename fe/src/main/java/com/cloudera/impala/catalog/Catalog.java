@@ -415,6 +415,7 @@ public abstract class Catalog {
     CompoundPredicate.initBuiltins(builtinsDb_);
     LikePredicate.initBuiltins(builtinsDb_);
     ScalarBuiltins.initBuiltins(builtinsDb_);
+    builtinsDb_.publishBuiltins();
   }
 
   private static final Map<ColumnType, String> HLL_UPDATE_SYMBOL =
@@ -597,6 +598,15 @@ public abstract class Catalog {
           prefix + "11HllFinalizeEPN10impala_udf15FunctionContextERKNS1_9StringValE",
           true));
 
+      // NDV without the final estimation step. Returns the HyperLogLog registers, which
+      // COMPUTE INCREMENTAL STATS persists so that they can be merged later.
+      db.addBuiltin(AggregateFunction.createBuiltin(db, "ndv_no_finalize",
+          Lists.newArrayList(t), ColumnType.STRING, ColumnType.STRING,
+          prefix + "7HllInitEPN10impala_udf15FunctionContextEPNS1_9StringValE",
+          prefix + HLL_UPDATE_SYMBOL.get(t),
+          prefix + "8HllMergeEPN10impala_udf15FunctionContextERKNS1_9StringValEPS4_",
+          stringValSerializeOrFinalize, stringValSerializeOrFinalize, true));
+
       // distinctpc
       // TODO: this needs to switch to CHAR(64) as the intermediate type
       db.addBuiltin(AggregateFunction.createBuiltin(db, "distinctpc",
@@ -620,6 +630,18 @@ public abstract class Catalog {
           true));
     }
 
+    // Equi-depth histogram of the values of a column, computed by COMPUTE STATS.
+    // Returns the comma-separated bucket bounds.
+    db.addBuiltin(AggregateFunction.createBuiltin(db, "equidepth_histogram",
+        Lists.newArrayList(ColumnType.DOUBLE), ColumnType.STRING, ColumnType.STRING,
+        prefix + "13HistogramInitEPN10impala_udf15FunctionContextEPNS1_9StringValE",
+        prefix + "15HistogramUpdateEPN10impala_udf15FunctionContextERKNS1_9DoubleValE" +
+            "PNS1_9StringValE",
+        prefix + "14HistogramMergeEPN10impala_udf15FunctionContextERKNS1_9StringValEPS4_",
+        stringValSerializeOrFinalize,
+        prefix + "17HistogramFinalizeEPN10impala_udf15FunctionContextERKNS1_9StringValE",
+        false));
+
     // Sum
     db.addBuiltin(AggregateFunction.createBuiltin(db, "sum",
         Lists.newArrayList(ColumnType.BIGINT), ColumnType.BIGINT, ColumnType.BIGINT,
@@ -0,0 +1,133 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.cloudera.impala.common.Pair;
+import com.cloudera.impala.thrift.TCatalogObject;
+import com.cloudera.impala.thrift.TCatalogObjectType;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Version-ordered log of the catalog objects that were added, modified or removed in
+ * the catalog server's catalog. Used to build the delta between the catalog at a given
+ * version and the current catalog in time proportional to the number of changes,
+ * rather than to the size of the catalog.
+ *
+ * Each entry describes the changed object by a TCatalogObject that only identifies the
+ * object (and for removed objects is the complete description used to publish the
+ * deletion). The current state of an added or modified object must be looked up in
+ * the catalog when the delta is built.
+ *
+ * The log holds at most maxSize entries. Older entries are discarded, after which a
+ * delta can no longer be built for versions before the discarded entries and callers
+ * need to fall back to sending the complete catalog.
+ * Thread safe.
+ */
+public class CatalogChangeLog {
+  // Map of the catalog version of a change to the changed object and whether it was
+  // removed from the catalog. Ordered by catalog version.
+  private final TreeMap<Long, Pair<TCatalogObject, Boolean>> changes_ =
+      new TreeMap<Long, Pair<TCatalogObject, Boolean>>();
+
+  // All changes with a catalog version <= minVersion_ may be missing from the log.
+  private long minVersion_ = Catalog.INITIAL_CATALOG_VERSION;
+
+  private final int maxSize_;
+
+  public CatalogChangeLog(int maxSize) {
+    Preconditions.checkArgument(maxSize > 0);
+    maxSize_ = maxSize;
+  }
+
+  /**
+   * Records that the given object was added or modified, or removed if 'removed' is
+   * true, at the catalog version of 'catalogObject'.
+   */
+  public synchronized void addChange(TCatalogObject catalogObject, boolean removed) {
+    Preconditions.checkNotNull(catalogObject);
+    long version = catalogObject.getCatalog_version();
+    if (version <= minVersion_) return;
+    changes_.put(version, Pair.create(catalogObject, removed));
+    while (changes_.size() > maxSize_) {
+      minVersion_ = changes_.pollFirstEntry().getKey();
+    }
+  }
+
+  /**
+   * Discards all changes with a catalog version <= 'version'. Used when the catalog is
+   * changed in a way that is not recorded in the log, e.g., when it is reset.
+   */
+  public synchronized void truncate(long version) {
+    changes_.headMap(version, true).clear();
+    minVersion_ = Math.max(minVersion_, version);
+  }
+
+  /**
+   * Returns true if the log contains all changes after catalog version 'fromVersion'.
+   * A delta is never provided from the initial catalog version, since the requester
+   * then has no objects to apply it to.
+   */
+  public synchronized boolean containsChangesSince(long fromVersion) {
+    return fromVersion > Catalog.INITIAL_CATALOG_VERSION && fromVersion >= minVersion_;
+  }
+
+  /**
+   * Returns the latest change of each object that changed after catalog version
+   * 'fromVersion', ordered by catalog version. The second item of each pair indicates
+   * whether the object was removed.
+   */
+  public synchronized List<Pair<TCatalogObject, Boolean>> getChangesSince(
+      long fromVersion) {
+    Preconditions.checkState(containsChangesSince(fromVersion));
+    // Map of object key to the latest change of that object, in the order the latest
+    // changes were made.
+    Map<String, Pair<TCatalogObject, Boolean>> latestChanges = Maps.newLinkedHashMap();
+    for (Pair<TCatalogObject, Boolean> change:
+         changes_.tailMap(fromVersion, false).values()) {
+      String key = getObjectKey(change.first);
+      // Remove any earlier change of this object to keep the version order.
+      latestChanges.remove(key);
+      latestChanges.put(key, change);
+    }
+    return Lists.newArrayList(latestChanges.values());
+  }
+
+  /**
+   * Returns a key that uniquely identifies the given catalog object. Uses the same
+   * format as the keys of the catalog topic entries.
+   */
+  private static String getObjectKey(TCatalogObject catalogObject) {
+    TCatalogObjectType type = catalogObject.getType();
+    switch (type) {
+      case DATABASE:
+        return type + ":" + catalogObject.getDb().getDb_name();
+      case TABLE:
+      case VIEW:
+        return TCatalogObjectType.TABLE + ":" + catalogObject.getTable().getDb_name() +
+            "." + catalogObject.getTable().getTbl_name();
+      case FUNCTION:
+        return type + ":" + catalogObject.getFn().getName().getDb_name() + "." +
+            catalogObject.getFn().getSignature();
+      default:
+        throw new IllegalStateException("Unexpected catalog object type: " + type);
+    }
+  }
+}
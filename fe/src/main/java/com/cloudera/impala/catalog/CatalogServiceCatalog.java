@@ -15,11 +15,13 @@
 package com.cloudera.impala.catalog;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.hadoop.hive.metastore.api.UnknownDBException;
@@ -32,13 +34,17 @@ import com.cloudera.impala.common.Pair;
 import com.cloudera.impala.thrift.TCatalog;
 import com.cloudera.impala.thrift.TCatalogObject;
 import com.cloudera.impala.thrift.TCatalogObjectType;
+import com.cloudera.impala.thrift.TCatalogSnapshotTable;
+import com.cloudera.impala.thrift.TDatabase;
 import com.cloudera.impala.thrift.TFunctionBinaryType;
 import com.cloudera.impala.thrift.TGetAllCatalogObjectsResponse;
+import com.cloudera.impala.thrift.THdfsPartitionDelta;
 import com.cloudera.impala.thrift.TTable;
 import com.cloudera.impala.thrift.TTableName;
 import com.cloudera.impala.thrift.TUniqueId;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * Specialized Catalog that implements the CatalogService specific Catalog
@@ -66,12 +72,14 @@ public class CatalogServiceCatalog extends Catalog {
 
   private final TUniqueId catalogServiceId_;
 
-  // Fair lock used to synchronize reads/writes of catalogVersion_. Because this lock
-  // protects catalogVersion_, it can be used to perform atomic bulk catalog operations
-  // since catalogVersion_ cannot change externally while the lock is being held.
-  // In addition to protecting catalogVersion_, it is currently used for the
-  // following bulk operations:
-  // * Building a delta update to send to the statestore in getAllCatalogObjects(),
+  // Fair lock used to make changes to the catalog atomic with respect to the snapshots
+  // taken of it. Catalog objects are assigned new versions, added to/removed from the
+  // catalog and recorded in the change log while holding the write lock, so no versions
+  // change externally while the read lock is being held. The write lock is only held
+  // for the in-memory update of the catalog, never while loading metadata, and the read
+  // lock is only held while collecting the objects of a catalog update, so concurrent
+  // catalog operations rarely contend on it. It is used for:
+  // * Building a delta update to send to the statestore in getCatalogObjects(),
   //   so a snapshot of the catalog can be taken without any version changes.
   // * During a catalog invalidation (call to reset()), which re-reads all dbs and tables
   //   from the metastore.
@@ -81,27 +89,57 @@ public class CatalogServiceCatalog extends Catalog {
 
   // Last assigned catalog version. Starts at INITIAL_CATALOG_VERSION and is incremented
   // with each update to the Catalog. Continued across the lifetime of the object.
-  // Protected by catalogLock_.
+  // Only incremented while holding the catalogLock_ write lock, but can be read
+  // without taking the lock.
   // TODO: Handle overflow of catalogVersion_ and nextTableId_.
-  private long catalogVersion_ = INITIAL_CATALOG_VERSION;
+  private final AtomicLong catalogVersion_ = new AtomicLong(INITIAL_CATALOG_VERSION);
 
   protected final AtomicInteger nextTableId_ = new AtomicInteger(0);
 
   // Manages the scheduling of background table loading.
   private final TableLoadingMgr tableLoadingMgr_;
 
+  // Maximum number of entries in changeLog_. Bounds the memory used by the log; if more
+  // objects change between two catalog updates, a complete catalog update is sent.
+  private static final int MAX_CHANGE_LOG_SIZE = 100000;
+
+  // Log of the objects added to/modified in/removed from the catalog, used to build
+  // incremental catalog updates in getCatalogObjects(). Changes are recorded while
+  // holding the catalogLock_ write lock, together with the change itself, so a
+  // catalog update built under the read lock sees a consistent log.
+  private final CatalogChangeLog changeLog_ = new CatalogChangeLog(MAX_CHANGE_LOG_SIZE);
+
   private final boolean loadInBackground_;
 
+  // Number of metastore clients that may be in use in addition to the ones used by
+  // table loads, e.g. by DDL operations or catalog resets.
+  private static final int NUM_RESERVED_METASTORE_CLIENTS = 16;
+
+  // Writes snapshots of the loaded tables to local disk and restores them on startup.
+  // Null if catalog snapshots are disabled.
+  private final CatalogSnapshotMgr snapshotMgr_;
+
   /**
    * Initialize the CatalogServiceCatalog, loading all table metadata
-   * lazily.
+   * lazily. At most 'maxConcurrentTableFetches' table loads fetch their table from the
+   * Hive Metastore at the same time. If 'snapshotDir' is not null, snapshots of the
+   * catalog are written to that directory every 'snapshotIntervalSecs' seconds once
+   * restoreFromSnapshot() was called.
    */
   public CatalogServiceCatalog(boolean loadInBackground, int numLoadingThreads,
-      TUniqueId catalogServiceId) {
+      int numFileMdLoadingThreads, int maxConcurrentTableFetches, String snapshotDir,
+      int snapshotIntervalSecs, TUniqueId catalogServiceId) {
     super(true);
+    // Each loading thread holds one metastore client, and tasks on the shared
+    // metastore fetch pool borrow one each. Leave room for DDL and other operations.
+    metaStoreClientPool_.setMaxActiveClients(numLoadingThreads +
+        Table.NUM_METASTORE_FETCH_THREADS + NUM_RESERVED_METASTORE_CLIENTS);
     catalogServiceId_ = catalogServiceId;
-    tableLoadingMgr_ = new TableLoadingMgr(this, numLoadingThreads);
+    tableLoadingMgr_ = new TableLoadingMgr(this, numLoadingThreads,
+        numFileMdLoadingThreads, maxConcurrentTableFetches);
     loadInBackground_ = loadInBackground;
+    snapshotMgr_ = snapshotDir == null ? null :
+        new CatalogSnapshotMgr(this, snapshotDir, snapshotIntervalSecs);
   }
 
   /**
@@ -109,7 +147,8 @@ public class CatalogServiceCatalog extends Catalog {
    */
   public static CatalogServiceCatalog createForTesting(boolean loadInBackground) {
     CatalogServiceCatalog cs =
-        new CatalogServiceCatalog(loadInBackground, 16, new TUniqueId());
+        new CatalogServiceCatalog(loadInBackground, 16, 16, 16, null, 0,
+            new TUniqueId());
     try {
       cs.reset();
     } catch (CatalogException e) {
@@ -118,6 +157,14 @@ public class CatalogServiceCatalog extends Catalog {
     return cs;
   }
 
+  /**
+   * Returns the thread pool shared by all table loads for loading file metadata from
+   * the NameNode.
+   */
+  public ExecutorService getFileMdLoadingPool() {
+    return tableLoadingMgr_.getFileMdLoadingPool();
+  }
+
   /**
    * Prioritizes the loading of the given list TCatalogObjects. Currently only support
    * loading Table/View metadata since Db and Function metadata is not loaded lazily.
@@ -132,68 +179,38 @@ public class CatalogServiceCatalog extends Catalog {
   }
 
   /**
-   * Returns all known objects in the Catalog (Tables, Views, Databases, and
-   * Functions). Some metadata may be skipped for objects that have a catalog
-   * version < the specified "fromVersion".
+   * Returns the objects in the Catalog (Tables, Views, Databases, and Functions) that
+   * changed since the specified "fromVersion". If the change log covers all changes
+   * since "fromVersion", only the objects that were added/modified since then are
+   * returned, along with the objects that were removed since then (an incremental
+   * update). Otherwise, returns all known objects in the Catalog; some metadata may be
+   * skipped for objects that have a catalog version < "fromVersion".
+   * HDFS tables that only changed at the partition level since their complete version
+   * was last returned are returned as partition deltas (HDFS_PARTITION_DELTA objects)
+   * rather than as complete tables. Must only be called to build catalog updates, since
+   * it records which tables were returned in their complete form.
    */
   public TGetAllCatalogObjectsResponse getCatalogObjects(long fromVersion) {
     TGetAllCatalogObjectsResponse resp = new TGetAllCatalogObjectsResponse();
     resp.setObjects(new ArrayList<TCatalogObject>());
     resp.setMax_catalog_version(Catalog.INITIAL_CATALOG_VERSION);
 
+    // Map of the table objects in 'resp' to the table they need to be filled in from.
+    // Changes to a table replace it with a new table object rather than modifying the
+    // cached one in place, so the tables are serialized after the catalogLock_ was
+    // released. This keeps the time the lock is held proportional to
+    // the number of objects in the update rather than to the size of their metadata,
+    // which avoids blocking catalog updates while large tables are serialized.
+    Map<TCatalogObject, Table> tblsToSerialize = Maps.newIdentityHashMap();
+
     // Take a lock on the catalog to ensure this update contains a consistent snapshot
     // of all items in the catalog.
     catalogLock_.readLock().lock();
     try {
-      for (String dbName: getDbNames(null)) {
-        Db db = getDb(dbName);
-        if (db == null) {
-          LOG.error("Database: " + dbName + " was expected to be in the catalog " +
-              "cache. Skipping database and all child objects for this update.");
-          continue;
-        }
-        TCatalogObject catalogDb = new TCatalogObject(TCatalogObjectType.DATABASE,
-            db.getCatalogVersion());
-        catalogDb.setDb(db.toThrift());
-        resp.addToObjects(catalogDb);
-
-        for (String tblName: db.getAllTableNames()) {
-          TCatalogObject catalogTbl = new TCatalogObject(TCatalogObjectType.TABLE,
-              Catalog.INITIAL_CATALOG_VERSION);
-
-          Table tbl = db.getTable(tblName);
-          if (tbl == null) {
-            LOG.error("Table: " + tblName + " was expected to be in the catalog " +
-                "cache. Skipping table for this update.");
-            continue;
-          }
-
-          // Only add the extended metadata if this table's version is >=
-          // the fromVersion.
-          if (tbl.getCatalogVersion() >= fromVersion) {
-            try {
-              catalogTbl.setTable(tbl.toThrift());
-            } catch (Exception e) {
-              LOG.debug(String.format("Error calling toThrift() on table %s.%s: %s",
-                  dbName, tblName, e.getMessage()), e);
-              continue;
-            }
-            catalogTbl.setCatalog_version(tbl.getCatalogVersion());
-          } else {
-            catalogTbl.setTable(new TTable(dbName, tblName));
-          }
-          resp.addToObjects(catalogTbl);
-        }
-
-        for (String signature: db.getAllFunctionSignatures(null)) {
-          Function fn = db.getFunction(signature);
-          if (fn == null) continue;
-          TCatalogObject function = new TCatalogObject(TCatalogObjectType.FUNCTION,
-              fn.getCatalogVersion());
-          function.setType(TCatalogObjectType.FUNCTION);
-          function.setFn(fn.toThrift());
-          resp.addToObjects(function);
-        }
+      if (changeLog_.containsChangesSince(fromVersion)) {
+        addChangedCatalogObjects(fromVersion, resp, tblsToSerialize);
+      } else {
+        addAllCatalogObjects(fromVersion, resp, tblsToSerialize);
       }
 
       // Each update should contain a single "TCatalog" object which is used to
@@ -210,10 +227,244 @@ public class CatalogServiceCatalog extends Catalog {
 
       // The max version is the max catalog version of all items in the update.
       resp.setMax_catalog_version(getCatalogVersion());
-      return resp;
     } finally {
       catalogLock_.readLock().unlock();
     }
+    if (!tblsToSerialize.isEmpty()) serializeTables(resp, tblsToSerialize);
+    return resp;
+  }
+
+  /**
+   * Adds the objects that were added/modified/removed since 'fromVersion' to 'resp',
+   * using the change log. Tables are added as placeholder objects, which are recorded
+   * in 'tblsToSerialize' along with their table. Must be called while holding the
+   * catalogLock_.
+   */
+  private void addChangedCatalogObjects(long fromVersion,
+      TGetAllCatalogObjectsResponse resp, Map<TCatalogObject, Table> tblsToSerialize) {
+    resp.setIs_delta(true);
+    resp.setDeleted_objects(new ArrayList<TCatalogObject>());
+    for (Pair<TCatalogObject, Boolean> change: changeLog_.getChangesSince(fromVersion)) {
+      TCatalogObject changedObject = change.first;
+      if (change.second) {
+        resp.addToDeleted_objects(changedObject);
+        if (changedObject.getType() == TCatalogObjectType.TABLE) {
+          resp.addToDeleted_objects(createPartitionDeltaStub(
+              changedObject.getTable().getDb_name(),
+              changedObject.getTable().getTbl_name()));
+        }
+        continue;
+      }
+      TCatalogObject catalogObject = null;
+      switch (changedObject.getType()) {
+        case DATABASE: {
+          Db db = getDb(changedObject.getDb().getDb_name());
+          if (db == null) break;
+          catalogObject = new TCatalogObject(TCatalogObjectType.DATABASE,
+              db.getCatalogVersion());
+          catalogObject.setDb(db.toThrift());
+          break;
+        }
+        case TABLE:
+        case VIEW: {
+          String dbName = changedObject.getTable().getDb_name();
+          String tblName = changedObject.getTable().getTbl_name();
+          Db db = getDb(dbName);
+          Table tbl = db == null ? null : db.getTable(tblName);
+          if (tbl == null) break;
+          if (canSendPartitionDelta(tbl, fromVersion)) {
+            catalogObject = new TCatalogObject(TCatalogObjectType.HDFS_PARTITION_DELTA,
+                tbl.getCatalogVersion());
+          } else {
+            catalogObject = new TCatalogObject(TCatalogObjectType.TABLE,
+                tbl.getCatalogVersion());
+            // The complete table supersedes any partition delta sent for it.
+            resp.addToDeleted_objects(createPartitionDeltaStub(dbName, tblName));
+          }
+          tblsToSerialize.put(catalogObject, tbl);
+          break;
+        }
+        case FUNCTION: {
+          Db db = getDb(changedObject.getFn().getName().getDb_name());
+          Function fn = db == null ? null :
+              db.getFunction(changedObject.getFn().getSignature());
+          if (fn == null) break;
+          catalogObject = new TCatalogObject(TCatalogObjectType.FUNCTION,
+              fn.getCatalogVersion());
+          catalogObject.setFn(fn.toThrift());
+          break;
+        }
+        default:
+          throw new IllegalStateException(
+              "Unexpected catalog object type: " + changedObject.getType());
+      }
+      // Objects that were removed have a later removal entry in the log.
+      if (catalogObject != null) resp.addToObjects(catalogObject);
+    }
+  }
+
+  /**
+   * Fills in the placeholder table objects of 'resp' from their tables, as recorded in
+   * 'tblsToSerialize'. Tables that cannot be serialized are skipped. Must be called
+   * without holding the catalogLock_.
+   */
+  private static void serializeTables(TGetAllCatalogObjectsResponse resp,
+      Map<TCatalogObject, Table> tblsToSerialize) {
+    List<TCatalogObject> objects =
+        Lists.newArrayListWithCapacity(resp.getObjectsSize());
+    for (TCatalogObject catalogObject: resp.getObjects()) {
+      Table tbl = tblsToSerialize.get(catalogObject);
+      if (tbl != null && !serializeTable(tbl, catalogObject)) continue;
+      objects.add(catalogObject);
+    }
+    resp.setObjects(objects);
+  }
+
+  /**
+   * Sets the table or partition delta of the given placeholder object, depending on its
+   * type, from the given table. Returns false if the table could not be serialized.
+   */
+  private static boolean serializeTable(Table tbl, TCatalogObject catalogObject) {
+    try {
+      if (catalogObject.getType() == TCatalogObjectType.HDFS_PARTITION_DELTA) {
+        HdfsTable hdfsTbl = (HdfsTable) tbl;
+        catalogObject.setPartition_delta(
+            hdfsTbl.getPartitionDelta().toThrift(hdfsTbl));
+      } else {
+        catalogObject.setTable(tbl.toThrift());
+        markSentAsComplete(tbl);
+      }
+      return true;
+    } catch (Exception e) {
+      LOG.debug(String.format("Error calling toThrift() on table %s: %s",
+          tbl.getFullName(), e.getMessage()), e);
+      // Make sure the next change to the table is sent as the complete table.
+      if (tbl instanceof HdfsTable) ((HdfsTable) tbl).setPartitionDelta(null);
+      return false;
+    }
+  }
+
+  /**
+   * Returns true if the given table can be sent as a partition delta instead of as a
+   * complete table. That is the case if the table only changed at the partition level
+   * since a complete version of it was last sent, and if less than half of its
+   * partitions changed. Never returns true if 'fromVersion' is the initial catalog
+   * version, since the receivers of such an update do not have any version of the
+   * table yet.
+   */
+  private static boolean canSendPartitionDelta(Table tbl, long fromVersion) {
+    if (fromVersion == Catalog.INITIAL_CATALOG_VERSION) return false;
+    if (!(tbl instanceof HdfsTable)) return false;
+    HdfsTable hdfsTbl = (HdfsTable) tbl;
+    HdfsPartitionDelta partitionDelta = hdfsTbl.getPartitionDelta();
+    if (partitionDelta == null ||
+        partitionDelta.getBaseCatalogVersion() == tbl.getCatalogVersion()) {
+      return false;
+    }
+    return partitionDelta.getNumModifiedPartitions() * 2 <=
+        hdfsTbl.getPartitions().size();
+  }
+
+  /**
+   * Returns true if a partition delta was sent for the given table since its complete
+   * version was last sent.
+   */
+  private static boolean hasSentPartitionDelta(Table tbl) {
+    if (!(tbl instanceof HdfsTable)) return false;
+    HdfsPartitionDelta partitionDelta = ((HdfsTable) tbl).getPartitionDelta();
+    return partitionDelta != null &&
+        partitionDelta.getBaseCatalogVersion() != tbl.getCatalogVersion();
+  }
+
+  /**
+   * Records that the complete version of the given table was sent in a catalog update,
+   * after which subsequent partition-level changes to the table are tracked relative
+   * to this version. A concurrent reload of the table may still derive the delta of
+   * the reloaded table from the previous delta, which remains valid since it is
+   * relative to an older version of the table.
+   */
+  private static void markSentAsComplete(Table tbl) {
+    if (!(tbl instanceof HdfsTable)) return;
+    ((HdfsTable) tbl).setPartitionDelta(
+        new HdfsPartitionDelta(tbl.getCatalogVersion()));
+  }
+
+  /**
+   * Returns a catalog object that only identifies the partition delta of the given
+   * table, without any of its contents.
+   */
+  private static TCatalogObject createPartitionDeltaStub(String dbName, String tblName) {
+    TCatalogObject catalogObject = new TCatalogObject(
+        TCatalogObjectType.HDFS_PARTITION_DELTA, Catalog.INITIAL_CATALOG_VERSION);
+    catalogObject.setPartition_delta(new THdfsPartitionDelta(
+        Catalog.INITIAL_CATALOG_VERSION, new TTable(dbName, tblName),
+        new ArrayList<String>()));
+    return catalogObject;
+  }
+
+  /**
+   * Adds all known objects in the Catalog to 'resp'. Only adds the extended metadata
+   * of tables that have a catalog version >= 'fromVersion'; these are added as
+   * placeholder objects, which are recorded in 'tblsToSerialize' along with their
+   * table. Must be called while holding the catalogLock_.
+   */
+  private void addAllCatalogObjects(long fromVersion,
+      TGetAllCatalogObjectsResponse resp, Map<TCatalogObject, Table> tblsToSerialize) {
+    for (String dbName: getDbNames(null)) {
+      Db db = getDb(dbName);
+      if (db == null) {
+        LOG.error("Database: " + dbName + " was expected to be in the catalog " +
+            "cache. Skipping database and all child objects for this update.");
+        continue;
+      }
+      TCatalogObject catalogDb = new TCatalogObject(TCatalogObjectType.DATABASE,
+          db.getCatalogVersion());
+      catalogDb.setDb(db.toThrift());
+      resp.addToObjects(catalogDb);
+
+      for (String tblName: db.getAllTableNames()) {
+        TCatalogObject catalogTbl = new TCatalogObject(TCatalogObjectType.TABLE,
+            Catalog.INITIAL_CATALOG_VERSION);
+
+        Table tbl = db.getTable(tblName);
+        if (tbl == null) {
+          LOG.error("Table: " + tblName + " was expected to be in the catalog " +
+              "cache. Skipping table for this update.");
+          continue;
+        }
+
+        // Only add the extended metadata if this table's version is >=
+        // the fromVersion.
+        if (tbl.getCatalogVersion() < fromVersion) {
+          catalogTbl.setTable(new TTable(dbName, tblName));
+          // Keep the partition delta that was sent for the table, if any.
+          if (hasSentPartitionDelta(tbl)) {
+            resp.addToObjects(createPartitionDeltaStub(dbName, tblName));
+          }
+        } else if (canSendPartitionDelta(tbl, fromVersion)) {
+          // Keep the complete version of the table that was sent before.
+          catalogTbl.setTable(new TTable(dbName, tblName));
+          TCatalogObject partitionDelta = new TCatalogObject(
+              TCatalogObjectType.HDFS_PARTITION_DELTA, tbl.getCatalogVersion());
+          tblsToSerialize.put(partitionDelta, tbl);
+          resp.addToObjects(partitionDelta);
+        } else {
+          catalogTbl.setCatalog_version(tbl.getCatalogVersion());
+          tblsToSerialize.put(catalogTbl, tbl);
+        }
+        resp.addToObjects(catalogTbl);
+      }
+
+      for (String signature: db.getAllFunctionSignatures(null)) {
+        Function fn = db.getFunction(signature);
+        if (fn == null) continue;
+        TCatalogObject function = new TCatalogObject(TCatalogObjectType.FUNCTION,
+            fn.getCatalogVersion());
+        function.setType(TCatalogObjectType.FUNCTION);
+        function.setFn(fn.toThrift());
+        resp.addToObjects(function);
+      }
+    }
   }
 
   /**
@@ -227,7 +478,7 @@ public class CatalogServiceCatalog extends Catalog {
     }
 
     // Contains map of overloaded function names to all functions matching that name.
-    HashMap<String, List<Function>> dbFns = db.getAllFunctions();
+    Map<String, List<Function>> dbFns = db.getAllFunctions();
     List<Function> fns = new ArrayList<Function>(dbFns.size());
     for (List<Function> fnOverloads: dbFns.values()) {
       for (Function fn: fnOverloads) {
@@ -249,7 +500,7 @@ public class CatalogServiceCatalog extends Catalog {
       // them across reset. To do this, we store all the functions before
       // clearing and restore them after.
       // TODO: Everything about this. Persist them.
-      List<Pair<String, HashMap<String, List<Function>>>> functions =
+      List<Pair<String, Map<String, List<Function>>>> functions =
           Lists.newArrayList();
       for (Db db: dbCache_.get().values()) {
         if (db.numFunctions() == 0) continue;
@@ -283,7 +534,7 @@ public class CatalogServiceCatalog extends Catalog {
       }
 
       // Restore UDFs/UDAs.
-      for (Pair<String, HashMap<String, List<Function>>> dbFns: functions) {
+      for (Pair<String, Map<String, List<Function>>> dbFns: functions) {
         Db db = null;
         try {
           db = newDbCache.get(dbFns.first);
@@ -305,6 +556,9 @@ public class CatalogServiceCatalog extends Catalog {
         }
       }
       dbCache_.set(newDbCache);
+      // The change log does not track the objects that were dropped by the reset, so
+      // the next catalog update needs to contain the complete catalog.
+      changeLog_.truncate(catalogVersion_.get());
       // Submit tables for background loading.
       for (TTableName tblName: tblsToBackgroundLoad) {
         tableLoadingMgr_.backgroundLoad(tblName);
@@ -317,14 +571,62 @@ public class CatalogServiceCatalog extends Catalog {
     }
   }
 
+  /**
+   * Restores the tables of the catalog that are not loaded yet from the last catalog
+   * snapshot, if catalog snapshots are enabled, and then starts writing snapshots
+   * periodically. Must be called once, after the initial reset() of the catalog.
+   * Restored tables may be stale, so they remain uninitialized IncompleteTables that
+   * carry the restored table, and the impalads do not see them until they are loaded.
+   * getOrLoadTable() loads them incrementally, revalidating the restored metadata
+   * instead of loading it from scratch. They are always queued for background loading,
+   * regardless of whether background loading of the other tables is enabled.
+   */
+  public void restoreFromSnapshot() {
+    if (snapshotMgr_ == null) return;
+    long startTimeMs = System.currentTimeMillis();
+    List<TTableName> restoredTblNames = Lists.newArrayList();
+    for (TCatalogSnapshotTable snapshotTbl: snapshotMgr_.readSnapshot()) {
+      TTableName tblName = new TTableName(snapshotTbl.getTable().getDb_name(),
+          snapshotTbl.getTable().getTbl_name());
+      Db db = getDb(tblName.getDb_name());
+      Table existingTbl = db == null ? null : db.getTable(tblName.getTable_name());
+      // Only restore tables that still exist in the metastore and were not loaded yet.
+      if (existingTbl == null || existingTbl.isLoaded()) continue;
+      Table restoredTbl;
+      try {
+        restoredTbl = replaceTableIfUnchanged(IncompleteTable.createRestoredTable(
+            HdfsTable.fromSnapshot(db, getNextTableId(), snapshotTbl)),
+            existingTbl.getCatalogVersion());
+      } catch (Exception e) {
+        LOG.warn(String.format("Error restoring table %s.%s from catalog snapshot",
+            tblName.getDb_name(), tblName.getTable_name()), e);
+        continue;
+      }
+      if (restoredTbl instanceof IncompleteTable &&
+          ((IncompleteTable) restoredTbl).getRestoredTable() != null) {
+        restoredTblNames.add(tblName);
+      }
+    }
+    for (TTableName tblName: restoredTblNames) tableLoadingMgr_.backgroundLoad(tblName);
+    LOG.info(String.format("Restored %d tables from catalog snapshot in %dms",
+        restoredTblNames.size(), System.currentTimeMillis() - startTimeMs));
+    snapshotMgr_.start();
+  }
+
   /**
    * Adds a database name to the metadata cache and returns the database's
    * new Db object. Used by CREATE DATABASE statements.
    */
   public Db addDb(String dbName) throws ImpalaException {
     Db newDb = new Db(dbName, this);
-    newDb.setCatalogVersion(incrementAndGetCatalogVersion());
-    addDb(newDb);
+    catalogLock_.writeLock().lock();
+    try {
+      newDb.setCatalogVersion(incrementAndGetCatalogVersion());
+      addDb(newDb);
+      logChange(newDb, false);
+    } finally {
+      catalogLock_.writeLock().unlock();
+    }
     return newDb;
   }
 
@@ -335,11 +637,32 @@ public class CatalogServiceCatalog extends Catalog {
    */
   @Override
   public Db removeDb(String dbName) {
-    Db removedDb = super.removeDb(dbName);
-    if (removedDb != null) {
-      removedDb.setCatalogVersion(incrementAndGetCatalogVersion());
+    catalogLock_.writeLock().lock();
+    try {
+      Db removedDb = super.removeDb(dbName);
+      if (removedDb != null) {
+        removedDb.setCatalogVersion(incrementAndGetCatalogVersion());
+        logChange(removedDb, true);
+        // The tables and functions of the database are removed along with it.
+        for (String tblName: removedDb.getAllTableNames()) {
+          Table tbl = removedDb.getTable(tblName);
+          if (tbl == null) continue;
+          logRemovedTable(removedDb.getName(), tbl.getName(),
+              incrementAndGetCatalogVersion());
+        }
+        for (String signature: removedDb.getAllFunctionSignatures(null)) {
+          Function fn = removedDb.getFunction(signature);
+          if (fn == null) continue;
+          TCatalogObject removedFn = new TCatalogObject(TCatalogObjectType.FUNCTION,
+              incrementAndGetCatalogVersion());
+          removedFn.setFn(fn.toThrift());
+          changeLog_.addChange(removedFn, true);
+        }
+      }
+      return removedDb;
+    } finally {
+      catalogLock_.writeLock().unlock();
     }
-    return removedDb;
   }
 
   /**
@@ -351,15 +674,22 @@ public class CatalogServiceCatalog extends Catalog {
     if (db == null) return null;
     Table incompleteTable =
         IncompleteTable.createUninitializedTable(getNextTableId(), db, tblName);
-    incompleteTable.setCatalogVersion(incrementAndGetCatalogVersion());
-    db.addTable(incompleteTable);
+    catalogLock_.writeLock().lock();
+    try {
+      incompleteTable.setCatalogVersion(incrementAndGetCatalogVersion());
+      db.addTable(incompleteTable);
+      logChange(incompleteTable, false);
+    } finally {
+      catalogLock_.writeLock().unlock();
+    }
     return db.getTable(tblName);
   }
 
   /**
    * Gets the table with the given name, loading it if needed (if the existing catalog
    * object is not yet loaded). Returns the matching Table or null if no table with this
-   * name exists in the catalog.
+   * name exists in the catalog. Tables that were restored from a catalog snapshot are
+   * loaded incrementally, reusing the restored metadata that is still valid.
    * If the existing table is dropped or modified (indicated by the catalog version
    * changing) while the load is in progress, the loaded value will be discarded
    * and the current cached value will be returned. This may mean that a missing table
@@ -375,9 +705,14 @@ public class CatalogServiceCatalog extends Catalog {
     catalogLock_.readLock().lock();
     try {
       Table tbl = getTable(dbName, tblName);
-      if (tbl == null || tbl.isLoaded()) return tbl;
+      if (tbl == null) return null;
+      if (tbl.isLoaded()) return tbl;
       previousCatalogVersion = tbl.getCatalogVersion();
-      loadReq = tableLoadingMgr_.loadAsync(tableName, null);
+      HdfsTable restoredTbl = null;
+      if (tbl instanceof IncompleteTable) {
+        restoredTbl = ((IncompleteTable) tbl).getRestoredTable();
+      }
+      loadReq = tableLoadingMgr_.loadAsync(tableName, restoredTbl);
     } finally {
       catalogLock_.readLock().unlock();
     }
@@ -412,7 +747,17 @@ public class CatalogServiceCatalog extends Catalog {
           existingTbl.getCatalogVersion() != expectedCatalogVersion) return existingTbl;
 
       updatedTbl.setCatalogVersion(incrementAndGetCatalogVersion());
+      // Track the partition-level changes of the table since its complete version was
+      // last sent, if the changes can be expressed that way.
+      if (existingTbl instanceof HdfsTable && updatedTbl instanceof HdfsTable) {
+        HdfsPartitionDelta partitionDelta = ((HdfsTable) existingTbl).getPartitionDelta();
+        if (partitionDelta != null) {
+          ((HdfsTable) updatedTbl).setPartitionDelta(partitionDelta.addChanges(
+              (HdfsTable) existingTbl, (HdfsTable) updatedTbl));
+        }
+      }
       db.addTable(updatedTbl);
+      logChange(updatedTbl, false);
       return updatedTbl;
     } finally {
       catalogLock_.writeLock().unlock();
@@ -427,11 +772,17 @@ public class CatalogServiceCatalog extends Catalog {
     Db parentDb = getDb(dbName);
     if (parentDb == null) return null;
 
-    Table removedTable = parentDb.removeTable(tblName);
-    if (removedTable != null) {
-      removedTable.setCatalogVersion(incrementAndGetCatalogVersion());
+    catalogLock_.writeLock().lock();
+    try {
+      Table removedTable = parentDb.removeTable(tblName);
+      if (removedTable != null) {
+        removedTable.setCatalogVersion(incrementAndGetCatalogVersion());
+        logChange(removedTable, true);
+      }
+      return removedTable;
+    } finally {
+      catalogLock_.writeLock().unlock();
     }
-    return removedTable;
   }
 
   /**
@@ -441,11 +792,17 @@ public class CatalogServiceCatalog extends Catalog {
    */
   @Override
   public Function removeFunction(Function desc) {
-    Function removedFn = super.removeFunction(desc);
-    if (removedFn != null) {
-      removedFn.setCatalogVersion(incrementAndGetCatalogVersion());
+    catalogLock_.writeLock().lock();
+    try {
+      Function removedFn = super.removeFunction(desc);
+      if (removedFn != null) {
+        removedFn.setCatalogVersion(incrementAndGetCatalogVersion());
+        logChange(removedFn, true);
+      }
+      return removedFn;
+    } finally {
+      catalogLock_.writeLock().unlock();
     }
-    return removedFn;
   }
 
   /**
@@ -456,11 +813,17 @@ public class CatalogServiceCatalog extends Catalog {
   public boolean addFunction(Function fn) {
     Db db = getDb(fn.getFunctionName().getDb());
     if (db == null) return false;
-    if (db.addFunction(fn)) {
-      fn.setCatalogVersion(incrementAndGetCatalogVersion());
-      return true;
+    catalogLock_.writeLock().lock();
+    try {
+      if (db.addFunction(fn)) {
+        fn.setCatalogVersion(incrementAndGetCatalogVersion());
+        logChange(fn, false);
+        return true;
+      }
+      return false;
+    } finally {
+      catalogLock_.writeLock().unlock();
     }
-    return false;
   }
 
   /**
@@ -505,7 +868,10 @@ public class CatalogServiceCatalog extends Catalog {
     try {
       // Remove the old table name from the cache and add the new table.
       Db db = getDb(oldTableName.getDb_name());
-      if (db != null) db.removeTable(oldTableName.getTable_name());
+      if (db != null && db.removeTable(oldTableName.getTable_name()) != null) {
+        logRemovedTable(db.getName(), oldTableName.getTable_name().toLowerCase(),
+            incrementAndGetCatalogVersion());
+      }
       return addTable(newTableName.getDb_name(), newTableName.getTable_name());
     } finally {
       catalogLock_.writeLock().unlock();
@@ -545,6 +911,34 @@ public class CatalogServiceCatalog extends Catalog {
     }
   }
 
+  /**
+   * Reloads the metadata of a table after the partitions with the given names were
+   * added or modified, e.g., by an INSERT. For HDFS tables, only these partitions are
+   * reloaded if possible, and all other partitions are shared with the existing table
+   * (see HdfsTable.load()). Returns the updated Table object or null if no table with
+   * this name exists in the catalog. Like reloadTable(), the loaded value is discarded
+   * if the existing table is dropped or modified while the reload is in progress.
+   */
+  public Table reloadPartitions(TTableName tblName, Collection<String> partitionNames)
+      throws CatalogException {
+    LOG.debug(String.format("Refreshing %d partitions of table: %s.%s",
+        partitionNames.size(), tblName.getDb_name(), tblName.getTable_name()));
+    long previousCatalogVersion;
+    Table tbl;
+    catalogLock_.readLock().lock();
+    try {
+      tbl = getTable(tblName.getDb_name(), tblName.getTable_name());
+      if (tbl == null) return null;
+      previousCatalogVersion = tbl.getCatalogVersion();
+    } finally {
+      catalogLock_.readLock().unlock();
+    }
+    if (!(tbl instanceof HdfsTable)) return reloadTable(tblName);
+    return replaceTableIfUnchanged(
+        tableLoadingMgr_.loadPartitions(tblName, tbl, partitionNames),
+        previousCatalogVersion);
+  }
+
   /**
    * Invalidates the table in the catalog cache, potentially adding/removing the table
    * from the cache based on whether it exists in the Hive Metastore.
@@ -605,8 +999,14 @@ public class CatalogServiceCatalog extends Catalog {
         // The table exists in the metastore, but our cache does not contain the parent
         // database. A new db will be added to the cache along with the new table.
         db = new Db(dbName, this);
-        db.setCatalogVersion(incrementAndGetCatalogVersion());
-        addDb(db);
+        catalogLock_.writeLock().lock();
+        try {
+          db.setCatalogVersion(incrementAndGetCatalogVersion());
+          addDb(db);
+          logChange(db, false);
+        } finally {
+          catalogLock_.writeLock().unlock();
+        }
         updatedObjects.first = db;
       }
 
@@ -615,8 +1015,14 @@ public class CatalogServiceCatalog extends Catalog {
       // on the next access to the table.
       Table newTable = IncompleteTable.createUninitializedTable(
           getNextTableId(), db, tblName);
-      newTable.setCatalogVersion(incrementAndGetCatalogVersion());
-      db.addTable(newTable);
+      catalogLock_.writeLock().lock();
+      try {
+        newTable.setCatalogVersion(incrementAndGetCatalogVersion());
+        db.addTable(newTable);
+        logChange(newTable, false);
+      } finally {
+        catalogLock_.writeLock().unlock();
+      }
       if (loadInBackground_) {
         tableLoadingMgr_.backgroundLoad(new TTableName(dbName.toLowerCase(),
             tblName.toLowerCase()));
@@ -627,28 +1033,65 @@ public class CatalogServiceCatalog extends Catalog {
   }
 
   /**
-   * Increments the current Catalog version and returns the new value.
+   * Records the addition/modification of the given database, or its removal if
+   * 'removed' is true, in the change log. Must be called while holding the
+   * catalogLock_ write lock, after the database was assigned its new catalog version.
+   */
+  private void logChange(Db db, boolean removed) {
+    Preconditions.checkState(catalogLock_.isWriteLockedByCurrentThread());
+    TCatalogObject catalogObject = new TCatalogObject(TCatalogObjectType.DATABASE,
+        db.getCatalogVersion());
+    catalogObject.setDb(new TDatabase(db.toThrift().getDb_name()));
+    changeLog_.addChange(catalogObject, removed);
+  }
+
+  /**
+   * Same as logChange(Db, boolean), for tables.
+   */
+  private void logChange(Table tbl, boolean removed) {
+    Preconditions.checkState(catalogLock_.isWriteLockedByCurrentThread());
+    TCatalogObject catalogObject = new TCatalogObject(TCatalogObjectType.TABLE,
+        tbl.getCatalogVersion());
+    catalogObject.setTable(new TTable(tbl.getDb().getName(), tbl.getName()));
+    changeLog_.addChange(catalogObject, removed);
+  }
+
+  /**
+   * Same as logChange(Db, boolean), for functions.
+   */
+  private void logChange(Function fn, boolean removed) {
+    Preconditions.checkState(catalogLock_.isWriteLockedByCurrentThread());
+    TCatalogObject catalogObject = new TCatalogObject(TCatalogObjectType.FUNCTION,
+        fn.getCatalogVersion());
+    catalogObject.setFn(fn.toThrift());
+    changeLog_.addChange(catalogObject, removed);
+  }
+
+  /**
+   * Records the removal of the given table at the given catalog version in the change
+   * log. Used for tables that are removed without being assigned a new version.
+   */
+  private void logRemovedTable(String dbName, String tblName, long catalogVersion) {
+    Preconditions.checkState(catalogLock_.isWriteLockedByCurrentThread());
+    TCatalogObject catalogObject =
+        new TCatalogObject(TCatalogObjectType.TABLE, catalogVersion);
+    catalogObject.setTable(new TTable(dbName, tblName));
+    changeLog_.addChange(catalogObject, true);
+  }
+
+  /**
+   * Increments the current Catalog version and returns the new value. Must be called
+   * while holding the catalogLock_ write lock.
    */
   public long incrementAndGetCatalogVersion() {
-    catalogLock_.writeLock().lock();
-    try {
-      return ++catalogVersion_;
-    } finally {
-      catalogLock_.writeLock().unlock();
-    }
+    Preconditions.checkState(catalogLock_.isWriteLockedByCurrentThread());
+    return catalogVersion_.incrementAndGet();
   }
 
   /**
    * Returns the current Catalog version.
    */
-  public long getCatalogVersion() {
-    catalogLock_.readLock().lock();
-    try {
-      return catalogVersion_;
-    } finally {
-      catalogLock_.readLock().unlock();
-    }
-  }
+  public long getCatalogVersion() { return catalogVersion_.get(); }
 
   /**
    * Gets the next table ID and increments the table ID counter.
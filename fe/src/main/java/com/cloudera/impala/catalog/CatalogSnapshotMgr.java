@@ -0,0 +1,220 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.apache.log4j.Logger;
+import org.apache.thrift.TDeserializer;
+import org.apache.thrift.TException;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TCompactProtocol;
+
+import com.cloudera.impala.thrift.TCatalogSnapshotTable;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Writes snapshots of the loaded HDFS tables of the catalog server's catalog to a file
+ * on local disk, and reads them back when the catalog server restarts. Restoring the
+ * tables from a snapshot avoids reloading all of their metadata from the metastore and
+ * the NameNode before they can be used; restored tables are instead revalidated
+ * incrementally, see CatalogServiceCatalog.restoreFromSnapshot().
+ *
+ * A snapshot file consists of a header (magic number and format version), a sequence of
+ * TCatalogSnapshotTable records serialized with the compact thrift protocol, each
+ * prefixed with its length, a terminating zero length, and a CRC32 checksum of all
+ * preceding bytes. Snapshots are written to a temporary file that is renamed once
+ * complete, so a crash while writing leaves the previous snapshot in place. Snapshot
+ * files with a different format version or an invalid checksum are ignored.
+ */
+public class CatalogSnapshotMgr {
+  private static final Logger LOG = Logger.getLogger(CatalogSnapshotMgr.class);
+
+  // Identifies catalog snapshot files ("IMCS").
+  private static final int SNAPSHOT_MAGIC = 0x494d4353;
+
+  // Version of the snapshot file format. Must be incremented whenever the file format
+  // or the thrift structures it contains change in an incompatible way.
+  private static final int SNAPSHOT_FORMAT_VERSION = 1;
+
+  private static final String SNAPSHOT_FILE_NAME = "catalog-snapshot";
+
+  private final CatalogServiceCatalog catalog_;
+  private final File snapshotFile_;
+  private final File tmpSnapshotFile_;
+  private final long snapshotIntervalMs_;
+
+  // Catalog version at the time the last snapshot was taken. Only accessed by the
+  // snapshot thread.
+  private long lastSnapshotVersion_ = Catalog.INITIAL_CATALOG_VERSION;
+
+  public CatalogSnapshotMgr(CatalogServiceCatalog catalog, String snapshotDir,
+      int snapshotIntervalSecs) {
+    Preconditions.checkNotNull(snapshotDir);
+    Preconditions.checkArgument(snapshotIntervalSecs > 0);
+    catalog_ = catalog;
+    snapshotFile_ = new File(snapshotDir, SNAPSHOT_FILE_NAME);
+    tmpSnapshotFile_ = new File(snapshotDir, SNAPSHOT_FILE_NAME + ".tmp");
+    snapshotIntervalMs_ = snapshotIntervalSecs * 1000L;
+  }
+
+  /**
+   * Starts a thread that writes a snapshot of the catalog every snapshotIntervalMs_
+   * milliseconds, if the catalog changed since the last snapshot.
+   */
+  public void start() {
+    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("CatalogSnapshotThread-%d")
+        .build());
+    executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        long catalogVersion = catalog_.getCatalogVersion();
+        if (catalogVersion == lastSnapshotVersion_) return;
+        try {
+          writeSnapshot();
+          lastSnapshotVersion_ = catalogVersion;
+        } catch (Exception e) {
+          LOG.error("Error writing catalog snapshot: " + snapshotFile_.getPath(), e);
+        }
+      }
+    }, snapshotIntervalMs_, snapshotIntervalMs_, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Writes a snapshot of all loaded HDFS tables in the catalog, and of the restored
+   * tables that were not loaded yet. Tables that cannot be serialized are skipped.
+   */
+  public void writeSnapshot() throws IOException { writeSnapshot(catalog_); }
+
+  /**
+   * Writes a snapshot of the HDFS tables in the given catalog, see writeSnapshot().
+   * Package visible for testing.
+   */
+  void writeSnapshot(Catalog catalog) throws IOException {
+    long startTimeMs = System.currentTimeMillis();
+    int numTables = 0;
+    TSerializer serializer = new TSerializer(new TCompactProtocol.Factory());
+    CheckedOutputStream checkedOut = new CheckedOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tmpSnapshotFile_)), new CRC32());
+    DataOutputStream out = new DataOutputStream(checkedOut);
+    try {
+      out.writeInt(SNAPSHOT_MAGIC);
+      out.writeInt(SNAPSHOT_FORMAT_VERSION);
+      for (String dbName: catalog.getDbNames(null)) {
+        Db db = catalog.getDb(dbName);
+        if (db == null) continue;
+        for (String tblName: db.getAllTableNames()) {
+          Table tbl = db.getTable(tblName);
+          // Keep restored tables in the snapshot until they are loaded.
+          if (tbl instanceof IncompleteTable) {
+            tbl = ((IncompleteTable) tbl).getRestoredTable();
+          }
+          if (!(tbl instanceof HdfsTable)) continue;
+          byte[] record;
+          try {
+            record = serializer.serialize(((HdfsTable) tbl).toSnapshot());
+          } catch (Exception e) {
+            LOG.debug(String.format("Error adding table %s to catalog snapshot: %s",
+                tbl.getFullName(), e.getMessage()), e);
+            continue;
+          }
+          out.writeInt(record.length);
+          out.write(record);
+          ++numTables;
+        }
+      }
+      out.writeInt(0);
+      out.writeLong(checkedOut.getChecksum().getValue());
+    } finally {
+      out.close();
+    }
+    if (!tmpSnapshotFile_.renameTo(snapshotFile_)) {
+      throw new IOException("Error renaming " + tmpSnapshotFile_.getPath() + " to " +
+          snapshotFile_.getPath());
+    }
+    LOG.info(String.format("Wrote catalog snapshot with %d tables in %dms", numTables,
+        System.currentTimeMillis() - startTimeMs));
+  }
+
+  /**
+   * Reads the tables of the last snapshot that was written. Returns an empty list if
+   * there is no snapshot or if it is not valid.
+   */
+  public List<TCatalogSnapshotTable> readSnapshot() {
+    List<TCatalogSnapshotTable> tables = Lists.newArrayList();
+    if (!snapshotFile_.exists()) return tables;
+    try {
+      readSnapshot(tables);
+      LOG.info(String.format("Read %d tables from catalog snapshot: %s", tables.size(),
+          snapshotFile_.getPath()));
+    } catch (Exception e) {
+      LOG.warn("Ignoring invalid catalog snapshot: " + snapshotFile_.getPath(), e);
+      tables.clear();
+    }
+    return tables;
+  }
+
+  private void readSnapshot(List<TCatalogSnapshotTable> tables)
+      throws IOException, TException {
+    TDeserializer deserializer = new TDeserializer(new TCompactProtocol.Factory());
+    CheckedInputStream checkedIn = new CheckedInputStream(
+        new BufferedInputStream(new FileInputStream(snapshotFile_)), new CRC32());
+    DataInputStream in = new DataInputStream(checkedIn);
+    try {
+      if (in.readInt() != SNAPSHOT_MAGIC) {
+        throw new IOException("Not a catalog snapshot file");
+      }
+      int formatVersion = in.readInt();
+      if (formatVersion != SNAPSHOT_FORMAT_VERSION) {
+        throw new IOException(String.format(
+            "Unsupported snapshot format version %d, expected %d", formatVersion,
+            SNAPSHOT_FORMAT_VERSION));
+      }
+      while (true) {
+        int length = in.readInt();
+        if (length == 0) break;
+        if (length < 0) throw new IOException("Invalid record length: " + length);
+        byte[] record = new byte[length];
+        in.readFully(record);
+        TCatalogSnapshotTable table = new TCatalogSnapshotTable();
+        deserializer.deserialize(table, record);
+        tables.add(table);
+      }
+      long checksum = checkedIn.getChecksum().getValue();
+      if (in.readLong() != checksum) throw new IOException("Checksum mismatch");
+    } finally {
+      in.close();
+    }
+  }
+}
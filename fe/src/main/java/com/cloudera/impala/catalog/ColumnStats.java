@@ -14,8 +14,11 @@
 
 package com.cloudera.impala.catalog;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
+import org.apache.commons.lang.ArrayUtils;
 import org.apache.hadoop.hive.metastore.api.BinaryColumnStatsData;
 import org.apache.hadoop.hive.metastore.api.BooleanColumnStatsData;
 import org.apache.hadoop.hive.metastore.api.ColumnStatisticsData;
@@ -28,6 +31,7 @@ import org.slf4j.LoggerFactory;
 import com.cloudera.impala.analysis.Expr;
 import com.cloudera.impala.analysis.SlotRef;
 import com.cloudera.impala.thrift.TColumnStats;
+import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
@@ -38,6 +42,10 @@ import com.google.common.collect.Sets;
 public class ColumnStats {
   private final static Logger LOG = LoggerFactory.getLogger(ColumnStats.class);
 
+  // Prefix of the table parameters that hold the histograms of the columns, which the
+  // metastore column stats cannot represent. The column name follows the prefix.
+  public final static String HISTOGRAM_PARAM_PREFIX = "impala_histogram.";
+
   // Set of the currently supported column stats column types.
   private final static Set<ColumnType> SUPPORTED_COL_TYPES = Sets.newHashSet(
       ColumnType.BIGINT, ColumnType.BINARY, ColumnType.BOOLEAN,
@@ -53,6 +61,17 @@ public class ColumnStats {
   private long numDistinctValues_;
   private long numNulls_;
 
+  // Smallest and largest value of numeric columns, NaN if unknown.
+  private double minValue_;
+  private double maxValue_;
+
+  // Bounds of an equi-depth histogram of the non-null values of numeric columns, or
+  // null if unknown. The values between two consecutive bounds form a bucket, and all
+  // buckets contain about the same number of values. The first and last bounds are
+  // the smallest and largest value. A value that occurs in many rows can be the bound
+  // of several consecutive buckets.
+  private double[] histogramBounds_;
+
   public ColumnStats(ColumnType colType) {
     initColStats(colType);
   }
@@ -68,6 +87,9 @@ public class ColumnStats {
     maxSize_ = -1;
     numDistinctValues_ = -1;
     numNulls_ = -1;
+    minValue_ = Double.NaN;
+    maxValue_ = Double.NaN;
+    histogramBounds_ = null;
     if (colType.isFixedLengthType()) {
       avgSerializedSize_ = colType.getSlotSize();
       avgSize_ = colType.getSlotSize();
@@ -127,6 +149,116 @@ public class ColumnStats {
   public boolean hasMaxSize() { return maxSize_ >= 0; }
   public boolean hasNumDistinctValues() { return numDistinctValues_ >= 0; }
   public boolean hasStats() { return numNulls_ != -1 || numDistinctValues_ != -1; }
+  public boolean hasMinMax() { return !Double.isNaN(minValue_); }
+  public double getMinValue() { return minValue_; }
+  public double getMaxValue() { return maxValue_; }
+  public double[] getHistogramBounds() { return histogramBounds_; }
+
+  /**
+   * Sets the smallest and largest value of the column.
+   */
+  public void setMinMax(double minValue, double maxValue) {
+    Preconditions.checkArgument(minValue <= maxValue);
+    minValue_ = minValue;
+    maxValue_ = maxValue;
+  }
+
+  /**
+   * Sets the histogram of the column, see histogramBounds_. Also sets the min and max
+   * value from the first and last bound. Ignores histograms with less than two bounds
+   * or with unsorted bounds.
+   */
+  public void setHistogramBounds(double[] bounds) {
+    if (bounds == null || bounds.length < 2) return;
+    for (int i = 1; i < bounds.length; ++i) {
+      if (!(bounds[i - 1] <= bounds[i])) return;
+    }
+    histogramBounds_ = bounds;
+    setMinMax(bounds[0], bounds[bounds.length - 1]);
+  }
+
+  /**
+   * Estimates the fraction of the non-null values of the column in the range between
+   * 'lower' and 'upper', which may be infinite. Uses the histogram if there is one, and
+   * otherwise assumes that the values are uniformly distributed between the min and
+   * max value. Returns -1 if there are no min/max stats.
+   */
+  public double estimateRangeSelectivity(double lower, boolean lowerInclusive,
+      double upper, boolean upperInclusive) {
+    if (!hasMinMax()) return -1;
+    if (lower > upper) return 0;
+    double selectivity = getFractionBelow(upper) - getFractionBelow(lower);
+    if (upperInclusive) selectivity += getFractionEqual(upper);
+    if (!lowerInclusive) selectivity -= getFractionEqual(lower);
+    return Math.max(0.0, Math.min(1.0, selectivity));
+  }
+
+  /**
+   * Returns the estimated fraction of the non-null values that are less than 'value'.
+   */
+  private double getFractionBelow(double value) {
+    if (value <= minValue_) return 0;
+    if (value > maxValue_) return 1;
+    if (histogramBounds_ == null) {
+      if (maxValue_ == minValue_) return 1;
+      return (value - minValue_) / (maxValue_ - minValue_);
+    }
+    // Find the bucket with bounds[i] < value <= bounds[i + 1] and interpolate within
+    // the bucket.
+    int numBuckets = histogramBounds_.length - 1;
+    int i = 0;
+    while (i + 1 < numBuckets && histogramBounds_[i + 1] < value) ++i;
+    double bucketWidth = histogramBounds_[i + 1] - histogramBounds_[i];
+    double fractionOfBucket =
+        bucketWidth > 0 ? (value - histogramBounds_[i]) / bucketWidth : 1;
+    return (i + Math.min(1.0, fractionOfBucket)) / numBuckets;
+  }
+
+  /**
+   * Returns the estimated fraction of the non-null values that are equal to 'value'.
+   * Values that are the bound of several buckets account for the buckets between
+   * their first and last occurrence, all other values for 1/NDV.
+   */
+  private double getFractionEqual(double value) {
+    if (value < minValue_ || value > maxValue_) return 0;
+    double fraction = numDistinctValues_ > 0 ? 1.0 / numDistinctValues_ : 0;
+    if (histogramBounds_ != null) {
+      int numBounds = 0;
+      for (double bound: histogramBounds_) {
+        if (bound == value) ++numBounds;
+      }
+      if (numBounds > 1) {
+        fraction = Math.max(fraction,
+            (double) (numBounds - 1) / (histogramBounds_.length - 1));
+      }
+    }
+    return fraction;
+  }
+
+  /**
+   * Returns the string representation of the given histogram bounds, which is stored
+   * in the table parameter HISTOGRAM_PARAM_PREFIX + <column name>.
+   */
+  public static String histogramToString(List<Double> bounds) {
+    return Joiner.on(",").join(bounds);
+  }
+
+  /**
+   * Parses the string representation of histogram bounds. Returns null if it is
+   * invalid.
+   */
+  public static double[] parseHistogram(String str) {
+    if (str == null) return null;
+    String[] parts = str.split(",");
+    double[] bounds = new double[parts.length];
+    try {
+      for (int i = 0; i < parts.length; ++i) bounds[i] = Double.parseDouble(parts[i]);
+    } catch (NumberFormatException e) {
+      LOG.warn("Ignoring invalid histogram: " + str);
+      return null;
+    }
+    return bounds;
+  }
 
   /**
    * Updates the stats with the given ColumnStatisticsData. If the ColumnStatisticsData
@@ -158,6 +290,9 @@ public class ColumnStats {
           LongColumnStatsData longStats = statsData.getLongStats();
           numDistinctValues_ = longStats.getNumDVs();
           numNulls_ = longStats.getNumNulls();
+          if (colType.getPrimitiveType() != PrimitiveType.TIMESTAMP) {
+            updateMinMax(longStats.getLowValue(), longStats.getHighValue());
+          }
         }
         break;
       case FLOAT:
@@ -167,6 +302,7 @@ public class ColumnStats {
           DoubleColumnStatsData doubleStats = statsData.getDoubleStats();
           numDistinctValues_ = doubleStats.getNumDVs();
           numNulls_ = doubleStats.getNumNulls();
+          updateMinMax(doubleStats.getLowValue(), doubleStats.getHighValue());
         }
         break;
       case STRING:
@@ -198,6 +334,17 @@ public class ColumnStats {
     return isCompatible;
   }
 
+  /**
+   * Sets the min and max value from the low and high value of metastore column stats.
+   * Both are -1 in stats that were computed without min/max values, e.g., by older
+   * versions of COMPUTE STATS, so that combination is treated as unknown.
+   */
+  private void updateMinMax(double lowValue, double highValue) {
+    if (lowValue == -1 && highValue == -1) return;
+    if (lowValue > highValue) return;
+    setMinMax(lowValue, highValue);
+  }
+
   /**
    * Returns true if the given PrimitiveType supports column stats updates.
    */
@@ -215,6 +362,14 @@ public class ColumnStats {
     maxSize_ = stats.getMax_size();
     numDistinctValues_ = stats.getNum_distinct_values();
     numNulls_ = stats.getNum_nulls();
+    if (stats.isSetMin_value() && stats.isSetMax_value() &&
+        stats.getMin_value() <= stats.getMax_value()) {
+      setMinMax(stats.getMin_value(), stats.getMax_value());
+    }
+    if (stats.isSetHistogram_bounds()) {
+      setHistogramBounds(ArrayUtils.toPrimitive(
+          stats.getHistogram_bounds().toArray(new Double[0])));
+    }
   }
 
   public TColumnStats toThrift() {
@@ -223,6 +378,14 @@ public class ColumnStats {
     colStats.setMax_size(maxSize_);
     colStats.setNum_distinct_values(numDistinctValues_);
     colStats.setNum_nulls(numNulls_);
+    if (hasMinMax()) {
+      colStats.setMin_value(minValue_);
+      colStats.setMax_value(maxValue_);
+    }
+    if (histogramBounds_ != null) {
+      colStats.setHistogram_bounds(
+          Arrays.asList(ArrayUtils.toObject(histogramBounds_)));
+    }
     return colStats;
   }
 
@@ -233,6 +396,8 @@ public class ColumnStats {
         .add("maxSize_", maxSize_)
         .add("numDistinct_", numDistinctValues_)
         .add("numNulls_", numNulls_)
+        .add("minValue_", minValue_)
+        .add("maxValue_", maxValue_)
         .toString();
   }
 }
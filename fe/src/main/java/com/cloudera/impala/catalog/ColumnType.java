@@ -20,6 +20,7 @@ import java.util.List;
 import com.cloudera.impala.analysis.TypesUtil;
 import com.cloudera.impala.common.AnalysisException;
 import com.cloudera.impala.thrift.TColumnType;
+import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 
@@ -205,6 +206,15 @@ public class ColumnType {
     return true;
   }
 
+  @Override
+  public int hashCode() {
+    if (type_ == PrimitiveType.CHAR) return Objects.hashCode(type_, len_);
+    if (type_ == PrimitiveType.DECIMAL) {
+      return Objects.hashCode(type_, precision_, scale_);
+    }
+    return type_.hashCode();
+  }
+
   /**
    * Returns true if this object is of type t.
    * Handles wildcard types. That is, if t is the wildcard type variant
@@ -14,19 +14,25 @@
 
 package com.cloudera.impala.catalog;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 
-import com.cloudera.impala.catalog.Function.CompareMode;
 import com.cloudera.impala.thrift.TCatalogObjectType;
 import com.cloudera.impala.thrift.TDatabase;
 import com.cloudera.impala.thrift.TFunctionType;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * Internal representation of db-related metadata. Owned by Catalog instance.
@@ -43,6 +49,113 @@ import com.google.common.collect.Lists;
  */
 public class Db implements CatalogObject {
   private static final Logger LOG = Logger.getLogger(Db.class);
+
+  // Maximum number of cached function resolutions per database. The cache is cleared
+  // when it grows beyond this size.
+  private static final int MAX_CACHED_RESOLUTIONS = 10000;
+
+  /**
+   * Immutable snapshot of the functions of a database, together with a cache of the
+   * results of resolving function calls against this snapshot.
+   */
+  private static class FunctionRegistry {
+    // The key is the user facing name (e.g. "myUdf"), and the values are all the
+    // overloaded variants (e.g. myUdf(double), myUdf(string)). This includes both UDFs
+    // and UDAs.
+    public final ImmutableMap<String, List<Function>> functions;
+    // All functions, keyed by their signature string.
+    public final ImmutableMap<String, Function> functionsBySignature;
+    // Cached results of resolve(), including failed resolutions.
+    private final ConcurrentHashMap<ResolutionKey, Optional<Function>> resolutions_ =
+        new ConcurrentHashMap<ResolutionKey, Optional<Function>>();
+
+    public FunctionRegistry(Map<String, List<Function>> fns) {
+      ImmutableMap.Builder<String, List<Function>> fnsBuilder = ImmutableMap.builder();
+      Map<String, Function> bySignature = Maps.newHashMap();
+      for (Map.Entry<String, List<Function>> entry: fns.entrySet()) {
+        fnsBuilder.put(entry.getKey(), ImmutableList.copyOf(entry.getValue()));
+        for (Function fn: entry.getValue()) {
+          // Keep the first function with a given signature, like a linear scan would.
+          if (!bySignature.containsKey(fn.signatureString())) {
+            bySignature.put(fn.signatureString(), fn);
+          }
+        }
+      }
+      functions = fnsBuilder.build();
+      functionsBySignature = ImmutableMap.copyOf(bySignature);
+    }
+
+    /**
+     * Returns the function that best matches 'desc' for 'mode': an identical function
+     * if there is one, otherwise an indistinguishable function, otherwise a supertype,
+     * as far as allowed by 'mode'. Returns null if there is no match.
+     */
+    public Function resolve(Function desc, Function.CompareMode mode) {
+      List<Function> fns = functions.get(desc.functionName());
+      if (fns == null) return null;
+      ResolutionKey key = new ResolutionKey(desc, mode);
+      Optional<Function> result = resolutions_.get(key);
+      if (result != null) return result.orNull();
+      result = Optional.fromNullable(findFunction(fns, desc, mode));
+      if (resolutions_.size() >= MAX_CACHED_RESOLUTIONS) resolutions_.clear();
+      resolutions_.put(key, result);
+      return result.orNull();
+    }
+
+    private static Function findFunction(List<Function> fns, Function desc,
+        Function.CompareMode mode) {
+      // First check for identical
+      for (Function f: fns) {
+        if (f.compare(desc, Function.CompareMode.IS_IDENTICAL)) return f;
+      }
+      if (mode == Function.CompareMode.IS_IDENTICAL) return null;
+
+      // Next check for indistinguishable
+      for (Function f: fns) {
+        if (f.compare(desc, Function.CompareMode.IS_INDISTINGUISHABLE)) return f;
+      }
+      if (mode == Function.CompareMode.IS_INDISTINGUISHABLE) return null;
+
+      // Finally check for is_subtype
+      for (Function f: fns) {
+        if (f.compare(desc, Function.CompareMode.IS_SUPERTYPE_OF)) return f;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Everything about a function call descriptor that function resolution depends on.
+   */
+  private static class ResolutionKey {
+    private final String dbName_;
+    private final String fnName_;
+    private final List<ColumnType> argTypes_;
+    private final boolean hasVarArgs_;
+    private final Function.CompareMode mode_;
+
+    public ResolutionKey(Function desc, Function.CompareMode mode) {
+      dbName_ = desc.dbName();
+      fnName_ = desc.functionName();
+      argTypes_ = Arrays.asList(desc.getArgs());
+      hasVarArgs_ = desc.hasVarArgs();
+      mode_ = mode;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(dbName_, fnName_, argTypes_, hasVarArgs_, mode_);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof ResolutionKey)) return false;
+      ResolutionKey other = (ResolutionKey) o;
+      return Objects.equal(dbName_, other.dbName_) && fnName_.equals(other.fnName_)
+          && argTypes_.equals(other.argTypes_) && hasVarArgs_ == other.hasVarArgs_
+          && mode_ == other.mode_;
+    }
+  }
   private final Catalog parentCatalog_;
   private final TDatabase thriftDb_;
   private long catalogVersion_ = Catalog.INITIAL_CATALOG_VERSION;
@@ -50,11 +163,16 @@ public class Db implements CatalogObject {
   // Table metadata cache.
   private final CatalogObjectCache<Table> tableCache_;
 
-  // All of the registered user functions. The key is the user facing name (e.g. "myUdf"),
-  // and the values are all the overloaded variants (e.g. myUdf(double), myUdf(string))
-  // This includes both UDFs and UDAs. Updates are made thread safe by synchronizing
-  // on this map.
-  private final HashMap<String, List<Function>> functions_;
+  // All of the registered user functions. Readers use the current registry without
+  // locking. Updates are serialized by synchronizing on functionsLock_ and replace the
+  // registry with an updated copy, which also discards all cached resolutions.
+  private volatile FunctionRegistry functions_ = new FunctionRegistry(
+      new HashMap<String, List<Function>>());
+  private final Object functionsLock_ = new Object();
+
+  // Builtins added by addBuiltin() that are not visible yet, see publishBuiltins().
+  // Guarded by functionsLock_.
+  private final List<Function> pendingBuiltins_ = Lists.newArrayList();
 
   // If true, this database is an Impala system database.
   // (e.g. can't drop it, can't add tables to it, etc).
@@ -64,7 +182,6 @@ public class Db implements CatalogObject {
     thriftDb_ = new TDatabase(name.toLowerCase());
     parentCatalog_ = catalog;
     tableCache_ = new CatalogObjectCache<Table>();
-    functions_ = new HashMap<String, List<Function>>();
   }
 
   public void setIsSystemDb(boolean b) { isSystemDb_ = b; }
@@ -122,15 +239,13 @@ public class Db implements CatalogObject {
    */
   public List<String> getAllFunctionSignatures(TFunctionType type) {
     List<String> names = Lists.newArrayList();
-    synchronized (functions_) {
-      for (List<Function> fns: functions_.values()) {
-        for (Function f: fns) {
-          if (!f.userVisible()) continue;
-          if (type == null ||
-              (type == TFunctionType.SCALAR && f instanceof ScalarFunction) ||
-              (type == TFunctionType.AGGREGATE && f instanceof AggregateFunction)) {
-            names.add(f.signatureString());
-          }
+    for (List<Function> fns: functions_.functions.values()) {
+      for (Function f: fns) {
+        if (!f.userVisible()) continue;
+        if (type == null ||
+            (type == TFunctionType.SCALAR && f instanceof ScalarFunction) ||
+            (type == TFunctionType.AGGREGATE && f instanceof AggregateFunction)) {
+          names.add(f.signatureString());
         }
       }
     }
@@ -140,76 +255,65 @@ public class Db implements CatalogObject {
   /**
    * Returns the number of functions in this database.
    */
-  public int numFunctions() {
-    synchronized (functions_) {
-      return functions_.size();
-    }
-  }
+  public int numFunctions() { return functions_.functions.size(); }
 
   /**
    * See comment in Catalog.
    */
   public boolean containsFunction(String name) {
-    synchronized (functions_) {
-      return functions_.get(name) != null;
-    }
+    return functions_.functions.get(name) != null;
   }
 
   /*
    * See comment in Catalog.
    */
   public Function getFunction(Function desc, Function.CompareMode mode) {
-    synchronized (functions_) {
-      List<Function> fns = functions_.get(desc.functionName());
-      if (fns == null) return null;
-
-      // First check for identical
-      for (Function f: fns) {
-        if (f.compare(desc, Function.CompareMode.IS_IDENTICAL)) return f;
-      }
-      if (mode == Function.CompareMode.IS_IDENTICAL) return null;
-
-      // Next check for indistinguishable
-      for (Function f: fns) {
-        if (f.compare(desc, Function.CompareMode.IS_INDISTINGUISHABLE)) return f;
-      }
-      if (mode == Function.CompareMode.IS_INDISTINGUISHABLE) return null;
-
-      // Finally check for is_subtype
-      for (Function f: fns) {
-        if (f.compare(desc, Function.CompareMode.IS_SUPERTYPE_OF)) return f;
-      }
-    }
-    return null;
+    return functions_.resolve(desc, mode);
   }
 
   public Function getFunction(String signatureString) {
-    synchronized (functions_) {
-      for (List<Function> fns: functions_.values()) {
-        for (Function f: fns) {
-          if (f.signatureString().equals(signatureString)) return f;
-        }
-      }
-    }
-    return null;
+    return functions_.functionsBySignature.get(signatureString);
   }
 
   /**
    * See comment in Catalog.
    */
   public boolean addFunction(Function fn) {
+    return addFunctions(Lists.newArrayList(fn)).isEmpty();
+  }
+
+  /**
+   * Adds all functions in 'fns' with a single update of the registry, which is much
+   * cheaper than adding them one by one. A function is not added if it is
+   * indistinguishable from an existing function or from a function earlier in 'fns'.
+   * Returns the functions that were not added.
+   */
+  public List<Function> addFunctions(List<Function> fns) {
     // TODO: add this to persistent store
-    synchronized (functions_) {
-      if (getFunction(fn, Function.CompareMode.IS_INDISTINGUISHABLE) != null) {
-        return false;
+    List<Function> rejectedFns = Lists.newArrayList();
+    synchronized (functionsLock_) {
+      Map<String, List<Function>> newFunctions = Maps.newHashMap();
+      for (Map.Entry<String, List<Function>> entry:
+           functions_.functions.entrySet()) {
+        newFunctions.put(entry.getKey(), Lists.newArrayList(entry.getValue()));
       }
-      List<Function> fns = functions_.get(fn.functionName());
-      if (fns == null) {
-        fns = Lists.newArrayList();
-        functions_.put(fn.functionName(), fns);
+      for (Function fn: fns) {
+        List<Function> overloads = newFunctions.get(fn.functionName());
+        if (overloads == null) {
+          overloads = Lists.newArrayList();
+          newFunctions.put(fn.functionName(), overloads);
+        } else if (FunctionRegistry.findFunction(overloads, fn,
+            Function.CompareMode.IS_INDISTINGUISHABLE) != null) {
+          rejectedFns.add(fn);
+          continue;
+        }
+        overloads.add(fn);
+      }
+      if (rejectedFns.size() < fns.size()) {
+        functions_ = new FunctionRegistry(newFunctions);
       }
-      return fns.add(fn);
     }
+    return rejectedFns;
   }
 
   /**
@@ -217,13 +321,19 @@ public class Db implements CatalogObject {
    */
   public Function removeFunction(Function desc) {
     // TODO: remove this from persistent store.
-    synchronized (functions_) {
+    synchronized (functionsLock_) {
       Function fn = getFunction(desc, Function.CompareMode.IS_INDISTINGUISHABLE);
       if (fn == null) return null;
-      List<Function> fns = functions_.get(desc.functionName());
-      Preconditions.checkNotNull(fns);
+      Map<String, List<Function>> newFunctions =
+          Maps.newHashMap(functions_.functions);
+      List<Function> fns = Lists.newArrayList(newFunctions.get(desc.functionName()));
       fns.remove(fn);
-      if (fns.isEmpty()) functions_.remove(desc.functionName());
+      if (fns.isEmpty()) {
+        newFunctions.remove(desc.functionName());
+      } else {
+        newFunctions.put(desc.functionName(), fns);
+      }
+      functions_ = new FunctionRegistry(newFunctions);
       return fn;
     }
   }
@@ -234,7 +344,7 @@ public class Db implements CatalogObject {
    * TODO: Move away from using signature strings and instead use Function IDs.
    */
   public Function removeFunction(String signatureStr) {
-    synchronized (functions_) {
+    synchronized (functionsLock_) {
       Function targetFn = getFunction(signatureStr);
       if (targetFn != null) return removeFunction(targetFn);
     }
@@ -263,22 +373,36 @@ public class Db implements CatalogObject {
   }
 
   /**
-   * Adds a builtin to this database. The function must not already exist.
+   * Adds a builtin to this database. The function must not already exist. The builtin
+   * only becomes visible when publishBuiltins() is called, so that all builtins are
+   * added with a single update.
    */
   public void addBuiltin(Function fn) {
     Preconditions.checkState(isSystemDb());
     Preconditions.checkState(fn != null);
-    Preconditions.checkState(getFunction(fn, CompareMode.IS_INDISTINGUISHABLE) == null);
-    addFunction(fn);
+    synchronized (functionsLock_) {
+      pendingBuiltins_.add(fn);
+    }
+  }
+
+  /**
+   * Makes the builtins added with addBuiltin() visible.
+   */
+  public void publishBuiltins() {
+    synchronized (functionsLock_) {
+      List<Function> rejectedFns = addFunctions(pendingBuiltins_);
+      Preconditions.checkState(rejectedFns.isEmpty(),
+          "Builtins already exist: " + rejectedFns);
+      pendingBuiltins_.clear();
+    }
   }
 
   /**
    * Returns a map of functionNames to list of (overloaded) functions with that name.
-   * This is not thread safe so a higher level lock must be taken while iterating
-   * over the returned functions.
+   * The returned map is an immutable snapshot and can be iterated without locking.
    */
-  protected HashMap<String, List<Function>> getAllFunctions() {
-    return functions_;
+  protected Map<String, List<Function>> getAllFunctions() {
+    return functions_.functions;
   }
 
   /**
@@ -286,12 +410,10 @@ public class Db implements CatalogObject {
    */
   public List<Function> getFunctions(Pattern p) {
     List<Function> functions = Lists.newArrayList();
-    synchronized (functions_) {
-      for (Map.Entry<String, List<Function>> fns: functions_.entrySet()) {
-        if (p.matcher(fns.getKey()).matches()) {
-          for (Function fn: fns.getValue()) {
-            if (fn.userVisible()) functions.add(fn);
-          }
+    for (Map.Entry<String, List<Function>> fns: functions_.functions.entrySet()) {
+      if (p.matcher(fns.getKey()).matches()) {
+        for (Function fn: fns.getValue()) {
+          if (fn.userVisible()) functions.add(fn);
         }
       }
     }
@@ -0,0 +1,275 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.log4j.Logger;
+
+import com.cloudera.impala.common.Pair;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Caches the region boundaries, locations and sampled sizes of HBase tables, so that
+ * planning a scan of an HBase table only requires in-memory lookups instead of
+ * listing and sampling every region of the scanned key range.
+ *
+ * The stats of a table are loaded on the calling thread the first time they are
+ * requested. Once they are older than the TTL, the next request returns the stale stats
+ * and schedules a refresh on the refresh executor. At most one load of the stats of a
+ * table is in flight at any time. Thread safe.
+ */
+public class HBaseRegionStatsCache {
+  private static final Logger LOG = Logger.getLogger(HBaseRegionStatsCache.class);
+
+  /**
+   * Loads the region stats of an HBase table.
+   */
+  public interface Loader {
+    TableRegionStats load(String hbaseTableName) throws IOException;
+  }
+
+  /**
+   * The location and sampled stats of a single region.
+   */
+  public static class RegionStats {
+    // Start key (inclusive) and end key (exclusive) of the region. Empty for the
+    // first and last region of the table, respectively.
+    private final byte[] startKey_;
+    private final byte[] endKey_;
+    // Host and port of the region server hosting the region.
+    private final String hostname_;
+    private final int port_;
+    // Size of the region's files on HDFS in bytes.
+    private final long hdfsSize_;
+    // Number of rows read from the start of the region and their total size in bytes.
+    private final long sampledRowCount_;
+    private final long sampledRowSize_;
+
+    public RegionStats(byte[] startKey, byte[] endKey, String hostname, int port,
+        long hdfsSize, long sampledRowCount, long sampledRowSize) {
+      Preconditions.checkNotNull(startKey);
+      Preconditions.checkNotNull(endKey);
+      startKey_ = startKey;
+      endKey_ = endKey;
+      hostname_ = hostname;
+      port_ = port;
+      hdfsSize_ = hdfsSize;
+      sampledRowCount_ = sampledRowCount;
+      sampledRowSize_ = sampledRowSize;
+    }
+
+    public byte[] getStartKey() { return startKey_; }
+    public byte[] getEndKey() { return endKey_; }
+    public String getHostname() { return hostname_; }
+    public String getHostnamePort() { return hostname_ + ":" + port_; }
+    public long getHdfsSize() { return hdfsSize_; }
+  }
+
+  /**
+   * Immutable snapshot of the region stats of an HBase table.
+   */
+  public static class TableRegionStats {
+    // Sorted by start key. The regions cover the whole key space of the table.
+    private final ImmutableList<RegionStats> regions_;
+    // True if any column family of the table is compressed.
+    private final boolean isCompressed_;
+    // Time at which the stats were loaded, in milliseconds.
+    private final long loadTimeMs_;
+
+    public TableRegionStats(List<RegionStats> regions, boolean isCompressed,
+        long loadTimeMs) {
+      Preconditions.checkArgument(!regions.isEmpty());
+      regions_ = ImmutableList.copyOf(regions);
+      isCompressed_ = isCompressed;
+      loadTimeMs_ = loadTimeMs;
+    }
+
+    public List<RegionStats> getRegions() { return regions_; }
+    public long getLoadTimeMs() { return loadTimeMs_; }
+
+    /**
+     * Returns the regions that contain the keys between startKey (inclusive) and
+     * endKey (exclusive), sorted by start key. An empty endKey denotes the end of the
+     * table. Always returns at least the region containing startKey, like
+     * HBaseTable.getRegionsInRange().
+     */
+    public List<RegionStats> getRegionsInRange(byte[] startKey, byte[] endKey) {
+      boolean endKeyIsEndOfTable = Bytes.equals(endKey, HConstants.EMPTY_END_ROW);
+      if ((Bytes.compareTo(startKey, endKey) > 0) && !endKeyIsEndOfTable) {
+        throw new IllegalArgumentException("Invalid range: " +
+            Bytes.toStringBinary(startKey) + " > " + Bytes.toStringBinary(endKey));
+      }
+      // Binary search for the last region that starts at or before startKey.
+      int lo = 0;
+      int hi = regions_.size() - 1;
+      while (lo < hi) {
+        int mid = (lo + hi + 1) >>> 1;
+        if (Bytes.compareTo(regions_.get(mid).startKey_, startKey) <= 0) {
+          lo = mid;
+        } else {
+          hi = mid - 1;
+        }
+      }
+      int end = lo + 1;
+      if (endKeyIsEndOfTable) {
+        end = regions_.size();
+      } else {
+        while (end < regions_.size() &&
+            Bytes.compareTo(regions_.get(end).startKey_, endKey) < 0) {
+          ++end;
+        }
+      }
+      return regions_.subList(lo, end);
+    }
+
+    /**
+     * Returns the estimated number of rows (first) and the estimated row size in bytes
+     * (second) of the regions between startKey and endKey, as documented in
+     * HBaseTable.getEstimatedRowStats().
+     */
+    public Pair<Long, Long> getEstimatedRowStats(byte[] startKey, byte[] endKey) {
+      return estimateRowStats(getRegionsInRange(startKey, endKey));
+    }
+
+    /**
+     * Returns the estimated number of rows and row size of the given regions.
+     */
+    public Pair<Long, Long> estimateRowStats(List<RegionStats> regions) {
+      long rowSize = 0;
+      long rowCount = 0;
+      long hdfsSize = 0;
+      for (RegionStats region: regions) {
+        hdfsSize += region.hdfsSize_;
+        rowCount += region.sampledRowCount_;
+        rowSize += region.sampledRowSize_;
+      }
+
+      // If there are no rows then no need to estimate.
+      if (rowCount == 0) return new Pair<Long, Long>(0L, 0L);
+
+      // if something went wrong then set a signal value.
+      if (rowSize <= 0 || hdfsSize <= 0) return new Pair<Long, Long>(-1L, -1L);
+
+      // estimate the number of rows.
+      double bytesPerRow = rowSize / (double) rowCount;
+      long estimatedRowCount =
+          (long) ((isCompressed_ ? 2 : 1) * (hdfsSize / bytesPerRow));
+      return new Pair<Long, Long>(estimatedRowCount, (long) bytesPerRow);
+    }
+  }
+
+  // Default time after which the cached stats of a table are refreshed.
+  public static final long DEFAULT_TTL_MS = 5 * 60 * 1000L;
+
+  private final Loader loader_;
+  private final long ttlMs_;
+  private final Executor refreshExecutor_;
+
+  // Cached stats, keyed by HBase table name.
+  private final ConcurrentHashMap<String, TableRegionStats> stats_ =
+      new ConcurrentHashMap<String, TableRegionStats>();
+
+  // Loads that are in flight, keyed by HBase table name. Used to prevent duplicate
+  // loads of the same table.
+  private final ConcurrentHashMap<String, FutureTask<TableRegionStats>> loadingTables_ =
+      new ConcurrentHashMap<String, FutureTask<TableRegionStats>>();
+
+  public HBaseRegionStatsCache(Loader loader, long ttlMs, Executor refreshExecutor) {
+    Preconditions.checkNotNull(loader);
+    Preconditions.checkArgument(ttlMs >= 0);
+    loader_ = loader;
+    ttlMs_ = ttlMs;
+    refreshExecutor_ = refreshExecutor;
+  }
+
+  /**
+   * Returns the region stats of the given HBase table. Only blocks if the stats of the
+   * table have not been loaded yet. Stale stats are returned as is and refreshed in
+   * the background.
+   */
+  public TableRegionStats get(String hbaseTableName) throws IOException {
+    TableRegionStats stats = stats_.get(hbaseTableName);
+    if (stats == null) return load(hbaseTableName);
+    if (System.currentTimeMillis() - stats.getLoadTimeMs() >= ttlMs_) {
+      Pair<FutureTask<TableRegionStats>, Boolean> load = startLoad(hbaseTableName);
+      if (load.second) refreshExecutor_.execute(load.first);
+    }
+    return stats;
+  }
+
+  /**
+   * Loads the region stats of the given HBase table, waiting for the load to finish.
+   * If a load of the table is already in flight, waits for that load instead.
+   */
+  public TableRegionStats load(String hbaseTableName) throws IOException {
+    Pair<FutureTask<TableRegionStats>, Boolean> load = startLoad(hbaseTableName);
+    // Run new loads on the calling thread, so concurrent callers never wait for the
+    // refresh executor.
+    if (load.second) load.first.run();
+    try {
+      return load.first.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while loading the HBase region stats of " +
+          "table: " + hbaseTableName, e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+      throw new IOException("Failed to load the HBase region stats of table: " +
+          hbaseTableName, e.getCause());
+    }
+  }
+
+  /**
+   * Returns the load of the given table that is in flight, or creates a new one. The
+   * second value is true if a new load was created and must be run by the caller.
+   */
+  private Pair<FutureTask<TableRegionStats>, Boolean> startLoad(
+      final String hbaseTableName) {
+    FutureTask<TableRegionStats> loadTask = new FutureTask<TableRegionStats>(
+        new Callable<TableRegionStats>() {
+          @Override
+          public TableRegionStats call() throws Exception {
+            try {
+              TableRegionStats stats = loader_.load(hbaseTableName);
+              stats_.put(hbaseTableName, stats);
+              return stats;
+            } catch (Exception e) {
+              LOG.error("Error loading the HBase region stats of table: " +
+                  hbaseTableName, e);
+              throw e;
+            }
+          }
+        }) {
+      @Override
+      protected void done() { loadingTables_.remove(hbaseTableName, this); }
+    };
+    FutureTask<TableRegionStats> existingTask =
+        loadingTables_.putIfAbsent(hbaseTableName, loadTask);
+    if (existingTask != null) {
+      return new Pair<FutureTask<TableRegionStats>, Boolean>(existingTask, false);
+    }
+    return new Pair<FutureTask<TableRegionStats>, Boolean>(loadTask, true);
+  }
+}
@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -44,6 +45,8 @@ import org.apache.hadoop.hive.metastore.api.MetaException;
 import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.log4j.Logger;
 
+import com.cloudera.impala.catalog.HBaseRegionStatsCache.RegionStats;
+import com.cloudera.impala.catalog.HBaseRegionStatsCache.TableRegionStats;
 import com.cloudera.impala.common.Pair;
 import com.cloudera.impala.thrift.TCatalogObjectType;
 import com.cloudera.impala.thrift.TColumn;
@@ -55,6 +58,8 @@ import com.cloudera.impala.thrift.TTableDescriptor;
 import com.cloudera.impala.thrift.TTableType;
 import com.cloudera.impala.util.TResultRowBuilder;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Impala representation of HBase table metadata,
@@ -74,6 +79,8 @@ public class HBaseTable extends Table {
   // Copied from Hive's HBaseStorageHandler.java.
   public static final String DEFAULT_PREFIX = "default.";
   public static final int ROW_COUNT_ESTIMATE_BATCH_SIZE = 10;
+  // Number of threads that refresh the cached region stats in the background.
+  private static final int REGION_STATS_NUM_REFRESH_THREADS = 2;
 
   // Column referring to HBase row key.
   // Hive (including metastore) currently doesn't support composite HBase keys.
@@ -94,6 +101,22 @@ public class HBaseTable extends Table {
 
   private HTable hTable_ = null;
 
+  // Region stats of all HBase tables, shared by all table instances of this process
+  // and keyed by HBase table name. Stale stats are refreshed by a small pool of daemon
+  // threads.
+  private static final HBaseRegionStatsCache regionStatsCache_ =
+      new HBaseRegionStatsCache(new HBaseRegionStatsCache.Loader() {
+          @Override
+          public TableRegionStats load(String hbaseTableName) throws IOException {
+            return loadRegionStats(hbaseTableName);
+          }
+        }, HBaseRegionStatsCache.DEFAULT_TTL_MS,
+        Executors.newFixedThreadPool(REGION_STATS_NUM_REFRESH_THREADS,
+            new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("HBaseRegionStatsRefreshThread-%d")
+            .build()));
+
   protected HBaseTable(TableId id, org.apache.hadoop.hive.metastore.api.Table msTbl,
       Db db, String name, String owner) {
     super(id, msTbl, db, name, owner);
@@ -293,9 +316,9 @@ public class HBaseTable extends Table {
             hbaseColumnQualifiers.get(i), hbaseColumnBinaryEncodings.get(i),
             t, s.getComment(), -1);
         tmpCols.add(col);
-        // Load column stats from the Hive metastore into col.
-        loadColumnStats(col, client);
       }
+      // Load column stats from the Hive metastore into the columns.
+      loadColumnStats(tmpCols, client);
 
       // HBase columns are ordered by columnFamily,columnQualifier,
       // so the final position depends on the other mapped HBase columns.
@@ -358,45 +381,63 @@ public class HBaseTable extends Table {
    * startRowKey and endRowKey. The more store files there are the more this will be off.
    * Also, this does not take into account any rows that are in the memstore.
    *
-   * The values computed here should be cached so that in high qps workloads
-   * the nn is not overwhelmed.  Could be done in load(); Synchronized to make
-   * sure that only one thread at a time is using the htable.
+   * The estimate is computed from the cached region stats of the table (see
+   * HBaseRegionStatsCache), so in high qps workloads the nn and the region servers are
+   * not overwhelmed. Returns -1 for both values if the stats could not be loaded.
    *
    * @param startRowKey First row key in the range
    * @param endRowKey Last row key in the range
    * @return The estimated number of rows in the regions between the row keys (first) and
    * the estimated row size in bytes (second).
    */
-  public synchronized Pair<Long, Long> getEstimatedRowStats(byte[] startRowKey,
-      byte[] endRowKey) {
+  public Pair<Long, Long> getEstimatedRowStats(byte[] startRowKey, byte[] endRowKey) {
     Preconditions.checkNotNull(startRowKey);
     Preconditions.checkNotNull(endRowKey);
+    try {
+      return getRegionStats().getEstimatedRowStats(startRowKey, endRowKey);
+    } catch (IOException ioe) {
+      // Print the stack trace, but we'll ignore it
+      // as this is just an estimate.
+      // TODO: Put this into the per query log.
+      LOG.error("Error computing HBase row count estimate", ioe);
+      return new Pair<Long, Long>(-1L, -1L);
+    }
+  }
 
-    long rowSize  = 0;
-    long rowCount = 0;
-    long hdfsSize = 0;
-    boolean isCompressed = false;
+  /**
+   * Returns the cached region stats of this table. Only blocks if the stats have not
+   * been loaded yet.
+   */
+  public TableRegionStats getRegionStats() throws IOException {
+    return regionStatsCache_.get(hbaseTableName_);
+  }
 
+  /**
+   * Lists the regions of the given HBase table, and samples the size on hdfs and the
+   * first rows of each region.
+   */
+  private static TableRegionStats loadRegionStats(String hbaseTableName)
+      throws IOException {
+    long loadTimeMs = System.currentTimeMillis();
+    HTable hTable = new HTable(hbaseConf_, hbaseTableName);
     try {
       // Check to see if things are compressed.
       // If they are we'll estimate a compression factor.
-      HColumnDescriptor[] families =
-          hTable_.getTableDescriptor().getColumnFamilies();
+      boolean isCompressed = false;
+      HColumnDescriptor[] families = hTable.getTableDescriptor().getColumnFamilies();
       for (HColumnDescriptor desc: families) {
         isCompressed |= desc.getCompression() != Compression.Algorithm.NONE;
       }
 
-      // For every region in the range.
-      List<HRegionLocation> locations =
-          getRegionsInRange(hTable_, startRowKey, endRowKey);
-      for(HRegionLocation location: locations) {
-        long currentHdfsSize = 0;
-        long currentRowSize  = 0;
-        long currentRowCount = 0;
-
+      List<RegionStats> regions = Lists.newArrayList();
+      List<HRegionLocation> locations = getRegionsInRange(hTable,
+          HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW);
+      for (HRegionLocation location: locations) {
         HRegionInfo info = location.getRegionInfo();
         // Get the size on hdfs
-        currentHdfsSize += getHdfsSize(info);
+        long hdfsSize = getHdfsSize(hbaseTableName, info);
+        long rowSize  = 0;
+        long rowCount = 0;
 
         Scan s = new Scan(info.getStartKey());
         // Get a small sample of rows
@@ -408,17 +449,17 @@ public class HBaseTable extends Table {
         s.setCacheBlocks(false);
         // Try and get deletes too so their size can be counted.
         s.setRaw(true);
-        ResultScanner rs = hTable_.getScanner(s);
+        ResultScanner rs = hTable.getScanner(s);
         try {
           // And get the the ROW_COUNT_ESTIMATE_BATCH_SIZE fetched rows
           // for a representative sample
           for (int i = 0; i < ROW_COUNT_ESTIMATE_BATCH_SIZE; i++) {
             Result r = rs.next();
             if (r == null) break;
-            currentRowCount += 1;
+            rowCount += 1;
             for (KeyValue kv : r.list()) {
               // some extra row size added to make up for shared overhead
-              currentRowSize += kv.getRowLength() // row key
+              rowSize += kv.getRowLength() // row key
                   + 4 // row key length field
                   + kv.getFamilyLength() // Column family bytes
                   + 4  // family length field
@@ -429,42 +470,29 @@ public class HBaseTable extends Table {
                   + 10; // extra overhead for hfile index, checksums, metadata, etc
             }
           }
-          // add these values to the cumulative totals in one shot just
-          // in case there was an error in between getting the hdfs
-          // size and the row/column sizes.
-          hdfsSize += currentHdfsSize;
-          rowCount += currentRowCount;
-          rowSize  += currentRowSize;
         } finally {
           rs.close();
         }
+        regions.add(new RegionStats(info.getStartKey(), info.getEndKey(),
+            location.getHostname(), location.getPort(), hdfsSize, rowCount, rowSize));
       }
-    } catch (IOException ioe) {
-      // Print the stack trace, but we'll ignore it
-      // as this is just an estimate.
-      // TODO: Put this into the per query log.
-      LOG.error("Error computing HBase row count estimate", ioe);
+      return new TableRegionStats(regions, isCompressed, loadTimeMs);
+    } finally {
+      hTable.close();
     }
-
-    // If there are no rows then no need to estimate.
-    if (rowCount == 0) return new Pair<Long, Long>(0L, 0L);
-
-    // if something went wrong then set a signal value.
-    if (rowSize <= 0 || hdfsSize <= 0) return new Pair<Long, Long>(-1L, -1L);
-
-    // estimate the number of rows.
-    double bytesPerRow = rowSize / (double) rowCount;
-    long estimatedRowCount = (long) ((isCompressed ? 2 : 1) * (hdfsSize / bytesPerRow));
-
-    return new Pair<Long, Long>(estimatedRowCount, (long) bytesPerRow);
   }
 
   /**
    * Returns the Hdfs size of the given region in bytes.
    */
   public long getHdfsSize(HRegionInfo info) throws IOException {
+    return getHdfsSize(hbaseTableName_, info);
+  }
+
+  private static long getHdfsSize(String hbaseTableName, HRegionInfo info)
+      throws IOException {
     Path tableDir = HTableDescriptor.getTableDir(
-        FSUtils.getRootDir(hbaseConf_), Bytes.toBytes(hbaseTableName_));
+        FSUtils.getRootDir(hbaseConf_), Bytes.toBytes(hbaseTableName));
     FileSystem fs = tableDir.getFileSystem(hbaseConf_);
     Path regionDir = tableDir.suffix("/" + info.getEncodedName());
     return fs.getContentSummary(regionDir).getLength();
@@ -584,28 +612,27 @@ public class HBaseTable extends Table {
     resultSchema.addToColumns(new TColumn("Est. #Rows", ColumnType.BIGINT.toThrift()));
     resultSchema.addToColumns(new TColumn("Size", ColumnType.STRING.toThrift()));
 
-    // TODO: Consider fancier stats maintenance techniques for speeding up this process.
-    // Currently, we list all regions and perform a mini-scan of each of them to
-    // estimate the number of rows, the data size, etc., which is rather expensive.
+    // We list all regions and perform a mini-scan of each of them to estimate the number
+    // of rows, the data size, etc., which is rather expensive. The result also refreshes
+    // the cached region stats used for planning.
     try {
       long totalNumRows = 0;
       long totalHdfsSize = 0;
-      List<HRegionLocation> regions = HBaseTable.getRegionsInRange(hTable_,
-          HConstants.EMPTY_END_ROW, HConstants.EMPTY_START_ROW);
-      for (HRegionLocation region: regions) {
+      TableRegionStats stats = regionStatsCache_.load(hbaseTableName_);
+      List<RegionStats> regions = stats.getRegions();
+      for (RegionStats region: regions) {
         TResultRowBuilder rowBuilder = new TResultRowBuilder();
-        HRegionInfo regionInfo = region.getRegionInfo();
-        Pair<Long, Long> estRowStats = getEstimatedRowStats(regionInfo.getStartKey(),
-            regionInfo.getEndKey());
+        Pair<Long, Long> estRowStats =
+            stats.estimateRowStats(Collections.singletonList(region));
 
         long numRows = estRowStats.first.longValue();
-        long hdfsSize = getHdfsSize(regionInfo);
+        long hdfsSize = region.getHdfsSize();
         totalNumRows += numRows;
         totalHdfsSize += hdfsSize;
 
         // Add the region location, start rowkey, number of rows and raw Hdfs size.
         rowBuilder.add(String.valueOf(region.getHostname()))
-            .add(Bytes.toString(regionInfo.getStartKey())).add(numRows)
+            .add(Bytes.toString(region.getStartKey())).add(numRows)
             .addBytes(hdfsSize);
         result.addToRows(rowBuilder.get());
       }
@@ -15,7 +15,10 @@
 package com.cloudera.impala.catalog;
 
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.ArrayUtils;
@@ -34,10 +37,14 @@ import com.cloudera.impala.thrift.THdfsFileBlock;
 import com.cloudera.impala.thrift.THdfsFileDesc;
 import com.cloudera.impala.thrift.THdfsPartition;
 import com.cloudera.impala.thrift.TTableStats;
+import com.google.common.base.Charsets;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 
 /**
  * Query-relevant information for one table partition. Partitions are comparable
@@ -47,49 +54,162 @@ import com.google.common.collect.Lists;
  */
 public class HdfsPartition implements Comparable<HdfsPartition> {
   /**
-   * Metadata for a single file in this partition.
-   * TODO: Do we even need this class? Just get rid of it and use the Thrift version?
+   * Metadata for a single file in this partition. The catalog may hold the metadata of
+   * tens of millions of blocks, so the metadata of the blocks of a file is stored in
+   * primitive arrays instead of as THdfsFileBlocks. The thrift representation is only
+   * created when the file descriptor is serialized (see toThrift()).
    */
   static public class FileDescriptor {
-    private final THdfsFileDesc fileDescriptor_;
-
-    public String getFileName() { return fileDescriptor_.getFile_name(); }
-    public long getFileLength() { return fileDescriptor_.getLength(); }
-    public long getModificationTime() {
-      return fileDescriptor_.getLast_modification_time();
+    private final String fileName_;
+    private final long fileLength_;
+    private final long modificationTime_;
+
+    // Offset and length of each block of the file.
+    private long[] blockOffsets_ = EMPTY_LONG_ARRAY;
+    private long[] blockLengths_ = EMPTY_LONG_ARRAY;
+
+    // The replicas of block i are replicaHostIdxs_[replicaStartIdxs_[i]] up to (but not
+    // including) replicaHostIdxs_[replicaStartIdxs_[i + 1]]. Each value is an index into
+    // the host list of the table.
+    private int[] replicaStartIdxs_ = EMPTY_REPLICA_START_IDXS;
+    private int[] replicaHostIdxs_ = EMPTY_INT_ARRAY;
+
+    // Disk id of each replica in replicaHostIdxs_, or null if no disk ids were set.
+    private short[] diskIds_;
+
+    public String getFileName() { return fileName_; }
+    public long getFileLength() { return fileLength_; }
+    public long getModificationTime() { return modificationTime_; }
+
+    public int getNumFileBlocks() { return blockOffsets_.length; }
+    public long getBlockOffset(int blockIdx) { return blockOffsets_[blockIdx]; }
+    public long getBlockLength(int blockIdx) { return blockLengths_[blockIdx]; }
+    public int getNumReplicas(int blockIdx) {
+      return replicaStartIdxs_[blockIdx + 1] - replicaStartIdxs_[blockIdx];
     }
-    public List<THdfsFileBlock> getFileBlocks() {
-      return fileDescriptor_.getFile_blocks();
+    public int getReplicaHostIdx(int blockIdx, int replicaIdx) {
+      Preconditions.checkArgument(replicaIdx < getNumReplicas(blockIdx));
+      return replicaHostIdxs_[replicaStartIdxs_[blockIdx] + replicaIdx];
     }
 
-    public THdfsFileDesc toThrift() { return fileDescriptor_; }
+    /**
+     * Returns the disk id of the given replica of the given block; -1 if the disk id is
+     * not known.
+     */
+    public int getDiskId(int blockIdx, int replicaIdx) {
+      Preconditions.checkArgument(replicaIdx < getNumReplicas(blockIdx));
+      if (diskIds_ == null) return -1;
+      return diskIds_[replicaStartIdxs_[blockIdx] + replicaIdx];
+    }
+
+    /**
+     * Returns the blocks of this file. Creates a new FileBlock object for each block;
+     * performance-sensitive callers should use the per-block accessors instead.
+     */
+    public List<FileBlock> getFileBlocks() {
+      List<FileBlock> blocks = Lists.newArrayListWithCapacity(getNumFileBlocks());
+      for (int i = 0; i < getNumFileBlocks(); ++i) {
+        int[] replicaHostIdxs = Arrays.copyOfRange(replicaHostIdxs_,
+            replicaStartIdxs_[i], replicaStartIdxs_[i + 1]);
+        int[] diskIds = null;
+        if (diskIds_ != null) {
+          diskIds = new int[replicaHostIdxs.length];
+          for (int j = 0; j < diskIds.length; ++j) {
+            diskIds[j] = diskIds_[replicaStartIdxs_[i] + j];
+          }
+        }
+        blocks.add(new FileBlock(blockOffsets_[i], blockLengths_[i], replicaHostIdxs,
+            diskIds));
+      }
+      return blocks;
+    }
 
     public FileDescriptor(String fileName, long fileLength, long modificationTime) {
       Preconditions.checkNotNull(fileName);
       Preconditions.checkArgument(fileLength >= 0);
-      fileDescriptor_ = new THdfsFileDesc();
-      fileDescriptor_.setFile_name(fileName);
-      fileDescriptor_.setLength(fileLength);
-      fileDescriptor_.setLast_modification_time(modificationTime);
-      fileDescriptor_.setCompression(
-          HdfsCompression.fromFileName(fileName).toThrift());
-      List<THdfsFileBlock> emptyFileBlockList = Lists.newArrayList();
-      fileDescriptor_.setFile_blocks(emptyFileBlockList);
-    }
-
-    private FileDescriptor(THdfsFileDesc fileDesc) {
-      this(fileDesc.getFile_name(), fileDesc.length, fileDesc.last_modification_time);
-      for (THdfsFileBlock block: fileDesc.getFile_blocks()) {
-        fileDescriptor_.addToFile_blocks(block);
+      fileName_ = fileName;
+      fileLength_ = fileLength;
+      modificationTime_ = modificationTime;
+    }
+
+    /**
+     * Sets the blocks of this file, replacing any existing blocks. Disk ids are only
+     * retained if they are set for all of the blocks.
+     */
+    public void setFileBlocks(List<FileBlock> blocks) {
+      int numReplicas = 0;
+      boolean hasDiskIds = !blocks.isEmpty();
+      for (FileBlock block: blocks) {
+        numReplicas += block.replicaHostIdxs_.length;
+        hasDiskIds &= block.diskIds_ != null;
+      }
+      blockOffsets_ = new long[blocks.size()];
+      blockLengths_ = new long[blocks.size()];
+      replicaStartIdxs_ = new int[blocks.size() + 1];
+      replicaHostIdxs_ = new int[numReplicas];
+      diskIds_ = hasDiskIds ? new short[numReplicas] : null;
+      int replicaIdx = 0;
+      for (int i = 0; i < blocks.size(); ++i) {
+        FileBlock block = blocks.get(i);
+        blockOffsets_[i] = block.offset_;
+        blockLengths_[i] = block.length_;
+        replicaStartIdxs_[i] = replicaIdx;
+        for (int j = 0; j < block.replicaHostIdxs_.length; ++j) {
+          replicaHostIdxs_[replicaIdx] = block.replicaHostIdxs_[j];
+          if (hasDiskIds) diskIds_[replicaIdx] = toShortDiskId(block.diskIds_[j]);
+          ++replicaIdx;
+        }
+      }
+      replicaStartIdxs_[blocks.size()] = replicaIdx;
+    }
+
+    /**
+     * Sets the disk ids of the replicas of the given block. The number of disk ids must
+     * match the number of replicas of the block. Disk ids of the other blocks that have
+     * not been set are unknown (-1).
+     */
+    public void setDiskIds(int blockIdx, int[] diskIds) {
+      Preconditions.checkArgument(diskIds.length == getNumReplicas(blockIdx));
+      if (diskIds_ == null) {
+        diskIds_ = new short[replicaHostIdxs_.length];
+        Arrays.fill(diskIds_, (short) -1);
+      }
+      for (int i = 0; i < diskIds.length; ++i) {
+        diskIds_[replicaStartIdxs_[blockIdx] + i] = toShortDiskId(diskIds[i]);
       }
     }
 
-    public void addFileBlock(FileBlock blockMd) {
-      fileDescriptor_.addToFile_blocks(blockMd.toThrift());
+    public THdfsFileDesc toThrift() {
+      THdfsFileDesc fileDesc = new THdfsFileDesc();
+      fileDesc.setFile_name(fileName_);
+      fileDesc.setLength(fileLength_);
+      fileDesc.setLast_modification_time(modificationTime_);
+      fileDesc.setCompression(HdfsCompression.fromFileName(fileName_).toThrift());
+      List<THdfsFileBlock> thriftBlocks =
+          Lists.newArrayListWithCapacity(getNumFileBlocks());
+      for (FileBlock block: getFileBlocks()) thriftBlocks.add(block.toThrift());
+      fileDesc.setFile_blocks(thriftBlocks);
+      return fileDesc;
     }
 
     public static FileDescriptor fromThrift(THdfsFileDesc desc) {
-      return new FileDescriptor(desc);
+      FileDescriptor fd = new FileDescriptor(desc.getFile_name(), desc.getLength(),
+          desc.getLast_modification_time());
+      List<FileBlock> blocks = Lists.newArrayListWithCapacity(desc.getFile_blocksSize());
+      for (THdfsFileBlock block: desc.getFile_blocks()) {
+        blocks.add(FileBlock.fromThrift(block));
+      }
+      fd.setFileBlocks(blocks);
+      return fd;
+    }
+
+    /**
+     * Disk ids are small, 0-based indexes. Ids that don't fit into a short are stored
+     * as unknown (-1).
+     */
+    private static short toShortDiskId(int diskId) {
+      if (diskId < Short.MIN_VALUE || diskId > Short.MAX_VALUE) return (short) -1;
+      return (short) diskId;
     }
 
     @Override
@@ -100,14 +220,29 @@ public class HdfsPartition implements Comparable<HdfsPartition> {
     }
   }
 
+  private static final long[] EMPTY_LONG_ARRAY = new long[0];
+  private static final int[] EMPTY_INT_ARRAY = new int[0];
+  private static final int[] EMPTY_REPLICA_START_IDXS = new int[] { 0 };
+
   /**
-   * File Block metadata
+   * File Block metadata. Only used to construct and to inspect the blocks of a
+   * FileDescriptor, which stores the metadata of its blocks in a compact form.
    */
   public static class FileBlock {
-    private final THdfsFileBlock fileBlock_;
-
-    private FileBlock(THdfsFileBlock fileBlock) {
-      this.fileBlock_ = fileBlock;
+    private final long offset_;
+    private final long length_;
+    private final int[] replicaHostIdxs_;
+    // Disk id of each replica; null if not set.
+    private final int[] diskIds_;
+
+    private FileBlock(long offset, long blockLength, int[] replicaHostIdxs,
+        int[] diskIds) {
+      Preconditions.checkArgument(diskIds == null ||
+          diskIds.length == replicaHostIdxs.length);
+      offset_ = offset;
+      length_ = blockLength;
+      replicaHostIdxs_ = replicaHostIdxs;
+      diskIds_ = diskIds;
     }
 
     /**
@@ -117,28 +252,14 @@ public class HdfsPartition implements Comparable<HdfsPartition> {
      * block metadata in HdfsTable. Does not fill diskIds.
      */
     public FileBlock(long offset, long blockLength, List<Integer> replicaHostIdxs) {
-      Preconditions.checkNotNull(replicaHostIdxs);
-      fileBlock_ = new THdfsFileBlock();
-      fileBlock_.setOffset(offset);
-      fileBlock_.setLength(blockLength);
-      fileBlock_.setReplica_host_idxs(replicaHostIdxs);
+      this(offset, blockLength, ArrayUtils.toPrimitive(
+          Preconditions.checkNotNull(replicaHostIdxs).toArray(new Integer[0])), null);
     }
 
-    public long getOffset() { return fileBlock_.getOffset(); }
-    public long getLength() { return fileBlock_.getLength(); }
+    public long getOffset() { return offset_; }
+    public long getLength() { return length_; }
     public List<Integer> getReplicaHostIdxs() {
-      return fileBlock_.getReplica_host_idxs();
-    }
-
-    /**
-     * Populates the given THdfsFileBlock's list of disk ids with the given disk id
-     * values. The number of disk ids must match the number of network addresses
-     * set in the file block.
-     */
-    public static void setDiskIds(int[] diskIds, THdfsFileBlock fileBlock) {
-      Preconditions.checkArgument(
-          diskIds.length == fileBlock.getReplica_host_idxs().size());
-      fileBlock.setDisk_ids(Arrays.asList(ArrayUtils.toObject(diskIds)));
+      return Arrays.asList(ArrayUtils.toObject(replicaHostIdxs_));
     }
 
     /**
@@ -146,24 +267,41 @@ public class HdfsPartition implements Comparable<HdfsPartition> {
      * disk id is not supported.
      */
     public int getDiskId(int hostIndex) {
-      if (fileBlock_.disk_ids == null) return -1;
+      if (diskIds_ == null) return -1;
       Preconditions.checkArgument(hostIndex >= 0);
-      Preconditions.checkArgument(hostIndex < fileBlock_.getDisk_idsSize());
-      return fileBlock_.getDisk_ids().get(hostIndex);
+      Preconditions.checkArgument(hostIndex < diskIds_.length);
+      return diskIds_[hostIndex];
     }
 
-    public THdfsFileBlock toThrift() { return fileBlock_; }
+    public THdfsFileBlock toThrift() {
+      THdfsFileBlock fileBlock = new THdfsFileBlock();
+      fileBlock.setOffset(offset_);
+      fileBlock.setLength(length_);
+      fileBlock.setReplica_host_idxs(getReplicaHostIdxs());
+      if (diskIds_ != null) {
+        fileBlock.setDisk_ids(Arrays.asList(ArrayUtils.toObject(diskIds_)));
+      }
+      return fileBlock;
+    }
 
     public static FileBlock fromThrift(THdfsFileBlock thriftFileBlock) {
-      return new FileBlock(thriftFileBlock);
+      int[] diskIds = null;
+      if (thriftFileBlock.isSetDisk_ids()) {
+        diskIds = ArrayUtils.toPrimitive(
+            thriftFileBlock.getDisk_ids().toArray(new Integer[0]));
+      }
+      return new FileBlock(thriftFileBlock.getOffset(), thriftFileBlock.getLength(),
+          ArrayUtils.toPrimitive(
+              thriftFileBlock.getReplica_host_idxs().toArray(new Integer[0])),
+          diskIds);
     }
 
     @Override
     public String toString() {
       return Objects.toStringHelper(this)
-          .add("offset", fileBlock_.offset)
-          .add("length", fileBlock_.length)
-          .add("#disks", fileBlock_.getDisk_idsSize())
+          .add("offset", offset_)
+          .add("length", length_)
+          .add("#disks", diskIds_ == null ? 0 : diskIds_.length)
           .toString();
     }
   }
@@ -174,6 +312,9 @@ public class HdfsPartition implements Comparable<HdfsPartition> {
   private long numRows = -1;
   private static AtomicLong partitionIdCounter = new AtomicLong();
 
+  // Hash function that determines the order in which file blocks are sampled.
+  private static final HashFunction BLOCK_SAMPLE_HASH = Hashing.murmur3_128();
+
   // A unique ID for each partition, used to identify a partition in the thrift
   // representation of a table.
   private final long id;
@@ -192,6 +333,10 @@ public class HdfsPartition implements Comparable<HdfsPartition> {
   private boolean isDirty_ = false;
   private final TAccessLevel accessLevel;
 
+  // Fingerprint of the files of this partition at the time COMPUTE INCREMENTAL STATS
+  // was last run on it, or null if the partition has no incremental stats.
+  private String incrementalStatsFingerprint_;
+
   public HdfsStorageDescriptor getInputFormatDescriptor() {
     return fileFormatDescriptor;
   }
@@ -237,6 +382,15 @@ public class HdfsPartition implements Comparable<HdfsPartition> {
   public long getId() { return id; }
   public HdfsTable getTable() { return table; }
   public void setNumRows(long numRows) { this.numRows = numRows; }
+
+  /**
+   * Returns true if this partition has incremental stats that were computed for its
+   * current files, i.e., if COMPUTE INCREMENTAL STATS does not need to scan it.
+   */
+  public boolean hasCurrentIncrementalStats() {
+    return incrementalStatsFingerprint_ != null && incrementalStatsFingerprint_.equals(
+        PartitionStatsUtil.computeFileFingerprint(fileDescriptors));
+  }
   public long getNumRows() { return numRows; }
 
   // Returns the HDFS permissions Impala has to this partition's directory - READ_ONLY,
@@ -273,6 +427,10 @@ public class HdfsPartition implements Comparable<HdfsPartition> {
     this.fileFormatDescriptor = fileFormatDescriptor;
     this.id = id;
     this.accessLevel = accessLevel;
+    if (msPartition != null) {
+      incrementalStatsFingerprint_ =
+          PartitionStatsUtil.getFingerprint(msPartition.getParameters());
+    }
     // TODO: instead of raising an exception, we should consider marking this partition
     // invalid and moving on, so that table loading won't fail and user can query other
     // partitions.
@@ -294,6 +452,43 @@ public class HdfsPartition implements Comparable<HdfsPartition> {
             msPartition.getSd().getLocation() : table.getLocation(), accessLevel);
   }
 
+  /**
+   * Returns a copy of this partition that belongs to the given table. The copy has the
+   * same id and shares this partition's file descriptors.
+   */
+  public HdfsPartition copy(HdfsTable table) {
+    HdfsPartition partition = new HdfsPartition(table, msPartition, partitionKeyValues,
+        fileFormatDescriptor, fileDescriptors, id, location, accessLevel);
+    partition.setNumRows(numRows);
+    partition.incrementalStatsFingerprint_ = incrementalStatsFingerprint_;
+    return partition;
+  }
+
+  /**
+   * Returns a copy of this partition that represents the given metastore partition.
+   * Used for partitions that were created from their thrift representation, which does
+   * not include the metastore partition.
+   */
+  public HdfsPartition copyWithMetaStorePartition(
+      org.apache.hadoop.hive.metastore.api.Partition msPartition) {
+    HdfsPartition partition = new HdfsPartition(table, msPartition, partitionKeyValues,
+        fileFormatDescriptor, fileDescriptors, id, location, accessLevel);
+    partition.setNumRows(numRows);
+    return partition;
+  }
+
+  /**
+   * Ensures that partitions created from now on are assigned ids > 'id'. Used when
+   * restoring partitions whose ids were assigned by a previous catalog server process,
+   * since partition ids must be unique within a table.
+   */
+  public static void reservePartitionId(long id) {
+    while (true) {
+      long nextId = partitionIdCounter.get();
+      if (nextId > id || partitionIdCounter.compareAndSet(nextId, id + 1)) return;
+    }
+  }
+
   public static HdfsPartition defaultPartition(
       HdfsTable table, HdfsStorageDescriptor storageDescriptor) {
     List<LiteralExpr> emptyExprList = Lists.newArrayList();
@@ -347,6 +542,91 @@ public class HdfsPartition implements Comparable<HdfsPartition> {
     return result;
   }
 
+  /**
+   * Returns a deterministic pseudo-random sample of the file blocks of this partition
+   * that contains at least 'percentBytes' percent of the bytes of the partition's
+   * blocks, as a map from each file with sampled blocks to the indexes of its sampled
+   * blocks. The blocks are ordered by a hash of their file name and offset and selected
+   * in that order, so repeated samples of an unchanged partition select the same blocks
+   * and a new file only changes the sample by the blocks it contributes.
+   */
+  public Map<FileDescriptor, BitSet> sampleFileBlocks(long percentBytes) {
+    return sampleFileBlocks(fileDescriptors, percentBytes);
+  }
+
+  /**
+   * Returns a sample of the blocks of the given files, see sampleFileBlocks(long).
+   */
+  public static Map<FileDescriptor, BitSet> sampleFileBlocks(
+      List<FileDescriptor> fileDescriptors, long percentBytes) {
+    Preconditions.checkArgument(percentBytes > 0 && percentBytes <= 100);
+    List<SampledBlock> blocks = Lists.newArrayList();
+    long totalBytes = 0;
+    for (FileDescriptor fd: fileDescriptors) {
+      for (int i = 0; i < fd.getNumFileBlocks(); ++i) {
+        long key = BLOCK_SAMPLE_HASH.newHasher()
+            .putString(fd.getFileName(), Charsets.UTF_8)
+            .putLong(fd.getBlockOffset(i))
+            .hash().asLong();
+        blocks.add(new SampledBlock(fd, i, key));
+        totalBytes += fd.getBlockLength(i);
+      }
+    }
+    Collections.sort(blocks);
+
+    Map<FileDescriptor, BitSet> sample = Maps.newIdentityHashMap();
+    long targetBytes = (long) Math.ceil(totalBytes * (percentBytes / 100.0));
+    long sampledBytes = 0;
+    for (SampledBlock block: blocks) {
+      if (sampledBytes >= targetBytes) break;
+      BitSet blockIdxs = sample.get(block.fd);
+      if (blockIdxs == null) {
+        blockIdxs = new BitSet(block.fd.getNumFileBlocks());
+        sample.put(block.fd, blockIdxs);
+      }
+      blockIdxs.set(block.blockIdx);
+      sampledBytes += block.fd.getBlockLength(block.blockIdx);
+    }
+    return sample;
+  }
+
+  /**
+   * Returns the number of bytes of the blocks in the given sample of file blocks.
+   */
+  public static long getSampledBytes(Map<FileDescriptor, BitSet> sample) {
+    long result = 0;
+    for (Map.Entry<FileDescriptor, BitSet> entry: sample.entrySet()) {
+      BitSet blockIdxs = entry.getValue();
+      for (int i = blockIdxs.nextSetBit(0); i >= 0; i = blockIdxs.nextSetBit(i + 1)) {
+        result += entry.getKey().getBlockLength(i);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * A file block and its position in the order in which blocks are sampled.
+   */
+  private static class SampledBlock implements Comparable<SampledBlock> {
+    final FileDescriptor fd;
+    final int blockIdx;
+    final long key;
+
+    SampledBlock(FileDescriptor fd, int blockIdx, long key) {
+      this.fd = fd;
+      this.blockIdx = blockIdx;
+      this.key = key;
+    }
+
+    @Override
+    public int compareTo(SampledBlock other) {
+      if (key != other.key) return key < other.key ? -1 : 1;
+      int cmp = fd.getFileName().compareTo(other.fd.getFileName());
+      if (cmp != 0) return cmp;
+      return blockIdx - other.blockIdx;
+    }
+  }
+
   @Override
   public String toString() {
     return Objects.toStringHelper(this)
@@ -404,6 +684,8 @@ public class HdfsPartition implements Comparable<HdfsPartition> {
     if (thriftPartition.isSetStats()) {
       partition.setNumRows(thriftPartition.getStats().getNum_rows());
     }
+    partition.incrementalStatsFingerprint_ =
+        thriftPartition.getIncremental_stats_fingerprint();
     return partition;
   }
 
@@ -447,6 +729,9 @@ public class HdfsPartition implements Comparable<HdfsPartition> {
     thriftHdfsPart.setLocation(location);
     thriftHdfsPart.setStats(new TTableStats(numRows));
     thriftHdfsPart.setAccess_level(accessLevel);
+    if (incrementalStatsFingerprint_ != null) {
+      thriftHdfsPart.setIncremental_stats_fingerprint(incrementalStatsFingerprint_);
+    }
     if (includeFileDescriptorMetadata) {
       // Add block location information
       for (FileDescriptor fd: fileDescriptors) {
@@ -0,0 +1,166 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.cloudera.impala.thrift.ImpalaInternalServiceConstants;
+import com.cloudera.impala.thrift.THdfsPartitionDelta;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Tracks the partition-level changes made to an HdfsTable in the catalog server since
+ * a complete version of the table (the base version) was last sent in a catalog update.
+ * While a table only changes at the partition level, e.g., by ALTER TABLE ADD/DROP
+ * PARTITION, INSERT or REFRESH, the catalog server sends these changes as a
+ * THdfsPartitionDelta instead of re-sending the complete table, and the impalads apply
+ * them to their cached version of the table (see HdfsTable.createFromPartitionDelta()).
+ *
+ * The delta is cumulative, i.e., it covers all changes since the base version, so it can
+ * be applied to any version of the table the impalads may have cached.
+ * Partitions are identified by their names rather than by their ids because reloading
+ * a table assigns new ids to all of its partitions.
+ * Immutable.
+ */
+public class HdfsPartitionDelta {
+  // Catalog version of the complete table this delta is relative to.
+  private final long baseCatalogVersion_;
+
+  // Names of the partitions that were added or modified since the base version.
+  private final Set<String> modifiedPartitionNames_;
+
+  // Names of the partitions that were dropped since the base version.
+  private final Set<String> droppedPartitionNames_;
+
+  /**
+   * Creates an empty delta relative to the table at the given catalog version.
+   */
+  public HdfsPartitionDelta(long baseCatalogVersion) {
+    this(baseCatalogVersion, Collections.<String>emptySet(),
+        Collections.<String>emptySet());
+  }
+
+  private HdfsPartitionDelta(long baseCatalogVersion,
+      Set<String> modifiedPartitionNames, Set<String> droppedPartitionNames) {
+    baseCatalogVersion_ = baseCatalogVersion;
+    modifiedPartitionNames_ = modifiedPartitionNames;
+    droppedPartitionNames_ = droppedPartitionNames;
+  }
+
+  public long getBaseCatalogVersion() { return baseCatalogVersion_; }
+  public int getNumModifiedPartitions() { return modifiedPartitionNames_.size(); }
+
+  /**
+   * Returns a new delta that covers the changes of this delta followed by the changes
+   * from 'oldTbl' to 'newTbl', where 'oldTbl' is the table this delta was tracked for
+   * and 'newTbl' is a reloaded version of it. Returns null if the changes cannot be
+   * expressed as partition-level changes because the partitioning of the table changed.
+   */
+  public HdfsPartitionDelta addChanges(HdfsTable oldTbl, HdfsTable newTbl) {
+    if (!hasSamePartitioning(oldTbl, newTbl)) return null;
+    Map<String, HdfsPartition> oldPartitions = Maps.newHashMap();
+    for (HdfsPartition partition: oldTbl.getPartitions()) {
+      if (isDefaultPartition(partition)) continue;
+      oldPartitions.put(partition.getPartitionName(), partition);
+    }
+
+    Set<String> modifiedPartitionNames = Sets.newHashSet(modifiedPartitionNames_);
+    Set<String> droppedPartitionNames = Sets.newHashSet(droppedPartitionNames_);
+    for (HdfsPartition newPartition: newTbl.getPartitions()) {
+      if (isDefaultPartition(newPartition)) continue;
+      String partitionName = newPartition.getPartitionName();
+      HdfsPartition oldPartition = oldPartitions.remove(partitionName);
+      if (oldPartition != null && isUnchanged(oldPartition, newPartition)) continue;
+      modifiedPartitionNames.add(partitionName);
+      droppedPartitionNames.remove(partitionName);
+    }
+    // The remaining old partitions no longer exist.
+    for (String partitionName: oldPartitions.keySet()) {
+      modifiedPartitionNames.remove(partitionName);
+      droppedPartitionNames.add(partitionName);
+    }
+    return new HdfsPartitionDelta(baseCatalogVersion_, modifiedPartitionNames,
+        droppedPartitionNames);
+  }
+
+  /**
+   * Returns the thrift representation of this delta for the given table, which must be
+   * the table this delta was tracked for. Includes the table-level metadata and the
+   * added/modified partitions of the table.
+   */
+  public THdfsPartitionDelta toThrift(HdfsTable tbl) {
+    List<HdfsPartition> partitions = Lists.newArrayList();
+    for (HdfsPartition partition: tbl.getPartitions()) {
+      if (isDefaultPartition(partition) ||
+          modifiedPartitionNames_.contains(partition.getPartitionName())) {
+        partitions.add(partition);
+      }
+    }
+    return new THdfsPartitionDelta(baseCatalogVersion_, tbl.toThrift(partitions),
+        Lists.newArrayList(droppedPartitionNames_));
+  }
+
+  /**
+   * Returns true if both tables have the same partition columns and represent NULL
+   * partition-key values the same way, in which case partitions with the same name
+   * have the same partition-key values.
+   */
+  private static boolean hasSamePartitioning(HdfsTable oldTbl, HdfsTable newTbl) {
+    if (oldTbl.getNumClusteringCols() != newTbl.getNumClusteringCols()) return false;
+    if (!oldTbl.getNullPartitionKeyValue().equals(newTbl.getNullPartitionKeyValue())) {
+      return false;
+    }
+    for (int i = 0; i < oldTbl.getNumClusteringCols(); ++i) {
+      Column oldCol = oldTbl.getColumns().get(i);
+      Column newCol = newTbl.getColumns().get(i);
+      if (!oldCol.getName().equals(newCol.getName()) ||
+          !oldCol.getType().equals(newCol.getType())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if the two partitions have the same thrift representation. File
+   * descriptors are compared by identity; reloading a table reuses the file descriptors
+   * of all files that did not change.
+   */
+  private static boolean isUnchanged(HdfsPartition oldPartition,
+      HdfsPartition newPartition) {
+    List<HdfsPartition.FileDescriptor> oldFds = oldPartition.getFileDescriptors();
+    List<HdfsPartition.FileDescriptor> newFds = newPartition.getFileDescriptors();
+    // Partitions that a reload shared with the old table (see HdfsTable.load()) have
+    // the same file descriptor list and metastore partition.
+    if (oldFds == newFds &&
+        oldPartition.getMetaStorePartition() == newPartition.getMetaStorePartition()) {
+      return true;
+    }
+    if (oldFds.size() != newFds.size()) return false;
+    for (int i = 0; i < oldFds.size(); ++i) {
+      if (oldFds.get(i) != newFds.get(i)) return false;
+    }
+    return oldPartition.toThrift(false).equals(newPartition.toThrift(false));
+  }
+
+  private static boolean isDefaultPartition(HdfsPartition partition) {
+    return partition.getId() == ImpalaInternalServiceConstants.DEFAULT_PARTITION_ID;
+  }
+}
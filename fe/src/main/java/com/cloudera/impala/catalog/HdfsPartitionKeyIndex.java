@@ -0,0 +1,241 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.cloudera.impala.analysis.BoolLiteral;
+import com.cloudera.impala.analysis.IntLiteral;
+import com.cloudera.impala.analysis.LiteralExpr;
+import com.cloudera.impala.analysis.NullLiteral;
+import com.cloudera.impala.analysis.StringLiteral;
+import com.cloudera.impala.thrift.ImpalaInternalServiceConstants;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Per-clustering-column index over the partition-key values of an HdfsTable, used for
+ * partition pruning without visiting every partition. For each clustering column it
+ * maintains a hash map from key value to the ids of the partitions with that value
+ * (for equality and IN predicates), a sorted map over the same sets (for range
+ * predicates), and the set of partitions whose key value is NULL.
+ *
+ * Only integer, string and boolean clustering columns are indexed. Lookups on other
+ * columns, or with literals that cannot be mapped onto the index key type, return null
+ * to indicate that the index cannot be used.
+ *
+ * The index is maintained by its HdfsTable as partitions are added during load() and
+ * loadFromThrift(), and therefore lives as long as the table object it belongs to,
+ * i.e., until the table is replaced by a new catalog version. Partitions are never
+ * removed from an index: dropping partitions produces a new version of the table,
+ * whose index is rebuilt from scratch.
+ * Not thread safe; the index must not be modified while it is being queried.
+ */
+public class HdfsPartitionKeyIndex {
+  // Orders index keys like the backend orders the corresponding values. Strings are
+  // compared by code point, which matches a byte-wise comparison of their UTF-8
+  // representation.
+  private final static Comparator<Object> KEY_COMPARATOR = new Comparator<Object>() {
+    @Override
+    @SuppressWarnings("unchecked")
+    public int compare(Object lhs, Object rhs) {
+      if (lhs instanceof String && rhs instanceof String) {
+        String l = (String) lhs;
+        String r = (String) rhs;
+        int i = 0;
+        int j = 0;
+        while (i < l.length() && j < r.length()) {
+          int lcp = l.codePointAt(i);
+          int rcp = r.codePointAt(j);
+          if (lcp != rcp) return lcp < rcp ? -1 : 1;
+          i += Character.charCount(lcp);
+          j += Character.charCount(rcp);
+        }
+        if (i < l.length()) return 1;
+        if (j < r.length()) return -1;
+        return 0;
+      }
+      return ((Comparable<Object>) lhs).compareTo(rhs);
+    }
+  };
+
+  /**
+   * Index over the values of a single clustering column.
+   */
+  private static class ColumnIndex {
+    // Java class of all index keys of this column, e.g., Long for integer columns.
+    private final Class<?> keyClass_;
+
+    // Map from key value to the ids of all partitions with that value.
+    private final Map<Object, Set<Long>> partitionIdsByValue_ = Maps.newHashMap();
+
+    // Same sets as partitionIdsByValue_, ordered by key value.
+    private final TreeMap<Object, Set<Long>> sortedPartitionIds_ =
+        new TreeMap<Object, Set<Long>>(KEY_COMPARATOR);
+
+    // Ids of all partitions with a NULL key value.
+    private final Set<Long> nullPartitionIds_ = Sets.newHashSet();
+
+    public ColumnIndex(Class<?> keyClass) { keyClass_ = keyClass; }
+  }
+
+  // One entry per clustering column; null for columns of a type that is not indexed.
+  private final ColumnIndex[] colIndexes_;
+
+  public HdfsPartitionKeyIndex(List<Column> clusteringCols) {
+    colIndexes_ = new ColumnIndex[clusteringCols.size()];
+    for (int i = 0; i < colIndexes_.length; ++i) {
+      ColumnType type = clusteringCols.get(i).getType();
+      if (type.isIntegerType()) {
+        colIndexes_[i] = new ColumnIndex(Long.class);
+      } else if (type.isStringType()) {
+        colIndexes_[i] = new ColumnIndex(String.class);
+      } else if (type.isBoolean()) {
+        colIndexes_[i] = new ColumnIndex(Boolean.class);
+      }
+    }
+  }
+
+  /**
+   * Adds the key values of the given partition to the index. The default partition is
+   * ignored.
+   */
+  public void addPartition(HdfsPartition partition) {
+    if (partition.getId() == ImpalaInternalServiceConstants.DEFAULT_PARTITION_ID) {
+      return;
+    }
+    List<LiteralExpr> keyValues = partition.getPartitionValues();
+    Preconditions.checkState(keyValues.size() == colIndexes_.length);
+    Long partitionId = Long.valueOf(partition.getId());
+    for (int i = 0; i < colIndexes_.length; ++i) {
+      ColumnIndex colIndex = colIndexes_[i];
+      if (colIndex == null) continue;
+      LiteralExpr keyValue = keyValues.get(i);
+      if (keyValue instanceof NullLiteral) {
+        colIndex.nullPartitionIds_.add(partitionId);
+        continue;
+      }
+      Object key = getIndexKey(keyValue);
+      if (key == null || key.getClass() != colIndex.keyClass_) {
+        // Should not happen since partition-key values are cast to the column type.
+        // Stop indexing this column rather than returning incomplete results.
+        colIndexes_[i] = null;
+        continue;
+      }
+      Set<Long> partitionIds = colIndex.partitionIdsByValue_.get(key);
+      if (partitionIds == null) {
+        partitionIds = Sets.newHashSet();
+        colIndex.partitionIdsByValue_.put(key, partitionIds);
+        colIndex.sortedPartitionIds_.put(key, partitionIds);
+      }
+      partitionIds.add(partitionId);
+    }
+  }
+
+  /**
+   * Returns true if lookups on the clustering column at position 'colIdx' are
+   * supported.
+   */
+  public boolean isIndexed(int colIdx) { return colIndexes_[colIdx] != null; }
+
+  /**
+   * Returns the ids of the partitions whose key value for column 'colIdx' equals
+   * 'value', or null if the index cannot answer the lookup. The returned set must not
+   * be modified.
+   */
+  public Set<Long> getPartitionIdsEq(int colIdx, LiteralExpr value) {
+    ColumnIndex colIndex = colIndexes_[colIdx];
+    if (colIndex == null) return null;
+    // Comparisons with NULL are never true.
+    if (value instanceof NullLiteral) return Sets.newHashSet();
+    Object key = getIndexKey(value);
+    if (key == null || key.getClass() != colIndex.keyClass_) return null;
+    Set<Long> partitionIds = colIndex.partitionIdsByValue_.get(key);
+    if (partitionIds == null) return Sets.newHashSet();
+    return partitionIds;
+  }
+
+  /**
+   * Returns the ids of the partitions whose key value for column 'colIdx' lies in the
+   * given range, or null if the index cannot answer the lookup. Either bound may be null
+   * to indicate an unbounded range. Partitions with NULL key values are never returned.
+   */
+  public Set<Long> getPartitionIdsInRange(int colIdx, LiteralExpr lowerBound,
+      boolean lowerInclusive, LiteralExpr upperBound, boolean upperInclusive) {
+    ColumnIndex colIndex = colIndexes_[colIdx];
+    if (colIndex == null) return null;
+    if (lowerBound instanceof NullLiteral || upperBound instanceof NullLiteral) {
+      return Sets.newHashSet();
+    }
+    Object lowerKey = null;
+    Object upperKey = null;
+    if (lowerBound != null) {
+      lowerKey = getIndexKey(lowerBound);
+      if (lowerKey == null || lowerKey.getClass() != colIndex.keyClass_) return null;
+    }
+    if (upperBound != null) {
+      upperKey = getIndexKey(upperBound);
+      if (upperKey == null || upperKey.getClass() != colIndex.keyClass_) return null;
+    }
+    if (lowerKey != null && upperKey != null) {
+      int cmp = KEY_COMPARATOR.compare(lowerKey, upperKey);
+      if (cmp > 0 || (cmp == 0 && !(lowerInclusive && upperInclusive))) {
+        return Sets.newHashSet();
+      }
+    }
+
+    NavigableMap<Object, Set<Long>> range = colIndex.sortedPartitionIds_;
+    if (lowerKey != null) range = range.tailMap(lowerKey, lowerInclusive);
+    if (upperKey != null) range = range.headMap(upperKey, upperInclusive);
+    Set<Long> result = Sets.newHashSet();
+    for (Set<Long> partitionIds: range.values()) {
+      result.addAll(partitionIds);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the ids of the partitions whose key value for column 'colIdx' is NULL, or
+   * null if the index cannot answer the lookup. The returned set must not be modified.
+   */
+  public Set<Long> getNullPartitionIds(int colIdx) {
+    ColumnIndex colIndex = colIndexes_[colIdx];
+    if (colIndex == null) return null;
+    return colIndex.nullPartitionIds_;
+  }
+
+  /**
+   * Returns the index key for the given non-NULL literal, or null if the literal cannot
+   * be indexed. String keys are unescaped since that is the value the backend compares.
+   */
+  private static Object getIndexKey(LiteralExpr literal) {
+    if (literal instanceof IntLiteral) {
+      return Long.valueOf(((IntLiteral) literal).getValue());
+    } else if (literal instanceof StringLiteral) {
+      StringLiteral stringLiteral = (StringLiteral) literal;
+      if (stringLiteral.getValue().indexOf('\\') < 0) return stringLiteral.getValue();
+      return stringLiteral.getUnescapedValue();
+    } else if (literal instanceof BoolLiteral) {
+      return Boolean.valueOf(((BoolLiteral) literal).getValue());
+    }
+    return null;
+  }
+}
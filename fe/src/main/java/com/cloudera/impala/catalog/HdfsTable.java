@@ -21,11 +21,17 @@ import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.IOUtils;
@@ -35,17 +41,21 @@ import org.apache.hadoop.fs.BlockStorageLocation;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.fs.VolumeId;
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hive.metastore.HiveMetaStoreClient;
+import org.apache.hadoop.hive.metastore.Warehouse;
 import org.apache.hadoop.hive.metastore.api.FieldSchema;
 import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
 import org.apache.hadoop.hive.serde.serdeConstants;
 import org.apache.hadoop.hive.serde2.avro.AvroSerdeUtils;
+import org.apache.thrift.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,9 +70,12 @@ import com.cloudera.impala.common.FileSystemUtil;
 import com.cloudera.impala.thrift.ImpalaInternalServiceConstants;
 import com.cloudera.impala.thrift.TAccessLevel;
 import com.cloudera.impala.thrift.TCatalogObjectType;
+import com.cloudera.impala.thrift.TCatalogSnapshotTable;
 import com.cloudera.impala.thrift.TColumn;
 import com.cloudera.impala.thrift.THdfsFileBlock;
+import com.cloudera.impala.thrift.THdfsFileDesc;
 import com.cloudera.impala.thrift.THdfsPartition;
+import com.cloudera.impala.thrift.THdfsPartitionDelta;
 import com.cloudera.impala.thrift.THdfsTable;
 import com.cloudera.impala.thrift.TNetworkAddress;
 import com.cloudera.impala.thrift.TPartitionKeyValue;
@@ -79,6 +92,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
 
 /**
  * Internal representation of table-related metadata of an hdfs-resident table.
@@ -107,6 +121,13 @@ public class HdfsTable extends Table {
 
   private final List<HdfsPartition> partitions_; // these are only non-empty partitions
 
+  // Map of partition id to partition, kept in sync with partitions_.
+  private final Map<Long, HdfsPartition> partitionMap_ = Maps.newHashMap();
+
+  // Index over the partition-key values of partitions_, used for partition pruning.
+  // Set in load() and loadFromThrift().
+  private HdfsPartitionKeyIndex partitionKeyIndex_;
+
   // Contains a list of unique datanode TNetworkAddresses, each of which contains blocks
   // of 1 or more files in this table. The network addresses are stored using IP
   // address as the host name. Each FileBlock specifies a list of indices within this
@@ -134,6 +155,17 @@ public class HdfsTable extends Table {
   // under which partition dirs are placed.
   protected String hdfsBaseDir_;
 
+  // Partition-level changes to this table since a complete version of the table was
+  // last sent in a catalog update, or null if the next catalog update needs to contain
+  // the complete table. Only used by the catalog server; only modified by the thread
+  // building catalog updates once the table was added to the catalog, see
+  // CatalogServiceCatalog.getCatalogObjects().
+  private volatile HdfsPartitionDelta partitionDelta_;
+
+  // True if this table was restored from a catalog snapshot and has not been
+  // revalidated against the metastore and the file system yet. Set in fromSnapshot().
+  private boolean restoredFromSnapshot_ = false;
+
   private final static Logger LOG = LoggerFactory.getLogger(HdfsTable.class);
 
   // Caching this configuration object makes calls to getFileSystem much quicker
@@ -199,77 +231,214 @@ public class HdfsTable extends Table {
    * Loads the file block metadata for the given collection of FileDescriptors.
    * The FileDescriptors are passed as a Map of partition location to list of
    * files that exist under that directory.
+   * The block locations of files that are contained in 'prefetchedBlockLocations' are
+   * taken from there. The block locations of the remaining files of each directory are
+   * requested in parallel on the file metadata loading pool. The results are merged
+   * into the FileDescriptors and hostMap_/hostList_ by the calling thread.
    */
-  private void loadBlockMd(Map<String, List<FileDescriptor>> fileDescriptors)
-      throws RuntimeException {
+  private void loadBlockMd(Map<String, List<FileDescriptor>> fileDescriptors,
+      final Map<FileDescriptor, BlockLocation[]> prefetchedBlockLocations)
+      throws IOException {
     LOG.debug("load block md for " + name_);
+    long startTimeMs = System.currentTimeMillis();
+
+    // Fetch the block locations of all files, one task per partition directory.
+    List<String> parentPaths = Lists.newArrayList(fileDescriptors.keySet());
+    List<Callable<List<BlockLocation[]>>> tasks =
+        Lists.newArrayListWithCapacity(parentPaths.size());
+    for (final String parentPath: parentPaths) {
+      final List<FileDescriptor> fds = fileDescriptors.get(parentPath);
+      tasks.add(new Callable<List<BlockLocation[]>>() {
+        @Override
+        public List<BlockLocation[]> call() {
+          List<BlockLocation[]> result = Lists.newArrayListWithCapacity(fds.size());
+          for (FileDescriptor fileDescriptor: fds) {
+            BlockLocation[] prefetchedLocations =
+                prefetchedBlockLocations.get(fileDescriptor);
+            if (prefetchedLocations != null) {
+              result.add(prefetchedLocations);
+              continue;
+            }
+            Path p = new Path(parentPath, fileDescriptor.getFileName());
+            try {
+              FileStatus fileStatus = DFS.getFileStatus(p);
+              // fileDescriptors should not contain directories.
+              Preconditions.checkArgument(!fileStatus.isDirectory());
+              BlockLocation[] locations =
+                  DFS.getFileBlockLocations(fileStatus, 0, fileStatus.getLen());
+              Preconditions.checkNotNull(locations);
+              result.add(locations);
+            } catch (IOException e) {
+              throw new RuntimeException("couldn't determine block locations for path '"
+                  + p + "':\n" + e.getMessage(), e);
+            }
+          }
+          return result;
+        }
+      });
+    }
+    List<List<BlockLocation[]>> results = runFileMdTasks(tasks);
 
-    // Store all BlockLocations so they can be reused when loading the disk IDs.
+    // Store all BlockLocations so they can be reused when loading the disk IDs. Must
+    // be in the same order as the iteration over fileDescriptors in loadDiskIds().
     List<BlockLocation> blockLocations = Lists.newArrayList();
+    Map<String, List<BlockLocation[]>> locationsByParentPath = Maps.newHashMap();
+    for (int i = 0; i < parentPaths.size(); ++i) {
+      locationsByParentPath.put(parentPaths.get(i), results.get(i));
+    }
 
     // loop over all files and record their block metadata, minus volume ids
     for (String parentPath: fileDescriptors.keySet()) {
-      for (FileDescriptor fileDescriptor: fileDescriptors.get(parentPath)) {
-        Path p = new Path(parentPath, fileDescriptor.getFileName());
-        BlockLocation[] locations = null;
-        try {
-          FileStatus fileStatus = DFS.getFileStatus(p);
-          // fileDescriptors should not contain directories.
-          Preconditions.checkArgument(!fileStatus.isDirectory());
-          locations = DFS.getFileBlockLocations(fileStatus, 0, fileStatus.getLen());
-          Preconditions.checkNotNull(locations);
-          blockLocations.addAll(Arrays.asList(locations));
-
-          // Loop over all blocks in the file.
-          for (BlockLocation block: locations) {
-            String[] blockHostPorts = block.getNames();
-            try {
-              blockHostPorts = block.getNames();
-            } catch (IOException e) {
-              // this shouldn't happen, getNames() doesn't throw anything
-              String errorMsg = "BlockLocation.getNames() failed:\n" + e.getMessage();
-              LOG.error(errorMsg);
-              throw new IllegalStateException(errorMsg);
-            }
+      List<FileDescriptor> fds = fileDescriptors.get(parentPath);
+      List<BlockLocation[]> fileLocations = locationsByParentPath.get(parentPath);
+      Preconditions.checkState(fds.size() == fileLocations.size());
+      for (int i = 0; i < fds.size(); ++i) {
+        FileDescriptor fileDescriptor = fds.get(i);
+        BlockLocation[] locations = fileLocations.get(i);
+        blockLocations.addAll(Arrays.asList(locations));
+        List<FileBlock> fileBlocks = Lists.newArrayListWithCapacity(locations.length);
+
+        // Loop over all blocks in the file.
+        for (BlockLocation block: locations) {
+          String[] blockHostPorts;
+          try {
+            blockHostPorts = block.getNames();
+          } catch (IOException e) {
+            // this shouldn't happen, getNames() doesn't throw anything
+            String errorMsg = "BlockLocation.getNames() failed:\n" + e.getMessage();
+            LOG.error(errorMsg);
+            throw new IllegalStateException(errorMsg);
+          }
 
-            // Now enumerate all replicas of the block, adding any unknown hosts
-            // to hostMap_/hostList_. The host ID (index in to the hostList_) for each
-            // replica is stored in replicaHostIdxs.
-            List<Integer> replicaHostIdxs = new ArrayList<Integer>(blockHostPorts.length);
-            for (int i = 0; i < blockHostPorts.length; ++i) {
-              String[] ip_port = blockHostPorts[i].split(":");
-              Preconditions.checkState(ip_port.length == 2);
-
-              TNetworkAddress network_address = new TNetworkAddress(ip_port[0],
-                  Integer.parseInt(ip_port[1]));
-
-              Integer hostIdx = hostMap_.get(network_address);
-              if (hostIdx == null) {
-                // No match was found, add a new entry for this host to the hostMap_.
-                hostList_.add(network_address);
-                hostMap_.put(network_address, hostList_.size() - 1);
-                hostIdx = hostList_.size() - 1;
-              }
-              replicaHostIdxs.add(hostIdx);
+          // Now enumerate all replicas of the block, adding any unknown hosts
+          // to hostMap_/hostList_. The host ID (index in to the hostList_) for each
+          // replica is stored in replicaHostIdxs.
+          List<Integer> replicaHostIdxs = new ArrayList<Integer>(blockHostPorts.length);
+          for (int j = 0; j < blockHostPorts.length; ++j) {
+            String[] ip_port = blockHostPorts[j].split(":");
+            Preconditions.checkState(ip_port.length == 2);
+
+            TNetworkAddress network_address = new TNetworkAddress(ip_port[0],
+                Integer.parseInt(ip_port[1]));
+
+            Integer hostIdx = hostMap_.get(network_address);
+            if (hostIdx == null) {
+              // No match was found, add a new entry for this host to the hostMap_.
+              hostList_.add(network_address);
+              hostMap_.put(network_address, hostList_.size() - 1);
+              hostIdx = hostList_.size() - 1;
             }
-            fileDescriptor.addFileBlock(
-                new FileBlock(block.getOffset(), block.getLength(), replicaHostIdxs));
+            replicaHostIdxs.add(hostIdx);
           }
-        } catch (IOException e) {
-          throw new RuntimeException("couldn't determine block locations for path '"
-              + p + "':\n" + e.getMessage(), e);
+          fileBlocks.add(
+              new FileBlock(block.getOffset(), block.getLength(), replicaHostIdxs));
         }
+        fileDescriptor.setFileBlocks(fileBlocks);
       }
     }
+    startTimeMs = recordLoadTiming("load-block-md", startTimeMs);
 
     if (SUPPORTS_VOLUME_ID) {
       LOG.trace("loading disk ids for: " + getFullName() +
           ". nodes: " + getNumNodes());
       loadDiskIds(blockLocations, fileDescriptors);
       LOG.trace("completed load of disk ids for: " + getFullName());
+      recordLoadTiming("load-disk-ids", startTimeMs);
+    }
+  }
+
+  /**
+   * Runs the given tasks on the file metadata loading pool of the catalog server and
+   * returns their results in the order of 'tasks'. The tasks are run in the calling
+   * thread if there is no such pool, i.e., if this table is not owned by a
+   * CatalogServiceCatalog. Exceptions thrown by the tasks are rethrown.
+   */
+  private <T> List<T> runFileMdTasks(List<Callable<T>> tasks) throws IOException {
+    ExecutorService pool = getFileMdLoadingPool();
+    List<T> results = Lists.newArrayListWithCapacity(tasks.size());
+    Throwable cause = null;
+    if (pool == null || tasks.size() <= 1) {
+      for (Callable<T> task: tasks) {
+        try {
+          results.add(task.call());
+        } catch (Exception e) {
+          cause = e;
+          break;
+        }
+      }
+    } else {
+      try {
+        for (Future<T> result: pool.invokeAll(tasks)) results.add(result.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        cause = e;
+      } catch (ExecutionException e) {
+        cause = e.getCause();
+      }
+    }
+    if (cause == null) return results;
+    throw rethrowFileMdTaskFailure(cause);
+  }
+
+  /**
+   * Submits the given tasks to the file metadata loading pool of the catalog server
+   * and returns their futures in the order of 'tasks', without waiting for the tasks
+   * to complete. The tasks are run in the calling thread if there is no such pool.
+   */
+  private <T> List<Future<T>> submitFileMdTasks(List<Callable<T>> tasks) {
+    ExecutorService pool = getFileMdLoadingPool();
+    List<Future<T>> results = Lists.newArrayListWithCapacity(tasks.size());
+    for (Callable<T> task: tasks) {
+      if (pool != null) {
+        results.add(pool.submit(task));
+      } else {
+        FutureTask<T> result = new FutureTask<T>(task);
+        result.run();
+        results.add(result);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Waits for a task returned by submitFileMdTasks() and returns its result.
+   * Exceptions thrown by the task are rethrown.
+   */
+  private <T> T getFileMdTaskResult(Future<T> result) throws IOException {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw rethrowFileMdTaskFailure(e);
+    } catch (ExecutionException e) {
+      throw rethrowFileMdTaskFailure(e.getCause());
     }
   }
 
+  /**
+   * Rethrows 'cause', the failure of a file metadata loading task, wrapping it into an
+   * IOException if it is a checked exception other than an IOException. Declared to
+   * return an exception so that callers can use it in a throw statement.
+   */
+  private IOException rethrowFileMdTaskFailure(Throwable cause) throws IOException {
+    if (cause instanceof IOException) throw (IOException) cause;
+    if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+    if (cause instanceof Error) throw (Error) cause;
+    throw new IOException("Failed to load file metadata for table: " + getFullName(),
+        cause);
+  }
+
+  /**
+   * Returns the file metadata loading pool of the catalog server, or null if this
+   * table is not owned by a CatalogServiceCatalog.
+   */
+  private ExecutorService getFileMdLoadingPool() {
+    if (db_ != null && db_.getParentCatalog() instanceof CatalogServiceCatalog) {
+      return ((CatalogServiceCatalog) db_.getParentCatalog()).getFileMdLoadingPool();
+    }
+    return null;
+  }
+
   /**
    * Populates disk/volume ID metadata inside FileDescriptors given a list of
    * BlockLocations. The FileDescriptors are passed as a Map of parent directory
@@ -305,7 +474,7 @@ public class HdfsTable extends Table {
     int unknownDiskIdCount = 0;
     for (String parentPath: fileDescriptors.keySet()) {
       for (FileDescriptor fileDescriptor: fileDescriptors.get(parentPath)) {
-        for (THdfsFileBlock blockMd: fileDescriptor.getFileBlocks()) {
+        for (int blockIdx = 0; blockIdx < fileDescriptor.getNumFileBlocks(); ++blockIdx) {
           VolumeId[] volumeIds = locations[locationsIdx++].getVolumeIds();
           // Convert opaque VolumeId to 0 based ids.
           // TODO: the diskId should be eventually retrievable from Hdfs when
@@ -315,7 +484,7 @@ public class HdfsTable extends Table {
             diskIds[i] = getDiskId(volumeIds[i]);
             if (diskIds[i] < 0) ++unknownDiskIdCount;
           }
-          FileBlock.setDiskIds(diskIds, blockMd);
+          fileDescriptor.setDiskIds(blockIdx, diskIds);
         }
       }
       if (unknownDiskIdCount > 0) {
@@ -334,6 +503,25 @@ public class HdfsTable extends Table {
   public TCatalogObjectType getCatalogObjectType() { return TCatalogObjectType.TABLE; }
   public List<HdfsPartition> getPartitions() { return partitions_; }
 
+  /**
+   * Returns the partition with the given id, or null if there is no such partition.
+   */
+  public HdfsPartition getPartitionById(long partitionId) {
+    return partitionMap_.get(partitionId);
+  }
+
+  /**
+   * Returns the index over the partition-key values of this table's partitions, or null
+   * if the table has not been loaded.
+   */
+  public HdfsPartitionKeyIndex getPartitionKeyIndex() { return partitionKeyIndex_; }
+
+  public boolean isRestoredFromSnapshot() { return restoredFromSnapshot_; }
+  public HdfsPartitionDelta getPartitionDelta() { return partitionDelta_; }
+  public void setPartitionDelta(HdfsPartitionDelta partitionDelta) {
+    partitionDelta_ = partitionDelta;
+  }
+
   /**
    * Returns the value Hive is configured to use for NULL partition key values.
    * Set during load.
@@ -472,26 +660,32 @@ public class HdfsTable extends Table {
       colsByPos_.add(col);
       colsByName_.put(s.getName(), col);
       ++pos;
-
-      // Load and set column stats in col.
-      loadColumnStats(col, client);
     }
+    // Load and set the column stats of all columns.
+    loadColumnStats(colsByPos_, client);
   }
 
   /**
-   * Create HdfsPartition objects corresponding to 'partitions'.
+   * Create HdfsPartition objects corresponding to the partitions in
+   * 'msPartitionBatches'. The batches are processed in order: the directories of a
+   * batch are listed as soon as it has been fetched, and its partitions are built while
+   * the next batch is being fetched and listed.
    *
    * If there are no partitions in the Hive metadata, a single partition is added with no
    * partition keys.
    *
    * For files that have not been changed, reuses file descriptors from oldFileDescMap.
+   * The partitions in 'unchangedPartitions' belong to a cached version of this table and
+   * are added to this table as they are, without listing their directories.
    */
   private void loadPartitions(
-      List<org.apache.hadoop.hive.metastore.api.Partition> msPartitions,
+      List<Future<List<org.apache.hadoop.hive.metastore.api.Partition>>>
+          msPartitionBatches,
       org.apache.hadoop.hive.metastore.api.Table msTbl,
-      Map<String, List<FileDescriptor>> oldFileDescMap) throws IOException,
-      CatalogException {
-    partitions_.clear();
+      Map<String, List<FileDescriptor>> oldFileDescMap,
+      List<HdfsPartition> unchangedPartitions) throws IOException,
+      CatalogException, TException {
+    resetPartitions();
     hdfsBaseDir_ = msTbl.getSd().getLocation();
 
     // Map of parent path to a list of new/modified FileDescriptors. FileDescriptors
@@ -499,6 +693,10 @@ public class HdfsTable extends Table {
     // to speedup the incremental refresh of a table's metadata by skipping unmodified,
     // previously loaded FileDescriptors.
     Map<String, List<FileDescriptor>> fileDescsToLoad = Maps.newHashMap();
+    // Block locations of FileDescriptors in fileDescsToLoad that were already returned
+    // by the directory listing.
+    Map<FileDescriptor, BlockLocation[]> prefetchedBlockLocations =
+        Maps.newIdentityHashMap();
 
     // INSERT statements need to refer to this if they try to write to new partitions
     // Scans don't refer to this because by definition all partitions they refer to
@@ -506,17 +704,18 @@ public class HdfsTable extends Table {
     addDefaultPartition(msTbl.getSd());
 
     if (msTbl.getPartitionKeysSize() == 0) {
-      Preconditions.checkArgument(msPartitions == null || msPartitions.isEmpty());
+      Preconditions.checkArgument(msPartitionBatches.isEmpty());
+      Preconditions.checkArgument(unchangedPartitions.isEmpty());
       // This table has no partition key, which means it has no declared partitions.
       // We model partitions slightly differently to Hive - every file must exist in a
       // partition, so add a single partition with no keys which will get all the
       // files in the table's root directory.
-      addPartition(msTbl.getSd(), null,
-          new ArrayList<LiteralExpr>(), oldFileDescMap, fileDescsToLoad);
       Path location = new Path(hdfsBaseDir_);
-      if (DFS.exists(location)) {
-        accessLevel_ = getAvailableAccessLevel(location);
-      }
+      PartitionDirListing listing =
+          listPartitionDirs(Lists.newArrayList(location), oldFileDescMap).get(0);
+      addPartition(msTbl.getSd(), null, new ArrayList<LiteralExpr>(), listing,
+          oldFileDescMap, fileDescsToLoad, prefetchedBlockLocations);
+      if (listing.exists()) accessLevel_ = listing.accessLevel;
     } else {
       // keep track of distinct partition key values and how many nulls there are
       Set<String>[] uniquePartitionKeys = new HashSet[numClusteringCols_];
@@ -526,46 +725,50 @@ public class HdfsTable extends Table {
         numNullKeys[i] = 0;
       }
 
-      for (org.apache.hadoop.hive.metastore.api.Partition msPartition: msPartitions) {
-        // load key values
-        List<LiteralExpr> keyValues = Lists.newArrayList();
-        int i = 0;
-        for (String partitionKey: msPartition.getValues()) {
-          uniquePartitionKeys[i].add(partitionKey);
-          // Deal with Hive's special NULL partition key.
-          if (partitionKey.equals(nullPartitionKeyValue_)) {
-            keyValues.add(new NullLiteral());
-            ++numNullKeys[i];
-          } else {
-            ColumnType type = colsByPos_.get(keyValues.size()).getType();
-            try {
-              Expr expr = LiteralExpr.create(partitionKey, type);
-              // Force the literal to be of type declared in the metadata.
-              expr = expr.castTo(type);
-              keyValues.add((LiteralExpr) expr);
-            } catch (Exception ex) {
-              LOG.warn("Failed to create literal expression of type: " + type, ex);
-              throw new InvalidStorageDescriptorException(ex);
-            }
-          }
-          ++i;
+      // Start listing the directories of the partitions of each batch in parallel as
+      // soon as the batch has been fetched, and build the partitions of the previous
+      // batch while they are being listed. Listing the directories and building the
+      // partitions thus overlap with fetching the remaining batches from the metastore.
+      List<org.apache.hadoop.hive.metastore.api.Partition> prevBatchPartitions = null;
+      List<Future<PartitionDirListing>> prevBatchListings = null;
+      for (Future<List<org.apache.hadoop.hive.metastore.api.Partition>> batch:
+           msPartitionBatches) {
+        long startTimeMs = System.currentTimeMillis();
+        List<org.apache.hadoop.hive.metastore.api.Partition> batchPartitions =
+            MetaStoreUtil.getPartitionBatch(batch);
+        recordLoadTiming("fetch-partitions", startTimeMs);
+        List<Path> partDirPaths = Lists.newArrayListWithCapacity(batchPartitions.size());
+        for (org.apache.hadoop.hive.metastore.api.Partition msPartition:
+             batchPartitions) {
+          partDirPaths.add(new Path(msPartition.getSd().getLocation()));
         }
-        HdfsPartition partition = addPartition(msPartition.getSd(), msPartition,
-            keyValues, oldFileDescMap, fileDescsToLoad);
-        // If the partition is null, its HDFS path does not exist, and it was not added to
-        // this table's partition list. Skip the partition.
-        if (partition == null) continue;
-
-        if (msPartition.getParameters() != null) {
-          partition.setNumRows(getRowCount(msPartition.getParameters()));
+        List<Future<PartitionDirListing>> batchListings =
+            startListPartitionDirs(partDirPaths, oldFileDescMap);
+        if (prevBatchPartitions != null) {
+          addPartitionBatch(prevBatchPartitions, prevBatchListings, uniquePartitionKeys,
+              numNullKeys, oldFileDescMap, fileDescsToLoad, prefetchedBlockLocations);
         }
+        prevBatchPartitions = batchPartitions;
+        prevBatchListings = batchListings;
+      }
+      if (prevBatchPartitions != null) {
+        addPartitionBatch(prevBatchPartitions, prevBatchListings, uniquePartitionKeys,
+            numNullKeys, oldFileDescMap, fileDescsToLoad, prefetchedBlockLocations);
+      }
+
+      for (HdfsPartition unchangedPart: unchangedPartitions) {
+        List<String> partitionKeys = unchangedPart.getMetaStorePartition().getValues();
+        for (int i = 0; i < partitionKeys.size(); ++i) {
+          uniquePartitionKeys[i].add(partitionKeys.get(i));
+          if (partitionKeys.get(i).equals(nullPartitionKeyValue_)) ++numNullKeys[i];
+        }
+        HdfsPartition partition = unchangedPart.copy(this);
+        registerPartition(partition);
+        numHdfsFiles_ += partition.getFileDescriptors().size();
+        totalHdfsBytes_ += partition.getSize();
+        fileDescMap_.put(new Path(partition.getLocation()).toString(),
+            Lists.newArrayList(partition.getFileDescriptors()));
         if (!TAccessLevelUtil.impliesWriteAccess(partition.getAccessLevel())) {
-          // TODO: READ_ONLY isn't exactly correct because the it's possible the
-          // partition does not have READ permissions either. When we start checking
-          // whether we can READ from a table, this should be updated to set the
-          // table's access level to the "lowest" effective level across all
-          // partitions. That is, if one partition has READ_ONLY and another has
-          // WRITE_ONLY the table's access level should be NONE.
           accessLevel_ = TAccessLevel.READ_ONLY;
         }
       }
@@ -580,7 +783,72 @@ public class HdfsTable extends Table {
     }
 
     if (fileDescsToLoad.size() > 0) {
-      loadBlockMd(fileDescsToLoad);
+      loadBlockMd(fileDescsToLoad, prefetchedBlockLocations);
+    }
+  }
+
+  /**
+   * Adds the partitions of a batch of metastore partitions to this table. 'listings'
+   * are the listings of the partition directories, in the order of 'msPartitions', each
+   * of which is waited for before its partition is built. Counts the distinct and NULL
+   * partition-key values of each clustering column in 'uniquePartitionKeys' and
+   * 'numNullKeys'. See addPartition() for the other parameters.
+   */
+  private void addPartitionBatch(
+      List<org.apache.hadoop.hive.metastore.api.Partition> msPartitions,
+      List<Future<PartitionDirListing>> listings, Set<String>[] uniquePartitionKeys,
+      long[] numNullKeys, Map<String, List<FileDescriptor>> oldFileDescMap,
+      Map<String, List<FileDescriptor>> fileDescsToLoad,
+      Map<FileDescriptor, BlockLocation[]> prefetchedBlockLocations)
+      throws IOException, CatalogException {
+    Preconditions.checkState(msPartitions.size() == listings.size());
+    int partitionIdx = 0;
+    for (org.apache.hadoop.hive.metastore.api.Partition msPartition: msPartitions) {
+      long startTimeMs = System.currentTimeMillis();
+      PartitionDirListing listing = getFileMdTaskResult(listings.get(partitionIdx++));
+      recordLoadTiming("list-partition-dirs", startTimeMs);
+      // load key values
+      List<LiteralExpr> keyValues = Lists.newArrayList();
+      int i = 0;
+      for (String partitionKey: msPartition.getValues()) {
+        uniquePartitionKeys[i].add(partitionKey);
+        // Deal with Hive's special NULL partition key.
+        if (partitionKey.equals(nullPartitionKeyValue_)) {
+          keyValues.add(new NullLiteral());
+          ++numNullKeys[i];
+        } else {
+          ColumnType type = colsByPos_.get(keyValues.size()).getType();
+          try {
+            Expr expr = LiteralExpr.create(partitionKey, type);
+            // Force the literal to be of type declared in the metadata.
+            expr = expr.castTo(type);
+            keyValues.add((LiteralExpr) expr);
+          } catch (Exception ex) {
+            LOG.warn("Failed to create literal expression of type: " + type, ex);
+            throw new InvalidStorageDescriptorException(ex);
+          }
+        }
+        ++i;
+      }
+      HdfsPartition partition = addPartition(msPartition.getSd(), msPartition,
+          keyValues, listing, oldFileDescMap, fileDescsToLoad,
+          prefetchedBlockLocations);
+      // If the partition is null, its HDFS path does not exist, and it was not added to
+      // this table's partition list. Skip the partition.
+      if (partition == null) continue;
+
+      if (msPartition.getParameters() != null) {
+        partition.setNumRows(getRowCount(msPartition.getParameters()));
+      }
+      if (!TAccessLevelUtil.impliesWriteAccess(partition.getAccessLevel())) {
+        // TODO: READ_ONLY isn't exactly correct because the it's possible the
+        // partition does not have READ permissions either. When we start checking
+        // whether we can READ from a table, this should be updated to set the
+        // table's access level to the "lowest" effective level across all
+        // partitions. That is, if one partition has READ_ONLY and another has
+        // WRITE_ONLY the table's access level should be NONE.
+        accessLevel_ = TAccessLevel.READ_ONLY;
+      }
     }
   }
 
@@ -607,14 +875,95 @@ public class HdfsTable extends Table {
     return TAccessLevel.NONE;
   }
 
+  /**
+   * The files of a partition directory and the access level Impala has on the
+   * directory. 'files' is null if the directory does not exist.
+   */
+  private static class PartitionDirListing {
+    public final FileStatus[] files;
+    public final TAccessLevel accessLevel;
+
+    public PartitionDirListing(FileStatus[] files, TAccessLevel accessLevel) {
+      this.files = files;
+      this.accessLevel = accessLevel;
+    }
+
+    public boolean exists() { return files != null; }
+  }
+
+  /**
+   * Lists the given partition directories in parallel on the file metadata loading
+   * pool. Returns one PartitionDirListing per directory, in the order of 'partDirPaths'.
+   */
+  private List<PartitionDirListing> listPartitionDirs(List<Path> partDirPaths,
+      Map<String, List<FileDescriptor>> oldFileDescMap) throws IOException {
+    long startTimeMs = System.currentTimeMillis();
+    List<PartitionDirListing> listings =
+        Lists.newArrayListWithCapacity(partDirPaths.size());
+    for (Future<PartitionDirListing> listing:
+         startListPartitionDirs(partDirPaths, oldFileDescMap)) {
+      listings.add(getFileMdTaskResult(listing));
+    }
+    recordLoadTiming("list-partition-dirs", startTimeMs);
+    return listings;
+  }
+
+  /**
+   * Starts listing the given partition directories in parallel on the file metadata
+   * loading pool, and returns one future PartitionDirListing per directory, in the
+   * order of 'partDirPaths'. Use getFileMdTaskResult() to wait for a listing.
+   * Directories for which oldFileDescMap has no files are listed together with the
+   * block locations of their files (see listLocatedFiles()), because all of their
+   * files will need their block metadata loaded. Other directories are expected to
+   * contain mostly unmodified files, so only their file statuses are listed.
+   */
+  private List<Future<PartitionDirListing>> startListPartitionDirs(
+      List<Path> partDirPaths, final Map<String, List<FileDescriptor>> oldFileDescMap) {
+    List<Callable<PartitionDirListing>> tasks =
+        Lists.newArrayListWithCapacity(partDirPaths.size());
+    for (final Path partDirPath: partDirPaths) {
+      tasks.add(new Callable<PartitionDirListing>() {
+        @Override
+        public PartitionDirListing call() throws IOException {
+          if (!DFS.exists(partDirPath)) return new PartitionDirListing(null, null);
+          TAccessLevel accessLevel = getAvailableAccessLevel(partDirPath);
+          if (oldFileDescMap == null ||
+              !oldFileDescMap.containsKey(DFS.makeQualified(partDirPath).toString())) {
+            return new PartitionDirListing(listLocatedFiles(partDirPath), accessLevel);
+          }
+          // DistributedFilesystem does not have an API that takes in a timestamp and
+          // return a list of files that has been added/changed since. Therefore, we are
+          // calling DFS.listStatus() to list all the files.
+          return new PartitionDirListing(DFS.listStatus(partDirPath), accessLevel);
+        }
+      });
+    }
+    return submitFileMdTasks(tasks);
+  }
+
+  /**
+   * Lists the files of the given directory together with their block locations. The
+   * returned FileStatuses are LocatedFileStatuses. Against HDFS this issues one
+   * NameNode RPC per batch of directory entries, instead of one listStatus() call plus a
+   * getFileStatus() and a getFileBlockLocations() call per file.
+   */
+  private static FileStatus[] listLocatedFiles(Path dirPath) throws IOException {
+    List<FileStatus> fileStatuses = Lists.newArrayList();
+    RemoteIterator<LocatedFileStatus> it = DFS.listLocatedStatus(dirPath);
+    while (it.hasNext()) fileStatuses.add(it.next());
+    return fileStatuses.toArray(new FileStatus[fileStatuses.size()]);
+  }
+
   /**
    * Adds a new HdfsPartition to the internal partition list, populating with file format
    * information and file locations. If a partition contains no files, it's not added.
+   * 'listing' is the result of listing the partition directory.
    * For unchanged files (indicated by unchanged mtime), reuses the FileDescriptor from
    * the oldFileDescMap. Otherwise, creates a new FileDescriptor for each modified or
    * new file and adds it to newFileDescsMap. Both old and newFileDescMap are Maps of
    * parent directory (partition location) to list of files (FileDescriptors) under that
-   * directory.
+   * directory. If the listing contains the block locations of a new or modified file,
+   * they are added to prefetchedBlockLocations.
    * Returns new partition or null, if none was added.
    *
    * @throws InvalidStorageDescriptorException
@@ -623,19 +972,17 @@ public class HdfsTable extends Table {
    */
   private HdfsPartition addPartition(StorageDescriptor storageDescriptor,
       org.apache.hadoop.hive.metastore.api.Partition msPartition,
-      List<LiteralExpr> partitionKeyExprs,
+      List<LiteralExpr> partitionKeyExprs, PartitionDirListing listing,
       Map<String, List<FileDescriptor>> oldFileDescMap,
-      Map<String, List<FileDescriptor>> newFileDescMap)
-      throws IOException, InvalidStorageDescriptorException {
+      Map<String, List<FileDescriptor>> newFileDescMap,
+      Map<FileDescriptor, BlockLocation[]> prefetchedBlockLocations)
+      throws InvalidStorageDescriptorException {
     HdfsStorageDescriptor fileFormatDescriptor =
         HdfsStorageDescriptor.fromStorageDescriptor(this.name_, storageDescriptor);
     Path partDirPath = new Path(storageDescriptor.getLocation());
     List<FileDescriptor> fileDescriptors = Lists.newArrayList();
-    if (DFS.exists(partDirPath)) {
-      // DistributedFilesystem does not have an API that takes in a timestamp and return
-      // a list of files that has been added/changed since. Therefore, we are calling
-      // DFS.listStatus() to list all the files.
-      for (FileStatus fileStatus: DFS.listStatus(partDirPath)) {
+    if (listing.exists()) {
+      for (FileStatus fileStatus: listing.files) {
         String fileName = fileStatus.getPath().getName().toString();
         if (fileStatus.isDirectory() || FileSystemUtil.isHiddenFile(fileName) ||
             HdfsCompression.fromFileName(fileName) == HdfsCompression.LZO_INDEX) {
@@ -668,6 +1015,10 @@ public class HdfsTable extends Table {
           // loadBlockMd.
           fd = new FileDescriptor(fileName, fileStatus.getLen(),
               fileStatus.getModificationTime());
+          if (fileStatus instanceof LocatedFileStatus) {
+            prefetchedBlockLocations.put(fd,
+                ((LocatedFileStatus) fileStatus).getBlockLocations());
+          }
 
           List<FileDescriptor> fds = newFileDescMap.get(partitionDir);
           if (fds == null) {
@@ -689,8 +1040,8 @@ public class HdfsTable extends Table {
       }
 
       HdfsPartition partition = new HdfsPartition(this, msPartition, partitionKeyExprs,
-          fileFormatDescriptor, fileDescriptors, getAvailableAccessLevel(partDirPath));
-      partitions_.add(partition);
+          fileFormatDescriptor, fileDescriptors, listing.accessLevel);
+      registerPartition(partition);
       numHdfsFiles_ += fileDescriptors.size();
       totalHdfsBytes_ += partition.getSize();
       return partition;
@@ -707,7 +1058,26 @@ public class HdfsTable extends Table {
     HdfsStorageDescriptor hdfsStorageDescriptor =
         HdfsStorageDescriptor.fromStorageDescriptor(this.name_, storageDescriptor);
     HdfsPartition partition = HdfsPartition.defaultPartition(this, hdfsStorageDescriptor);
+    registerPartition(partition);
+  }
+
+  /**
+   * Clears partitions_ and all partition lookup structures.
+   */
+  private void resetPartitions() {
+    partitions_.clear();
+    partitionMap_.clear();
+    partitionKeyIndex_ = new HdfsPartitionKeyIndex(
+        colsByPos_.subList(0, numClusteringCols_));
+  }
+
+  /**
+   * Adds the given partition to partitions_ and all partition lookup structures.
+   */
+  private void registerPartition(HdfsPartition partition) {
     partitions_.add(partition);
+    partitionMap_.put(partition.getId(), partition);
+    partitionKeyIndex_.addPartition(partition);
   }
 
   @Override
@@ -728,8 +1098,26 @@ public class HdfsTable extends Table {
    */
   public void load(Table cachedEntry, HiveMetaStoreClient client,
       org.apache.hadoop.hive.metastore.api.Table msTbl) throws TableLoadingException {
+    load(cachedEntry, client, msTbl, null);
+  }
+
+  /**
+   * Same as load(), except that if 'changedPartitionNames' is not null, it names all
+   * partitions that were added or modified since 'cachedEntry' was loaded, e.g., by an
+   * INSERT. Only these partitions (and any dirty partitions of 'cachedEntry') are then
+   * reloaded from the metastore and have their directories listed, while all other
+   * partitions of 'cachedEntry' are shared with this table as they are. Names of
+   * partitions that do not exist in the metastore are ignored.
+   * 'changedPartitionNames' is ignored if the lastDdlTime of the table changed in a way
+   * that was not recorded in 'cachedEntry', or if 'cachedEntry' was restored from a
+   * catalog snapshot.
+   */
+  public void load(Table cachedEntry, HiveMetaStoreClient client,
+      org.apache.hadoop.hive.metastore.api.Table msTbl,
+      Collection<String> changedPartitionNames) throws TableLoadingException {
     numHdfsFiles_ = 0;
     totalHdfsBytes_ = 0;
+    loadTimingsMs_.clear();
     LOG.debug("load table: " + db_.getName() + "." + name_);
 
     // turn all exceptions into TableLoadingException
@@ -760,16 +1148,26 @@ public class HdfsTable extends Table {
       numClusteringCols_ = partKeys.size();
       loadColumns(fieldSchemas, client);
 
-      // Collect the list of partitions to use for the table. Partitions may be reused
-      // from the existing cached table entry (if one exists), read from the metastore,
-      // or a mix of both. Whether or not a partition is reused depends on whether
-      // the table or partition has been modified.
-      List<org.apache.hadoop.hive.metastore.api.Partition> msPartitions =
-          Lists.newArrayList();
+      long startTimeMs = System.currentTimeMillis();
+      // Collect the batches of partitions to use for the table. Partitions may be
+      // reused from the existing cached table entry (if one exists), read from the
+      // metastore, or a mix of both. Whether or not a partition is reused depends on
+      // whether the table or partition has been modified. Partitions read from the
+      // metastore are fetched in the background, see fetchPartitionBatches().
+      List<Future<List<org.apache.hadoop.hive.metastore.api.Partition>>>
+          msPartitionBatches = Lists.newArrayList();
+      // Partitions of the cached table entry that are shared with this table as they
+      // are, without reloading them.
+      List<HdfsPartition> unchangedPartitions = Lists.newArrayList();
       if (cachedEntry == null || !(cachedEntry instanceof HdfsTable) ||
           cachedEntry.lastDdlTime_ != lastDdlTime_) {
-        msPartitions.addAll(MetaStoreUtil.fetchAllPartitions(
-            client, db_.getName(), name_, NUM_PARTITION_FETCH_RETRIES));
+        msPartitionBatches.addAll(fetchPartitionBatches(
+            client.listPartitionNames(db_.getName(), name_, (short) -1), client));
+      } else if (changedPartitionNames != null && partKeys.size() > 0 &&
+          canReuseUnchangedPartitions((HdfsTable) cachedEntry)) {
+        msPartitionBatches.add(Futures.immediateFuture(fetchChangedPartitions(
+            (HdfsTable) cachedEntry, changedPartitionNames, client, partKeys,
+            unchangedPartitions)));
       } else {
         // The table was already in the metadata cache and it has not been modified.
         Preconditions.checkArgument(cachedEntry instanceof HdfsTable);
@@ -791,6 +1189,8 @@ public class HdfsTable extends Table {
         }
 
         int totalPartitions = modifiedPartitionNames.size();
+        List<org.apache.hadoop.hive.metastore.api.Partition> msPartitions =
+            Lists.newArrayList();
         // Get all the partitions from the cached entry that have not been modified.
         for (HdfsPartition cachedPart: cachedHdfsTableEntry.getPartitions()) {
           // Skip the default partition and any partitions that have been modified.
@@ -813,14 +1213,16 @@ public class HdfsTable extends Table {
         LOG.info(String.format("Incrementally refreshing %d/%d partitions.",
             modifiedPartitionNames.size(), totalPartitions));
 
-        // No need to make the metastore call if no partitions are to be updated.
-        if (modifiedPartitionNames.size() > 0) {
-          // Now reload the the remaining partitions.
-          msPartitions.addAll(MetaStoreUtil.fetchPartitionsByName(client,
-              Lists.newArrayList(modifiedPartitionNames), db_.getName(), name_));
+        if (!msPartitions.isEmpty()) {
+          msPartitionBatches.add(Futures.immediateFuture(msPartitions));
         }
+        // Now reload the the remaining partitions.
+        msPartitionBatches.addAll(fetchPartitionBatches(
+            Lists.newArrayList(modifiedPartitionNames), client));
       }
 
+      recordLoadTiming("fetch-partitions", startTimeMs);
+
       Map<String, List<FileDescriptor>> oldFileDescMap = null;
       if (cachedEntry != null && cachedEntry instanceof HdfsTable) {
         HdfsTable cachedHdfsTable = (HdfsTable) cachedEntry;
@@ -830,7 +1232,7 @@ public class HdfsTable extends Table {
           hostMap_.put(hostList_.get(i), i);
         }
       }
-      loadPartitions(msPartitions, msTbl, oldFileDescMap);
+      loadPartitions(msPartitionBatches, msTbl, oldFileDescMap, unchangedPartitions);
 
       // load table stats
       numRows_ = getRowCount(msTbl.getParameters());
@@ -864,6 +1266,84 @@ public class HdfsTable extends Table {
     }
   }
 
+  /**
+   * Starts fetching the partitions with the given names from the metastore in
+   * batches. If this table is owned by a CatalogServiceCatalog, the batches are fetched
+   * concurrently in the background, each over its own pooled metastore client, so the
+   * partitions of a batch can be loaded while later batches are still being fetched.
+   * Otherwise, the partitions are fetched over 'client' before returning. A batch that
+   * fails because partitions were dropped concurrently is retried with the partitions
+   * that still exist.
+   */
+  private List<Future<List<org.apache.hadoop.hive.metastore.api.Partition>>>
+      fetchPartitionBatches(List<String> partNames, HiveMetaStoreClient client)
+      throws TException {
+    if (partNames.isEmpty()) return Collections.emptyList();
+    if (db_.getParentCatalog() instanceof CatalogServiceCatalog) {
+      return MetaStoreUtil.fetchPartitionBatches(db_.getParentCatalog(),
+          METASTORE_FETCH_POOL, partNames, db_.getName(), name_,
+          NUM_PARTITION_FETCH_RETRIES);
+    }
+    List<org.apache.hadoop.hive.metastore.api.Partition> msPartitions =
+        MetaStoreUtil.fetchPartitionsByName(client, partNames, db_.getName(), name_,
+            NUM_PARTITION_FETCH_RETRIES);
+    return Lists.newArrayList(Futures.immediateFuture(msPartitions));
+  }
+
+  /**
+   * Returns true if the partitions of 'cachedTbl' can be shared with a reloaded version
+   * of the table, which requires their metastore partitions.
+   */
+  private static boolean canReuseUnchangedPartitions(HdfsTable cachedTbl) {
+    if (cachedTbl.isRestoredFromSnapshot()) return false;
+    for (HdfsPartition partition: cachedTbl.getPartitions()) {
+      if (partition.getId() == DEFAULT_PARTITION_ID) continue;
+      if (partition.getMetaStorePartition() == null) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Fetches the partitions with the given names and the dirty partitions of 'cachedTbl'
+   * from the metastore. Adds the other partitions of 'cachedTbl' to
+   * 'unchangedPartitions'. Cached partitions are matched with the fetched partitions by
+   * their partition-key values, since the given names may escape the values differently
+   * than HdfsPartition.getPartitionName().
+   */
+  private List<org.apache.hadoop.hive.metastore.api.Partition> fetchChangedPartitions(
+      HdfsTable cachedTbl, Collection<String> changedPartitionNames,
+      HiveMetaStoreClient client, List<FieldSchema> partKeys,
+      List<HdfsPartition> unchangedPartitions) throws Exception {
+    Set<String> partitionNamesToFetch = Sets.newHashSet(changedPartitionNames);
+    for (HdfsPartition cachedPart: cachedTbl.getPartitions()) {
+      if (cachedPart.getId() == DEFAULT_PARTITION_ID || !cachedPart.isDirty()) continue;
+      partitionNamesToFetch.add(Warehouse.makePartName(partKeys,
+          cachedPart.getMetaStorePartition().getValues()));
+    }
+    List<org.apache.hadoop.hive.metastore.api.Partition> msPartitions =
+        Lists.newArrayList();
+    if (!partitionNamesToFetch.isEmpty()) {
+      msPartitions.addAll(MetaStoreUtil.fetchPartitionsByName(client,
+          Lists.newArrayList(partitionNamesToFetch), db_.getName(), name_));
+    }
+    Set<List<String>> fetchedPartitionValues = Sets.newHashSet();
+    for (org.apache.hadoop.hive.metastore.api.Partition msPartition: msPartitions) {
+      fetchedPartitionValues.add(msPartition.getValues());
+    }
+    for (HdfsPartition cachedPart: cachedTbl.getPartitions()) {
+      if (cachedPart.getId() == DEFAULT_PARTITION_ID || cachedPart.isDirty() ||
+          fetchedPartitionValues.contains(
+              cachedPart.getMetaStorePartition().getValues())) {
+        continue;
+      }
+      unchangedPartitions.add(cachedPart);
+    }
+    LOG.info(String.format("Reloading %d/%d partitions of table %s.",
+        msPartitions.size(), msPartitions.size() + unchangedPartitions.size(),
+        getFullName()));
+    return msPartitions;
+  }
+
   /**
    * Gets an Avro table's JSON schema from the list of given table property search
    * locations. The schema may be specified as a string literal or provided as an
@@ -943,16 +1423,156 @@ public class HdfsTable extends Table {
 
     numHdfsFiles_ = 0;
     totalHdfsBytes_ = 0;
+    resetPartitions();
     for (Map.Entry<Long, THdfsPartition> part: hdfsTable.getPartitions().entrySet()) {
       HdfsPartition hdfsPart =
           HdfsPartition.fromThrift(this, part.getKey(), part.getValue());
       numHdfsFiles_ += hdfsPart.getFileDescriptors().size();
       totalHdfsBytes_ += hdfsPart.getSize();
-      partitions_.add(hdfsPart);
+      registerPartition(hdfsPart);
     }
     avroSchema_ = hdfsTable.isSetAvroSchema() ? hdfsTable.getAvroSchema() : null;
   }
 
+  /**
+   * Returns a new table that is the result of applying the given partition delta to
+   * 'cachedTbl', which must be a version of the same table >= the base version of the
+   * delta. The table-level metadata and the added/modified partitions are loaded from
+   * the delta, while all other partitions of 'cachedTbl' are shared with the new table
+   * instead of being rebuilt. 'cachedTbl' is not modified, so queries that are using it
+   * are not affected. Used by the impalads to apply catalog updates.
+   */
+  public static HdfsTable createFromPartitionDelta(HdfsTable cachedTbl,
+      THdfsPartitionDelta delta) throws TableLoadingException {
+    TTable thriftTable = delta.getTable();
+    THdfsTable hdfsTable = thriftTable.getHdfs_table();
+    // The file descriptors of the shared partitions refer to the host list of
+    // 'cachedTbl', so extend that host list with the hosts of the delta and map the host
+    // indexes of the delta's file blocks onto it.
+    List<TNetworkAddress> hostList = Lists.newArrayList(cachedTbl.hostList_);
+    Map<TNetworkAddress, Integer> hostMap = Maps.newHashMap(cachedTbl.hostMap_);
+    List<TNetworkAddress> deltaHostList = hdfsTable.isSetNetwork_addresses() ?
+        hdfsTable.getNetwork_addresses() : Collections.<TNetworkAddress>emptyList();
+    int[] hostIdxMap = new int[deltaHostList.size()];
+    boolean remapHostIdxs = false;
+    for (int i = 0; i < deltaHostList.size(); ++i) {
+      Integer hostIdx = hostMap.get(deltaHostList.get(i));
+      if (hostIdx == null) {
+        hostIdx = hostList.size();
+        hostList.add(deltaHostList.get(i));
+        hostMap.put(deltaHostList.get(i), hostIdx);
+      }
+      hostIdxMap[i] = hostIdx;
+      remapHostIdxs |= hostIdx != i;
+    }
+    if (remapHostIdxs) {
+      for (THdfsPartition partition: hdfsTable.getPartitions().values()) {
+        if (!partition.isSetFile_desc()) continue;
+        for (THdfsFileDesc fileDesc: partition.getFile_desc()) {
+          for (THdfsFileBlock block: fileDesc.getFile_blocks()) {
+            List<Integer> replicaHostIdxs = block.getReplica_host_idxs();
+            for (int i = 0; i < replicaHostIdxs.size(); ++i) {
+              replicaHostIdxs.set(i, hostIdxMap[replicaHostIdxs.get(i)]);
+            }
+          }
+        }
+      }
+    }
+    hdfsTable.setNetwork_addresses(hostList);
+
+    Table newTbl = Table.fromThrift(cachedTbl.getDb(), thriftTable);
+    if (!(newTbl instanceof HdfsTable)) {
+      throw new TableLoadingException(String.format(
+          "Cannot apply partition delta to table %s: Unexpected table type",
+          cachedTbl.getFullName()));
+    }
+    HdfsTable newHdfsTbl = (HdfsTable) newTbl;
+    newHdfsTbl.addUnchangedPartitions(cachedTbl, delta.getDropped_partition_names());
+    return newHdfsTbl;
+  }
+
+  /**
+   * Adds the partitions of 'cachedTbl' that were neither dropped nor replaced by a
+   * partition of this table to this table. Used by createFromPartitionDelta().
+   */
+  private void addUnchangedPartitions(HdfsTable cachedTbl,
+      List<String> droppedPartitionNames) {
+    Set<String> changedPartitionNames = Sets.newHashSet(droppedPartitionNames);
+    for (HdfsPartition partition: partitions_) {
+      if (partition.getId() == DEFAULT_PARTITION_ID) continue;
+      changedPartitionNames.add(partition.getPartitionName());
+    }
+    for (HdfsPartition cachedPartition: cachedTbl.partitions_) {
+      if (cachedPartition.getId() == DEFAULT_PARTITION_ID ||
+          changedPartitionNames.contains(cachedPartition.getPartitionName())) {
+        continue;
+      }
+      HdfsPartition partition = cachedPartition.copy(this);
+      numHdfsFiles_ += partition.getFileDescriptors().size();
+      totalHdfsBytes_ += partition.getSize();
+      registerPartition(partition);
+    }
+  }
+
+  /**
+   * Returns a snapshot of this table that can be restored by fromSnapshot(). In addition
+   * to the thrift representation of the table, it contains the metastore partitions of
+   * the table's partitions.
+   */
+  public TCatalogSnapshotTable toSnapshot() {
+    TCatalogSnapshotTable snapshot = new TCatalogSnapshotTable(toThrift());
+    for (HdfsPartition partition: partitions_) {
+      if (partition.getMetaStorePartition() == null) continue;
+      snapshot.putToMetastore_partitions(partition.getId(),
+          partition.getMetaStorePartition());
+    }
+    return snapshot;
+  }
+
+  /**
+   * Creates a table from a snapshot that was taken by toSnapshot(), possibly by a
+   * previous catalog server process, and assigns it the given table id. Restores the
+   * metastore partitions and the file descriptors by partition directory, so the table
+   * can be passed to load() as the cached entry, which revalidates it incrementally
+   * based on the lastDdlTime of the table and the modification times of its files.
+   */
+  public static HdfsTable fromSnapshot(Db db, TableId id,
+      TCatalogSnapshotTable snapshot) throws TableLoadingException {
+    TTable thriftTable = snapshot.getTable();
+    thriftTable.setId(id.asInt());
+    Table tbl = Table.fromThrift(db, thriftTable);
+    if (!(tbl instanceof HdfsTable)) {
+      throw new TableLoadingException(String.format(
+          "Cannot restore table %s from snapshot: Unexpected table type",
+          tbl.getFullName()));
+    }
+    HdfsTable hdfsTbl = (HdfsTable) tbl;
+    Map<Long, org.apache.hadoop.hive.metastore.api.Partition> msPartitions =
+        snapshot.isSetMetastore_partitions() ? snapshot.getMetastore_partitions() :
+        Collections.<Long, org.apache.hadoop.hive.metastore.api.Partition>emptyMap();
+    List<HdfsPartition> partitions = Lists.newArrayList(hdfsTbl.partitions_);
+    hdfsTbl.resetPartitions();
+    for (HdfsPartition partition: partitions) {
+      HdfsPartition.reservePartitionId(partition.getId());
+      org.apache.hadoop.hive.metastore.api.Partition msPartition =
+          msPartitions.get(partition.getId());
+      if (msPartition != null) {
+        partition = partition.copyWithMetaStorePartition(msPartition);
+      }
+      hdfsTbl.registerPartition(partition);
+      if (partition.getId() == DEFAULT_PARTITION_ID) continue;
+      String partitionDir = new Path(partition.getLocation()).toString();
+      List<FileDescriptor> fds = hdfsTbl.fileDescMap_.get(partitionDir);
+      if (fds == null) {
+        fds = Lists.newArrayList();
+        hdfsTbl.fileDescMap_.put(partitionDir, fds);
+      }
+      fds.addAll(partition.getFileDescriptors());
+    }
+    hdfsTbl.restoredFromSnapshot_ = true;
+    return hdfsTbl;
+  }
+
   @Override
   public TTableDescriptor toThriftDescriptor() {
     TTableDescriptor tableDesc = new TTableDescriptor(id_.asInt(), TTableType.HDFS_TABLE,
@@ -962,16 +1582,24 @@ public class HdfsTable extends Table {
   }
 
   @Override
-  public TTable toThrift() {
+  public TTable toThrift() { return toThrift(partitions_); }
+
+  /**
+   * Returns the thrift representation of this table that only contains the given
+   * partitions of the table.
+   */
+  TTable toThrift(List<HdfsPartition> partitions) {
     TTable table = super.toThrift();
     table.setTable_type(TTableType.HDFS_TABLE);
-    table.setHdfs_table(getHdfsTable());
+    table.setHdfs_table(getHdfsTable(partitions));
     return table;
   }
 
-  private THdfsTable getHdfsTable() {
+  private THdfsTable getHdfsTable() { return getHdfsTable(partitions_); }
+
+  private THdfsTable getHdfsTable(List<HdfsPartition> partitions) {
     Map<Long, THdfsPartition> idToPartition = Maps.newHashMap();
-    for (HdfsPartition partition: partitions_) {
+    for (HdfsPartition partition: partitions) {
       idToPartition.put(partition.getId(), partition.toThrift(true));
     }
 
@@ -43,11 +43,13 @@ import com.cloudera.impala.thrift.TCatalogObject;
 import com.cloudera.impala.thrift.TCatalogObjectType;
 import com.cloudera.impala.thrift.TDatabase;
 import com.cloudera.impala.thrift.TFunction;
+import com.cloudera.impala.thrift.THdfsPartitionDelta;
 import com.cloudera.impala.thrift.TTable;
 import com.cloudera.impala.thrift.TUniqueId;
 import com.cloudera.impala.thrift.TUpdateCatalogCacheRequest;
 import com.cloudera.impala.thrift.TUpdateCatalogCacheResponse;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 
 /**
  * Thread safe Catalog for an Impalad. The Impalad Catalog provides an interface to
@@ -217,11 +219,15 @@ public class ImpaladCatalog extends Catalog {
       }
     }
 
-    // First process all updates
+    // First process all updates. Partition deltas are applied after all other objects,
+    // since they may depend on a complete table contained in the same update.
     long newCatalogVersion = lastSyncedCatalogVersion_;
+    List<TCatalogObject> partitionDeltas = Lists.newArrayList();
     for (TCatalogObject catalogObject: req.getUpdated_objects()) {
       if (catalogObject.getType() == TCatalogObjectType.CATALOG) {
         newCatalogVersion = catalogObject.getCatalog_version();
+      } else if (catalogObject.getType() == TCatalogObjectType.HDFS_PARTITION_DELTA) {
+        partitionDeltas.add(catalogObject);
       } else {
         try {
           addCatalogObject(catalogObject);
@@ -230,6 +236,13 @@ public class ImpaladCatalog extends Catalog {
         }
       }
     }
+    for (TCatalogObject catalogObject: partitionDeltas) {
+      try {
+        addCatalogObject(catalogObject);
+      } catch (Exception e) {
+        LOG.error("Error applying partition delta: " + e.getMessage(), e);
+      }
+    }
 
     // Now remove all objects from the catalog. Removing a database before removing
     // its child tables/functions is fine. If that happens, the removal of the child
@@ -491,6 +504,10 @@ public class ImpaladCatalog extends Catalog {
       case FUNCTION:
         addFunction(catalogObject.getFn(), catalogObject.getCatalog_version());
         break;
+      case HDFS_PARTITION_DELTA:
+        applyPartitionDelta(catalogObject.getPartition_delta(),
+            catalogObject.getCatalog_version());
+        break;
       default:
         throw new IllegalStateException(
             "Unexpected TCatalogObjectType: " + catalogObject.getType());
@@ -529,6 +546,10 @@ public class ImpaladCatalog extends Catalog {
       case FUNCTION:
         removeFunction(catalogObject.getFn(), dropCatalogVersion);
         break;
+      case HDFS_PARTITION_DELTA:
+        // Partition deltas are removed when they are superseded by the complete table,
+        // or when the table is removed. Nothing to do.
+        break;
       default:
         throw new IllegalStateException(
             "Unexpected TCatalogObjectType: " + catalogObject.getType());
@@ -563,6 +584,38 @@ public class ImpaladCatalog extends Catalog {
     db.addTable(newTable);
   }
 
+  /**
+   * Applies the given partition delta to the cached version of its table. The delta is
+   * ignored if the table is not cached as a loaded HdfsTable with a version that is
+   * >= the base version of the delta, or if the cached table is already up to date.
+   * The cached table is replaced by a new table that shares its unchanged partitions.
+   */
+  private void applyPartitionDelta(THdfsPartitionDelta delta, long catalogVersion)
+      throws TableLoadingException {
+    TTable thriftTable = delta.getTable();
+    // The delta is out of date if its table was removed in a later catalog version.
+    if (catalogDeltaLog_.wasObjectRemovedAfter(
+        new TCatalogObject(TCatalogObjectType.TABLE, catalogVersion)
+            .setTable(thriftTable))) {
+      return;
+    }
+    Db db = getDb(thriftTable.getDb_name());
+    if (db == null) return;
+    Table cachedTable = db.getTable(thriftTable.getTbl_name());
+    if (!(cachedTable instanceof HdfsTable) ||
+        cachedTable.getCatalogVersion() < delta.getBase_catalog_version()) {
+      LOG.debug(String.format("Skipping partition delta for table %s.%s: No matching " +
+          "base version cached", thriftTable.getDb_name(), thriftTable.getTbl_name()));
+      return;
+    }
+    if (cachedTable.getCatalogVersion() >= catalogVersion) return;
+
+    HdfsTable newTable =
+        HdfsTable.createFromPartitionDelta((HdfsTable) cachedTable, delta);
+    newTable.setCatalogVersion(catalogVersion);
+    db.addTable(newTable);
+  }
+
   private void addFunction(TFunction fn, long catalogVersion) {
     Function function = Function.fromThrift(fn);
     function.setCatalogVersion(catalogVersion);
@@ -26,12 +26,15 @@ import com.cloudera.impala.thrift.TStatusCode;
 import com.cloudera.impala.thrift.TTable;
 import com.cloudera.impala.thrift.TTableDescriptor;
 import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 
 /**
  * Represents a table with incomplete metadata. The metadata may be incomplete because
  * it has not yet been loaded or because of errors encountered during the loading
- * process.
+ * process. In the catalog server, a table that has not been loaded yet may carry the
+ * version of the table restored from a catalog snapshot, which is the starting point
+ * for loading the table (see CatalogServiceCatalog.restoreFromSnapshot()).
  */
 public class IncompleteTable extends Table {
   // The cause for the incomplete metadata. If there is no cause given (cause_ = null),
@@ -39,10 +42,15 @@ public class IncompleteTable extends Table {
   // its metadata loaded).
   private ImpalaException cause_;
 
+  // The table restored from a catalog snapshot, or null. It has not been revalidated
+  // against the metastore and the file system, so it is never sent to the impalads.
+  private final HdfsTable restoredTbl_;
+
   private IncompleteTable(TableId id, Db db, String name,
-      ImpalaException cause) {
+      ImpalaException cause, HdfsTable restoredTbl) {
     super(id, null, db, name, null);
     cause_ = cause;
+    restoredTbl_ = restoredTbl;
   }
 
   /**
@@ -51,6 +59,11 @@ public class IncompleteTable extends Table {
    */
   public ImpalaException getCause() { return cause_; }
 
+  /**
+   * Returns the table restored from a catalog snapshot, or null if there is none.
+   */
+  public HdfsTable getRestoredTable() { return restoredTbl_; }
+
   /**
    * See comment on cause_.
    */
@@ -123,11 +136,21 @@ public class IncompleteTable extends Table {
 
   public static IncompleteTable createUninitializedTable(TableId id, Db db,
       String name) {
-    return new IncompleteTable(id, db, name, null);
+    return new IncompleteTable(id, db, name, null, null);
+  }
+
+  /**
+   * Creates an uninitialized table that carries the given table restored from a
+   * catalog snapshot.
+   */
+  public static IncompleteTable createRestoredTable(HdfsTable restoredTbl) {
+    Preconditions.checkState(restoredTbl.isRestoredFromSnapshot());
+    return new IncompleteTable(restoredTbl.getId(), restoredTbl.getDb(),
+        restoredTbl.getName(), null, restoredTbl);
   }
 
   public static IncompleteTable createFailedMetadataLoadTable(TableId id, Db db,
       String name, ImpalaException e) {
-    return new IncompleteTable(id, db, name, e);
+    return new IncompleteTable(id, db, name, e, null);
   }
 }
\ No newline at end of file
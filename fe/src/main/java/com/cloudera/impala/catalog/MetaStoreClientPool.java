@@ -14,26 +14,85 @@
 
 package com.cloudera.impala.catalog;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
 
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.metastore.HiveMetaStoreClient;
 import org.apache.log4j.Logger;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 
 /**
- * Manages a pool of HiveMetaStoreClient connections. If the connection pool is empty
- * a new client is created and added to the pool. There is no size limit.
+ * Manages a bounded pool of HiveMetaStoreClient connections.
+ *
+ * Released clients are kept in the pool and reused, which avoids setting up a new
+ * connection (including the SASL handshake, if enabled) for every metastore operation.
+ * A pooled client that was idle for more than VALIDATION_IDLE_TIME_MS is validated with
+ * a cheap metastore call before it is handed out, and replaced by a new client if the
+ * call fails, e.g. because the metastore closed the connection in the meantime.
+ * Recently released clients are handed out without validation, so that borrowing a
+ * client under load does not cost an extra metastore round trip.
+ *
+ * The pool bounds the number of clients that are in use at the same time (see
+ * setMaxActiveClients()). Once that many are in use, getClient() waits for a client to
+ * be released. Callers may hold a client while waiting for an operation that needs
+ * another one (e.g., a table load), so after waiting for MAX_WAIT_TIME_MS a new
+ * client is created regardless of the bound instead of risking a deadlock.
+ * At most MAX_IDLE_CLIENTS idle clients are kept, and idle clients that were not used
+ * for MAX_IDLE_TIME_MS are closed.
+ * Thread safe.
  */
 public class MetaStoreClientPool {
   private static final Logger LOG = Logger.getLogger(MetaStoreClientPool.class);
 
-  private final ConcurrentLinkedQueue<MetaStoreClient> clientPool_ =
-      new ConcurrentLinkedQueue<MetaStoreClient>();
-  private Boolean poolClosed_ = false;
+  // Default maximum number of clients that are in use at the same time before
+  // getClient() waits for a client to be released.
+  private static final int DEFAULT_MAX_ACTIVE_CLIENTS = 32;
+
+  // Maximum number of idle clients kept in the pool.
+  private static final int MAX_IDLE_CLIENTS = 16;
+
+  // Idle clients that were not used for this long are closed.
+  private static final long MAX_IDLE_TIME_MS = 10 * 60 * 1000L;
+
+  // Maximum time getClient() waits for a client to be released before it creates a
+  // client in excess of the maximum number of active clients.
+  private static final long MAX_WAIT_TIME_MS = 60 * 1000L;
+
+  // Idle clients that were released longer ago than this are validated before they
+  // are handed out again.
+  private static final long VALIDATION_IDLE_TIME_MS = 30 * 1000L;
+
+  // Metastore configuration value read to validate a pooled client.
+  private static final String VALIDATION_CONFIG_KEY = "hive.exec.default.partition.name";
+
   private final HiveConf hiveConf_;
 
+  // Idle clients, the most recently released client first. Protected by 'this'.
+  private final ArrayDeque<MetaStoreClient> idleClients_ =
+      new ArrayDeque<MetaStoreClient>();
+
+  // Number of clients that are in use or being created. Protected by 'this'.
+  private int numActiveClients_ = 0;
+
+  // Maximum number of clients that are in use at the same time. Protected by 'this'.
+  private int maxActiveClients_ = DEFAULT_MAX_ACTIVE_CLIENTS;
+
+  private boolean poolClosed_ = false;
+
+  // Metrics, protected by 'this'.
+  private long numClientsCreated_ = 0;
+  private long numBorrows_ = 0;
+  private long numReusedClients_ = 0;
+  private long numValidationFailures_ = 0;
+  private long numEvictedClients_ = 0;
+  private long numWaits_ = 0;
+  private long totalBorrowTimeNs_ = 0;
+  private long maxBorrowTimeNs_ = 0;
+
   /**
    * A wrapper around the HiveMetaStoreClient that manages interactions with the
    * connection pool.
@@ -42,15 +101,19 @@ public class MetaStoreClientPool {
     private final HiveMetaStoreClient hiveClient_;
     private boolean isInUse_;
 
+    // Time this client was last returned to the pool.
+    private long lastReleaseTimeMs_;
+
     private MetaStoreClient(HiveConf hiveConf) {
       try {
-        LOG.debug("Creating MetaStoreClient. Pool Size = " + clientPool_.size());
+        LOG.debug("Creating MetaStoreClient. " + getMetricsSummary());
         this.hiveClient_ = new HiveMetaStoreClient(hiveConf);
       } catch (Exception e) {
         // Turn in to an unchecked exception
         throw new IllegalStateException(e);
       }
       this.isInUse_ = false;
+      this.lastReleaseTimeMs_ = System.currentTimeMillis();
     }
 
     /**
@@ -62,27 +125,45 @@ public class MetaStoreClientPool {
 
     /**
      * Returns this client back to the connection pool. If the connection pool has been
-     * closed, just close the Hive client connection.
+     * closed or already contains MAX_IDLE_CLIENTS idle clients, just close the Hive
+     * client connection.
      */
     public void release() {
       Preconditions.checkState(isInUse_);
       isInUse_ = false;
-      // Ensure the connection isn't returned to the pool if the pool has been closed.
-      // This lock is needed to ensure proper behavior when a thread reads poolClosed
-      // is false, but a call to pool.close() comes in immediately afterward.
-      synchronized (poolClosed_) {
-        if (poolClosed_) {
-          hiveClient_.close();
-        } else {
-          // TODO: Currently the pool does not work properly because we cannot
-          // reuse MetastoreClient connections. No reason to add this client back
-          // to the pool. See HIVE-5181.
-          // clientPool.add(this);
-          hiveClient_.close();
-        }
+      returnClient(this);
+    }
+
+    /**
+     * Returns true if the connection of this client is usable, by making a cheap
+     * metastore call.
+     */
+    private boolean isValid() {
+      try {
+        hiveClient_.getConfigValue(VALIDATION_CONFIG_KEY, "");
+        return true;
+      } catch (Exception e) {
+        LOG.debug("Discarding invalid MetaStoreClient: " + e.getMessage());
+        return false;
       }
     }
 
+    private void close() {
+      try {
+        hiveClient_.close();
+      } catch (Exception e) {
+        LOG.debug("Error closing MetaStoreClient: " + e.getMessage());
+      }
+    }
+
+    /**
+     * Returns true if this client was idle for long enough that it must be validated
+     * before it is reused.
+     */
+    private boolean needsValidation() {
+      return System.currentTimeMillis() - lastReleaseTimeMs_ > VALIDATION_IDLE_TIME_MS;
+    }
+
     // Marks this client as in use
     private void markInUse() {
       isInUse_ = true;
@@ -99,16 +180,40 @@ public class MetaStoreClientPool {
   }
 
   /**
-   * Add numClients to the client pool.
+   * Add numClients idle clients to the client pool.
    */
   public void addClients(int numClients) {
+    List<MetaStoreClient> clients = Lists.newArrayListWithCapacity(numClients);
     for (int i = 0; i < numClients; ++i) {
-      clientPool_.add(new MetaStoreClient(hiveConf_));
+      clients.add(new MetaStoreClient(hiveConf_));
     }
+    synchronized (this) {
+      numClientsCreated_ += numClients;
+      for (MetaStoreClient client: clients) {
+        if (poolClosed_) {
+          client.close();
+        } else {
+          idleClients_.addLast(client);
+        }
+      }
+    }
+  }
+
+  /**
+   * Sets the maximum number of clients that are in use at the same time. Callers
+   * should size it from the number of threads that may hold a client concurrently.
+   */
+  public synchronized void setMaxActiveClients(int maxActiveClients) {
+    Preconditions.checkArgument(maxActiveClients > 0);
+    maxActiveClients_ = maxActiveClients;
+    notifyAll();
   }
 
   /**
-   * Gets a client from the pool. If the pool is empty a new client is created.
+   * Gets a client from the pool. Reuses an idle client if there is one, validating it
+   * first if it was idle for more than VALIDATION_IDLE_TIME_MS, otherwise a new client
+   * is created. Waits for a client to be released if the maximum number of clients
+   * are in use.
    */
   public MetaStoreClient getClient() {
     // The MetaStoreClient c'tor relies on knowing the Hadoop version by asking
@@ -120,36 +225,138 @@ public class MetaStoreClientPool {
       Thread.currentThread().setContextClassLoader(ClassLoader.getSystemClassLoader());
     }
 
-    MetaStoreClient client = clientPool_.poll();
-    // The pool was empty so create a new client and return that.
+    long startTimeNs = System.nanoTime();
+    MetaStoreClient client = takeIdleClient(startTimeNs);
+    boolean isReused = client != null;
+    if (isReused && client.needsValidation() && !client.isValid()) {
+      client.close();
+      client = null;
+      isReused = false;
+      synchronized (this) { ++numValidationFailures_; }
+    }
     if (client == null) {
-      client = new MetaStoreClient(hiveConf_);
-    } else {
-      // TODO: Due to Hive Metastore bugs, there is leftover state from previous client
-      // connections so we are unable to reuse the same connection. For now simply
-      // reconnect each time. One possible culprit is HIVE-5181.
-      client = new MetaStoreClient(hiveConf_);
+      try {
+        client = new MetaStoreClient(hiveConf_);
+      } catch (RuntimeException e) {
+        returnSlot();
+        throw e;
+      }
     }
     client.markInUse();
+    recordBorrow(isReused, System.nanoTime() - startTimeNs);
     return client;
   }
 
   /**
-   * Removes all items from the connection pool and closes all Hive Meta Store client
-   * connections. Can be called multiple times.
+   * Reserves one of the 'maxActiveClients_' slots, waiting for a client to be released
+   * if all of them are taken, and returns the most recently used idle client, or null
+   * if there is none and a new client needs to be created for the slot. Closes idle
+   * clients that were not used for MAX_IDLE_TIME_MS.
    */
-  public void close() {
-    // Ensure no more items get added to the pool once close is called.
-    synchronized (poolClosed_) {
-      if (poolClosed_) {
-        return;
+  private synchronized MetaStoreClient takeIdleClient(long startTimeNs) {
+    boolean waited = false;
+    while (numActiveClients_ >= maxActiveClients_ && !poolClosed_) {
+      long remainingMs = MAX_WAIT_TIME_MS - (System.nanoTime() - startTimeNs) / 1000000;
+      if (remainingMs <= 0) {
+        LOG.warn("Timed out waiting for a MetaStoreClient, creating a new client. " +
+            getMetricsSummary());
+        break;
+      }
+      if (!waited) {
+        ++numWaits_;
+        waited = true;
+      }
+      try {
+        wait(remainingMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
       }
-      poolClosed_ = true;
     }
+    ++numActiveClients_;
+    evictIdleClients();
+    return idleClients_.pollFirst();
+  }
 
+  /**
+   * Closes the idle clients that were not used for MAX_IDLE_TIME_MS.
+   */
+  private synchronized void evictIdleClients() {
+    long minReleaseTimeMs = System.currentTimeMillis() - MAX_IDLE_TIME_MS;
+    // The least recently used clients are at the end of the queue.
+    Iterator<MetaStoreClient> it = idleClients_.descendingIterator();
+    while (it.hasNext()) {
+      MetaStoreClient client = it.next();
+      if (client.lastReleaseTimeMs_ >= minReleaseTimeMs) break;
+      it.remove();
+      client.close();
+      ++numEvictedClients_;
+    }
+  }
+
+  /**
+   * Returns a released client to the pool, or closes it if the pool is closed or
+   * already holds MAX_IDLE_CLIENTS idle clients.
+   */
+  private synchronized void returnClient(MetaStoreClient client) {
+    returnSlot();
+    if (poolClosed_ || idleClients_.size() >= MAX_IDLE_CLIENTS) {
+      client.close();
+      return;
+    }
+    client.lastReleaseTimeMs_ = System.currentTimeMillis();
+    idleClients_.addFirst(client);
+  }
+
+  /**
+   * Releases a slot reserved by takeIdleClient() and wakes up a waiting thread.
+   */
+  private synchronized void returnSlot() {
+    Preconditions.checkState(numActiveClients_ > 0);
+    --numActiveClients_;
+    notify();
+  }
+
+  private synchronized void recordBorrow(boolean isReused, long borrowTimeNs) {
+    ++numBorrows_;
+    if (isReused) {
+      ++numReusedClients_;
+    } else {
+      ++numClientsCreated_;
+    }
+    totalBorrowTimeNs_ += borrowTimeNs;
+    maxBorrowTimeNs_ = Math.max(maxBorrowTimeNs_, borrowTimeNs);
+  }
+
+  public synchronized int getNumActiveClients() { return numActiveClients_; }
+  public synchronized int getNumIdleClients() { return idleClients_.size(); }
+
+  /**
+   * Returns a summary of the pool occupancy and of the client borrow metrics.
+   */
+  public synchronized String getMetricsSummary() {
+    return String.format("MetaStoreClientPool: active=%d max_active=%d idle=%d " +
+        "created=%d borrows=%d reused=%d validation_failures=%d evicted=%d waits=%d " +
+        "avg_borrow_time=%.3fms max_borrow_time=%.3fms", numActiveClients_,
+        maxActiveClients_, idleClients_.size(), numClientsCreated_, numBorrows_,
+        numReusedClients_, numValidationFailures_, numEvictedClients_, numWaits_,
+        numBorrows_ == 0 ? 0.0 : totalBorrowTimeNs_ / (numBorrows_ * 1000000.0),
+        maxBorrowTimeNs_ / 1000000.0);
+  }
+
+  /**
+   * Removes all items from the connection pool and closes all Hive Meta Store client
+   * connections. Clients that are in use are closed when they are released. Can be
+   * called multiple times.
+   */
+  public synchronized void close() {
+    if (poolClosed_) return;
+    poolClosed_ = true;
+    LOG.debug("Closing " + getMetricsSummary());
     MetaStoreClient client = null;
-    while ((client = clientPool_.poll()) != null) {
-      client.getHiveClient().close();
+    while ((client = idleClients_.pollFirst()) != null) {
+      client.close();
     }
+    notifyAll();
   }
 }
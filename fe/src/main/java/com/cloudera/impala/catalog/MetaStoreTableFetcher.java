@@ -0,0 +1,63 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import java.util.concurrent.Semaphore;
+
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.thrift.TException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Fetches table definitions from the Hive Metastore for the table loading threads,
+ * bounding the number of getTable() calls that are in flight at the same time.
+ *
+ * Each loading thread issues its call over its own pooled metastore connection (see
+ * MetaStoreClientPool), so concurrent calls share no client state. The bound protects
+ * the metastore from a burst of requests, e.g. after a global invalidate metadata.
+ * Metastores without the fix for HIVE-5457 fail on concurrent getTable() calls; for
+ * those, a bound of 1 serializes the calls. Thread safe.
+ */
+public class MetaStoreTableFetcher {
+  private final int maxConcurrentFetches_;
+
+  // One permit per getTable() call that may be in flight. Fair, so that no loading
+  // thread starves while others keep fetching.
+  private final Semaphore permits_;
+
+  public MetaStoreTableFetcher(int maxConcurrentFetches) {
+    Preconditions.checkArgument(maxConcurrentFetches > 0);
+    maxConcurrentFetches_ = maxConcurrentFetches;
+    permits_ = new Semaphore(maxConcurrentFetches, true);
+  }
+
+  public int getMaxConcurrentFetches() { return maxConcurrentFetches_; }
+
+  /**
+   * Returns the metastore definition of the given table, waiting for a permit if
+   * maxConcurrentFetches_ calls are already in flight.
+   */
+  public Table getTable(IMetaStoreClient client, String dbName, String tblName)
+      throws TException {
+    permits_.acquireUninterruptibly();
+    try {
+      return client.getTable(dbName, tblName);
+    } finally {
+      permits_.release();
+    }
+  }
+}
@@ -0,0 +1,402 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.log4j.Logger;
+import org.apache.thrift.TDeserializer;
+import org.apache.thrift.TException;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TCompactProtocol;
+
+import com.cloudera.impala.common.ImpalaRuntimeException;
+import com.cloudera.impala.thrift.TColumnStats;
+import com.cloudera.impala.thrift.TIntermediateColumnStats;
+import com.cloudera.impala.thrift.TPartitionStats;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Utilities for the per-partition stats persisted by COMPUTE INCREMENTAL STATS.
+ *
+ * The stats of a partition (TPartitionStats) are stored in the parameters of its
+ * metastore partition: the compact thrift serialization is compressed, base64 encoded
+ * and split into chunks that fit into a metastore parameter value. The fingerprint of
+ * the partition's files at the time the stats were computed is stored separately, so
+ * that the partitions whose stats are current can be identified without decoding the
+ * stats.
+ *
+ * The column stats of a partition hold the HyperLogLog registers of the column values
+ * instead of an NDV estimate, so the table-level NDVs can be estimated from the stats
+ * of all partitions with StatsMerger, without scanning the partitions again.
+ */
+public class PartitionStatsUtil {
+  private static final Logger LOG = Logger.getLogger(PartitionStatsUtil.class);
+
+  // Partition parameters that hold the incremental stats.
+  public static final String INCREMENTAL_STATS_FINGERPRINT =
+      "impala_incremental_stats_fingerprint";
+  public static final String INCREMENTAL_STATS_NUM_CHUNKS =
+      "impala_incremental_stats_num_chunks";
+  public static final String INCREMENTAL_STATS_CHUNK_PREFIX =
+      "impala_incremental_stats_chunk";
+
+  // Maximum length of a parameter value that the metastore can store.
+  private static final int MAX_PARAM_VALUE_LENGTH = 4000;
+
+  // Number of HyperLogLog registers. Must match HLL_PRECISION in
+  // be/src/exprs/aggregate-functions.cc.
+  public static final int HLL_NUM_REGISTERS = 1 << 10;
+
+  /**
+   * Returns a fingerprint of the given files, which changes whenever a file is added,
+   * removed or modified.
+   */
+  public static String computeFileFingerprint(
+      List<HdfsPartition.FileDescriptor> fileDescriptors) {
+    List<HdfsPartition.FileDescriptor> fds = Lists.newArrayList(fileDescriptors);
+    Collections.sort(fds, new Comparator<HdfsPartition.FileDescriptor>() {
+      @Override
+      public int compare(HdfsPartition.FileDescriptor fd1,
+          HdfsPartition.FileDescriptor fd2) {
+        return fd1.getFileName().compareTo(fd2.getFileName());
+      }
+    });
+    Hasher hasher = Hashing.md5().newHasher();
+    for (HdfsPartition.FileDescriptor fd: fds) {
+      hasher.putString(fd.getFileName(), Charsets.UTF_8);
+      hasher.putLong(fd.getFileLength());
+      hasher.putLong(fd.getModificationTime());
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Returns the fingerprint of the files the incremental stats in the given partition
+   * parameters were computed for, or null if there are no incremental stats.
+   */
+  public static String getFingerprint(Map<String, String> params) {
+    if (params == null) return null;
+    return params.get(INCREMENTAL_STATS_FINGERPRINT);
+  }
+
+  /**
+   * Returns the given partition-key values in canonical form, so that the key values
+   * of a partition match whether they come from its metastore partition, from the
+   * analysis of COMPUTE STATS or from the results of the COMPUTE STATS queries, which
+   * cast the partition-key columns to strings in the backend. NULLs, empty strings and
+   * nullPartitionKeyValue map to nullPartitionKeyValue, numeric values to their
+   * shortest form (e.g., "01" to "1") and booleans to "true" or "false". Values that
+   * cannot be parsed as their column type are returned unchanged.
+   */
+  public static List<String> canonicalPartitionKey(List<String> values,
+      List<ColumnType> types, String nullPartitionKeyValue) {
+    Preconditions.checkArgument(values.size() == types.size());
+    List<String> result = Lists.newArrayListWithCapacity(values.size());
+    for (int i = 0; i < values.size(); ++i) {
+      String value = values.get(i);
+      if (value == null || value.isEmpty() || value.equals(nullPartitionKeyValue)) {
+        result.add(nullPartitionKeyValue);
+        continue;
+      }
+      try {
+        switch (types.get(i).getPrimitiveType()) {
+          case BOOLEAN:
+            if (value.equals("1") || value.equalsIgnoreCase("true")) {
+              value = "true";
+            } else if (value.equals("0") || value.equalsIgnoreCase("false")) {
+              value = "false";
+            }
+            break;
+          case TINYINT:
+          case SMALLINT:
+          case INT:
+          case BIGINT:
+            value = new BigInteger(value.trim()).toString();
+            break;
+          case FLOAT:
+            value = Float.toString(Float.parseFloat(value));
+            break;
+          case DOUBLE:
+            value = Double.toString(Double.parseDouble(value));
+            break;
+          default:
+            break;
+        }
+      } catch (NumberFormatException e) {
+        // Leave the value unchanged.
+      }
+      result.add(value);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the canonical form of the given partition-key values of the given table.
+   * See canonicalPartitionKey(List<String>, List<ColumnType>, String).
+   */
+  public static List<String> canonicalPartitionKey(List<String> values,
+      HdfsTable table) {
+    return canonicalPartitionKey(values, getPartitionKeyTypes(table),
+        table.getNullPartitionKeyValue());
+  }
+
+  /**
+   * Returns a copy of the given map with the partition-key values of the given table
+   * in canonical form. See canonicalPartitionKey().
+   */
+  public static <V> Map<List<String>, V> canonicalizePartitionKeys(
+      Map<List<String>, V> map, HdfsTable table) {
+    List<ColumnType> types = getPartitionKeyTypes(table);
+    Map<List<String>, V> result = Maps.newHashMapWithExpectedSize(map.size());
+    for (Map.Entry<List<String>, V> entry: map.entrySet()) {
+      result.put(canonicalPartitionKey(entry.getKey(), types,
+          table.getNullPartitionKeyValue()), entry.getValue());
+    }
+    return result;
+  }
+
+  private static List<ColumnType> getPartitionKeyTypes(HdfsTable table) {
+    List<ColumnType> types = Lists.newArrayList();
+    for (int i = 0; i < table.getNumClusteringCols(); ++i) {
+      types.add(table.getColumns().get(i).getType());
+    }
+    return types;
+  }
+
+  /**
+   * Stores the given stats and the fingerprint of the files they were computed for in
+   * the given partition parameters, replacing any existing incremental stats.
+   */
+  public static void partStatsToParameters(TPartitionStats partStats,
+      String fingerprint, Map<String, String> params) throws ImpalaRuntimeException {
+    Preconditions.checkNotNull(fingerprint);
+    byte[] serialized;
+    try {
+      serialized = new TSerializer(new TCompactProtocol.Factory()).serialize(partStats);
+    } catch (TException e) {
+      throw new ImpalaRuntimeException("Error serializing partition stats", e);
+    }
+    // Base64.encodeBase64String() inserts line breaks in this version of commons-codec.
+    String encoded =
+        new String(Base64.encodeBase64(compress(serialized)), Charsets.US_ASCII);
+    clearIncrementalStats(params);
+    int numChunks = 0;
+    for (int i = 0; i < encoded.length(); i += MAX_PARAM_VALUE_LENGTH) {
+      params.put(INCREMENTAL_STATS_CHUNK_PREFIX + numChunks++, encoded.substring(i,
+          Math.min(i + MAX_PARAM_VALUE_LENGTH, encoded.length())));
+    }
+    params.put(INCREMENTAL_STATS_NUM_CHUNKS, String.valueOf(numChunks));
+    params.put(INCREMENTAL_STATS_FINGERPRINT, fingerprint);
+  }
+
+  /**
+   * Returns the incremental stats stored in the given partition parameters, or null if
+   * there are none or if they cannot be decoded.
+   */
+  public static TPartitionStats partStatsFromParameters(Map<String, String> params) {
+    if (getFingerprint(params) == null) return null;
+    try {
+      int numChunks = Integer.parseInt(params.get(INCREMENTAL_STATS_NUM_CHUNKS));
+      StringBuilder encoded = new StringBuilder();
+      for (int i = 0; i < numChunks; ++i) {
+        String chunk = params.get(INCREMENTAL_STATS_CHUNK_PREFIX + i);
+        if (chunk == null) throw new IllegalStateException("Missing chunk " + i);
+        encoded.append(chunk);
+      }
+      TPartitionStats partStats = new TPartitionStats();
+      new TDeserializer(new TCompactProtocol.Factory()).deserialize(partStats,
+          decompress(Base64.decodeBase64(encoded.toString())));
+      return partStats;
+    } catch (Exception e) {
+      LOG.warn("Ignoring invalid incremental partition stats: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Removes the incremental stats from the given partition parameters.
+   */
+  public static void clearIncrementalStats(Map<String, String> params) {
+    Iterator<String> it = params.keySet().iterator();
+    while (it.hasNext()) {
+      String key = it.next();
+      if (key.equals(INCREMENTAL_STATS_FINGERPRINT) ||
+          key.equals(INCREMENTAL_STATS_NUM_CHUNKS) ||
+          key.startsWith(INCREMENTAL_STATS_CHUNK_PREFIX)) {
+        it.remove();
+      }
+    }
+  }
+
+  private static byte[] compress(byte[] input) {
+    Deflater deflater = new Deflater();
+    deflater.setInput(input);
+    deflater.finish();
+    ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 4 + 16);
+    byte[] buffer = new byte[4096];
+    while (!deflater.finished()) {
+      out.write(buffer, 0, deflater.deflate(buffer));
+    }
+    deflater.end();
+    return out.toByteArray();
+  }
+
+  private static byte[] decompress(byte[] input) throws DataFormatException {
+    Inflater inflater = new Inflater();
+    inflater.setInput(input);
+    ByteArrayOutputStream out = new ByteArrayOutputStream(input.length * 4);
+    byte[] buffer = new byte[4096];
+    while (!inflater.finished()) {
+      int len = inflater.inflate(buffer);
+      if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+        throw new DataFormatException("Truncated partition stats");
+      }
+      out.write(buffer, 0, len);
+    }
+    inflater.end();
+    return out.toByteArray();
+  }
+
+  /**
+   * Returns the NDV estimate of the given HyperLogLog registers. Mirrors
+   * AggregateFunctions::HllFinalize() in the BE.
+   */
+  public static long estimateNdv(byte[] registers) {
+    Preconditions.checkArgument(registers.length == HLL_NUM_REGISTERS);
+    final int numStreams = HLL_NUM_REGISTERS;
+    float alpha = 0.7213f / (1 + 1.079f / numStreams);
+    float harmonicMean = 0;
+    int numZeroRegisters = 0;
+    for (int i = 0; i < registers.length; ++i) {
+      harmonicMean += (float) Math.pow(2.0f, -registers[i]);
+      if (registers[i] == 0) ++numZeroRegisters;
+    }
+    harmonicMean = 1.0f / harmonicMean;
+    long estimate = (long) (alpha * numStreams * numStreams * harmonicMean);
+    if (numZeroRegisters != 0) {
+      // Estimated cardinality is too low. Hll is too inaccurate here, instead use
+      // linear counting.
+      estimate = (long) (numStreams * Math.log((float) numStreams / numZeroRegisters));
+    }
+    return estimate;
+  }
+
+  /**
+   * Merges the stats of multiple partitions into table-level row count and column
+   * stats. Partitions are added one at a time, so the stats of all partitions do not
+   * need to be held in memory at the same time.
+   */
+  public static class StatsMerger {
+    private static class ColumnStatsState {
+      final byte[] registers = new byte[HLL_NUM_REGISTERS];
+      long numNulls = 0;
+      int maxSize = -1;
+      // Sum of the average sizes weighted by the number of non-null values.
+      double totalSize = 0;
+      long numNonNulls = 0;
+      double lastAvgSize = -1;
+      // Smallest and largest value of all partitions, NaN if unknown.
+      double minValue = Double.NaN;
+      double maxValue = Double.NaN;
+    }
+
+    private long numRows_ = 0;
+    private final Map<String, ColumnStatsState> colStats_ = Maps.newHashMap();
+
+    /**
+     * Adds the row count of a partition that has no incremental column stats.
+     */
+    public void addRowCount(long numRows) {
+      if (numRows > 0) numRows_ += numRows;
+    }
+
+    /**
+     * Adds the stats of a partition.
+     */
+    public void add(TPartitionStats partStats) {
+      long numRows = partStats.isSetStats() ? partStats.getStats().getNum_rows() : 0;
+      addRowCount(numRows);
+      if (!partStats.isSetIntermediate_col_stats()) return;
+      for (Map.Entry<String, TIntermediateColumnStats> entry:
+           partStats.getIntermediate_col_stats().entrySet()) {
+        ColumnStatsState state = colStats_.get(entry.getKey());
+        if (state == null) {
+          state = new ColumnStatsState();
+          colStats_.put(entry.getKey(), state);
+        }
+        TIntermediateColumnStats stats = entry.getValue();
+        byte[] registers = stats.getIntermediate_ndv();
+        if (registers != null && registers.length == HLL_NUM_REGISTERS) {
+          for (int i = 0; i < HLL_NUM_REGISTERS; ++i) {
+            state.registers[i] = (byte) Math.max(state.registers[i], registers[i]);
+          }
+        }
+        state.numNulls += stats.getNum_nulls();
+        state.maxSize = Math.max(state.maxSize, stats.getMax_size());
+        long numNonNulls = Math.max(0, numRows - stats.getNum_nulls());
+        state.totalSize += stats.getAvg_size() * numNonNulls;
+        state.numNonNulls += numNonNulls;
+        state.lastAvgSize = stats.getAvg_size();
+        if (stats.isSetMin_value() && stats.isSetMax_value()) {
+          // Math.min() and Math.max() would return NaN if one argument is NaN.
+          if (Double.isNaN(state.minValue) || stats.getMin_value() < state.minValue) {
+            state.minValue = stats.getMin_value();
+          }
+          if (Double.isNaN(state.maxValue) || stats.getMax_value() > state.maxValue) {
+            state.maxValue = stats.getMax_value();
+          }
+        }
+      }
+    }
+
+    public long getNumRows() { return numRows_; }
+
+    /**
+     * Returns the merged stats of all columns, keyed by column name.
+     */
+    public Map<String, TColumnStats> getColumnStats() {
+      Map<String, TColumnStats> result = Maps.newHashMap();
+      for (Map.Entry<String, ColumnStatsState> entry: colStats_.entrySet()) {
+        ColumnStatsState state = entry.getValue();
+        double avgSize = state.numNonNulls > 0 ?
+            state.totalSize / state.numNonNulls : state.lastAvgSize;
+        TColumnStats colStats = new TColumnStats(avgSize, state.maxSize,
+            estimateNdv(state.registers), state.numNulls);
+        if (!Double.isNaN(state.minValue)) {
+          colStats.setMin_value(state.minValue);
+          colStats.setMax_value(state.maxValue);
+        }
+        result.put(entry.getKey(), colStats);
+      }
+      return result;
+    }
+  }
+}
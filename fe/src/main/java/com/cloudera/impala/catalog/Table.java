@@ -19,8 +19,15 @@ import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.hadoop.hive.metastore.HiveMetaStoreClient;
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
 import org.apache.hadoop.hive.metastore.TableType;
 import org.apache.hadoop.hive.metastore.api.ColumnStatistics;
 import org.apache.hadoop.hive.metastore.api.FieldSchema;
@@ -30,6 +37,7 @@ import org.apache.log4j.Logger;
 import com.cloudera.impala.analysis.CreateTableStmt;
 import com.cloudera.impala.analysis.SqlParser;
 import com.cloudera.impala.analysis.SqlScanner;
+import com.cloudera.impala.catalog.MetaStoreClientPool.MetaStoreClient;
 import com.cloudera.impala.common.InternalException;
 import com.cloudera.impala.thrift.TAccessLevel;
 import com.cloudera.impala.thrift.TCatalogObject;
@@ -38,8 +46,10 @@ import com.cloudera.impala.thrift.TColumn;
 import com.cloudera.impala.thrift.TTable;
 import com.cloudera.impala.thrift.TTableDescriptor;
 import com.cloudera.impala.thrift.TTableStats;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Base class for table metadata.
@@ -53,9 +63,6 @@ import com.google.common.collect.Maps;
 public abstract class Table implements CatalogObject {
   private static final Logger LOG = Logger.getLogger(Table.class);
 
-  // Lock used to serialize calls to the Hive MetaStore to work around MetaStore
-  // concurrency bugs. Currently used to serialize calls to "getTable()" due to HIVE-5457.
-  private static final Object metastoreAccessLock_ = new Object();
   private long catalogVersion_ = Catalog.INITIAL_CATALOG_VERSION;
   private final org.apache.hadoop.hive.metastore.api.Table msTable_;
 
@@ -83,6 +90,28 @@ public abstract class Table implements CatalogObject {
   // The lastDdlTime for this table; -1 if not set
   protected long lastDdlTime_;
 
+  // Wall-clock time in milliseconds spent in the individual phases of the last call to
+  // load(), in the order they were recorded. Only populated in the catalog server and
+  // not serialized to thrift.
+  protected final Map<String, Long> loadTimingsMs_ = Maps.newLinkedHashMap();
+
+  // Tables with more than MIN_COLUMN_STATS_CHUNK_SIZE columns fetch their column stats
+  // in up to MAX_COLUMN_STATS_CHUNKS chunks in parallel.
+  private static final int MIN_COLUMN_STATS_CHUNK_SIZE = 16;
+  private static final int MAX_COLUMN_STATS_CHUNKS = 8;
+
+  // Number of threads shared by all table loads that issue metastore calls in parallel
+  // to the loading thread, e.g., to fetch column stats or batches of partitions.
+  // Bounds the number of additional concurrent metastore calls issued by table loads.
+  static final int NUM_METASTORE_FETCH_THREADS = 16;
+
+  // Pool of NUM_METASTORE_FETCH_THREADS threads. Each task uses its own metastore
+  // connection. Tasks submitted to this pool must not block on other tasks of the pool.
+  protected static final ExecutorService METASTORE_FETCH_POOL =
+      Executors.newFixedThreadPool(NUM_METASTORE_FETCH_THREADS,
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("metastore-fetcher-%d").build());
+
   // Set of supported table types.
   protected static EnumSet<TableType> SUPPORTED_TABLE_TYPES = EnumSet.of(
       TableType.EXTERNAL_TABLE, TableType.MANAGED_TABLE, TableType.VIRTUAL_VIEW);
@@ -123,17 +152,159 @@ public abstract class Table implements CatalogObject {
   }
 
   /**
-   * Loads the column stats for col from the Hive Metastore.
+   * Records the time spent in the load phase 'phase', which started at 'startTimeMs'.
+   * Returns the current time, so that consecutive phases can be chained.
    */
-  protected void loadColumnStats(Column col, HiveMetaStoreClient client) {
-    ColumnStatistics colStats = null;
-    try {
-      colStats = client.getTableColumnStatistics(db_.getName(), name_, col.getName());
-    } catch (Exception e) {
-      // don't try to load stats for this column
-      return;
+  protected long recordLoadTiming(String phase, long startTimeMs) {
+    long nowMs = System.currentTimeMillis();
+    Long prevMs = loadTimingsMs_.get(phase);
+    loadTimingsMs_.put(phase, (prevMs == null ? 0 : prevMs) + nowMs - startTimeMs);
+    return nowMs;
+  }
+
+  /**
+   * Returns the load timings of this table as a human-readable string, e.g.,
+   * "fetch-partitions=10ms, list-files=200ms".
+   */
+  public String getLoadTimingsString() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, Long> timing: loadTimingsMs_.entrySet()) {
+      if (sb.length() > 0) sb.append(", ");
+      sb.append(timing.getKey() + "=" + timing.getValue() + "ms");
     }
+    return sb.toString();
+  }
 
+  /**
+   * Fetches the column stats of a chunk of columns over a metastore client that is
+   * borrowed for the duration of the call. Used to fetch the chunks of wide tables on
+   * METASTORE_FETCH_POOL.
+   */
+  interface ColumnStatsChunkFetcher {
+    List<ColumnStatistics> fetch(List<? extends Column> chunk);
+  }
+
+  /**
+   * Loads the column stats of 'cols' from the Hive Metastore, and their histograms from
+   * the table parameters. The metastore only returns the stats of one column per call,
+   * so the columns of wide tables are split into chunks that are fetched in parallel
+   * on METASTORE_FETCH_POOL, each chunk over a client borrowed from the catalog's
+   * metastore client pool.
+   */
+  protected void loadColumnStats(List<? extends Column> cols,
+      HiveMetaStoreClient client) {
+    ColumnStatsChunkFetcher pooledFetcher = null;
+    if (db_ != null && db_.getParentCatalog() != null) {
+      pooledFetcher = new ColumnStatsChunkFetcher() {
+        @Override
+        public List<ColumnStatistics> fetch(List<? extends Column> chunk) {
+          MetaStoreClient msClient = db_.getParentCatalog().getMetaStoreClient();
+          try {
+            return fetchColumnStats(chunk, msClient.getHiveClient());
+          } finally {
+            msClient.release();
+          }
+        }
+      };
+    }
+    loadColumnStats(cols, client, pooledFetcher);
+  }
+
+  /**
+   * Loads the column stats of 'cols'. If 'pooledFetcher' is null, all columns are
+   * fetched over 'client' on the calling thread. Otherwise, the chunks are claimed in
+   * order by the calling thread, which fetches them over 'client', and by up to one
+   * task per remaining chunk on METASTORE_FETCH_POOL, which fetches them with
+   * 'pooledFetcher'. The calling thread thus keeps using its client instead of holding
+   * it idle while waiting for the tasks, and tasks that only start once all chunks were
+   * claimed finish without borrowing a client. The columns of chunks that could not be
+   * fetched are loaded without stats. The stats are applied to the columns once all
+   * chunks have been fetched.
+   */
+  void loadColumnStats(List<? extends Column> cols, IMetaStoreClient client,
+      final ColumnStatsChunkFetcher pooledFetcher) {
+    if (cols.isEmpty()) return;
+    long startTimeMs = System.currentTimeMillis();
+    int numChunks = Math.min(MAX_COLUMN_STATS_CHUNKS,
+        (cols.size() + MIN_COLUMN_STATS_CHUNK_SIZE - 1) / MIN_COLUMN_STATS_CHUNK_SIZE);
+    if (pooledFetcher == null) numChunks = 1;
+    final List<? extends List<? extends Column>> chunks =
+        Lists.partition(cols, (cols.size() + numChunks - 1) / numChunks);
+
+    final AtomicInteger nextChunk = new AtomicInteger();
+    final AtomicReferenceArray<List<ColumnStatistics>> chunkStats =
+        new AtomicReferenceArray<List<ColumnStatistics>>(chunks.size());
+    List<Future<?>> tasks = Lists.newArrayList();
+    for (int i = 1; i < chunks.size(); ++i) {
+      tasks.add(METASTORE_FETCH_POOL.submit(new Runnable() {
+        @Override
+        public void run() {
+          int chunkIdx = nextChunk.getAndIncrement();
+          if (chunkIdx >= chunks.size()) return;
+          try {
+            chunkStats.set(chunkIdx, pooledFetcher.fetch(chunks.get(chunkIdx)));
+          } catch (RuntimeException e) {
+            // Load the table without the stats of these columns.
+            LOG.warn("Failed to load the column stats of table " + getFullName(), e);
+          }
+        }
+      }));
+    }
+    for (int chunkIdx = nextChunk.getAndIncrement(); chunkIdx < chunks.size();
+         chunkIdx = nextChunk.getAndIncrement()) {
+      chunkStats.set(chunkIdx, fetchColumnStats(chunks.get(chunkIdx), client));
+    }
+    for (Future<?> task: tasks) {
+      try {
+        task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        LOG.warn("Interrupted while loading the column stats of table " +
+            getFullName());
+        break;
+      } catch (ExecutionException e) {
+        // Not expected, the tasks handle their own failures.
+        LOG.warn("Failed to load the column stats of table " + getFullName(), e);
+      }
+    }
+
+    int colIdx = 0;
+    for (int i = 0; i < chunks.size(); ++i) {
+      List<ColumnStatistics> stats = chunkStats.get(i);
+      Preconditions.checkState(stats == null || stats.size() == chunks.get(i).size());
+      for (int j = 0; j < chunks.get(i).size(); ++j, ++colIdx) {
+        if (stats != null && stats.get(j) != null) {
+          applyColumnStats(cols.get(colIdx), stats.get(j));
+        }
+      }
+    }
+    recordLoadTiming("load-col-stats", startTimeMs);
+  }
+
+  /**
+   * Fetches the column stats of 'cols' from the Hive Metastore. The stats of columns
+   * that have no stats, or that could not be fetched, are null.
+   */
+  private List<ColumnStatistics> fetchColumnStats(List<? extends Column> cols,
+      IMetaStoreClient client) {
+    List<ColumnStatistics> colStats = Lists.newArrayListWithCapacity(cols.size());
+    for (Column col: cols) {
+      try {
+        colStats.add(
+            client.getTableColumnStatistics(db_.getName(), name_, col.getName()));
+      } catch (Exception e) {
+        // don't try to load stats for this column
+        colStats.add(null);
+      }
+    }
+    return colStats;
+  }
+
+  /**
+   * Applies the column stats fetched from the Hive Metastore to col, and loads its
+   * histogram from the table parameters.
+   */
+  private void applyColumnStats(Column col, ColumnStatistics colStats) {
     // we should never see more than one ColumnStatisticsObj here
     if (colStats.getStatsObj().size() > 1) return;
 
@@ -151,6 +322,12 @@ public abstract class Table implements CatalogObject {
           "with the column stats data. Performance may suffer until column stats are" +
           " regenerated for this column.",
           name_, col.getName(), col.getType().toString()));
+      return;
+    }
+    if (msTable_ != null && msTable_.getParameters() != null) {
+      col.getStats().setHistogramBounds(ColumnStats.parseHistogram(
+          msTable_.getParameters().get(
+              ColumnStats.HISTOGRAM_PARAM_PREFIX + col.getName().toLowerCase())));
     }
   }
 
@@ -359,6 +536,7 @@ public abstract class Table implements CatalogObject {
 
   public int getNumClusteringCols() { return numClusteringCols_; }
   public TableId getId() { return id_; }
+  public Map<String, Long> getLoadTimingsMs() { return loadTimingsMs_; }
   public long getNumRows() { return numRows_; }
 
   @Override
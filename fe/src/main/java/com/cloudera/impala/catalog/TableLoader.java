@@ -14,6 +14,7 @@
 
 package com.cloudera.impala.catalog;
 
+import java.util.Collection;
 import java.util.EnumSet;
 
 import org.apache.hadoop.hive.metastore.TableType;
@@ -35,13 +36,12 @@ public class TableLoader {
 
   private final CatalogServiceCatalog catalog_;
 
-  // Lock used to serialize calls to the Hive MetaStore to work around MetaStore
-  // concurrency bugs. Currently used to serialize calls to "getTable()" due to
-  // HIVE-5457.
-  private static final Object metastoreAccessLock_ = new Object();
+  // Bounds the number of concurrent calls to the Hive MetaStore's getTable().
+  private final MetaStoreTableFetcher tblFetcher_;
 
-  public TableLoader(CatalogServiceCatalog catalog) {
+  public TableLoader(CatalogServiceCatalog catalog, MetaStoreTableFetcher tblFetcher) {
     catalog_ = catalog;
+    tblFetcher_ = tblFetcher;
   }
 
   /**
@@ -56,18 +56,27 @@ public class TableLoader {
    * an IncompleteTable will be returned that contains details on the error.
    */
   public Table load(Db db, String tblName, Table cachedValue) {
+    return load(db, tblName, cachedValue, null);
+  }
+
+  /**
+   * Same as load(), except that if the table is an HDFS table, only the partitions
+   * named in 'modifiedPartitionNames' are reloaded if possible, and all other
+   * partitions are shared with cachedValue (see HdfsTable.load()). Loads all partitions
+   * if 'modifiedPartitionNames' is null.
+   */
+  public Table load(Db db, String tblName, Table cachedValue,
+      Collection<String> modifiedPartitionNames) {
     String fullTblName = db.getName() + "." + tblName;
     LOG.info("Loading metadata for: " + fullTblName);
+    long startTimeMs = System.currentTimeMillis();
     MetaStoreClient msClient = null;
     Table table;
     // turn all exceptions into TableLoadingException
     try {
       msClient = catalog_.getMetaStoreClient();
-      org.apache.hadoop.hive.metastore.api.Table msTbl = null;
-      // All calls to getTable() need to be serialized due to HIVE-5457.
-      synchronized (metastoreAccessLock_) {
-        msTbl = msClient.getHiveClient().getTable(db.getName(), tblName);
-      }
+      org.apache.hadoop.hive.metastore.api.Table msTbl =
+          tblFetcher_.getTable(msClient.getHiveClient(), db.getName(), tblName);
       // Check that the Hive TableType is supported
       TableType tableType = TableType.valueOf(msTbl.getTableType());
       if (!SUPPORTED_TABLE_TYPES.contains(tableType)) {
@@ -81,7 +90,14 @@ public class TableLoader {
         throw new TableLoadingException(
             "Unrecognized table type for table: " + fullTblName);
       }
-      table.load(cachedValue, msClient.getHiveClient(), msTbl);
+      if (modifiedPartitionNames != null && table instanceof HdfsTable) {
+        ((HdfsTable) table).load(cachedValue, msClient.getHiveClient(), msTbl,
+            modifiedPartitionNames);
+      } else {
+        table.load(cachedValue, msClient.getHiveClient(), msTbl);
+      }
+      LOG.info(String.format("Loaded metadata for: %s in %dms (%s)", fullTblName,
+          System.currentTimeMillis() - startTimeMs, table.getLoadTimingsString()));
     } catch (TableLoadingException e) {
       table = IncompleteTable.createFailedMetadataLoadTable(
           TableId.createInvalidId(), db, tblName, e);
@@ -14,6 +14,7 @@
 
 package com.cloudera.impala.catalog;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
@@ -119,19 +120,35 @@ public class TableLoadingMgr {
   // pending tasks (no work will be rejected, but memory consumption is unbounded).
   ExecutorService tblLoadingPool_;
 
+  // Pool of threads shared by all table loads that lists partition directories and
+  // loads file block metadata from the NameNode. Bounds the total number of concurrent
+  // file metadata requests issued by the catalog server, independent of how many
+  // tables are loaded in parallel. Tasks submitted to this pool must not block on
+  // other tasks of the pool.
+  private final ExecutorService fileMdLoadingPool_;
+
   private final CatalogServiceCatalog catalog_;
   private final TableLoader tblLoader_;
 
-  public TableLoadingMgr(CatalogServiceCatalog catalog, int numLoadingThreads) {
+  public TableLoadingMgr(CatalogServiceCatalog catalog, int numLoadingThreads,
+      int numFileMdLoadingThreads, int maxConcurrentTableFetches) {
+    Preconditions.checkArgument(numFileMdLoadingThreads > 0);
     catalog_ = catalog;
-    tblLoader_ = new TableLoader(catalog_);
+    tblLoader_ = new TableLoader(catalog_,
+        new MetaStoreTableFetcher(maxConcurrentTableFetches));
     numLoadingThreads_ = numLoadingThreads;
     tblLoadingPool_ = Executors.newFixedThreadPool(numLoadingThreads_);
+    fileMdLoadingPool_ = Executors.newFixedThreadPool(numFileMdLoadingThreads);
 
     // Start the background table loading threads.
     startTableLoadingThreads();
   }
 
+  /**
+   * Returns the pool used for loading file metadata. See fileMdLoadingPool_.
+   */
+  public ExecutorService getFileMdLoadingPool() { return fileMdLoadingPool_; }
+
   /**
    * Prioritizes the loading of the given table.
    */
@@ -185,6 +202,23 @@ public class TableLoadingMgr {
     return new LoadRequest(tblName, tableLoadTask);
   }
 
+  /**
+   * Reloads the given partitions of a table on the calling thread, sharing all other
+   * partitions with previousTbl (see TableLoader.load()). Unlike loadAsync(), the load
+   * is not combined with a load of the same table that is in flight, since that load
+   * may have started before the partitions were modified.
+   */
+  public Table loadPartitions(TTableName tblName, Table previousTbl,
+      Collection<String> partitionNames) throws DatabaseNotFoundException {
+    Db parentDb = catalog_.getDb(tblName.getDb_name());
+    if (parentDb == null) {
+      throw new DatabaseNotFoundException(
+          "Database '" + tblName.getDb_name() + "' was not found.");
+    }
+    return tblLoader_.load(parentDb, tblName.getTable_name(), previousTbl,
+        partitionNames);
+  }
+
   /**
    * Starts table loading threads in a fixed sized thread pool with a size
    * defined by NUM_TBL_LOADING_THREADS. Each thread polls the tableLoadingDeque_
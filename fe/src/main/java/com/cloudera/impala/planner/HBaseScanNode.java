@@ -21,11 +21,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.HConstants;
-import org.apache.hadoop.hbase.HRegionLocation;
-import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.filter.CompareFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.slf4j.Logger;
@@ -39,6 +35,7 @@ import com.cloudera.impala.analysis.StringLiteral;
 import com.cloudera.impala.analysis.TupleDescriptor;
 import com.cloudera.impala.catalog.ColumnType;
 import com.cloudera.impala.catalog.HBaseColumn;
+import com.cloudera.impala.catalog.HBaseRegionStatsCache.RegionStats;
 import com.cloudera.impala.catalog.HBaseTable;
 import com.cloudera.impala.catalog.PrimitiveType;
 import com.cloudera.impala.common.InternalException;
@@ -87,6 +84,9 @@ public class HBaseScanNode extends ScanNode {
   // List of HBase Filters for generating thrift message. Filled in finalize().
   private final List<THBaseFilter> filters_ = new ArrayList<THBaseFilter>();
 
+  // The constant of each of filters_.
+  private final List<StringLiteral> filterConstants_ = Lists.newArrayList();
+
   // The suggested value for "hbase.client.scan.setCaching", which batches maxCaching
   // rows per fetch request to the HBase region server. If the value is too high,
   // then the hbase region server will have a hard time (GC pressure and long response
@@ -98,9 +98,6 @@ public class HBaseScanNode extends ScanNode {
   private final static int DEFAULT_SUGGESTED_CACHING = 1024;
   private int suggestedCaching_ = DEFAULT_SUGGESTED_CACHING;
 
-  // HBase config; Common across all object instance.
-  private static Configuration hbaseConf_ = HBaseConfiguration.create();
-
   public HBaseScanNode(PlanNodeId id, TupleDescriptor desc) {
     super(id, desc, "SCAN HBASE");
     desc_ = desc;
@@ -125,6 +122,22 @@ public class HBaseScanNode extends ScanNode {
     computeStats(analyzer);
   }
 
+  /**
+   * Re-evaluates the key range and the filter constants, and recomputes the stats.
+   */
+  @Override
+  public void rebind(Analyzer analyzer) throws InternalException {
+    startKey_ = HConstants.EMPTY_START_ROW;
+    stopKey_ = HConstants.EMPTY_END_ROW;
+    isEmpty_ = false;
+    setStartStopKey(analyzer);
+    for (int i = 0; i < filters_.size(); ++i) {
+      filters_.get(i).setFilter_constant(filterConstants_.get(i).getValue());
+    }
+    suggestedCaching_ = DEFAULT_SUGGESTED_CACHING;
+    computeStats(analyzer);
+  }
+
   /**
    * Convert keyRanges_ to startKey_ and stopKey_.
    * If ValueRange is not null, transform it into start/stopKey_ by evaluating the
@@ -262,6 +275,7 @@ public class HBaseScanNode extends ScanNode {
         filters_.add(new THBaseFilter(
             col.getColumnFamily(), col.getColumnQualifier(),
             (byte) hbaseOp.ordinal(), literal.getValue()));
+        filterConstants_.add(literal);
 
         analyzer.materializeSlots(Lists.newArrayList(e));
       }
@@ -293,41 +307,42 @@ public class HBaseScanNode extends ScanNode {
     // For empty scan node, return an empty list.
     if (isEmpty_) return result;
 
-    // Retrieve relevant HBase regions and their region servers
+    // Retrieve relevant HBase regions and their region servers from the cached region
+    // stats. The cached regions always cover the whole key space of the table, so the
+    // scan ranges are correct even if regions were split or moved since the stats were
+    // loaded; only the scheduling locality may be off until the next refresh.
     HBaseTable tbl = (HBaseTable) desc_.getTable();
-    HTable hbaseTbl = null;
-    List<HRegionLocation> regionsLoc;
+    List<RegionStats> regions;
     try {
-      hbaseTbl   = new HTable(hbaseConf_, tbl.getHBaseTableName());
-      regionsLoc = HBaseTable.getRegionsInRange(hbaseTbl, startKey_, stopKey_);
+      regions = tbl.getRegionStats().getRegionsInRange(startKey_, stopKey_);
     } catch (IOException e) {
       throw new RuntimeException(
           "couldn't retrieve HBase table (" + tbl.getHBaseTableName() + ") info:\n"
           + e.getMessage());
     }
 
-    // Convert list of HRegionLocation to Map<hostport, List<HRegionLocation>>.
-    // The List<HRegionLocations>'s end up being sorted by start key/end key, because
-    // regionsLoc is sorted that way.
-    Map<String, List<HRegionLocation>> locationMap = Maps.newHashMap();
-    for (HRegionLocation regionLoc: regionsLoc) {
-      String locHostPort = regionLoc.getHostnamePort();
+    // Convert list of regions to Map<hostport, List<RegionStats>>.
+    // The List<RegionStats>'s end up being sorted by start key/end key, because
+    // regions is sorted that way.
+    Map<String, List<RegionStats>> locationMap = Maps.newHashMap();
+    for (RegionStats region: regions) {
+      String locHostPort = region.getHostnamePort();
       if (locationMap.containsKey(locHostPort)) {
-        locationMap.get(locHostPort).add(regionLoc);
+        locationMap.get(locHostPort).add(region);
       } else {
-        locationMap.put(locHostPort, Lists.newArrayList(regionLoc));
+        locationMap.put(locHostPort, Lists.newArrayList(region));
       }
     }
 
-    for (Map.Entry<String, List<HRegionLocation>> locEntry: locationMap.entrySet()) {
+    for (Map.Entry<String, List<RegionStats>> locEntry: locationMap.entrySet()) {
       // HBaseTableScanner(backend) initializes a result scanner for each key range.
       // To minimize # of result scanner re-init, create only a single HBaseKeyRange
       // for all adjacent regions on this server.
       THBaseKeyRange keyRange = null;
       byte[] prevEndKey = null;
-      for (HRegionLocation regionLoc: locEntry.getValue()) {
-        byte[] curRegStartKey = regionLoc.getRegionInfo().getStartKey();
-        byte[] curRegEndKey   = regionLoc.getRegionInfo().getEndKey();
+      for (RegionStats region: locEntry.getValue()) {
+        byte[] curRegStartKey = region.getStartKey();
+        byte[] curRegEndKey   = region.getEndKey();
         if (prevEndKey != null &&
             Bytes.compareTo(prevEndKey, curRegStartKey) == 0) {
           // the current region starts where the previous one left off;
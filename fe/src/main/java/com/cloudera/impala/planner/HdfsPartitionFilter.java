@@ -31,6 +31,7 @@ import com.cloudera.impala.catalog.HdfsPartition;
 import com.cloudera.impala.catalog.HdfsTable;
 import com.cloudera.impala.common.AnalysisException;
 import com.cloudera.impala.common.InternalException;
+import com.cloudera.impala.common.NotImplementedException;
 import com.cloudera.impala.service.FeSupport;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
@@ -50,6 +51,10 @@ public class HdfsPartitionFilter {
   // indices into Table.getColumns()
   private final ArrayList<Integer> refdKeys_ = Lists.newArrayList();
 
+  // Evaluates predicate_ in the FE; null if the predicate contains exprs that can only
+  // be evaluated by the backend.
+  private final HdfsPartitionPredicateEvaluator evaluator_;
+
   public HdfsPartitionFilter(Expr predicate, HdfsTable tbl, Analyzer analyzer) {
     predicate_ = predicate;
 
@@ -71,15 +76,42 @@ public class HdfsPartitionFilter {
       }
     }
     Preconditions.checkState(lhsSlotRefs_.size() == refdKeys_.size());
+
+    HashMap<SlotId, Integer> keyIdxBySlot = Maps.newHashMap();
+    for (int i = 0; i < refdKeys_.size(); ++i) {
+      keyIdxBySlot.put(lhsSlotRefs_.get(i).getSlotId(), refdKeys_.get(i));
+    }
+    evaluator_ = HdfsPartitionPredicateEvaluator.compile(predicate_, keyIdxBySlot);
   }
 
   /**
    * Determines whether the filter predicate evaluates to 'true' for the given
    * partition.
+   * Evaluates the predicate in the FE if possible, otherwise falls back to
+   * evaluating it in the backend.
+   */
+  public boolean isMatch(HdfsPartition partition, Analyzer analyzer)
+      throws InternalException, AuthorizationException {
+    if (evaluator_ != null) {
+      try {
+        return evaluator_.isMatch(partition);
+      } catch (NotImplementedException e) {
+        LOG.trace("isMatch: falling back to backend evaluation: " + e.getMessage());
+      }
+    }
+    return isMatchInBackend(partition, analyzer);
+  }
+
+  // Package visible for testing.
+  HdfsPartitionPredicateEvaluator getEvaluator() { return evaluator_; }
+
+  /**
+   * Evaluates the filter predicate for the given partition in the backend.
    * Does this by substituting SlotRefs for the partition cols with the respective
    * key values.
+   * Package visible for testing.
    */
-  public boolean isMatch(HdfsPartition partition, Analyzer analyzer)
+  boolean isMatchInBackend(HdfsPartition partition, Analyzer analyzer)
       throws InternalException, AuthorizationException {
     // construct smap
     Expr.SubstitutionMap sMap = new Expr.SubstitutionMap();
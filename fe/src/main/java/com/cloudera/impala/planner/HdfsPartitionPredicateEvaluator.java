@@ -0,0 +1,610 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.planner;
+
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.impala.analysis.BetweenPredicate;
+import com.cloudera.impala.analysis.BinaryPredicate;
+import com.cloudera.impala.analysis.BoolLiteral;
+import com.cloudera.impala.analysis.CastExpr;
+import com.cloudera.impala.analysis.CompoundPredicate;
+import com.cloudera.impala.analysis.Expr;
+import com.cloudera.impala.analysis.FloatLiteral;
+import com.cloudera.impala.analysis.FunctionCallExpr;
+import com.cloudera.impala.analysis.InPredicate;
+import com.cloudera.impala.analysis.IntLiteral;
+import com.cloudera.impala.analysis.IsNullPredicate;
+import com.cloudera.impala.analysis.LiteralExpr;
+import com.cloudera.impala.analysis.NullLiteral;
+import com.cloudera.impala.analysis.SlotId;
+import com.cloudera.impala.analysis.SlotRef;
+import com.cloudera.impala.analysis.StringLiteral;
+import com.cloudera.impala.catalog.ColumnType;
+import com.cloudera.impala.catalog.HdfsPartition;
+import com.cloudera.impala.catalog.PrimitiveType;
+import com.cloudera.impala.common.NotImplementedException;
+import com.google.common.base.Preconditions;
+
+/**
+ * Evaluates a partition-filter predicate directly in the FE against the partition-key
+ * values of an HdfsPartition, avoiding a clone, re-analysis and backend call for every
+ * partition.
+ *
+ * The predicate is compiled once into a tree of ValueEvaluators. Only the subset of
+ * exprs that commonly appear in partition predicates is supported: literals, slot refs
+ * of partition columns, binary/in/between/compound/is-null predicates, casts between
+ * numeric, boolean and string types and a handful of builtin string functions.
+ * compile() returns null if any part of the predicate falls outside of this subset.
+ *
+ * The evaluator mirrors the backend's semantics, including SQL's three-valued logic.
+ * Whenever a value is encountered for which that cannot be guaranteed (e.g., a string
+ * function applied to a non-ASCII string), eval() throws a NotImplementedException and
+ * the caller is expected to fall back to the backend for that partition.
+ * Values are represented as Long (all integer types), Double (floating-point types),
+ * String, Boolean or null for SQL NULL.
+ */
+public class HdfsPartitionPredicateEvaluator {
+  private final static Logger LOG =
+      LoggerFactory.getLogger(HdfsPartitionPredicateEvaluator.class);
+
+  /**
+   * Node of the compiled predicate tree.
+   */
+  private static abstract class ValueEvaluator {
+    public abstract Object eval(List<LiteralExpr> partitionValues)
+        throws NotImplementedException;
+  }
+
+  // Thrown during compilation if an expr is not supported by this evaluator.
+  private static class UnsupportedExprException extends Exception {
+    public UnsupportedExprException(String msg) { super(msg); }
+  }
+
+  private final Expr predicate_;
+  private final ValueEvaluator root_;
+
+  private HdfsPartitionPredicateEvaluator(Expr predicate, ValueEvaluator root) {
+    predicate_ = predicate;
+    root_ = root;
+  }
+
+  /**
+   * Compiles the analyzed 'predicate'. 'keyIdxBySlot' maps the ids of the partition-
+   * column slots referenced in the predicate to the index of the corresponding value in
+   * HdfsPartition.getPartitionValues(). Returns null if the predicate cannot be
+   * evaluated in the FE.
+   */
+  public static HdfsPartitionPredicateEvaluator compile(Expr predicate,
+      Map<SlotId, Integer> keyIdxBySlot) {
+    Preconditions.checkState(predicate.getType().isBoolean());
+    try {
+      return new HdfsPartitionPredicateEvaluator(predicate,
+          compileExpr(predicate, keyIdxBySlot));
+    } catch (UnsupportedExprException e) {
+      LOG.trace("Partition filter is evaluated in the backend: " + predicate.toSql() +
+          " (" + e.getMessage() + ")");
+      return null;
+    }
+  }
+
+  /**
+   * Returns true if the predicate evaluates to true for the given partition, false if it
+   * evaluates to false or NULL. Throws a NotImplementedException if the predicate
+   * cannot be faithfully evaluated for this particular partition.
+   */
+  public boolean isMatch(HdfsPartition partition) throws NotImplementedException {
+    return Boolean.TRUE.equals(root_.eval(partition.getPartitionValues()));
+  }
+
+  public Expr getPredicate() { return predicate_; }
+
+  private static ValueEvaluator compileExpr(Expr expr,
+      Map<SlotId, Integer> keyIdxBySlot) throws UnsupportedExprException {
+    if (expr instanceof LiteralExpr) {
+      final Object value;
+      try {
+        value = getLiteralValue((LiteralExpr) expr);
+      } catch (NotImplementedException e) {
+        throw new UnsupportedExprException(e.getMessage());
+      }
+      return new ValueEvaluator() {
+        @Override
+        public Object eval(List<LiteralExpr> partitionValues) { return value; }
+      };
+    }
+
+    if (expr instanceof SlotRef) {
+      final Integer keyIdx = keyIdxBySlot.get(((SlotRef) expr).getSlotId());
+      if (keyIdx == null) {
+        throw new UnsupportedExprException("non-partition column " + expr.toSql());
+      }
+      final ColumnType type = expr.getType();
+      checkSupportedType(type);
+      return new ValueEvaluator() {
+        @Override
+        public Object eval(List<LiteralExpr> partitionValues)
+            throws NotImplementedException {
+          Object value = getLiteralValue(partitionValues.get(keyIdx));
+          // Partition-key literals are cast to the column type during table loading;
+          // make sure we never compare values of different representations.
+          if (value != null && !isValidRepresentation(value, type)) {
+            throw new NotImplementedException("Unexpected partition-key value " +
+                value + " for type " + type);
+          }
+          return value;
+        }
+      };
+    }
+
+    if (expr instanceof CastExpr) return compileCast((CastExpr) expr, keyIdxBySlot);
+    if (expr instanceof BinaryPredicate) {
+      return compileBinaryPredicate((BinaryPredicate) expr, keyIdxBySlot);
+    }
+
+    if (expr instanceof CompoundPredicate) {
+      CompoundPredicate.Operator op = ((CompoundPredicate) expr).getOp();
+      if (op == CompoundPredicate.Operator.NOT) {
+        final ValueEvaluator child = compileExpr(expr.getChild(0), keyIdxBySlot);
+        return new ValueEvaluator() {
+          @Override
+          public Object eval(List<LiteralExpr> partitionValues)
+              throws NotImplementedException {
+            Object value = child.eval(partitionValues);
+            if (value == null) return null;
+            return Boolean.valueOf(!((Boolean) value).booleanValue());
+          }
+        };
+      }
+      return compileAndOr(op == CompoundPredicate.Operator.AND,
+          compileExpr(expr.getChild(0), keyIdxBySlot),
+          compileExpr(expr.getChild(1), keyIdxBySlot));
+    }
+
+    if (expr instanceof BetweenPredicate) {
+      // After analysis, the children of a BetweenPredicate are the two range
+      // predicates of its conjunctive (BETWEEN) or disjunctive (NOT BETWEEN) rewrite.
+      Preconditions.checkState(expr.getChildren().size() == 2);
+      return compileAndOr(!((BetweenPredicate) expr).isNotBetween(),
+          compileExpr(expr.getChild(0), keyIdxBySlot),
+          compileExpr(expr.getChild(1), keyIdxBySlot));
+    }
+
+    if (expr instanceof InPredicate) {
+      return compileInPredicate((InPredicate) expr, keyIdxBySlot);
+    }
+
+    if (expr instanceof IsNullPredicate) {
+      final boolean isNotNull = ((IsNullPredicate) expr).isNotNull();
+      final ValueEvaluator child = compileExpr(expr.getChild(0), keyIdxBySlot);
+      return new ValueEvaluator() {
+        @Override
+        public Object eval(List<LiteralExpr> partitionValues)
+            throws NotImplementedException {
+          boolean isNull = child.eval(partitionValues) == null;
+          return Boolean.valueOf(isNotNull != isNull);
+        }
+      };
+    }
+
+    if (expr instanceof FunctionCallExpr) {
+      return compileFunctionCall((FunctionCallExpr) expr, keyIdxBySlot);
+    }
+    throw new UnsupportedExprException("unsupported expr " + expr.toSql());
+  }
+
+  /**
+   * Conjunction or disjunction with SQL NULL semantics.
+   */
+  private static ValueEvaluator compileAndOr(final boolean isAnd,
+      final ValueEvaluator lhs, final ValueEvaluator rhs) {
+    return new ValueEvaluator() {
+      @Override
+      public Object eval(List<LiteralExpr> partitionValues)
+          throws NotImplementedException {
+        // The value that short-circuits the evaluation.
+        Boolean dominant = Boolean.valueOf(!isAnd);
+        Object lhsValue = lhs.eval(partitionValues);
+        if (dominant.equals(lhsValue)) return dominant;
+        Object rhsValue = rhs.eval(partitionValues);
+        if (dominant.equals(rhsValue)) return dominant;
+        if (lhsValue == null || rhsValue == null) return null;
+        return Boolean.valueOf(isAnd);
+      }
+    };
+  }
+
+  private static ValueEvaluator compileBinaryPredicate(BinaryPredicate pred,
+      Map<SlotId, Integer> keyIdxBySlot) throws UnsupportedExprException {
+    final BinaryPredicate.Operator op = pred.getOp();
+    final ValueEvaluator lhs = compileExpr(pred.getChild(0), keyIdxBySlot);
+    final ValueEvaluator rhs = compileExpr(pred.getChild(1), keyIdxBySlot);
+    return new ValueEvaluator() {
+      @Override
+      public Object eval(List<LiteralExpr> partitionValues)
+          throws NotImplementedException {
+        Object lhsValue = lhs.eval(partitionValues);
+        if (lhsValue == null) return null;
+        Object rhsValue = rhs.eval(partitionValues);
+        if (rhsValue == null) return null;
+        int cmp = compareValues(lhsValue, rhsValue);
+        switch (op) {
+          case EQ: return Boolean.valueOf(cmp == 0);
+          case NE: return Boolean.valueOf(cmp != 0);
+          case LE: return Boolean.valueOf(cmp <= 0);
+          case GE: return Boolean.valueOf(cmp >= 0);
+          case LT: return Boolean.valueOf(cmp < 0);
+          case GT: return Boolean.valueOf(cmp > 0);
+          default:
+            throw new NotImplementedException("Unsupported operator: " + op);
+        }
+      }
+    };
+  }
+
+  private static ValueEvaluator compileInPredicate(InPredicate pred,
+      Map<SlotId, Integer> keyIdxBySlot) throws UnsupportedExprException {
+    final boolean isNotIn = pred.isNotIn();
+    final ValueEvaluator compareExpr = compileExpr(pred.getChild(0), keyIdxBySlot);
+    final ValueEvaluator[] inList = new ValueEvaluator[pred.getChildren().size() - 1];
+    for (int i = 0; i < inList.length; ++i) {
+      inList[i] = compileExpr(pred.getChild(i + 1), keyIdxBySlot);
+    }
+    return new ValueEvaluator() {
+      @Override
+      public Object eval(List<LiteralExpr> partitionValues)
+          throws NotImplementedException {
+        Object value = compareExpr.eval(partitionValues);
+        if (value == null) return null;
+        boolean sawNull = false;
+        for (ValueEvaluator e: inList) {
+          Object inValue = e.eval(partitionValues);
+          if (inValue == null) {
+            sawNull = true;
+          } else if (compareValues(value, inValue) == 0) {
+            return Boolean.valueOf(!isNotIn);
+          }
+        }
+        if (sawNull) return null;
+        return Boolean.valueOf(isNotIn);
+      }
+    };
+  }
+
+  private static ValueEvaluator compileCast(CastExpr cast,
+      Map<SlotId, Integer> keyIdxBySlot) throws UnsupportedExprException {
+    final ValueEvaluator child = compileExpr(cast.getChild(0), keyIdxBySlot);
+    ColumnType fromType = cast.getChild(0).getType();
+    final ColumnType toType = cast.getType();
+    if (fromType.isNull()) {
+      return new ValueEvaluator() {
+        @Override
+        public Object eval(List<LiteralExpr> partitionValues) { return null; }
+      };
+    }
+    checkSupportedType(fromType);
+    checkSupportedType(toType);
+    if (fromType.equals(toType)) return child;
+    // Floating-point and boolean to string formatting differs between the FE and BE.
+    if ((fromType.isFloatingPointType() || fromType.isBoolean()) &&
+        toType.isStringType()) {
+      throw new UnsupportedExprException("cast from " + fromType + " to " + toType);
+    }
+    return new ValueEvaluator() {
+      @Override
+      public Object eval(List<LiteralExpr> partitionValues)
+          throws NotImplementedException {
+        Object value = child.eval(partitionValues);
+        if (value == null) return null;
+        return castValue(value, toType);
+      }
+    };
+  }
+
+  /**
+   * Supports the builtin string functions whose semantics are straightforward to
+   * replicate for ASCII strings. Date/time functions are not supported because they
+   * operate on TIMESTAMPs, which are not valid partition-column types.
+   */
+  private static ValueEvaluator compileFunctionCall(FunctionCallExpr fnCall,
+      Map<SlotId, Integer> keyIdxBySlot) throws UnsupportedExprException {
+    if (!fnCall.getFnName().isBuiltin()) {
+      throw new UnsupportedExprException("non-builtin function " + fnCall.toSql());
+    }
+    final String fnName = fnCall.getFnName().getFunction().toLowerCase();
+    final ValueEvaluator[] args = new ValueEvaluator[fnCall.getChildren().size()];
+    for (int i = 0; i < args.length; ++i) {
+      args[i] = compileExpr(fnCall.getChild(i), keyIdxBySlot);
+    }
+    boolean isSupported = false;
+    if (fnName.equals("lower") || fnName.equals("lcase") || fnName.equals("upper") ||
+        fnName.equals("ucase") || fnName.equals("trim") || fnName.equals("ltrim") ||
+        fnName.equals("rtrim") || fnName.equals("length")) {
+      isSupported = args.length == 1;
+    } else if (fnName.equals("substr") || fnName.equals("substring")) {
+      isSupported = args.length == 2 || args.length == 3;
+    } else if (fnName.equals("concat")) {
+      isSupported = args.length >= 1;
+    }
+    if (!isSupported) {
+      throw new UnsupportedExprException("unsupported function " + fnCall.toSql());
+    }
+
+    return new ValueEvaluator() {
+      @Override
+      public Object eval(List<LiteralExpr> partitionValues)
+          throws NotImplementedException {
+        Object[] argValues = new Object[args.length];
+        for (int i = 0; i < args.length; ++i) {
+          argValues[i] = args[i].eval(partitionValues);
+          // All supported functions return NULL for any NULL argument.
+          if (argValues[i] == null) return null;
+        }
+        if (fnName.equals("concat")) {
+          StringBuilder sb = new StringBuilder();
+          for (Object argValue: argValues) sb.append((String) argValue);
+          return sb.toString();
+        }
+        // The backend operates on bytes, so only handle the trivially equivalent
+        // ASCII case.
+        String str = (String) argValues[0];
+        checkAscii(str);
+        if (fnName.equals("lower") || fnName.equals("lcase")) {
+          return asciiChangeCase(str, false);
+        } else if (fnName.equals("upper") || fnName.equals("ucase")) {
+          return asciiChangeCase(str, true);
+        } else if (fnName.equals("length")) {
+          return Long.valueOf(str.length());
+        } else if (fnName.equals("trim")) {
+          return str.substring(ltrimIdx(str), Math.max(ltrimIdx(str), rtrimIdx(str)));
+        } else if (fnName.equals("ltrim")) {
+          return str.substring(ltrimIdx(str));
+        } else if (fnName.equals("rtrim")) {
+          return str.substring(0, rtrimIdx(str));
+        }
+        Preconditions.checkState(fnName.equals("substr") || fnName.equals("substring"));
+        return substring(str, ((Long) argValues[1]).longValue(),
+            argValues.length == 3 ? (Long) argValues[2] : null);
+      }
+    };
+  }
+
+  /**
+   * Returns the value of 'literal' in the representation used by this evaluator.
+   */
+  private static Object getLiteralValue(LiteralExpr literal)
+      throws NotImplementedException {
+    if (literal instanceof NullLiteral) return null;
+    if (literal instanceof IntLiteral) {
+      return Long.valueOf(((IntLiteral) literal).getValue());
+    }
+    if (literal instanceof FloatLiteral) {
+      double value = ((FloatLiteral) literal).getValue();
+      if (literal.getType().getPrimitiveType() == PrimitiveType.FLOAT) {
+        value = (float) value;
+      }
+      return Double.valueOf(value);
+    }
+    if (literal instanceof BoolLiteral) {
+      return Boolean.valueOf(((BoolLiteral) literal).getValue());
+    }
+    if (literal instanceof StringLiteral) {
+      // The backend sees the unescaped value; avoid the cost of unescaping for the
+      // common case of a string without escape sequences.
+      StringLiteral stringLiteral = (StringLiteral) literal;
+      if (stringLiteral.getValue().indexOf('\\') < 0) return stringLiteral.getValue();
+      return stringLiteral.getUnescapedValue();
+    }
+    throw new NotImplementedException("Unsupported literal: " + literal.toSql());
+  }
+
+  private static void checkSupportedType(ColumnType type)
+      throws UnsupportedExprException {
+    if (type.isIntegerType() || type.isFloatingPointType() || type.isBoolean() ||
+        type.isStringType()) {
+      return;
+    }
+    throw new UnsupportedExprException("unsupported type " + type);
+  }
+
+  private static boolean isValidRepresentation(Object value, ColumnType type) {
+    if (type.isIntegerType()) return value instanceof Long;
+    if (type.isFloatingPointType()) return value instanceof Double;
+    if (type.isBoolean()) return value instanceof Boolean;
+    return value instanceof String;
+  }
+
+  /**
+   * Casts a non-null value to 'toType'. Throws a NotImplementedException for casts whose
+   * result might differ from the backend's, e.g., overflows and parse failures.
+   */
+  private static Object castValue(Object value, ColumnType toType)
+      throws NotImplementedException {
+    if (toType.isStringType()) {
+      Preconditions.checkState(value instanceof Long || value instanceof String);
+      return value.toString();
+    }
+
+    if (toType.isBoolean()) {
+      if (value instanceof Long) return Boolean.valueOf(((Long) value).longValue() != 0);
+      if (value instanceof Double) {
+        return Boolean.valueOf(((Double) value).doubleValue() != 0);
+      }
+      Preconditions.checkState(value instanceof Boolean);
+      return value;
+    }
+
+    if (toType.isFloatingPointType()) {
+      double d;
+      if (value instanceof Long) {
+        d = ((Long) value).doubleValue();
+      } else if (value instanceof Double) {
+        d = ((Double) value).doubleValue();
+      } else if (value instanceof Boolean) {
+        d = ((Boolean) value).booleanValue() ? 1 : 0;
+      } else {
+        throw new NotImplementedException("String to floating-point cast: " + value);
+      }
+      if (toType.getPrimitiveType() == PrimitiveType.FLOAT) d = (float) d;
+      return Double.valueOf(d);
+    }
+
+    Preconditions.checkState(toType.isIntegerType());
+    long l;
+    if (value instanceof Long) {
+      l = ((Long) value).longValue();
+    } else if (value instanceof Boolean) {
+      l = ((Boolean) value).booleanValue() ? 1 : 0;
+    } else if (value instanceof Double) {
+      double d = ((Double) value).doubleValue();
+      if (Double.isNaN(d) || d >= Long.MAX_VALUE || d <= Long.MIN_VALUE) {
+        throw new NotImplementedException("Floating-point cast overflow: " + value);
+      }
+      l = (long) d;
+      if (narrowInteger(l, toType) != l) {
+        throw new NotImplementedException("Floating-point cast overflow: " + value);
+      }
+    } else {
+      String str = (String) value;
+      // Long.parseLong() accepts non-ASCII digits; only handle the plain ASCII form.
+      if (!str.matches("[+-]?[0-9]+")) {
+        throw new NotImplementedException("String to integer cast: " + value);
+      }
+      try {
+        l = Long.parseLong(str);
+      } catch (NumberFormatException e) {
+        throw new NotImplementedException("String to integer cast: " + value);
+      }
+      // The backend returns NULL for strings that don't fit into the target type.
+      if (narrowInteger(l, toType) != l) {
+        throw new NotImplementedException("String to integer cast overflow: " + value);
+      }
+    }
+    return Long.valueOf(narrowInteger(l, toType));
+  }
+
+  /**
+   * Truncates 'l' to the width of the given integer type, like a C++ static_cast.
+   */
+  private static long narrowInteger(long l, ColumnType type) {
+    switch (type.getPrimitiveType()) {
+      case TINYINT: return (byte) l;
+      case SMALLINT: return (short) l;
+      case INT: return (int) l;
+      default: return l;
+    }
+  }
+
+  /**
+   * Compares two non-null values of the same type. Strings are compared by code point,
+   * which matches the backend's byte-wise comparison of UTF-8 strings.
+   */
+  private static int compareValues(Object lhs, Object rhs)
+      throws NotImplementedException {
+    if (lhs instanceof Long && rhs instanceof Long) {
+      long l = ((Long) lhs).longValue();
+      long r = ((Long) rhs).longValue();
+      return l < r ? -1 : (l == r ? 0 : 1);
+    }
+    if (lhs instanceof Double && rhs instanceof Double) {
+      double l = ((Double) lhs).doubleValue();
+      double r = ((Double) rhs).doubleValue();
+      // Double.compare() orders NaN and -0.0 differently than C++.
+      if (Double.isNaN(l) || Double.isNaN(r)) {
+        throw new NotImplementedException("NaN comparison");
+      }
+      return l < r ? -1 : (l == r ? 0 : 1);
+    }
+    if (lhs instanceof Boolean && rhs instanceof Boolean) {
+      return ((Boolean) lhs).compareTo((Boolean) rhs);
+    }
+    if (lhs instanceof String && rhs instanceof String) {
+      return compareCodePoints((String) lhs, (String) rhs);
+    }
+    throw new NotImplementedException("Incompatible values: " + lhs + ", " + rhs);
+  }
+
+  private static int compareCodePoints(String lhs, String rhs) {
+    int i = 0;
+    int j = 0;
+    while (i < lhs.length() && j < rhs.length()) {
+      int l = lhs.codePointAt(i);
+      int r = rhs.codePointAt(j);
+      if (l != r) return l < r ? -1 : 1;
+      i += Character.charCount(l);
+      j += Character.charCount(r);
+    }
+    if (i < lhs.length()) return 1;
+    if (j < rhs.length()) return -1;
+    return 0;
+  }
+
+  private static void checkAscii(String str) throws NotImplementedException {
+    for (int i = 0; i < str.length(); ++i) {
+      if (str.charAt(i) > 127) {
+        throw new NotImplementedException("Non-ASCII string: " + str);
+      }
+    }
+  }
+
+  private static String asciiChangeCase(String str, boolean toUpper) {
+    char[] chars = str.toCharArray();
+    for (int i = 0; i < chars.length; ++i) {
+      if (toUpper && chars[i] >= 'a' && chars[i] <= 'z') {
+        chars[i] = (char) (chars[i] - 'a' + 'A');
+      } else if (!toUpper && chars[i] >= 'A' && chars[i] <= 'Z') {
+        chars[i] = (char) (chars[i] - 'A' + 'a');
+      }
+    }
+    return new String(chars);
+  }
+
+  // Index of the first non-space character, or str.length() if there is none.
+  private static int ltrimIdx(String str) {
+    int begin = 0;
+    while (begin < str.length() && str.charAt(begin) == ' ') ++begin;
+    return begin;
+  }
+
+  // Index one past the last non-space character, or 0 if there is none.
+  private static int rtrimIdx(String str) {
+    int end = str.length();
+    while (end > 0 && str.charAt(end - 1) == ' ') --end;
+    return end;
+  }
+
+  /**
+   * Same semantics as the backend's StringFunctions::Substring(): 1-based positions,
+   * negative positions count from the end of the string, and a missing length returns
+   * the remainder of the string.
+   */
+  private static String substring(String str, long pos, Long len)
+      throws NotImplementedException {
+    long strLen = str.length();
+    if (pos < 0) pos = strLen + pos + 1;
+    // The backend's behavior is undefined for positions before the start of the string.
+    if (pos < 0) throw new NotImplementedException("Substring position out of range");
+    long maxLen = strLen - pos + 1;
+    long fixedLen = (len == null) ? maxLen : Math.min(len.longValue(), maxLen);
+    if (pos != 0 && pos <= strLen && fixedLen > 0) {
+      return str.substring((int) pos - 1, (int) (pos - 1 + fixedLen));
+    }
+    return "";
+  }
+}
@@ -15,7 +15,10 @@
 package com.cloudera.impala.planner;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.hadoop.fs.Path;
@@ -23,21 +26,29 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.cloudera.impala.analysis.Analyzer;
+import com.cloudera.impala.analysis.BetweenPredicate;
+import com.cloudera.impala.analysis.BinaryPredicate;
+import com.cloudera.impala.analysis.CompoundPredicate;
 import com.cloudera.impala.analysis.Expr;
+import com.cloudera.impala.analysis.InPredicate;
+import com.cloudera.impala.analysis.IsNullPredicate;
+import com.cloudera.impala.analysis.LiteralExpr;
 import com.cloudera.impala.analysis.SlotDescriptor;
 import com.cloudera.impala.analysis.SlotId;
+import com.cloudera.impala.analysis.SlotRef;
+import com.cloudera.impala.analysis.TableSampleClause;
 import com.cloudera.impala.analysis.TupleDescriptor;
 import com.cloudera.impala.catalog.AuthorizationException;
+import com.cloudera.impala.catalog.Column;
 import com.cloudera.impala.catalog.HdfsFileFormat;
 import com.cloudera.impala.catalog.HdfsPartition;
-import com.cloudera.impala.catalog.HdfsPartition.FileBlock;
+import com.cloudera.impala.catalog.HdfsPartitionKeyIndex;
 import com.cloudera.impala.catalog.HdfsTable;
 import com.cloudera.impala.common.InternalException;
 import com.cloudera.impala.common.NotImplementedException;
 import com.cloudera.impala.common.PrintUtils;
 import com.cloudera.impala.common.RuntimeEnv;
 import com.cloudera.impala.thrift.TExplainLevel;
-import com.cloudera.impala.thrift.THdfsFileBlock;
 import com.cloudera.impala.thrift.THdfsFileSplit;
 import com.cloudera.impala.thrift.THdfsScanNode;
 import com.cloudera.impala.thrift.TNetworkAddress;
@@ -51,6 +62,7 @@ import com.google.common.base.Objects;
 import com.google.common.base.Objects.ToStringHelper;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 /**
@@ -76,6 +88,10 @@ public class HdfsScanNode extends ScanNode {
 
   private final HdfsTable tbl_;
 
+  // Conjuncts bound by the partition columns, which are applied by partition pruning.
+  // Populated in init().
+  private final List<Expr> partitionConjuncts_ = Lists.newArrayList();
+
   // Partitions that are filtered in for scanning by the key ranges
   private final ArrayList<HdfsPartition> partitions_ = Lists.newArrayList();
 
@@ -85,12 +101,30 @@ public class HdfsScanNode extends ScanNode {
   // Total number of bytes from partitions_
   private long totalBytes_ = 0;
 
+  // TABLESAMPLE clause of the scanned table ref, or null if the whole table is scanned.
+  private final TableSampleClause sampleClause_;
+
+  // Sampled file blocks of each partition in partitions_, keyed by partition id.
+  // Populated in init() if sampleClause_ is set.
+  private final Map<Long, Map<HdfsPartition.FileDescriptor, BitSet>> sampledBlocks_ =
+      Maps.newHashMap();
+
   /**
    * Constructs node to scan given data files of table 'tbl_'.
    */
   public HdfsScanNode(PlanNodeId id, TupleDescriptor desc, HdfsTable tbl) {
+    this(id, desc, tbl, null);
+  }
+
+  /**
+   * Constructs node to scan the file blocks of table 'tbl_' selected by the given
+   * TABLESAMPLE clause, or all of its data files if the clause is null.
+   */
+  public HdfsScanNode(PlanNodeId id, TupleDescriptor desc, HdfsTable tbl,
+      TableSampleClause sampleClause) {
     super(id, desc, "SCAN HDFS");
     tbl_ = tbl;
+    sampleClause_ = sampleClause;
   }
 
   @Override
@@ -116,7 +150,9 @@ public class HdfsScanNode extends ScanNode {
 
     // do partition pruning before deciding which slots to materialize,
     // we might end up removing some predicates
+    collectPartitionConjuncts(analyzer);
     prunePartitions(analyzer);
+    sampleFileBlocks();
 
     // mark all slots referenced by the remaining conjuncts as materialized
     markSlotsMaterialized(analyzer, conjuncts_);
@@ -130,13 +166,24 @@ public class HdfsScanNode extends ScanNode {
   }
 
   /**
-   * Populate partitions_ based on all applicable conjuncts and remove
-   * conjuncts used for filtering from conjuncts_.
+   * Re-populates partitions_ and sampledBlocks_ for the current values of the
+   * literals in partitionConjuncts_, and recomputes the stats.
    */
-  private void prunePartitions(Analyzer analyzer)
+  @Override
+  public void rebind(Analyzer analyzer)
       throws InternalException, AuthorizationException {
-    // loop through all partitions and prune based on applicable conjuncts;
-    // start with creating a collection of partition filters for the applicable conjuncts
+    partitions_.clear();
+    sampledBlocks_.clear();
+    prunePartitions(analyzer);
+    sampleFileBlocks();
+    computeStats(analyzer);
+  }
+
+  /**
+   * Moves the conjuncts that are bound by the partition slots from conjuncts_ to
+   * partitionConjuncts_.
+   */
+  private void collectPartitionConjuncts(Analyzer analyzer) {
     List<SlotId> partitionSlots = Lists.newArrayList();
     for (SlotDescriptor slotDesc:
         analyzer.getDescTbl().getTupleDesc(tupleIds_.get(0)).getSlots()) {
@@ -145,18 +192,55 @@ public class HdfsScanNode extends ScanNode {
         partitionSlots.add(slotDesc.getId());
       }
     }
-    List<HdfsPartitionFilter> partitionFilters = Lists.newArrayList();
-    Set<Expr> filterConjuncts = Sets.newHashSet();
     for (Expr conjunct: conjuncts_) {
-      if (conjunct.isBoundBySlotIds(partitionSlots)) {
-        partitionFilters.add(new HdfsPartitionFilter(conjunct, tbl_, analyzer));
-        filterConjuncts.add(conjunct);
+      if (conjunct.isBoundBySlotIds(partitionSlots)) partitionConjuncts_.add(conjunct);
+    }
+    // partitionConjuncts_ are applied implicitly via partition pruning
+    conjuncts_.removeAll(partitionConjuncts_);
+  }
+
+  /**
+   * Populate partitions_ based on partitionConjuncts_.
+   */
+  private void prunePartitions(Analyzer analyzer)
+      throws InternalException, AuthorizationException {
+    // loop through all partitions and prune based on applicable conjuncts;
+    // start with creating a collection of partition filters for the applicable conjuncts
+    List<HdfsPartitionFilter> partitionFilters = Lists.newArrayList();
+    for (Expr conjunct: partitionConjuncts_) {
+      partitionFilters.add(new HdfsPartitionFilter(conjunct, tbl_, analyzer));
+    }
+
+    // Narrow down the partitions to evaluate the filters on using the partition-key
+    // index. The filters are still evaluated on the candidates, so the index only
+    // needs to produce a superset of the matching partitions.
+    Set<Long> candidateIds = null;
+    for (Expr conjunct: partitionConjuncts_) {
+      Set<Long> ids = getCandidatePartitionIds(conjunct);
+      if (ids == null) continue;
+      if (candidateIds == null) {
+        candidateIds = Sets.newHashSet(ids);
+      } else {
+        candidateIds.retainAll(ids);
+      }
+    }
+    List<HdfsPartition> candidates = tbl_.getPartitions();
+    if (candidateIds != null) {
+      // Visit the candidates in id order to produce a deterministic plan.
+      List<Long> sortedIds = Lists.newArrayList(candidateIds);
+      Collections.sort(sortedIds);
+      candidates = Lists.newArrayListWithCapacity(sortedIds.size());
+      for (Long id: sortedIds) {
+        HdfsPartition p = tbl_.getPartitionById(id.longValue());
+        Preconditions.checkNotNull(p);
+        candidates.add(p);
       }
+      LOG.debug(String.format("partition-key index reduced the partitions of %s " +
+          "to evaluate from %d to %d", tbl_.getFullName(), tbl_.getPartitions().size(),
+          candidates.size()));
     }
-    // filterConjuncts are applied implicitly via partition pruning
-    conjuncts_.removeAll(filterConjuncts);
 
-    for (HdfsPartition p: tbl_.getPartitions()) {
+    for (HdfsPartition p: candidates) {
       // ignore partitions without data
       if (p.getFileDescriptors().size() == 0) continue;
 
@@ -174,6 +258,142 @@ public class HdfsScanNode extends ScanNode {
     }
   }
 
+  /**
+   * Populates sampledBlocks_ if sampleClause_ is set.
+   */
+  private void sampleFileBlocks() {
+    if (sampleClause_ == null) return;
+    for (HdfsPartition partition: partitions_) {
+      sampledBlocks_.put(partition.getId(),
+          partition.sampleFileBlocks(sampleClause_.getPercentBytes()));
+    }
+  }
+
+  /**
+   * Returns the ids of a superset of the partitions that satisfy 'conjunct', using the
+   * table's partition-key index. Returns null if the index cannot be used for this
+   * conjunct. Handles predicates of the form <partition col> <op> <literal>,
+   * <partition col> [NOT] BETWEEN <literal> AND <literal>,
+   * <partition col> IN (<literals>), <partition col> IS NULL and
+   * conjunctions/disjunctions thereof.
+   * Package visible for testing.
+   */
+  Set<Long> getCandidatePartitionIds(Expr conjunct) {
+    HdfsPartitionKeyIndex index = tbl_.getPartitionKeyIndex();
+    if (index == null) return null;
+
+    if (conjunct instanceof CompoundPredicate || conjunct instanceof BetweenPredicate) {
+      boolean isAnd;
+      if (conjunct instanceof BetweenPredicate) {
+        // The children of an analyzed BetweenPredicate are its rewritten range
+        // predicates.
+        isAnd = !((BetweenPredicate) conjunct).isNotBetween();
+      } else {
+        CompoundPredicate.Operator op = ((CompoundPredicate) conjunct).getOp();
+        if (op == CompoundPredicate.Operator.NOT) return null;
+        isAnd = op == CompoundPredicate.Operator.AND;
+      }
+      Set<Long> lhs = getCandidatePartitionIds(conjunct.getChild(0));
+      Set<Long> rhs = getCandidatePartitionIds(conjunct.getChild(1));
+      if (isAnd) {
+        if (lhs == null) return rhs;
+        if (rhs == null) return lhs;
+        return Sets.intersection(lhs, rhs);
+      }
+      if (lhs == null || rhs == null) return null;
+      return Sets.union(lhs, rhs);
+    }
+
+    // All remaining supported predicates have the partition column as their first
+    // child; the column must not be wrapped in a cast so that the literals have the
+    // column's type.
+    if (conjunct.getChildren().isEmpty()) return null;
+    int colIdx = getIndexedClusteringColIdx(conjunct.getChild(0));
+    if (colIdx < 0) {
+      // Try the flipped form <literal> <op> <partition col>.
+      if (!(conjunct instanceof BinaryPredicate)) return null;
+      colIdx = getIndexedClusteringColIdx(conjunct.getChild(1));
+      if (colIdx < 0 || !(conjunct.getChild(0) instanceof LiteralExpr)) return null;
+      return getCandidatePartitionIds(colIdx,
+          flipOperator(((BinaryPredicate) conjunct).getOp()),
+          (LiteralExpr) conjunct.getChild(0));
+    }
+    Column col = tbl_.getColumns().get(colIdx);
+
+    if (conjunct instanceof BinaryPredicate) {
+      if (!(conjunct.getChild(1) instanceof LiteralExpr)) return null;
+      return getCandidatePartitionIds(colIdx, ((BinaryPredicate) conjunct).getOp(),
+          (LiteralExpr) conjunct.getChild(1));
+    }
+
+    if (conjunct instanceof InPredicate) {
+      if (((InPredicate) conjunct).isNotIn()) return null;
+      Set<Long> result = Sets.newHashSet();
+      for (int i = 1; i < conjunct.getChildren().size(); ++i) {
+        Expr inValue = conjunct.getChild(i);
+        if (!(inValue instanceof LiteralExpr)) return null;
+        if (!inValue.getType().equals(col.getType()) && !inValue.getType().isNull()) {
+          return null;
+        }
+        Set<Long> ids = index.getPartitionIdsEq(colIdx, (LiteralExpr) inValue);
+        if (ids == null) return null;
+        result.addAll(ids);
+      }
+      return result;
+    }
+
+    if (conjunct instanceof IsNullPredicate) {
+      if (((IsNullPredicate) conjunct).isNotNull()) return null;
+      return index.getNullPartitionIds(colIdx);
+    }
+    return null;
+  }
+
+  /**
+   * Returns the ids of a superset of the partitions for which
+   * '<clustering col colIdx> op value' is true, or null if the index can't be used.
+   */
+  private Set<Long> getCandidatePartitionIds(int colIdx, BinaryPredicate.Operator op,
+      LiteralExpr value) {
+    Column col = tbl_.getColumns().get(colIdx);
+    if (!value.getType().equals(col.getType()) && !value.getType().isNull()) return null;
+    HdfsPartitionKeyIndex index = tbl_.getPartitionKeyIndex();
+    switch (op) {
+      case EQ: return index.getPartitionIdsEq(colIdx, value);
+      case LT: return index.getPartitionIdsInRange(colIdx, null, false, value, false);
+      case LE: return index.getPartitionIdsInRange(colIdx, null, false, value, true);
+      case GT: return index.getPartitionIdsInRange(colIdx, value, false, null, false);
+      case GE: return index.getPartitionIdsInRange(colIdx, value, true, null, false);
+      default: return null;
+    }
+  }
+
+  /**
+   * Returns the position of the clustering column referenced by 'e' if 'e' is a plain
+   * SlotRef of an indexed clustering column of tbl_, otherwise -1.
+   */
+  private int getIndexedClusteringColIdx(Expr e) {
+    if (!(e instanceof SlotRef)) return -1;
+    Column col = ((SlotRef) e).getDesc().getColumn();
+    if (col == null || col.getPosition() >= tbl_.getNumClusteringCols()) return -1;
+    if (!tbl_.getPartitionKeyIndex().isIndexed(col.getPosition())) return -1;
+    if (!e.getType().equals(col.getType())) return -1;
+    return col.getPosition();
+  }
+
+  /**
+   * Returns the operator op' such that 'a op b' is equivalent to 'b op' a'.
+   */
+  private static BinaryPredicate.Operator flipOperator(BinaryPredicate.Operator op) {
+    switch (op) {
+      case LT: return BinaryPredicate.Operator.GT;
+      case LE: return BinaryPredicate.Operator.GE;
+      case GT: return BinaryPredicate.Operator.LT;
+      case GE: return BinaryPredicate.Operator.LE;
+      default: return op;
+    }
+  }
+
   /**
    * Also computes totalBytes_
    */
@@ -183,7 +403,7 @@ public class HdfsScanNode extends ScanNode {
 
     LOG.debug("collecting partitions for table " + tbl_.getName());
     if (tbl_.getPartitions().isEmpty()) {
-      cardinality_ = tbl_.getNumRows();
+      cardinality_ = getSampledNumRows(tbl_.getNumRows());
     } else {
       cardinality_ = 0;
       totalBytes_ = 0;
@@ -192,14 +412,16 @@ public class HdfsScanNode extends ScanNode {
         // ignore partitions with missing stats in the hope they don't matter
         // enough to change the planning outcome
         if (p.getNumRows() > 0) {
-          cardinality_ += p.getNumRows();
+          cardinality_ += Math.round(p.getNumRows() * getSampledFraction(p));
           hasValidPartitionCardinality = true;
         }
-        totalBytes_ += p.getSize();
+        totalBytes_ += getSampledBytes(p);
       }
       // if none of the partitions knew its number of rows, we fall back on
       // the table stats
-      if (!hasValidPartitionCardinality) cardinality_ = tbl_.getNumRows();
+      if (!hasValidPartitionCardinality) {
+        cardinality_ = getSampledNumRows(tbl_.getNumRows());
+      }
     }
 
     Preconditions.checkState(cardinality_ >= 0 || cardinality_ == -1);
@@ -216,6 +438,31 @@ public class HdfsScanNode extends ScanNode {
     LOG.debug("computeStats HdfsScan: #nodes=" + Integer.toString(numNodes_));
   }
 
+  /**
+   * Returns the fraction of the bytes of the given partition that are scanned.
+   */
+  private double getSampledFraction(HdfsPartition partition) {
+    if (sampleClause_ == null || partition.getSize() == 0) return 1.0;
+    return (double) getSampledBytes(partition) / partition.getSize();
+  }
+
+  /**
+   * Returns the number of bytes of the given partition that are scanned.
+   */
+  private long getSampledBytes(HdfsPartition partition) {
+    if (sampleClause_ == null) return partition.getSize();
+    return HdfsPartition.getSampledBytes(sampledBlocks_.get(partition.getId()));
+  }
+
+  /**
+   * Returns the estimated number of rows in the scanned sample of a table with the
+   * given number of rows, or the given number of rows if the whole table is scanned.
+   */
+  private long getSampledNumRows(long numRows) {
+    if (sampleClause_ == null || numRows <= 0) return numRows;
+    return Math.round(numRows * (sampleClause_.getPercentBytes() / 100.0));
+  }
+
   @Override
   protected void toThrift(TPlanNode msg) {
     // TODO: retire this once the migration to the new plan is complete
@@ -226,56 +473,76 @@ public class HdfsScanNode extends ScanNode {
   /**
    * Return scan ranges (hdfs splits) plus their storage locations, including volume
    * ids.
+   * This is called for every block of the scanned partitions, so it avoids creating
+   * intermediate objects: the block metadata is read directly from the
+   * FileDescriptors, the full path of a file is computed once for all of its splits,
+   * and the splits of a block share the same list of locations.
    */
   @Override
   public List<TScanRangeLocations> getScanRangeLocations(long maxScanRangeLength) {
-    scanRanges_ = Lists.newArrayList();
+    int numBlocks = 0;
+    for (HdfsPartition partition: partitions_) {
+      for (HdfsPartition.FileDescriptor fileDesc: partition.getFileDescriptors()) {
+        numBlocks += fileDesc.getNumFileBlocks();
+      }
+    }
+    if (sampleClause_ != null) {
+      numBlocks = 0;
+      for (Map<HdfsPartition.FileDescriptor, BitSet> sample: sampledBlocks_.values()) {
+        for (BitSet blockIdxs: sample.values()) numBlocks += blockIdxs.cardinality();
+      }
+    }
+    scanRanges_ = Lists.newArrayListWithCapacity(numBlocks);
     for (HdfsPartition partition: partitions_) {
       Preconditions.checkState(partition.getId() >= 0);
+      HdfsTable table = partition.getTable();
+      Map<HdfsPartition.FileDescriptor, BitSet> sample =
+          sampledBlocks_.get(partition.getId());
       for (HdfsPartition.FileDescriptor fileDesc: partition.getFileDescriptors()) {
-        for (THdfsFileBlock thriftBlock: fileDesc.getFileBlocks()) {
-          HdfsPartition.FileBlock block = FileBlock.fromThrift(thriftBlock);
-          List<Integer> replicaHostIdxs = block.getReplicaHostIdxs();
-          if (replicaHostIdxs.size() == 0) {
+        BitSet sampledBlockIdxs = null;
+        if (sample != null) {
+          sampledBlockIdxs = sample.get(fileDesc);
+          if (sampledBlockIdxs == null) continue;
+        }
+        String filePath = null;
+        for (int blockIdx = 0; blockIdx < fileDesc.getNumFileBlocks(); ++blockIdx) {
+          if (sampledBlockIdxs != null && !sampledBlockIdxs.get(blockIdx)) continue;
+          int numReplicas = fileDesc.getNumReplicas(blockIdx);
+          if (numReplicas == 0) {
             // we didn't get locations for this block; for now, just ignore the block
             // TODO: do something meaningful with that
             continue;
           }
-
-          // Look up the network addresses of all hosts (datanodes) that contain
-          // replicas of this block.
-          List<TNetworkAddress> blockNetworkAddresses =
-              new ArrayList<TNetworkAddress>(replicaHostIdxs.size());
-          for (Integer replicaHostId: replicaHostIdxs) {
-            TNetworkAddress blockNetworkAddress =
-                partition.getTable().getNetworkAddressByIdx(replicaHostId);
-            Preconditions.checkNotNull(blockNetworkAddress);
-            blockNetworkAddresses.add(blockNetworkAddress);
+          if (filePath == null) {
+            filePath =
+                new Path(partition.getLocation(), fileDesc.getFileName()).toString();
           }
 
-          // record host/ports and volume ids
-          Preconditions.checkState(blockNetworkAddresses.size() > 0);
-          List<TScanRangeLocation> locations = Lists.newArrayList();
-          for (int i = 0; i < blockNetworkAddresses.size(); ++i) {
+          // record host/ports and volume ids of all hosts (datanodes) that contain
+          // replicas of this block
+          List<TScanRangeLocation> locations =
+              new ArrayList<TScanRangeLocation>(numReplicas);
+          for (int i = 0; i < numReplicas; ++i) {
+            TNetworkAddress blockNetworkAddress = table.getNetworkAddressByIdx(
+                fileDesc.getReplicaHostIdx(blockIdx, i));
+            Preconditions.checkNotNull(blockNetworkAddress);
             TScanRangeLocation location = new TScanRangeLocation();
-            location.setServer(blockNetworkAddresses.get(i));
-            location.setVolume_id(block.getDiskId(i));
+            location.setServer(blockNetworkAddress);
+            location.setVolume_id(fileDesc.getDiskId(blockIdx, i));
             locations.add(location);
           }
 
           // create scan ranges, taking into account maxScanRangeLength
-          long currentOffset = block.getOffset();
-          long remainingLength = block.getLength();
+          long currentOffset = fileDesc.getBlockOffset(blockIdx);
+          long remainingLength = fileDesc.getBlockLength(blockIdx);
           while (remainingLength > 0) {
             long currentLength = remainingLength;
             if (maxScanRangeLength > 0 && remainingLength > maxScanRangeLength) {
               currentLength = maxScanRangeLength;
             }
             TScanRange scanRange = new TScanRange();
-            scanRange.setHdfs_file_split(new THdfsFileSplit(
-                new Path(partition.getLocation(), fileDesc.getFileName()).toString(),
-                currentOffset, currentLength, partition.getId(),
-                fileDesc.getFileLength()));
+            scanRange.setHdfs_file_split(new THdfsFileSplit(filePath, currentOffset,
+                currentLength, partition.getId(), fileDesc.getFileLength()));
             TScanRangeLocations scanRangeLocations = new TScanRangeLocations();
             scanRangeLocations.scan_range = scanRange;
             scanRangeLocations.locations = locations;
@@ -312,6 +579,9 @@ public class HdfsScanNode extends ScanNode {
       output.append(String.format("%spartitions=%s/%s size=%s", detailPrefix,
           numPartitions, table.getPartitions().size() - 1,
           PrintUtils.printBytes(totalBytes_)));
+      if (sampleClause_ != null) {
+        output.append(String.format(" sampled=%s%%", sampleClause_.getPercentBytes()));
+      }
       if (compactData_) {
         output.append(" compact\n");
       } else {
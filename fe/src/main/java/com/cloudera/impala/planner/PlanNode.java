@@ -16,15 +16,18 @@ package com.cloudera.impala.planner;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.cloudera.impala.analysis.Analyzer;
+import com.cloudera.impala.analysis.BinaryPredicate;
 import com.cloudera.impala.analysis.Expr;
 import com.cloudera.impala.analysis.ExprId;
 import com.cloudera.impala.analysis.SlotId;
+import com.cloudera.impala.analysis.SlotRef;
 import com.cloudera.impala.analysis.TupleDescriptor;
 import com.cloudera.impala.analysis.TupleId;
 import com.cloudera.impala.catalog.AuthorizationException;
@@ -37,6 +40,7 @@ import com.cloudera.impala.thrift.TPlanNode;
 import com.cloudera.impala.thrift.TQueryOptions;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 /**
@@ -485,10 +489,28 @@ abstract public class PlanNode extends TreeNode<PlanNode> {
    */
   protected double computeSelectivity() {
     double prod = 1.0;
+    // Range predicates on the same slot, e.g., the two halves of a BETWEEN predicate,
+    // are not independent, so their combined selectivity is estimated together.
+    Map<SlotId, List<BinaryPredicate>> rangePreds = Maps.newHashMap();
     for (Expr e: conjuncts_) {
+      if (e instanceof BinaryPredicate) {
+        SlotRef slotRef = ((BinaryPredicate) e).getRangeSlotRef();
+        if (slotRef != null) {
+          List<BinaryPredicate> preds = rangePreds.get(slotRef.getSlotId());
+          if (preds == null) {
+            preds = Lists.newArrayList();
+            rangePreds.put(slotRef.getSlotId(), preds);
+          }
+          preds.add((BinaryPredicate) e);
+          continue;
+        }
+      }
       if (e.getSelectivity() < 0) continue;
       prod *= e.getSelectivity();
     }
+    for (List<BinaryPredicate> preds: rangePreds.values()) {
+      prod *= BinaryPredicate.estimateRangeSelectivity(preds);
+    }
     return prod;
   }
 
@@ -42,6 +42,7 @@ import com.cloudera.impala.analysis.SlotId;
 import com.cloudera.impala.analysis.SlotRef;
 import com.cloudera.impala.analysis.SortInfo;
 import com.cloudera.impala.analysis.TableRef;
+import com.cloudera.impala.analysis.TableSampleClause;
 import com.cloudera.impala.analysis.TupleDescriptor;
 import com.cloudera.impala.analysis.TupleId;
 import com.cloudera.impala.analysis.UnionStmt;
@@ -1504,8 +1505,12 @@ public class Planner {
       throws InternalException, AuthorizationException {
     ScanNode scanNode = null;
     if (tblRef.getTable() instanceof HdfsTable) {
+      TableSampleClause sampleClause = null;
+      if (tblRef instanceof BaseTableRef) {
+        sampleClause = ((BaseTableRef) tblRef).getSampleClause();
+      }
       scanNode = new HdfsScanNode(nodeIdGenerator_.getNextId(), tblRef.getDesc(),
-          (HdfsTable)tblRef.getTable());
+          (HdfsTable)tblRef.getTable(), sampleClause);
       scanNode.init(analyzer);
       return scanNode;
     } else {
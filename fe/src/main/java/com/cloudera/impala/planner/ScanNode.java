@@ -16,8 +16,11 @@ package com.cloudera.impala.planner;
 
 import java.util.List;
 
+import com.cloudera.impala.analysis.Analyzer;
 import com.cloudera.impala.analysis.SlotDescriptor;
 import com.cloudera.impala.analysis.TupleDescriptor;
+import com.cloudera.impala.catalog.AuthorizationException;
+import com.cloudera.impala.common.InternalException;
 import com.cloudera.impala.thrift.TExplainLevel;
 import com.cloudera.impala.thrift.TNetworkAddress;
 import com.cloudera.impala.thrift.TScanRangeLocations;
@@ -46,6 +49,15 @@ abstract public class ScanNode extends PlanNode {
    */
   abstract public List<TScanRangeLocations> getScanRangeLocations(long maxScanRangeLength);
 
+  /**
+   * Recomputes everything this node derived from the values of the constant exprs of
+   * its predicates, e.g. the scanned partitions or key range, and its stats. Called
+   * after the literals of the plan were re-bound to the parameter values of another
+   * execution of a prepared statement (see PlaceholderBinding).
+   */
+  abstract public void rebind(Analyzer analyzer)
+      throws InternalException, AuthorizationException;
+
   @Override
   protected String debugString() {
     return Objects.toStringHelper(this)
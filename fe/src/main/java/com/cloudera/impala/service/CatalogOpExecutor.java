@@ -15,16 +15,15 @@
 package com.cloudera.impala.service;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
 
 import org.apache.hadoop.hive.metastore.TableType;
+import org.apache.hadoop.hive.metastore.Warehouse;
 import org.apache.hadoop.hive.metastore.api.AlreadyExistsException;
 import org.apache.hadoop.hive.metastore.api.BooleanColumnStatsData;
 import org.apache.hadoop.hive.metastore.api.ColumnStatistics;
@@ -52,6 +51,7 @@ import com.cloudera.impala.catalog.CatalogException;
 import com.cloudera.impala.catalog.CatalogServiceCatalog;
 import com.cloudera.impala.catalog.Column;
 import com.cloudera.impala.catalog.ColumnNotFoundException;
+import com.cloudera.impala.catalog.ColumnStats;
 import com.cloudera.impala.catalog.ColumnType;
 import com.cloudera.impala.catalog.Db;
 import com.cloudera.impala.catalog.Function;
@@ -61,13 +61,16 @@ import com.cloudera.impala.catalog.HdfsTable;
 import com.cloudera.impala.catalog.HiveStorageDescriptorFactory;
 import com.cloudera.impala.catalog.IncompleteTable;
 import com.cloudera.impala.catalog.MetaStoreClientPool.MetaStoreClient;
+import com.cloudera.impala.catalog.PartitionStatsUtil;
 import com.cloudera.impala.catalog.RowFormat;
 import com.cloudera.impala.catalog.Table;
 import com.cloudera.impala.catalog.TableLoadingException;
 import com.cloudera.impala.catalog.TableNotFoundException;
 import com.cloudera.impala.common.ImpalaException;
+import com.cloudera.impala.common.ImpalaRuntimeException;
 import com.cloudera.impala.common.InternalException;
 import com.cloudera.impala.common.Pair;
+import com.cloudera.impala.service.DdlLockManager.DdlLock;
 import com.cloudera.impala.thrift.TAlterTableAddPartitionParams;
 import com.cloudera.impala.thrift.TAlterTableAddReplaceColsParams;
 import com.cloudera.impala.thrift.TAlterTableChangeColParams;
@@ -99,6 +102,7 @@ import com.cloudera.impala.thrift.TDropFunctionParams;
 import com.cloudera.impala.thrift.TDropTableOrViewParams;
 import com.cloudera.impala.thrift.THdfsFileFormat;
 import com.cloudera.impala.thrift.TPartitionKeyValue;
+import com.cloudera.impala.thrift.TPartitionStats;
 import com.cloudera.impala.thrift.TResetMetadataRequest;
 import com.cloudera.impala.thrift.TResetMetadataResponse;
 import com.cloudera.impala.thrift.TResultRow;
@@ -114,7 +118,8 @@ import com.cloudera.impala.thrift.TUpdateCatalogResponse;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
-import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
  * Class used to execute Catalog Operations, including DDL and refresh/invalidate
@@ -128,21 +133,19 @@ import com.google.common.util.concurrent.SettableFuture;
 public class CatalogOpExecutor {
   private final CatalogServiceCatalog catalog_;
 
-  // Lock used to synchronize metastore CREATE/DROP/ALTER TABLE/DATABASE requests.
-  private final Object metastoreDdlLock_ = new Object();
+  // Used to serialize metastore CREATE/DROP/ALTER TABLE/DATABASE requests on the same
+  // database or table.
+  private final DdlLockManager ddlLockMgr_ = new DdlLockManager();
   private static final Logger LOG = Logger.getLogger(CatalogOpExecutor.class);
 
-  // Only applies to partition updates after an INSERT for now.
-  private static final int NUM_CONCURRENT_METASTORE_OPERATIONS = 16;
-
   // The maximum number of partitions to update in one Hive Metastore RPC.
-  // Used when persisting the results of COMPUTE STATS statements.
+  // Used when persisting the results of COMPUTE STATS statements and when creating
+  // the partitions of an INSERT.
   private final static short MAX_PARTITION_UPDATES_PER_RPC = 500;
 
-  // Used to execute metastore updates in parallel. Currently only used for bulk
-  // partition creations.
-  private final ExecutorService executor_ =
-      Executors.newFixedThreadPool(NUM_CONCURRENT_METASTORE_OPERATIONS);
+  // Table parameter that records the percent of the bytes of the table that the
+  // current stats were computed from. Not set if the stats were computed from all data.
+  public static final String STATS_SAMPLE_PERCENT = "impala_stats_sample_percent";
 
   public CatalogOpExecutor(CatalogServiceCatalog catalog) {
     catalog_ = catalog;
@@ -299,7 +302,8 @@ public class CatalogOpExecutor {
         params.getColumns().size() > 0,
           "Null or empty column list given as argument to DdlExecutor.alterView");
 
-    synchronized (metastoreDdlLock_) {
+    DdlLock ddlLock = ddlLockMgr_.lockTable(tableName);
+    try {
       // Operate on a copy of the metastore table to avoid prematurely applying the
       // alteration to our cached table in case the actual alteration fails.
       org.apache.hadoop.hive.metastore.api.Table msTbl = getMetaStoreTable(tableName);
@@ -313,6 +317,8 @@ public class CatalogOpExecutor {
       setViewAttributes(params, msTbl);
       LOG.debug(String.format("Altering view %s", tableName));
       applyAlterTable(msTbl);
+    } finally {
+      ddlLock.release();
     }
 
     Table refreshedTbl = catalog_.reloadTable(tableName.toThrift());
@@ -323,18 +329,25 @@ public class CatalogOpExecutor {
   /**
    * Alters an existing table's table and column statistics. Partitions are updated
    * in batches of size 'MAX_PARTITION_UPDATES_PER_RPC'.
+   * For COMPUTE INCREMENTAL STATS, the stats of the scanned partitions are persisted
+   * and the table-level stats are merged from the stats of all partitions, see
+   * updateIncrementalStats().
+   * For COMPUTE STATS with a TABLESAMPLE clause, the stats are scaled from the sample
+   * to the whole table, see scaleSampledStats(), and the sampled percent is recorded
+   * in the table parameter STATS_SAMPLE_PERCENT.
    */
   private void alterTableUpdateStats(TAlterTableUpdateStatsParams params,
       TDdlExecResponse resp) throws NoSuchObjectException, MetaException, TException,
-        CatalogException {
-    Preconditions.checkState(params.isSetColumn_stats() && params.isSetPartition_stats()
-        && params.isSetTable_stats());
+        CatalogException, ImpalaRuntimeException {
+    Preconditions.checkState(params.isSetPartition_stats() && params.isSetTable_stats());
+    Preconditions.checkState(params.isSetColumn_stats() || params.isIs_incremental());
 
     TableName tableName = TableName.fromThrift(params.getTable_name());
     Preconditions.checkState(tableName != null && tableName.isFullyQualified());
     LOG.info(String.format("Updating table stats for: %s", tableName));
 
     Table table = getExistingTable(tableName.getDb(), tableName.getTbl());
+    if (table instanceof HdfsTable) canonicalizePartitionKeys(params, (HdfsTable) table);
     // Deep copy the msTbl to avoid updating our cache before successfully persisting
     // the results to the metastore.
     org.apache.hadoop.hive.metastore.api.Table msTbl =
@@ -358,12 +371,29 @@ public class CatalogOpExecutor {
         // Update the table and partition row counts based on the query results.
         List<org.apache.hadoop.hive.metastore.api.Partition> modifiedParts =
             Lists.newArrayList();
-        numTargetedPartitions = updateTableStats(table, params, msTbl, msPartitions,
-            modifiedParts);
+        Map<String, TColumnStats> columnStats;
+        if (params.isIs_incremental()) {
+          columnStats = Maps.newHashMap();
+          numTargetedPartitions = updateIncrementalStats((HdfsTable) table, params,
+              msTbl, modifiedParts, columnStats);
+        } else {
+          if (params.isSetSample_percent()) scaleSampledStats(params);
+          columnStats = params.getColumn_stats();
+          numTargetedPartitions = updateTableStats(table, params, msTbl, msPartitions,
+              modifiedParts);
+        }
+        // Record whether the stats were computed from a sample.
+        if (params.isSetSample_percent()) {
+          msTbl.putToParameters(STATS_SAMPLE_PERCENT,
+              String.valueOf(params.getSample_percent()));
+        } else if (msTbl.getParameters() != null) {
+          msTbl.getParameters().remove(STATS_SAMPLE_PERCENT);
+        }
 
         // Create Hive column stats from the query results.
-        ColumnStatistics colStats = createHiveColStats(params.getColumn_stats(), table);
+        ColumnStatistics colStats = createHiveColStats(columnStats, table);
         numUpdatedColumns = colStats.getStatsObjSize();
+        updateHistogramParams(columnStats, table, msTbl);
 
         // Update partitions in batches of size 'MAX_PARTITION_UPDATES_PER_RPC'. This
         // reduces the time spent in a single update and helps avoid metastore client
@@ -373,20 +403,26 @@ public class CatalogOpExecutor {
               Math.min(i + MAX_PARTITION_UPDATES_PER_RPC, modifiedParts.size());
           List<org.apache.hadoop.hive.metastore.api.Partition> partsToUpdate =
               modifiedParts.subList(i, numPartitionsToUpdate);
-          synchronized (metastoreDdlLock_) {
+          DdlLock ddlLock = ddlLockMgr_.lockTable(tableName);
+          try {
             // Alter partitions in bulk.
             msClient.getHiveClient().alter_partitions(tableName.getDb(),
                 tableName.getTbl(), partsToUpdate);
+          } finally {
+            ddlLock.release();
           }
         }
 
-        synchronized (metastoreDdlLock_) {
+        DdlLock ddlLock = ddlLockMgr_.lockTable(tableName);
+        try {
           // Update column stats.
           msClient.getHiveClient().updateTableColumnStatistics(colStats);
 
           // Update the table stats. Apply the table alteration last to ensure the
           // lastDdlTime is as accurate as possible.
           applyAlterTable(msTbl);
+        } finally {
+          ddlLock.release();
         }
     } finally {
       msClient.release();
@@ -405,6 +441,80 @@ public class CatalogOpExecutor {
     resp.setResult_set(resultSet);
   }
 
+  /**
+   * Replaces the partition-key values that key the per-partition maps of the given
+   * update stats parameters with their canonical form, see
+   * PartitionStatsUtil.canonicalPartitionKey(). The maps are keyed by the string
+   * casts of the partition-key values in the query results or by their analysis-time
+   * strings, which differ from the metastore partition values, e.g., for NULLs and for
+   * numeric values with leading zeros.
+   */
+  private static void canonicalizePartitionKeys(TAlterTableUpdateStatsParams params,
+      HdfsTable table) {
+    if (params.isSetPartition_stats()) {
+      params.setPartition_stats(PartitionStatsUtil.canonicalizePartitionKeys(
+          params.getPartition_stats(), table));
+    }
+    if (params.isSetPartition_incremental_stats()) {
+      params.setPartition_incremental_stats(PartitionStatsUtil.canonicalizePartitionKeys(
+          params.getPartition_incremental_stats(), table));
+    }
+    if (params.isSetPartition_fingerprints()) {
+      params.setPartition_fingerprints(PartitionStatsUtil.canonicalizePartitionKeys(
+          params.getPartition_fingerprints(), table));
+    }
+    if (params.isSetPartition_sample_fractions()) {
+      params.setPartition_sample_fractions(PartitionStatsUtil.canonicalizePartitionKeys(
+          params.getPartition_sample_fractions(), table));
+    }
+  }
+
+  /**
+   * Scales the stats in the given parameters, which COMPUTE STATS computed from a
+   * sample of the table, to estimates for the whole table. The row count of each
+   * partition is divided by the fraction of the partition that was sampled, and the
+   * table's row count is the sum of the estimated partition row counts. The number of
+   * NULLs of each column is scaled by the ratio of the estimated to the sampled rows.
+   * The NDVs are scaled with the estimator
+   *   min(N, d * (1 + (N / n - 1) * d / n))
+   * where d is the NDV of the sample, n is the number of sampled rows and N is the
+   * estimated number of rows. It keeps the NDV of columns whose sampled values are
+   * mostly duplicates and scales the NDV of columns whose sampled values are mostly
+   * distinct in proportion to the number of rows.
+   */
+  private static void scaleSampledStats(TAlterTableUpdateStatsParams params) {
+    Preconditions.checkState(params.isSetSample_percent());
+    double defaultFraction = params.getSample_percent() / 100.0;
+    long sampledRows = 0;
+    long estimatedRows = 0;
+    for (Map.Entry<List<String>, TTableStats> entry:
+         params.getPartition_stats().entrySet()) {
+      Double fraction = null;
+      if (params.isSetPartition_sample_fractions()) {
+        fraction = params.getPartition_sample_fractions().get(entry.getKey());
+      }
+      // Partitions added after the analysis of COMPUTE STATS were sampled with about
+      // the requested percent of their bytes.
+      if (fraction == null || fraction <= 0) fraction = defaultFraction;
+      long numRows = entry.getValue().getNum_rows();
+      sampledRows += numRows;
+      entry.getValue().setNum_rows(Math.round(numRows / fraction));
+      estimatedRows += entry.getValue().getNum_rows();
+    }
+    params.getTable_stats().setNum_rows(estimatedRows);
+    if (!params.isSetColumn_stats() || sampledRows == 0) return;
+
+    double scale = (double) estimatedRows / sampledRows;
+    for (TColumnStats colStats: params.getColumn_stats().values()) {
+      colStats.setNum_nulls(Math.round(colStats.getNum_nulls() * scale));
+      double ndv = colStats.getNum_distinct_values();
+      if (ndv <= 0) continue;
+      double estimatedNdv = ndv * (1 + (scale - 1) * Math.min(1.0, ndv / sampledRows));
+      colStats.setNum_distinct_values(
+          Math.round(Math.min(estimatedRows, estimatedNdv)));
+    }
+  }
+
   /**
    * Updates the row counts of the given Hive partitions and the total row count of the
    * given Hive table based on the given update stats parameters. The partitions whose
@@ -424,7 +534,10 @@ public class CatalogOpExecutor {
     // Update the partitions' ROW_COUNT parameter.
     int numTargetedPartitions = 0;
     for(org.apache.hadoop.hive.metastore.api.Partition msPartition: msPartitions) {
-      TTableStats partitionStats = params.partition_stats.get(msPartition.getValues());
+      // Only HDFS tables have metastore partitions.
+      TTableStats partitionStats = params.partition_stats.get(
+          PartitionStatsUtil.canonicalPartitionKey(msPartition.getValues(),
+              (HdfsTable) table));
       if (partitionStats == null) continue;
       LOG.trace(String.format("Updating stats for partition %s: numRows=%s",
           Joiner.on(",").join(msPartition.getValues()), partitionStats.num_rows));
@@ -451,6 +564,80 @@ public class CatalogOpExecutor {
     return numTargetedPartitions;
   }
 
+  /**
+   * Persists the incremental stats of the partitions that were scanned by COMPUTE
+   * INCREMENTAL STATS in copies of their Hive partitions, which are returned in
+   * modifiedParts, and merges the incremental stats of all partitions of the table
+   * into the table's row count, which is set in msTbl, and into the column stats,
+   * which are returned in columnStats. Partitions without incremental stats only
+   * contribute their row count, if it is known.
+   * Missing or new partitions as a result of concurrent table alterations are ignored.
+   * Returns the number of partitions whose stats were updated.
+   */
+  private int updateIncrementalStats(HdfsTable table,
+      TAlterTableUpdateStatsParams params,
+      org.apache.hadoop.hive.metastore.api.Table msTbl,
+      List<org.apache.hadoop.hive.metastore.api.Partition> modifiedParts,
+      Map<String, TColumnStats> columnStats) throws ImpalaRuntimeException {
+    Preconditions.checkState(params.isSetPartition_fingerprints());
+    Map<List<String>, TPartitionStats> newPartStats =
+        params.isSetPartition_incremental_stats() ?
+            params.getPartition_incremental_stats() :
+            Maps.<List<String>, TPartitionStats>newHashMap();
+
+    int numTargetedPartitions = 0;
+    PartitionStatsUtil.StatsMerger statsMerger = new PartitionStatsUtil.StatsMerger();
+    for (HdfsPartition partition: table.getPartitions()) {
+      org.apache.hadoop.hive.metastore.api.Partition msPartition =
+          partition.getMetaStorePartition();
+      if (msPartition == null) continue;
+      List<String> partValues =
+          PartitionStatsUtil.canonicalPartitionKey(msPartition.getValues(), table);
+      String fingerprint = params.getPartition_fingerprints().get(partValues);
+      if (fingerprint == null) {
+        // The partition was not scanned, use its persisted stats.
+        TPartitionStats partStats =
+            PartitionStatsUtil.partStatsFromParameters(msPartition.getParameters());
+        if (partStats != null) {
+          statsMerger.add(partStats);
+        } else {
+          statsMerger.addRowCount(partition.getNumRows());
+        }
+        continue;
+      }
+
+      TPartitionStats partStats = newPartStats.get(partValues);
+      TTableStats rowCount = params.getPartition_stats().get(partValues);
+      if (partStats == null) {
+        // The queries returned no rows for this partition, it was empty when scanned.
+        partStats = new TPartitionStats();
+      }
+      if (rowCount == null) rowCount = new TTableStats(0);
+      partStats.setStats(rowCount);
+      statsMerger.add(partStats);
+
+      // Modify a copy to avoid updating the cached partition before the changes were
+      // persisted.
+      msPartition = msPartition.deepCopy();
+      if (msPartition.getParameters() == null) {
+        msPartition.setParameters(Maps.<String, String>newHashMap());
+      }
+      PartitionStatsUtil.partStatsToParameters(partStats, fingerprint,
+          msPartition.getParameters());
+      msPartition.putToParameters(StatsSetupConst.ROW_COUNT,
+          String.valueOf(rowCount.getNum_rows()));
+      modifiedParts.add(msPartition);
+      ++numTargetedPartitions;
+    }
+
+    msTbl.putToParameters(StatsSetupConst.ROW_COUNT,
+        String.valueOf(statsMerger.getNumRows()));
+    columnStats.putAll(statsMerger.getColumnStats());
+    LOG.debug(String.format("Updated incremental stats of %d partition(s) of %s",
+        numTargetedPartitions, table.getFullName()));
+    return numTargetedPartitions;
+  }
+
   /**
    * Create Hive column statistics for the given table based on the give map from column
    * name to column stats. Missing or new columns as a result of concurrent table
@@ -482,6 +669,25 @@ public class CatalogOpExecutor {
     return colStats;
   }
 
+  /**
+   * Stores the histograms of the given column stats in the parameters of msTbl, see
+   * ColumnStats.HISTOGRAM_PARAM_PREFIX, because the Hive column stats cannot hold them.
+   * Removes the histograms of the columns whose new stats have none.
+   */
+  private static void updateHistogramParams(Map<String, TColumnStats> columnStats,
+      Table table, org.apache.hadoop.hive.metastore.api.Table msTbl) {
+    for (Map.Entry<String, TColumnStats> entry: columnStats.entrySet()) {
+      if (table.getColumn(entry.getKey()) == null) continue;
+      String key = ColumnStats.HISTOGRAM_PARAM_PREFIX + entry.getKey().toLowerCase();
+      if (entry.getValue().isSetHistogram_bounds()) {
+        msTbl.putToParameters(key,
+            ColumnStats.histogramToString(entry.getValue().getHistogram_bounds()));
+      } else if (msTbl.getParameters() != null) {
+        msTbl.getParameters().remove(key);
+      }
+    }
+  }
+
   private static ColumnStatisticsData createHiveColStatsData(TColumnStats colStats,
       ColumnType colType) {
     ColumnStatisticsData colStatsData = new ColumnStatisticsData();
@@ -498,15 +704,27 @@ public class CatalogOpExecutor {
       case INT:
       case BIGINT:
       case TIMESTAMP: // Hive and Impala use LongColumnStatsData for timestamps.
-        // TODO: Gather and set the min/max values stats as well. The planner
-        // currently does not rely on them.
-        colStatsData.setLongStats(new LongColumnStatsData(-1, -1, numNulls, ndvs));
+        // The min/max values are -1 if unknown, e.g., for timestamps, see
+        // ColumnStats.update().
+        long lowValue = -1;
+        long highValue = -1;
+        if (colStats.isSetMin_value() && colStats.isSetMax_value()) {
+          lowValue = (long) Math.floor(colStats.getMin_value());
+          highValue = (long) Math.ceil(colStats.getMax_value());
+        }
+        colStatsData.setLongStats(
+            new LongColumnStatsData(lowValue, highValue, numNulls, ndvs));
         break;
       case FLOAT:
       case DOUBLE:
-        // TODO: Gather and set the min/max values stats as well. The planner
-        // currently does not rely on them.
-        colStatsData.setDoubleStats(new DoubleColumnStatsData(-1, -1, numNulls, ndvs));
+        double lowDoubleValue = -1;
+        double highDoubleValue = -1;
+        if (colStats.isSetMin_value() && colStats.isSetMax_value()) {
+          lowDoubleValue = colStats.getMin_value();
+          highDoubleValue = colStats.getMax_value();
+        }
+        colStatsData.setDoubleStats(new DoubleColumnStatsData(lowDoubleValue,
+            highDoubleValue, numNulls, ndvs));
         break;
       case STRING:
         long maxStrLen = colStats.getMax_size();
@@ -549,7 +767,8 @@ public class CatalogOpExecutor {
       db.setLocationUri(params.getLocation());
     }
     LOG.debug("Creating database " + dbName);
-    synchronized (metastoreDdlLock_) {
+    DdlLock ddlLock = ddlLockMgr_.lockDb(dbName);
+    try {
       MetaStoreClient msClient = catalog_.getMetaStoreClient();
       try {
         msClient.getHiveClient().createDatabase(db);
@@ -569,6 +788,8 @@ public class CatalogOpExecutor {
       thriftDb.setDb(newDb.toThrift());
       thriftDb.setCatalog_version(newDb.getCatalogVersion());
       resp.result.setUpdated_catalog_object(thriftDb);
+    } finally {
+      ddlLock.release();
     }
     resp.result.setVersion(resp.result.getUpdated_catalog_object().getCatalog_version());
   }
@@ -613,7 +834,8 @@ public class CatalogOpExecutor {
 
     TCatalogObject removedObject = new TCatalogObject();
     MetaStoreClient msClient = catalog_.getMetaStoreClient();
-    synchronized (metastoreDdlLock_) {
+    DdlLock ddlLock = ddlLockMgr_.lockDb(params.getDb());
+    try {
       try {
         msClient.getHiveClient().dropDatabase(params.getDb(), true, params.if_exists);
       } finally {
@@ -627,6 +849,8 @@ public class CatalogOpExecutor {
       } else {
         removedObject.setCatalog_version(removedDb.getCatalogVersion());
       }
+    } finally {
+      ddlLock.release();
     }
     removedObject.setType(TCatalogObjectType.DATABASE);
     removedObject.setDb(new TDatabase());
@@ -646,7 +870,8 @@ public class CatalogOpExecutor {
     LOG.debug(String.format("Dropping table/view %s", tableName));
 
     TCatalogObject removedObject = new TCatalogObject();
-    synchronized (metastoreDdlLock_) {
+    DdlLock ddlLock = ddlLockMgr_.lockTable(tableName);
+    try {
       MetaStoreClient msClient = catalog_.getMetaStoreClient();
       try {
         msClient.getHiveClient().dropTable(
@@ -662,6 +887,8 @@ public class CatalogOpExecutor {
       } else {
         resp.result.setVersion(catalog_.getCatalogVersion());
       }
+    } finally {
+      ddlLock.release();
     }
     removedObject.setType(TCatalogObjectType.TABLE);
     removedObject.setTable(new TTable());
@@ -822,7 +1049,9 @@ public class CatalogOpExecutor {
       NoSuchObjectException, AlreadyExistsException, InvalidObjectException,
       org.apache.thrift.TException, CatalogException {
     MetaStoreClient msClient = catalog_.getMetaStoreClient();
-    synchronized (metastoreDdlLock_) {
+    DdlLock ddlLock = ddlLockMgr_.lockTable(
+        new TableName(newTable.getDbName(), newTable.getTableName()));
+    try {
       try {
         msClient.getHiveClient().createTable(newTable);
       } catch (AlreadyExistsException e) {
@@ -836,6 +1065,8 @@ public class CatalogOpExecutor {
       } finally {
         msClient.release();
       }
+    } finally {
+      ddlLock.release();
     }
     Table newTbl = catalog_.addTable(newTable.getDbName(), newTable.getTableName());
     response.result.setUpdated_catalog_object(TableToTCatalogObject(newTbl));
@@ -896,7 +1127,8 @@ public class CatalogOpExecutor {
   private void alterTableChangeCol(TableName tableName, String colName,
       TColumn newCol) throws MetaException, InvalidObjectException,
       org.apache.thrift.TException, CatalogException {
-    synchronized (metastoreDdlLock_) {
+    DdlLock ddlLock = ddlLockMgr_.lockTable(tableName);
+    try {
       org.apache.hadoop.hive.metastore.api.Table msTbl = getMetaStoreTable(tableName);
       // Find the matching column name and change it.
       Iterator<FieldSchema> iterator = msTbl.getSd().getColsIterator();
@@ -918,6 +1150,8 @@ public class CatalogOpExecutor {
         }
       }
       applyAlterTable(msTbl);
+    } finally {
+      ddlLock.release();
     }
   }
 
@@ -937,7 +1171,8 @@ public class CatalogOpExecutor {
       return;
     }
 
-    synchronized (metastoreDdlLock_) {
+    DdlLock ddlLock = ddlLockMgr_.lockTable(tableName);
+    try {
       org.apache.hadoop.hive.metastore.api.Table msTbl = getMetaStoreTable(tableName);
       partition.setDbName(tableName.getDb());
       partition.setTableName(tableName.getTbl());
@@ -968,6 +1203,8 @@ public class CatalogOpExecutor {
       } finally {
         msClient.release();
       }
+    } finally {
+      ddlLock.release();
     }
   }
 
@@ -985,7 +1222,8 @@ public class CatalogOpExecutor {
       return;
     }
 
-    synchronized (metastoreDdlLock_) {
+    DdlLock ddlLock = ddlLockMgr_.lockTable(tableName);
+    try {
       org.apache.hadoop.hive.metastore.api.Table msTbl = getMetaStoreTable(tableName);
       List<String> values = Lists.newArrayList();
       // Need to add in the values in the same order they are defined in the table.
@@ -1010,6 +1248,8 @@ public class CatalogOpExecutor {
       } finally {
         msClient.release();
       }
+    } finally {
+      ddlLock.release();
     }
   }
 
@@ -1019,7 +1259,8 @@ public class CatalogOpExecutor {
   private void alterTableDropCol(TableName tableName, String colName)
       throws MetaException, InvalidObjectException, org.apache.thrift.TException,
       CatalogException {
-    synchronized (metastoreDdlLock_) {
+    DdlLock ddlLock = ddlLockMgr_.lockTable(tableName);
+    try {
       org.apache.hadoop.hive.metastore.api.Table msTbl = getMetaStoreTable(tableName);
 
       // Find the matching column name and remove it.
@@ -1036,6 +1277,8 @@ public class CatalogOpExecutor {
         }
       }
       applyAlterTable(msTbl);
+    } finally {
+      ddlLock.release();
     }
   }
 
@@ -1047,7 +1290,8 @@ public class CatalogOpExecutor {
       TDdlExecResponse response)
       throws MetaException, InvalidObjectException, org.apache.thrift.TException,
       CatalogException {
-    synchronized (metastoreDdlLock_) {
+    DdlLock ddlLock = ddlLockMgr_.lockTables(tableName, newTableName);
+    try {
       org.apache.hadoop.hive.metastore.api.Table msTbl = getMetaStoreTable(tableName);
       msTbl.setDbName(newTableName.getDb());
       msTbl.setTableName(newTableName.getTbl());
@@ -1058,6 +1302,8 @@ public class CatalogOpExecutor {
       } finally {
         msClient.release();
       }
+    } finally {
+      ddlLock.release();
     }
 
     // Rename the table in the Catalog and get the resulting catalog object.
@@ -1086,13 +1332,17 @@ public class CatalogOpExecutor {
       InvalidObjectException, org.apache.thrift.TException, CatalogException {
     Preconditions.checkState(partitionSpec == null || !partitionSpec.isEmpty());
     if (partitionSpec == null) {
-      synchronized (metastoreDdlLock_) {
+      DdlLock ddlLock = ddlLockMgr_.lockTable(tableName);
+      try {
         org.apache.hadoop.hive.metastore.api.Table msTbl = getMetaStoreTable(tableName);
         setStorageDescriptorFileFormat(msTbl.getSd(), fileFormat);
         applyAlterTable(msTbl);
+      } finally {
+        ddlLock.release();
       }
     } else {
-      synchronized (metastoreDdlLock_) {
+      DdlLock ddlLock = ddlLockMgr_.lockTable(tableName);
+      try {
         HdfsPartition partition = catalog_.getHdfsPartition(
             tableName.getDb(), tableName.getTbl(), partitionSpec);
         org.apache.hadoop.hive.metastore.api.Partition msPartition =
@@ -1104,6 +1354,8 @@ public class CatalogOpExecutor {
         } finally {
           partition.markDirty();
         }
+      } finally {
+        ddlLock.release();
       }
     }
   }
@@ -1129,13 +1381,17 @@ public class CatalogOpExecutor {
       InvalidObjectException, org.apache.thrift.TException, CatalogException {
     Preconditions.checkState(partitionSpec == null || !partitionSpec.isEmpty());
     if (partitionSpec == null) {
-      synchronized (metastoreDdlLock_) {
+      DdlLock ddlLock = ddlLockMgr_.lockTable(tableName);
+      try {
         org.apache.hadoop.hive.metastore.api.Table msTbl = getMetaStoreTable(tableName);
         msTbl.getSd().setLocation(location);
         applyAlterTable(msTbl);
+      } finally {
+        ddlLock.release();
       }
     } else {
-      synchronized (metastoreDdlLock_) {
+      DdlLock ddlLock = ddlLockMgr_.lockTable(tableName);
+      try {
         HdfsPartition partition = catalog_.getHdfsPartition(
             tableName.getDb(), tableName.getTbl(), partitionSpec);
         org.apache.hadoop.hive.metastore.api.Partition msPartition =
@@ -1147,6 +1403,8 @@ public class CatalogOpExecutor {
         } finally {
           partition.markDirty();
         }
+      } finally {
+        ddlLock.release();
       }
     }
   }
@@ -1159,7 +1417,8 @@ public class CatalogOpExecutor {
       TAlterTableSetTblPropertiesParams params) throws TException, CatalogException {
     Map<String, String> properties = params.getProperties();
     Preconditions.checkNotNull(properties);
-    synchronized (metastoreDdlLock_) {
+    DdlLock ddlLock = ddlLockMgr_.lockTable(tableName);
+    try {
       if (params.isSetPartition_spec()) {
         // Alter partition params.
         HdfsPartition partition = catalog_.getHdfsPartition(
@@ -1199,12 +1458,14 @@ public class CatalogOpExecutor {
         }
         applyAlterTable(msTbl);
       }
+    } finally {
+      ddlLock.release();
     }
   }
 
   /**
-   * Applies an ALTER TABLE command to the metastore table. The caller should take the
-   * metastoreDdlLock before calling this method.
+   * Applies an ALTER TABLE command to the metastore table. The caller should lock the
+   * table in the ddlLockMgr_ before calling this method.
    * Note: The metastore interface is not very safe because it only accepts a
    * an entire metastore.api.Table object rather than a delta of what to change. This
    * means an external modification to the table could be overwritten by an ALTER TABLE
@@ -1361,59 +1622,6 @@ public class CatalogOpExecutor {
     return tbl;
   }
 
-  /**
-   * Creates a single partition in the metastore.
-   * TODO: Depending how often we do lots of metastore operations at once, might be worth
-   * making this reusable.
-   */
-  private class CreatePartitionRunnable implements Runnable {
-    /**
-     * Constructs a new operation to create a partition in dbName.tblName called
-     * partName. The supplied future is signalled if an error occurs, or if numPartitions
-     * is decremented to 0 after the partition creation has completed. If a partition is
-     * actually created, partitionCreated is set.
-     */
-    public CreatePartitionRunnable(TableName tblName,
-        String partName, AtomicBoolean partitionCreated,
-        SettableFuture<Void> allFinished, AtomicInteger numPartitions) {
-      tblName_ = tblName;
-      partName_ = partName;
-      partitionCreated_ = partitionCreated;
-      allFinished_ = allFinished;
-      numPartitions_ = numPartitions;
-    }
-
-    public void run() {
-      // If there was an exception in another operation, abort
-      if (allFinished_.isDone()) return;
-      MetaStoreClient msClient = catalog_.getMetaStoreClient();
-      try {
-        LOG.debug("Creating partition: " + partName_ + " in table: " + tblName_);
-        msClient.getHiveClient().appendPartitionByName(tblName_.getDb(),
-            tblName_.getTbl(), partName_);
-        partitionCreated_.set(true);
-      } catch (AlreadyExistsException e) {
-        LOG.debug("Ignoring partition " + partName_ + ", since it already exists");
-        // Ignore since partition already exists.
-      } catch (Exception e) {
-        allFinished_.setException(e);
-      } finally {
-        msClient.release();
-      }
-
-      // If this is the last operation to complete, signal the future
-      if (numPartitions_.decrementAndGet() == 0) {
-        allFinished_.set(null);
-      }
-    }
-
-    private final TableName tblName_;
-    private final String partName_;
-    private final AtomicBoolean partitionCreated_;
-    private final AtomicInteger numPartitions_;
-    private final SettableFuture<Void> allFinished_;
-  }
-
   /**
    * Executes a TResetMetadataRequest and returns the result as a
    * TResetMetadataResponse. Based on the request parameters, this operation
@@ -1489,7 +1697,8 @@ public class CatalogOpExecutor {
 
   /**
    * Create any new partitions required as a result of an INSERT statement.
-   * Updates the lastDdlTime of the table if new partitions were created.
+   * Updates the lastDdlTime of the table if new partitions were created. Only the
+   * partitions that were written to are then reloaded.
    */
   public TUpdateCatalogResponse updateCatalog(TUpdateCatalogRequest update)
       throws ImpalaException {
@@ -1502,29 +1711,16 @@ public class CatalogOpExecutor {
     }
 
     TableName tblName = new TableName(table.getDb().getName(), table.getName());
-    AtomicBoolean addedNewPartition = new AtomicBoolean(false);
-
+    boolean addedNewPartition = false;
     if (table.getNumClusteringCols() > 0) {
-      SettableFuture<Void> allFinished = SettableFuture.create();
-      AtomicInteger numPartitions =
-          new AtomicInteger(update.getCreated_partitions().size());
-      // Add all partitions to metastore.
-      for (String partName: update.getCreated_partitions()) {
-        Preconditions.checkState(partName != null && !partName.isEmpty());
-        CreatePartitionRunnable rbl =
-            new CreatePartitionRunnable(tblName, partName, addedNewPartition, allFinished,
-                numPartitions);
-        executor_.execute(rbl);
-      }
-
       try {
-        // Will throw if any operation calls setException
-        allFinished.get();
+        addedNewPartition = createPartitions((HdfsTable) table,
+            update.getCreated_partitions());
       } catch (Exception e) {
         throw new InternalException("Error updating metastore", e);
       }
     }
-    if (addedNewPartition.get()) {
+    if (addedNewPartition) {
       MetaStoreClient msClient = catalog_.getMetaStoreClient();
       try {
         // Operate on a copy of msTbl to prevent our cached msTbl becoming inconsistent
@@ -1543,13 +1739,94 @@ public class CatalogOpExecutor {
     response.getResult().setCatalog_service_id(JniCatalog.getServiceId());
     response.getResult().setStatus(
         new TStatus(TStatusCode.OK, new ArrayList<String>()));
-    Table refreshedTbl = catalog_.reloadTable(tblName.toThrift());
-    response.getResult().setUpdated_catalog_object(TableToTCatalogObject(refreshedTbl));
+    Table refreshedTbl;
+    if (table.getNumClusteringCols() > 0) {
+      refreshedTbl = catalog_.reloadPartitions(tblName.toThrift(),
+          update.getCreated_partitions());
+    } else {
+      refreshedTbl = catalog_.reloadTable(tblName.toThrift());
+    }
+    // The coordinator applies the result to its cached version of the table, which may
+    // be older than the base version of a partition delta of the table. Return the
+    // complete table, so that the coordinator sees the inserted data in any case.
+    if (refreshedTbl == null) {
+      response.getResult().setUpdated_catalog_object(TableToTCatalogObject(null));
+    } else {
+      response.getResult().setUpdated_catalog_object(refreshedTbl.toTCatalogObject());
+    }
     response.getResult().setVersion(
         response.getResult().getUpdated_catalog_object().getCatalog_version());
     return response;
   }
 
+  /**
+   * Creates the partitions with the given names in the metastore that do not exist yet
+   * in the given table. Partitions are created in batches of
+   * MAX_PARTITION_UPDATES_PER_RPC with one add_partitions() call per batch. If a batch
+   * fails because one of its partitions was created concurrently, the partitions of
+   * that batch are created one at a time instead. Returns true if any partition was
+   * created.
+   */
+  private boolean createPartitions(HdfsTable table, Collection<String> partitionNames)
+      throws MetaException, AlreadyExistsException, InvalidObjectException,
+      org.apache.thrift.TException {
+    org.apache.hadoop.hive.metastore.api.Table msTbl = table.getMetaStoreTable();
+    Set<List<String>> existingPartitionValues = Sets.newHashSet();
+    for (HdfsPartition partition: table.getPartitions()) {
+      if (partition.getMetaStorePartition() == null) continue;
+      existingPartitionValues.add(partition.getMetaStorePartition().getValues());
+    }
+
+    List<org.apache.hadoop.hive.metastore.api.Partition> newPartitions =
+        Lists.newArrayList();
+    for (String partName: partitionNames) {
+      Preconditions.checkState(partName != null && !partName.isEmpty());
+      List<String> values = Warehouse.getPartValuesFromPartName(partName);
+      if (!existingPartitionValues.add(values)) continue;
+      org.apache.hadoop.hive.metastore.api.Partition partition =
+          new org.apache.hadoop.hive.metastore.api.Partition();
+      partition.setDbName(table.getDb().getName());
+      partition.setTableName(table.getName());
+      partition.setValues(values);
+      // Leave the location unset, so the metastore creates the partition in its default
+      // location under the table's directory.
+      StorageDescriptor sd = msTbl.getSd().deepCopy();
+      sd.setLocation(null);
+      partition.setSd(sd);
+      newPartitions.add(partition);
+    }
+    if (newPartitions.isEmpty()) return false;
+
+    int numCreated = 0;
+    MetaStoreClient msClient = catalog_.getMetaStoreClient();
+    try {
+      for (int i = 0; i < newPartitions.size(); i += MAX_PARTITION_UPDATES_PER_RPC) {
+        List<org.apache.hadoop.hive.metastore.api.Partition> batch =
+            newPartitions.subList(
+                i, Math.min(i + MAX_PARTITION_UPDATES_PER_RPC, newPartitions.size()));
+        LOG.debug(String.format("Creating %d partitions in table: %s", batch.size(),
+            table.getFullName()));
+        try {
+          numCreated += msClient.getHiveClient().add_partitions(batch);
+        } catch (AlreadyExistsException e) {
+          // The batch was not applied, create its partitions one at a time.
+          for (org.apache.hadoop.hive.metastore.api.Partition partition: batch) {
+            try {
+              msClient.getHiveClient().add_partition(partition);
+              ++numCreated;
+            } catch (AlreadyExistsException ignored) {
+              LOG.debug("Ignoring partition " + partition.getValues() +
+                  ", since it already exists");
+            }
+          }
+        }
+      }
+    } finally {
+      msClient.release();
+    }
+    return numCreated > 0;
+  }
+
   /**
    * Returns an existing, loaded table from the Catalog. Throws an exception if any
    * of the following are true:
@@ -0,0 +1,190 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.cloudera.impala.analysis.TableName;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Serializes metastore DDL operations on the same database or table, while allowing
+ * DDL operations on unrelated databases and tables to run concurrently.
+ *
+ * Each database and each table has its own lock, which is created when it is first
+ * needed and removed once no operation holds or waits for it. Operations on a table
+ * hold the lock of its database in shared mode and the lock of the table in exclusive
+ * mode. Operations on a database (CREATE/DROP DATABASE) hold the lock of the database
+ * in exclusive mode, which excludes all operations on the tables of the database.
+ *
+ * Operations on multiple tables, e.g., ALTER TABLE RENAME, lock all of them with a
+ * single call to lockTables(). To prevent deadlocks, locks are always acquired in the
+ * same order: database locks before table locks, and locks of the same kind ordered
+ * by name. Callers must not acquire additional locks while holding a DdlLock.
+ * Thread safe.
+ */
+public class DdlLockManager {
+  /**
+   * The locks held by a DDL operation. Must be released by calling release() on the
+   * thread that acquired them, typically in a finally block.
+   */
+  public class DdlLock {
+    // The held locks, in the order they were acquired.
+    private final List<LockEntry> entries_;
+    private final List<Lock> locks_;
+    private boolean released_ = false;
+
+    private DdlLock(List<LockEntry> entries, List<Lock> locks) {
+      entries_ = entries;
+      locks_ = locks;
+    }
+
+    /**
+     * Releases all locks held by this DdlLock. Can be called multiple times.
+     */
+    public void release() {
+      if (released_) return;
+      released_ = true;
+      for (int i = locks_.size() - 1; i >= 0; --i) {
+        locks_.get(i).unlock();
+      }
+      for (LockEntry entry: entries_) unreference(entry);
+    }
+  }
+
+  /**
+   * A lock of a database or table and the number of operations that hold or wait for
+   * it.
+   */
+  private static class LockEntry {
+    public final String key;
+    public final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Protected by the DdlLockManager.
+    public int refCount = 0;
+
+    public LockEntry(String key) { this.key = key; }
+  }
+
+  // Locks of the databases and tables that are in use, keyed by their lower-case
+  // database name or fully-qualified table name. Protected by 'this'.
+  private final Map<String, LockEntry> dbLocks_ = Maps.newHashMap();
+  private final Map<String, LockEntry> tblLocks_ = Maps.newHashMap();
+
+  /**
+   * Locks the given database in exclusive mode, blocking until all operations on the
+   * database and its tables have completed.
+   */
+  public DdlLock lockDb(String dbName) {
+    Preconditions.checkNotNull(dbName);
+    LockEntry dbEntry = reference(dbLocks_, dbName.toLowerCase());
+    List<Lock> locks = Lists.newArrayListWithCapacity(1);
+    try {
+      acquire(dbEntry.lock.writeLock(), locks);
+    } catch (RuntimeException e) {
+      unreference(dbEntry);
+      throw e;
+    }
+    return new DdlLock(Lists.newArrayList(dbEntry), locks);
+  }
+
+  /**
+   * Locks the given table in exclusive mode and its database in shared mode.
+   */
+  public DdlLock lockTable(TableName tableName) {
+    return lockTables(tableName);
+  }
+
+  /**
+   * Locks all given tables in exclusive mode and their databases in shared mode.
+   * The locks are acquired in a fixed order, so concurrent calls with overlapping sets
+   * of tables cannot deadlock.
+   */
+  public DdlLock lockTables(TableName... tableNames) {
+    SortedSet<String> dbKeys = new TreeSet<String>();
+    SortedSet<String> tblKeys = new TreeSet<String>();
+    for (TableName tableName: tableNames) {
+      Preconditions.checkState(tableName.isFullyQualified());
+      dbKeys.add(tableName.getDb().toLowerCase());
+      tblKeys.add(tableName.toString().toLowerCase());
+    }
+
+    List<LockEntry> entries = Lists.newArrayList();
+    List<Lock> locks = Lists.newArrayList();
+    try {
+      for (String dbKey: dbKeys) {
+        LockEntry entry = reference(dbLocks_, dbKey);
+        entries.add(entry);
+        acquire(entry.lock.readLock(), locks);
+      }
+      for (String tblKey: tblKeys) {
+        LockEntry entry = reference(tblLocks_, tblKey);
+        entries.add(entry);
+        acquire(entry.lock.writeLock(), locks);
+      }
+    } catch (RuntimeException e) {
+      new DdlLock(entries, locks).release();
+      throw e;
+    }
+    return new DdlLock(entries, locks);
+  }
+
+  /**
+   * Returns the number of databases and tables that currently have a lock entry.
+   */
+  public synchronized int getNumLockEntries() {
+    return dbLocks_.size() + tblLocks_.size();
+  }
+
+  private static void acquire(Lock lock, List<Lock> locks) {
+    lock.lock();
+    locks.add(lock);
+  }
+
+  /**
+   * Returns the lock entry for the given key, creating it if necessary, and records
+   * that it is in use.
+   */
+  private synchronized LockEntry reference(Map<String, LockEntry> entries,
+      String key) {
+    LockEntry entry = entries.get(key);
+    if (entry == null) {
+      entry = new LockEntry(key);
+      entries.put(key, entry);
+    }
+    ++entry.refCount;
+    return entry;
+  }
+
+  /**
+   * Records that the given lock entry is no longer in use by an operation, and removes
+   * it once it is not used by any operation.
+   */
+  private synchronized void unreference(LockEntry entry) {
+    Preconditions.checkState(entry.refCount > 0);
+    if (--entry.refCount > 0) return;
+    if (dbLocks_.get(entry.key) == entry) {
+      dbLocks_.remove(entry.key);
+    } else {
+      tblLocks_.remove(entry.key);
+    }
+  }
+}
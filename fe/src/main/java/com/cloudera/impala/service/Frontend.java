@@ -22,6 +22,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
@@ -35,9 +37,12 @@ import org.slf4j.LoggerFactory;
 import com.cloudera.impala.analysis.AnalysisContext;
 import com.cloudera.impala.analysis.CreateUdaStmt;
 import com.cloudera.impala.analysis.CreateUdfStmt;
+import com.cloudera.impala.analysis.DeallocateStmt;
 import com.cloudera.impala.analysis.DropFunctionStmt;
 import com.cloudera.impala.analysis.DropTableOrViewStmt;
+import com.cloudera.impala.analysis.ExecuteStmt;
 import com.cloudera.impala.analysis.InsertStmt;
+import com.cloudera.impala.analysis.PrepareStmt;
 import com.cloudera.impala.analysis.QueryStmt;
 import com.cloudera.impala.analysis.ResetMetadataStmt;
 import com.cloudera.impala.analysis.ShowFunctionsStmt;
@@ -61,6 +66,7 @@ import com.cloudera.impala.common.FileSystemUtil;
 import com.cloudera.impala.common.ImpalaException;
 import com.cloudera.impala.common.InternalException;
 import com.cloudera.impala.common.NotImplementedException;
+import com.cloudera.impala.planner.HdfsScanNode;
 import com.cloudera.impala.planner.PlanFragment;
 import com.cloudera.impala.planner.Planner;
 import com.cloudera.impala.planner.ScanNode;
@@ -92,6 +98,7 @@ import com.cloudera.impala.thrift.TStatusCode;
 import com.cloudera.impala.thrift.TStmtType;
 import com.cloudera.impala.thrift.TTableName;
 import com.cloudera.impala.thrift.TUpdateCatalogCacheRequest;
+import com.cloudera.impala.thrift.TUniqueId;
 import com.cloudera.impala.thrift.TUpdateCatalogCacheResponse;
 import com.cloudera.impala.util.TResultRowBuilder;
 import com.cloudera.impala.util.TSessionStateUtil;
@@ -99,6 +106,7 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
@@ -118,16 +126,43 @@ public class Frontend {
   private ImpaladCatalog impaladCatalog_;
   private final AuthorizationConfig authzConfig_;
 
+  // Cache of the exec requests of frequently repeated queries. Null if disabled.
+  private final PlanCache planCache_;
+
+  // Map from session id to the prepared statements of the session, by name.
+  private final ConcurrentHashMap<TUniqueId, Map<String, PrepareStmt>> preparedStmts_ =
+      new ConcurrentHashMap<TUniqueId, Map<String, PrepareStmt>>();
+
+  // Map from prepared statement to its generic plan, if any. Weakly keys the prepared
+  // statements by identity, so the plans are dropped along with their statements.
+  private final ConcurrentMap<PrepareStmt, PreparedPlan> preparedPlans_ =
+      new MapMaker().weakKeys().makeMap();
+
   public Frontend(AuthorizationConfig authorizationConfig) {
-    this(authorizationConfig, new ImpaladCatalog(authorizationConfig));
+    this(authorizationConfig, 0);
+  }
+
+  /**
+   * Creates a Frontend whose plan cache holds up to planCacheSize exec requests.
+   * The plan cache is disabled if planCacheSize is 0.
+   */
+  public Frontend(AuthorizationConfig authorizationConfig, int planCacheSize) {
+    this(authorizationConfig, new ImpaladCatalog(authorizationConfig), planCacheSize);
   }
 
   /**
    * C'tor used by tests to pass in a custom ImpaladCatalog.
    */
   public Frontend(AuthorizationConfig authorizationConfig, ImpaladCatalog catalog) {
+    this(authorizationConfig, catalog, 0);
+  }
+
+  public Frontend(AuthorizationConfig authorizationConfig, ImpaladCatalog catalog,
+      int planCacheSize) {
+    Preconditions.checkArgument(planCacheSize >= 0);
     authzConfig_ = authorizationConfig;
     impaladCatalog_ = catalog;
+    planCache_ = planCacheSize > 0 ? new PlanCache(planCacheSize) : null;
   }
 
   public ImpaladCatalog getCatalog() { return impaladCatalog_; }
@@ -293,6 +328,12 @@ public class Frontend {
       TResetMetadataRequest req = resetMetadataStmt.toThrift();
       ddl.setReset_metadata_params(req);
       metadata.setColumns(Collections.<TColumn>emptyList());
+    } else if (analysis.isPrepareStmt()) {
+      ddl.op_type = TCatalogOpType.PREPARE;
+      metadata.setColumns(Collections.<TColumn>emptyList());
+    } else if (analysis.isDeallocateStmt()) {
+      ddl.op_type = TCatalogOpType.DEALLOCATE;
+      metadata.setColumns(Collections.<TColumn>emptyList());
     }
     result.setResult_set_metadata(metadata);
     result.setCatalog_op_request(ddl);
@@ -528,10 +569,14 @@ public class Frontend {
    * table collection process. This helps ensure a statement never waits indefinitely
    * for a table to be loaded in event the table metadata was invalidated.
    * TODO: Also consider adding an overall timeout that fails analysis.
+   * If executeStmt is not null, analyzes the query executed by it instead (see
+   * AnalysisContext.analyzeExecutedQuery()).
    */
-  private AnalysisContext.AnalysisResult analyzeStmt(TQueryContext queryCtxt)
+  private AnalysisContext.AnalysisResult analyzeStmt(TQueryContext queryCtxt,
+      ExecuteStmt executeStmt)
       throws AnalysisException, InternalException, AuthorizationException {
-    AnalysisContext analysisCtxt = new AnalysisContext(impaladCatalog_, queryCtxt);
+    AnalysisContext analysisCtxt = new AnalysisContext(impaladCatalog_, queryCtxt,
+        getPreparedStmts(queryCtxt));
     LOG.debug("analyze query " + queryCtxt.request.stmt);
 
     // Run analysis in a loop until it either:
@@ -539,7 +584,11 @@ public class Frontend {
     // 2) Fails with an AnalysisException AND there are no missing tables.
     while (true) {
       try {
-        analysisCtxt.analyze(queryCtxt.request.stmt);
+        if (executeStmt == null) {
+          analysisCtxt.analyze(queryCtxt.request.stmt);
+        } else {
+          analysisCtxt.analyzeExecutedQuery(executeStmt);
+        }
         Preconditions.checkState(analysisCtxt.getAnalyzer().getMissingTbls().isEmpty());
         return analysisCtxt.getAnalysisResult();
       } catch (AnalysisException e) {
@@ -556,15 +605,84 @@ public class Frontend {
     }
   }
 
+  /**
+   * Returns the prepared statements of the session of queryCtxt.
+   */
+  private Map<String, PrepareStmt> getPreparedStmts(TQueryContext queryCtxt) {
+    Map<String, PrepareStmt> stmts = null;
+    if (queryCtxt.session.isSetSession_id()) {
+      stmts = preparedStmts_.get(queryCtxt.session.getSession_id());
+    }
+    return stmts != null ? stmts : Collections.<String, PrepareStmt>emptyMap();
+  }
+
+  /**
+   * Registers the statement of a PREPARE or removes the one named by a DEALLOCATE
+   * in the session of queryCtxt.
+   */
+  private void updatePreparedStmts(AnalysisContext.AnalysisResult analysisResult,
+      TQueryContext queryCtxt) throws AnalysisException {
+    if (!queryCtxt.session.isSetSession_id()) {
+      throw new AnalysisException("Prepared statements require a session.");
+    }
+    TUniqueId sessionId = queryCtxt.session.getSession_id();
+    if (analysisResult.isPrepareStmt()) {
+      preparedStmts_.putIfAbsent(sessionId, new ConcurrentHashMap<String, PrepareStmt>());
+      PrepareStmt stmt = analysisResult.getPrepareStmt();
+      if (preparedStmts_.get(sessionId).putIfAbsent(stmt.getName(), stmt) != null) {
+        throw new AnalysisException(
+            "Prepared statement already exists: " + stmt.getName());
+      }
+    } else {
+      DeallocateStmt stmt = analysisResult.getDeallocateStmt();
+      if (getPreparedStmts(queryCtxt).remove(stmt.getName()) == null) {
+        throw new AnalysisException(
+            "Prepared statement does not exist: " + stmt.getName());
+      }
+    }
+  }
+
+  /**
+   * Returns the generic plan of the prepared statement with the given name in the
+   * given session, or null if there is none. Package visible for testing.
+   */
+  PreparedPlan getPreparedPlan(TUniqueId sessionId, String name) {
+    Map<String, PrepareStmt> stmts = preparedStmts_.get(sessionId);
+    if (stmts == null || !stmts.containsKey(name)) return null;
+    return preparedPlans_.get(stmts.get(name));
+  }
+
+  /**
+   * Releases the prepared statements of a closed session.
+   */
+  public void closeSession(TUniqueId sessionId) {
+    preparedStmts_.remove(sessionId);
+  }
+
   /**
    * Create a populated TExecRequest corresponding to the supplied TQueryContext.
    */
   public TExecRequest createExecRequest(
       TQueryContext queryCtxt, StringBuilder explainString)
       throws ImpalaException {
+    String planCacheKey = null;
+    if (planCache_ != null) {
+      planCacheKey = PlanCache.createKey(queryCtxt);
+      TExecRequest cachedRequest = planCache_.get(planCacheKey, queryCtxt, getCatalog());
+      if (cachedRequest != null) {
+        explainString.append(cachedRequest.query_exec_request.getQuery_plan());
+        return cachedRequest;
+      }
+    }
+
     // Analyze the statement
-    AnalysisContext.AnalysisResult analysisResult = analyzeStmt(queryCtxt);
+    AnalysisContext.AnalysisResult analysisResult = analyzeStmt(queryCtxt, null);
     Preconditions.checkNotNull(analysisResult.getStmt());
+    if (analysisResult.isExecuteStmt()) {
+      return createExecuteRequest(analysisResult.getExecuteStmt(), queryCtxt,
+          explainString);
+    }
+    long planningStartTimeNs = System.nanoTime();
 
     TExecRequest result = new TExecRequest();
     result.setQuery_options(queryCtxt.request.getQuery_options());
@@ -573,6 +691,9 @@ public class Frontend {
     if (analysisResult.isCatalogOp()) {
       result.stmt_type = TStmtType.DDL;
       createCatalogOpRequest(analysisResult, result);
+      if (analysisResult.isPrepareStmt() || analysisResult.isDeallocateStmt()) {
+        updatePreparedStmts(analysisResult, queryCtxt);
+      }
 
       // All DDL operations except for CTAS are done with analysis at this point.
       if (!analysisResult.isCreateTableAsSelectStmt()) return result;
@@ -588,23 +709,115 @@ public class Frontend {
     Preconditions.checkState(analysisResult.isQueryStmt() || analysisResult.isDmlStmt()
         || analysisResult.isCreateTableAsSelectStmt());
 
-    TQueryExecRequest queryExecRequest = new TQueryExecRequest();
     // create plan
     LOG.debug("create plan");
     Planner planner = new Planner();
     ArrayList<PlanFragment> fragments =
         planner.createPlanFragments(analysisResult, queryCtxt.request.query_options);
+    createQueryExecRequest(analysisResult, planner, fragments, queryCtxt, explainString,
+        result);
+
+    if (planCacheKey != null && analysisResult.isQueryStmt() &&
+        !analysisResult.isExplainStmt() && isPlanCacheable(analysisResult, fragments)) {
+      long planningTimeNs = analysisResult.getAnalysisTimeNs() +
+          System.nanoTime() - planningStartTimeNs;
+      planCache_.put(planCacheKey, result,
+          analysisResult.getAnalyzer().getReferencedTables(),
+          analysisResult.getAnalyzer().getFnResolutions(), planningTimeNs);
+    }
+    return result;
+  }
+
+  /**
+   * Creates the exec request of an analyzed EXECUTE statement. Re-binds the generic plan
+   * of the executed prepared statement to the parameter values if possible. Otherwise,
+   * analyzes and plans the query bound to the parameter values, and keeps that plan as
+   * the new generic plan of the prepared statement.
+   */
+  private TExecRequest createExecuteRequest(ExecuteStmt executeStmt,
+      TQueryContext queryCtxt, StringBuilder explainString) throws ImpalaException {
+    PrepareStmt prepareStmt = executeStmt.getPrepareStmt();
+    PreparedPlan plan = preparedPlans_.get(prepareStmt);
+    if (plan != null && plan.isValid(queryCtxt, getCatalog())) {
+      synchronized (plan) {
+        boolean isRebound = false;
+        boolean isFailed = true;
+        try {
+          isRebound = plan.rebind(executeStmt.getParamValues());
+          isFailed = false;
+        } finally {
+          // The plan may be partially re-bound if re-binding threw.
+          if (isFailed) preparedPlans_.remove(prepareStmt, plan);
+        }
+        if (isRebound) {
+          LOG.debug("re-bound the plan of prepared statement " + prepareStmt.getName());
+          TExecRequest result = new TExecRequest();
+          result.setQuery_options(queryCtxt.request.getQuery_options());
+          result.setAccess_events(plan.getAnalysisResult().getAccessEvents());
+          createQueryExecRequest(plan.getAnalysisResult(), plan.getPlanner(),
+              plan.getFragments(), queryCtxt, explainString, result);
+          return result;
+        }
+      }
+    }
+
+    AnalysisContext.AnalysisResult analysisResult = analyzeStmt(queryCtxt, executeStmt);
+    Preconditions.checkState(analysisResult.isQueryStmt());
+    TExecRequest result = new TExecRequest();
+    result.setQuery_options(queryCtxt.request.getQuery_options());
+    result.setAccess_events(analysisResult.getAccessEvents());
+    LOG.debug("create plan");
+    Planner planner = new Planner();
+    ArrayList<PlanFragment> fragments =
+        planner.createPlanFragments(analysisResult, queryCtxt.request.query_options);
+    // Reusing a plan skips analysis, so plans are not kept if authorization is enabled,
+    // so that privilege changes take effect immediately.
+    if (authzConfig_.isEnabled() ||
+        !PlanCache.isCacheable(analysisResult.getAnalyzer().getFnResolutions())) {
+      createQueryExecRequest(analysisResult, planner, fragments, queryCtxt,
+          explainString, result);
+      return result;
+    }
+    plan = new PreparedPlan(analysisResult, planner, fragments, queryCtxt);
+    synchronized (plan) {
+      preparedPlans_.put(prepareStmt, plan);
+      createQueryExecRequest(analysisResult, planner, fragments, queryCtxt,
+          explainString, result);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the scan nodes of the given plan fragments.
+   */
+  static List<ScanNode> getScanNodes(List<PlanFragment> fragments) {
     List<ScanNode> scanNodes = Lists.newArrayList();
+    for (PlanFragment fragment: fragments) {
+      Preconditions.checkNotNull(fragment.getPlanRoot());
+      fragment.getPlanRoot().collect(Predicates.instanceOf(ScanNode.class), scanNodes);
+    }
+    return scanNodes;
+  }
+
+  /**
+   * Fills in 'result' with the TQueryExecRequest of the query or DML statement of
+   * analysisResult, planned into 'fragments' by 'planner': the serialized fragments,
+   * the scan ranges of the scan nodes, the resource requirements, the explain string
+   * and the result set metadata or finalization params.
+   */
+  private void createQueryExecRequest(AnalysisContext.AnalysisResult analysisResult,
+      Planner planner, ArrayList<PlanFragment> fragments, TQueryContext queryCtxt,
+      StringBuilder explainString, TExecRequest result) {
+    TQueryExecRequest queryExecRequest = new TQueryExecRequest();
     // map from fragment to its index in queryExecRequest.fragments; needed for
     // queryExecRequest.dest_fragment_idx
     Map<PlanFragment, Integer> fragmentIdx = Maps.newHashMap();
     for (PlanFragment fragment: fragments) {
       TPlanFragment thriftFragment = fragment.toThrift();
       queryExecRequest.addToFragments(thriftFragment);
-      Preconditions.checkNotNull(fragment.getPlanRoot());
-      fragment.getPlanRoot().collect(Predicates.instanceOf(ScanNode.class), scanNodes);
       fragmentIdx.put(fragment, queryExecRequest.fragments.size() - 1);
     }
+    List<ScanNode> scanNodes = getScanNodes(fragments);
 
     // set fragment destinations
     for (int i = 1; i < fragments.size(); ++i) {
@@ -655,7 +868,7 @@ public class Frontend {
     if (analysisResult.isExplainStmt()) {
       // Return the EXPLAIN request
       createExplainRequest(explainString.toString(), result);
-      return result;
+      return;
     }
 
     result.setQuery_exec_request(queryExecRequest);
@@ -700,7 +913,24 @@ public class Frontend {
         queryExecRequest.setFinalize_params(finalizeParams);
       }
     }
-    return result;
+  }
+
+  /**
+   * Returns true if the exec request of the analyzed query statement is fully
+   * determined by its plan cache key and the catalog objects it references, i.e.,
+   * if it may be served from the plan cache.
+   * Since hits skip analysis, statements are never cached if authorization is
+   * enabled, so that privilege changes take effect immediately. The scan ranges of
+   * HBase tables depend on the current region locations rather than on catalog
+   * versions, so only plans with HDFS scans are cached.
+   */
+  private boolean isPlanCacheable(AnalysisContext.AnalysisResult analysisResult,
+      List<PlanFragment> fragments) {
+    if (authzConfig_.isEnabled()) return false;
+    for (ScanNode scanNode: getScanNodes(fragments)) {
+      if (!(scanNode instanceof HdfsScanNode)) return false;
+    }
+    return PlanCache.isCacheable(analysisResult.getAnalyzer().getFnResolutions());
   }
 
   /**
@@ -68,17 +68,26 @@ public class JniCatalog {
   }
 
   public JniCatalog(boolean loadInBackground, int numMetadataLoadingThreads,
-      int impalaLogLevel, int otherLogLevel) throws InternalException {
+      int numFileMetadataLoadingThreads, int maxConcurrentMetastoreTableFetches,
+      String snapshotDir, int snapshotIntervalSecs, int impalaLogLevel,
+      int otherLogLevel) throws InternalException {
     Preconditions.checkArgument(numMetadataLoadingThreads > 0);
+    Preconditions.checkArgument(numFileMetadataLoadingThreads > 0);
+    Preconditions.checkArgument(maxConcurrentMetastoreTableFetches > 0);
     // This trick saves having to pass a TLogLevel enum, which is an object and more
     // complex to pass through JNI.
     GlogAppender.Install(TLogLevel.values()[impalaLogLevel],
         TLogLevel.values()[otherLogLevel]);
 
+    // An empty snapshot directory disables catalog snapshots.
+    if (snapshotDir != null && snapshotDir.isEmpty()) snapshotDir = null;
     catalog_ = new CatalogServiceCatalog(loadInBackground,
-        numMetadataLoadingThreads, getServiceId());
+        numMetadataLoadingThreads, numFileMetadataLoadingThreads,
+        maxConcurrentMetastoreTableFetches, snapshotDir, snapshotIntervalSecs,
+        getServiceId());
     try {
       catalog_.reset();
+      catalog_.restoreFromSnapshot();
     } catch (CatalogException e) {
       LOG.error("Error initialializing Catalog. Please run 'invalidate metadata'", e);
     }
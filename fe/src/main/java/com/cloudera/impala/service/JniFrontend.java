@@ -70,6 +70,7 @@ import com.cloudera.impala.thrift.TQueryContext;
 import com.cloudera.impala.thrift.TResultSet;
 import com.cloudera.impala.thrift.TShowStatsParams;
 import com.cloudera.impala.thrift.TTableName;
+import com.cloudera.impala.thrift.TUniqueId;
 import com.cloudera.impala.thrift.TUpdateCatalogCacheRequest;
 import com.cloudera.impala.util.GlogAppender;
 import com.cloudera.impala.util.TSessionStateUtil;
@@ -89,8 +90,8 @@ public class JniFrontend {
    * Create a new instance of the Jni Frontend.
    */
   public JniFrontend(boolean lazy, String serverName, String authorizationPolicyFile,
-      String policyProviderClassName, int impalaLogLevel, int otherLogLevel)
-      throws InternalException {
+      String policyProviderClassName, int impalaLogLevel, int otherLogLevel,
+      int planCacheSize) throws InternalException {
     GlogAppender.Install(TLogLevel.values()[impalaLogLevel],
         TLogLevel.values()[otherLogLevel]);
 
@@ -99,7 +100,7 @@ public class JniFrontend {
     AuthorizationConfig authorizationConfig = new AuthorizationConfig(serverName,
         authorizationPolicyFile, policyProviderClassName);
     authorizationConfig.validateConfig();
-    frontend_ = new Frontend(authorizationConfig);
+    frontend_ = new Frontend(authorizationConfig, planCacheSize);
   }
 
   /**
@@ -328,6 +329,15 @@ public class JniFrontend {
     frontend_.getCatalog().setIsReady();
   }
 
+  /**
+   * Jni wrapper for Frontend.closeSession(). Accepts a serialized TUniqueId.
+   */
+  public void closeSession(byte[] thriftSessionId) throws ImpalaException {
+    TUniqueId sessionId = new TUniqueId();
+    JniUtil.deserializeThrift(protocolFactory_, sessionId, thriftSessionId);
+    frontend_.closeSession(sessionId);
+  }
+
   // Caching this saves ~50ms per call to getHadoopConfigAsHtml
   private static final Configuration CONF = new Configuration();
 
@@ -0,0 +1,248 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.impala.catalog.Catalog;
+import com.cloudera.impala.catalog.Function;
+import com.cloudera.impala.catalog.Table;
+import com.cloudera.impala.common.Pair;
+import com.cloudera.impala.thrift.TExecRequest;
+import com.cloudera.impala.thrift.TFunctionBinaryType;
+import com.cloudera.impala.thrift.TPlanCacheStats;
+import com.cloudera.impala.thrift.TQueryContext;
+import com.cloudera.impala.thrift.TTableName;
+import com.cloudera.impala.util.TSessionStateUtil;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Bounded LRU cache of the TExecRequests of query statements. Statements that are sent
+ * over and over again, e.g. by dashboards, skip parsing, analysis and planning when
+ * served from the cache.
+ *
+ * Entries are keyed by the normalized statement text, the default database, the
+ * effective user and the query options. Each entry records the catalog versions of
+ * all tables and views referenced by the statement and the resolutions of its
+ * user-defined functions. A lookup revalidates these against the current catalog and
+ * evicts the entry if any of them changed, so an entry is never served after a catalog
+ * update that touched one of its dependencies.
+ *
+ * The caller decides which requests are safe to cache; see Frontend. Thread safe.
+ */
+public class PlanCache {
+  private final static Logger LOG = LoggerFactory.getLogger(PlanCache.class);
+
+  // Builtins whose result depends on the query context (e.g. its start time) rather
+  // than on their arguments when called without arguments. Since constant exprs are
+  // folded with the query context during planning, plans that call them are not
+  // reusable.
+  private final static Set<String> CONTEXT_DEPENDENT_BUILTINS =
+      ImmutableSet.of("now", "current_timestamp", "rand", "unix_timestamp");
+
+  private static class Entry {
+    // Exec request of the first execution of the statement. Never handed out; hits
+    // return a copy with the query context of the new execution.
+    public final TExecRequest request;
+
+    // Catalog objects the statement depends on.
+    public final PlanDependencies dependencies;
+
+    // Parsing, analysis and planning time of the statement.
+    public final long planningTimeMs;
+
+    public Entry(TExecRequest request, PlanDependencies dependencies,
+        long planningTimeMs) {
+      this.request = request;
+      this.dependencies = dependencies;
+      this.planningTimeMs = planningTimeMs;
+    }
+  }
+
+  private final int maxEntries_;
+
+  // Map from cache key to entry in LRU order.
+  private final LinkedHashMap<String, Entry> entries_;
+
+  private final AtomicLong numHits_ = new AtomicLong();
+  private final AtomicLong numMisses_ = new AtomicLong();
+  private final AtomicLong savedPlanningTimeMs_ = new AtomicLong();
+
+  public PlanCache(int maxEntries) {
+    Preconditions.checkArgument(maxEntries > 0);
+    maxEntries_ = maxEntries;
+    entries_ = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxEntries_;
+      }
+    };
+  }
+
+  /**
+   * Returns the cache key of the statement in queryCtxt. Must be computed before
+   * the statement is planned.
+   */
+  public static String createKey(TQueryContext queryCtxt) {
+    StringBuilder key = new StringBuilder(normalizeStmt(queryCtxt.request.stmt));
+    key.append('\0').append(queryCtxt.session.database);
+    key.append('\0').append(TSessionStateUtil.getEffectiveUser(queryCtxt.session));
+    key.append('\0').append(queryCtxt.request.query_options.toString());
+    return key.toString();
+  }
+
+  /**
+   * Normalizes the whitespace of a statement: removes leading and trailing whitespace
+   * and trailing semicolons, and collapses every other run of whitespace outside of
+   * quotes and comments into a single blank or, if the run contains a line break, into
+   * a single line break, so that '--' comments keep ending where they did.
+   */
+  public static String normalizeStmt(String stmt) {
+    StringBuilder result = new StringBuilder(stmt.length());
+    // Whitespace to emit before the next non-whitespace character.
+    char pendingWhitespace = 0;
+    int i = 0;
+    while (i < stmt.length()) {
+      char c = stmt.charAt(i);
+      if (Character.isWhitespace(c)) {
+        if (result.length() > 0 && pendingWhitespace != '\n') {
+          pendingWhitespace = (c == '\n' || c == '\r') ? '\n' : ' ';
+        }
+        ++i;
+        continue;
+      }
+      if (pendingWhitespace != 0) {
+        result.append(pendingWhitespace);
+        pendingWhitespace = 0;
+      }
+      // Copy quoted strings, quoted identifiers and comments verbatim.
+      int end = i + 1;
+      if (c == '\'' || c == '"' || c == '`') {
+        while (end < stmt.length() && stmt.charAt(end) != c) {
+          if (c != '`' && stmt.charAt(end) == '\\') ++end;
+          ++end;
+        }
+        ++end;
+      } else if (stmt.startsWith("--", i)) {
+        while (end < stmt.length() && stmt.charAt(end) != '\n') ++end;
+      } else if (stmt.startsWith("/*", i)) {
+        end = stmt.indexOf("*/", i + 2);
+        end = end < 0 ? stmt.length() : end + 2;
+      }
+      end = Math.min(end, stmt.length());
+      result.append(stmt, i, end);
+      i = end;
+    }
+    int end = result.length();
+    while (end > 0 && result.charAt(end - 1) == ';') --end;
+    if (end < result.length()) {
+      result.setLength(end);
+      // Whitespace may have preceded the semicolons.
+      while (end > 0 && Character.isWhitespace(result.charAt(end - 1))) --end;
+      result.setLength(end);
+    }
+    return result.toString();
+  }
+
+  /**
+   * Returns true if the plan of a statement that made the given function resolutions
+   * may be cached.
+   */
+  public static boolean isCacheable(List<Pair<Function, Function>> fnResolutions) {
+    for (Pair<Function, Function> resolution: fnResolutions) {
+      Function fn = resolution.second;
+      if (fn.getBinaryType() == TFunctionBinaryType.BUILTIN && fn.getNumArgs() == 0 &&
+          CONTEXT_DEPENDENT_BUILTINS.contains(fn.functionName())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the exec request cached under 'key' for the execution described by
+   * queryCtxt, or null if there is no valid entry. Adds the tables missing stats
+   * of the cached plan to queryCtxt.
+   */
+  public TExecRequest get(String key, TQueryContext queryCtxt, Catalog catalog) {
+    Entry entry;
+    synchronized (entries_) {
+      entry = entries_.get(key);
+    }
+    if (entry == null) return null;
+    if (!entry.dependencies.isValid(catalog)) {
+      LOG.debug("Evicting stale plan cache entry: " + entry.request.query_exec_request
+          .query_ctxt.request.stmt);
+      synchronized (entries_) {
+        // The entry may have been replaced in the meantime.
+        if (entries_.get(key) == entry) entries_.remove(key);
+      }
+      return null;
+    }
+
+    TExecRequest result = entry.request.deepCopy();
+    List<TTableName> tablesMissingStats =
+        result.query_exec_request.query_ctxt.getTables_missing_stats();
+    if (tablesMissingStats != null) {
+      for (TTableName tableName: tablesMissingStats) {
+        queryCtxt.addToTables_missing_stats(tableName);
+      }
+    }
+    result.setQuery_options(queryCtxt.request.getQuery_options());
+    result.query_exec_request.setQuery_ctxt(queryCtxt);
+    numHits_.incrementAndGet();
+    savedPlanningTimeMs_.addAndGet(entry.planningTimeMs);
+    result.setPlan_cache_stats(getStats(true, entry.planningTimeMs));
+    return result;
+  }
+
+  /**
+   * Caches a copy of 'request' under 'key', recording the catalog versions of
+   * 'referencedTables' and the function resolutions 'fnResolutions'. Records a miss
+   * and sets the plan cache stats of 'request'.
+   */
+  public void put(String key, TExecRequest request, Collection<Table> referencedTables,
+      List<Pair<Function, Function>> fnResolutions, long planningTimeNs) {
+    numMisses_.incrementAndGet();
+    request.setPlan_cache_stats(getStats(false, 0));
+    Entry entry = new Entry(request.deepCopy(),
+        new PlanDependencies(referencedTables, fnResolutions),
+        TimeUnit.NANOSECONDS.toMillis(planningTimeNs));
+    synchronized (entries_) {
+      entries_.put(key, entry);
+    }
+  }
+
+  private TPlanCacheStats getStats(boolean hit, long savedPlanningTimeMs) {
+    return new TPlanCacheStats(hit, savedPlanningTimeMs, numHits_.get(),
+        numMisses_.get(), savedPlanningTimeMs_.get());
+  }
+
+  public int size() {
+    synchronized (entries_) {
+      return entries_.size();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.service;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.cloudera.impala.catalog.Catalog;
+import com.cloudera.impala.catalog.Db;
+import com.cloudera.impala.catalog.Function;
+import com.cloudera.impala.catalog.Table;
+import com.cloudera.impala.common.Pair;
+import com.cloudera.impala.thrift.TFunctionBinaryType;
+import com.cloudera.impala.thrift.TTableName;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Catalog objects a plan depends on: the tables and views referenced by the planned
+ * statement, with their catalog versions at planning time, and the resolutions of the
+ * user-defined functions it calls. A plan that is reused must be discarded once any
+ * of them changed (see isValid()).
+ */
+class PlanDependencies {
+  private final List<Pair<TTableName, Long>> tableVersions_;
+
+  // Resolutions of the user-defined functions called by the statement.
+  private final List<Pair<Function, Function>> udfResolutions_;
+
+  public PlanDependencies(Collection<Table> referencedTables,
+      List<Pair<Function, Function>> fnResolutions) {
+    List<Pair<TTableName, Long>> tableVersions = Lists.newArrayList();
+    for (Table table: referencedTables) {
+      tableVersions.add(Pair.create(
+          new TTableName(table.getDb().getName(), table.getName()),
+          table.getCatalogVersion()));
+    }
+    tableVersions_ = ImmutableList.copyOf(tableVersions);
+    // Builtins cannot change, only record the resolutions of user-defined functions.
+    List<Pair<Function, Function>> udfResolutions = Lists.newArrayList();
+    for (Pair<Function, Function> resolution: fnResolutions) {
+      if (resolution.second.getBinaryType() != TFunctionBinaryType.BUILTIN) {
+        udfResolutions.add(resolution);
+      }
+    }
+    udfResolutions_ = ImmutableList.copyOf(udfResolutions);
+  }
+
+  /**
+   * Returns true if all tables, views and functions the plan depends on are unchanged
+   * in 'catalog'.
+   */
+  public boolean isValid(Catalog catalog) {
+    for (Pair<TTableName, Long> tableVersion: tableVersions_) {
+      Db db = catalog.getDb(tableVersion.first.getDb_name());
+      if (db == null) return false;
+      Table table = db.getTable(tableVersion.first.getTable_name());
+      if (table == null || !table.isLoaded() ||
+          table.getCatalogVersion() != tableVersion.second) {
+        return false;
+      }
+    }
+    for (Pair<Function, Function> resolution: udfResolutions_) {
+      Db db = catalog.getDb(resolution.first.dbName());
+      if (db == null) return false;
+      // Re-resolve, so that newly added, better matching functions are picked up.
+      Function fn =
+          db.getFunction(resolution.first, Function.CompareMode.IS_SUPERTYPE_OF);
+      if (fn == null || !fn.equals(resolution.second) ||
+          fn.getCatalogVersion() != resolution.second.getCatalogVersion()) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,102 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.cloudera.impala.analysis.AnalysisContext;
+import com.cloudera.impala.analysis.LiteralExpr;
+import com.cloudera.impala.analysis.PlaceholderBinding;
+import com.cloudera.impala.catalog.AuthorizationException;
+import com.cloudera.impala.catalog.Catalog;
+import com.cloudera.impala.common.InternalException;
+import com.cloudera.impala.planner.PlanFragment;
+import com.cloudera.impala.planner.Planner;
+import com.cloudera.impala.planner.ScanNode;
+import com.cloudera.impala.thrift.TQueryContext;
+import com.cloudera.impala.thrift.TQueryOptions;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/**
+ * Generic plan of a prepared statement: its query analyzed and planned for the
+ * parameter values of one execution, which later executions re-bind to their own
+ * parameter values instead of analyzing and planning the query again. Re-binding sets
+ * the values of the bound literals in place (see PlaceholderBinding) and recomputes
+ * the scan nodes, i.e., their partitions, key ranges and stats; the scan ranges are
+ * computed anew for every exec request. The rest of the plan, e.g. the join strategies
+ * and the estimates of the other plan nodes, stays as planned for the first values.
+ *
+ * Re-binding modifies the plan, so callers must hold the lock of the plan while
+ * re-binding it and creating an exec request from it.
+ */
+class PreparedPlan {
+  private final AnalysisContext.AnalysisResult analysisResult_;
+  private final Planner planner_;
+  private final ArrayList<PlanFragment> fragments_;
+  private final List<ScanNode> scanNodes_;
+  private final PlanDependencies dependencies_;
+
+  // Query options and default database the query was planned with.
+  private final TQueryOptions queryOptions_;
+  private final String defaultDb_;
+
+  public PreparedPlan(AnalysisContext.AnalysisResult analysisResult, Planner planner,
+      ArrayList<PlanFragment> fragments, TQueryContext queryCtxt) {
+    Preconditions.checkNotNull(analysisResult.getBindings());
+    analysisResult_ = analysisResult;
+    planner_ = planner;
+    fragments_ = fragments;
+    scanNodes_ = Frontend.getScanNodes(fragments);
+    dependencies_ = new PlanDependencies(
+        analysisResult.getAnalyzer().getReferencedTables(),
+        analysisResult.getAnalyzer().getFnResolutions());
+    queryOptions_ = queryCtxt.request.query_options.deepCopy();
+    defaultDb_ = queryCtxt.session.database;
+  }
+
+  public AnalysisContext.AnalysisResult getAnalysisResult() { return analysisResult_; }
+  public Planner getPlanner() { return planner_; }
+  public ArrayList<PlanFragment> getFragments() { return fragments_; }
+
+  /**
+   * Returns true if the plan may be used for the execution described by queryCtxt,
+   * i.e., if the execution has the same query options and default database and if the
+   * catalog objects the plan depends on are unchanged.
+   */
+  public boolean isValid(TQueryContext queryCtxt, Catalog catalog) {
+    return queryOptions_.equals(queryCtxt.request.query_options) &&
+        Objects.equal(defaultDb_, queryCtxt.session.database) &&
+        dependencies_.isValid(catalog);
+  }
+
+  /**
+   * Re-binds the plan to 'values', the parameter values of another execution. Returns
+   * false and leaves the plan unchanged if it cannot be re-bound to the values, in which
+   * case the query must be analyzed and planned for them.
+   */
+  public boolean rebind(List<LiteralExpr> values)
+      throws InternalException, AuthorizationException {
+    List<PlaceholderBinding> bindings = analysisResult_.getBindings();
+    Preconditions.checkArgument(values.size() == bindings.size());
+    for (int i = 0; i < values.size(); ++i) {
+      if (!bindings.get(i).canRebind(values.get(i))) return false;
+    }
+    for (int i = 0; i < values.size(); ++i) bindings.get(i).rebind(values.get(i));
+    for (ScanNode scanNode: scanNodes_) scanNode.rebind(analysisResult_.getAnalyzer());
+    return true;
+  }
+}
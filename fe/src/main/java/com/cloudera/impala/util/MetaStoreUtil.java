@@ -15,17 +15,25 @@
 package com.cloudera.impala.util;
 
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.hive.conf.HiveConf;
-import org.apache.hadoop.hive.metastore.HiveMetaStoreClient;
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
 import org.apache.hadoop.hive.metastore.api.MetaException;
 import org.apache.hadoop.hive.metastore.api.Partition;
 import org.apache.log4j.Logger;
 import org.apache.thrift.TException;
 
+import com.cloudera.impala.catalog.Catalog;
 import com.cloudera.impala.catalog.HdfsTable;
+import com.cloudera.impala.catalog.MetaStoreClientPool.MetaStoreClient;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 /**
  * Utility methods for interacting with the Hive Metastore.
@@ -62,18 +70,28 @@ public class MetaStoreUtil {
     }
   }
 
+  /**
+   * Fetches the partitions of a batch of partitions of a table, see
+   * fetchPartitionBatches().
+   */
+  interface PartitionBatchFetcher {
+    List<Partition> fetch(List<String> partNames) throws TException;
+  }
+
   /**
    * Fetches all partitions for a table in batches, with each batch containing at most
    * 'maxPartsPerRpc' partitions. Returns a List containing all fetched Partitions.
    * Will throw a MetaException if existing partitions are dropped while a fetch is in
    * progress. To help protect against this, the operation can be retried if there is
-   * a MetaException by setting the "numRetries" parameter.
+   * a MetaException by setting the "numRetries" parameter. Each retry lists the
+   * partition names again, so partitions that were dropped in the meantime are not
+   * fetched again.
    * Failures due to thrift exceptions (TExceptions) are not retried because they
    * generally mean the connection is broken or has timed out. The HiveClient supports
    * configuring retires at the connection level so it can be enabled independently.
    */
   public static List<org.apache.hadoop.hive.metastore.api.Partition> fetchAllPartitions(
-      HiveMetaStoreClient client, String dbName, String tblName, int numRetries)
+      IMetaStoreClient client, String dbName, String tblName, int numRetries)
       throws MetaException, TException {
     Preconditions.checkArgument(numRetries >= 0);
     int retryAttempt = 0;
@@ -81,7 +99,7 @@ public class MetaStoreUtil {
       try {
         // First, get all partition names that currently exist.
         List<String> partNames = client.listPartitionNames(dbName, tblName, (short) -1);
-        return MetaStoreUtil.fetchPartitionsByName(client, partNames, dbName, tblName);
+        return fetchPartitionsByName(client, partNames, dbName, tblName, 0);
       } catch (MetaException e) {
         // Only retry for MetaExceptions, since TExceptions could indicate a broken
         // connection which we can't recover from by retrying.
@@ -89,7 +107,6 @@ public class MetaStoreUtil {
           LOG.error(String.format("Error fetching partitions for table: %s.%s. " +
               "Retry attempt: %d/%d", dbName, tblName, retryAttempt, numRetries), e);
           ++retryAttempt;
-          // TODO: Sleep for a bit?
         } else {
           throw e;
         }
@@ -104,22 +121,141 @@ public class MetaStoreUtil {
    * Will throw a MetaException if any partitions in 'partNames' do not exist.
    */
   public static List<Partition> fetchPartitionsByName(
-      HiveMetaStoreClient client, List<String> partNames, String dbName, String tblName)
+      IMetaStoreClient client, List<String> partNames, String dbName, String tblName)
+      throws MetaException, TException {
+    return fetchPartitionsByName(client, partNames, dbName, tblName, 0);
+  }
+
+  /**
+   * Same as fetchPartitionsByName() above, except that each batch is retried up to
+   * 'numRetries' times if it fails with a MetaException (see fetchPartitionBatch()).
+   * Partitions in 'partNames' that were dropped are not returned.
+   */
+  public static List<Partition> fetchPartitionsByName(IMetaStoreClient client,
+      List<String> partNames, String dbName, String tblName, int numRetries)
       throws MetaException, TException {
     LOG.trace(String.format("Fetching %d partitions for: %s.%s using partition " +
         "batch size: %d", partNames.size(), dbName, tblName, maxPartitionsPerRpc_));
 
     List<org.apache.hadoop.hive.metastore.api.Partition> fetchedPartitions =
         Lists.newArrayList();
-    // Fetch the partitions in batches.
-    for (int i = 0; i < partNames.size(); i += maxPartitionsPerRpc_) {
-      // Get a subset of partition names to fetch.
-      List<String> partsToFetch =
-          partNames.subList(i, Math.min(i + maxPartitionsPerRpc_, partNames.size()));
-      // Fetch these partitions from the metastore.
+    for (List<String> partsToFetch: Lists.partition(partNames, maxPartitionsPerRpc_)) {
       fetchedPartitions.addAll(
-          client.getPartitionsByNames(dbName, tblName, partsToFetch));
+          fetchPartitionBatch(client, partsToFetch, dbName, tblName, numRetries));
     }
     return fetchedPartitions;
   }
+
+  /**
+   * Same as fetchPartitionsByName(), except that the batches are fetched concurrently
+   * on 'fetchPool', each over its own client from the metastore client pool of
+   * 'catalog'. Returns the batches in the order of 'partNames', so callers can process
+   * each batch as soon as it has been fetched while later batches are still in flight.
+   * Each batch is retried up to 'numRetries' times if it fails with a MetaException
+   * (see fetchPartitionBatch()). Use getPartitionBatch() to wait for a batch.
+   */
+  public static List<Future<List<Partition>>> fetchPartitionBatches(
+      final Catalog catalog, ExecutorService fetchPool, List<String> partNames,
+      final String dbName, final String tblName, final int numRetries) {
+    Preconditions.checkArgument(numRetries >= 0);
+    LOG.trace(String.format("Fetching %d partitions for: %s.%s concurrently using " +
+        "partition batch size: %d", partNames.size(), dbName, tblName,
+        maxPartitionsPerRpc_));
+    return fetchPartitionBatches(fetchPool, partNames, maxPartitionsPerRpc_,
+        new PartitionBatchFetcher() {
+          @Override
+          public List<Partition> fetch(List<String> partsToFetch) throws TException {
+            MetaStoreClient msClient = catalog.getMetaStoreClient();
+            try {
+              return fetchPartitionBatch(msClient.getHiveClient(), partsToFetch, dbName,
+                  tblName, numRetries);
+            } finally {
+              msClient.release();
+            }
+          }
+        });
+  }
+
+  /**
+   * Splits 'partNames' into batches of at most 'batchSize' partitions, submits the
+   * fetch of each batch with 'fetcher' to 'fetchPool' and returns the batches in the
+   * order of 'partNames'.
+   */
+  static List<Future<List<Partition>>> fetchPartitionBatches(ExecutorService fetchPool,
+      List<String> partNames, int batchSize, final PartitionBatchFetcher fetcher) {
+    List<Future<List<Partition>>> batches = Lists.newArrayList();
+    for (final List<String> partsToFetch: Lists.partition(partNames, batchSize)) {
+      batches.add(fetchPool.submit(new Callable<List<Partition>>() {
+        @Override
+        public List<Partition> call() throws TException {
+          return fetcher.fetch(partsToFetch);
+        }
+      }));
+    }
+    return batches;
+  }
+
+  /**
+   * Waits for a batch of partitions returned by fetchPartitionBatches() and returns
+   * its partitions. Rethrows the exception the fetch of the batch failed with.
+   */
+  public static List<Partition> getPartitionBatch(Future<List<Partition>> batch)
+      throws TException {
+    try {
+      return batch.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TException("Interrupted while fetching partitions", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof TException) throw (TException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new TException("Failed to fetch partitions", cause);
+    }
+  }
+
+  /**
+   * Fetches the partitions with the given names in a single RPC. The fetch will throw a
+   * MetaException if partitions are dropped while it is in progress, so it is retried
+   * up to 'numRetries' times if there is a MetaException. Like fetchAllPartitions(),
+   * each retry lists the partition names of the table again, and only fetches the
+   * partitions of this batch that still exist. The other batches of a table are not
+   * affected.
+   * Failures due to thrift exceptions (TExceptions) are not retried because they
+   * generally mean the connection is broken or has timed out. The HiveClient supports
+   * configuring retires at the connection level so it can be enabled independently.
+   */
+  static List<Partition> fetchPartitionBatch(IMetaStoreClient client,
+      List<String> partNames, String dbName, String tblName, int numRetries)
+      throws MetaException, TException {
+    int retryAttempt = 0;
+    while (true) {
+      try {
+        if (retryAttempt > 0) {
+          // Skip the partitions that were dropped since the names were listed.
+          Set<String> existingPartNames = Sets.newHashSet(
+              client.listPartitionNames(dbName, tblName, (short) -1));
+          List<String> remainingPartNames = Lists.newArrayList();
+          for (String partName: partNames) {
+            if (existingPartNames.contains(partName)) remainingPartNames.add(partName);
+          }
+          partNames = remainingPartNames;
+          if (partNames.isEmpty()) return Lists.newArrayList();
+        }
+        return client.getPartitionsByNames(dbName, tblName, partNames);
+      } catch (MetaException e) {
+        // Only retry for MetaExceptions, since TExceptions could indicate a broken
+        // connection which we can't recover from by retrying.
+        if (retryAttempt < numRetries) {
+          LOG.error(String.format("Error fetching a batch of %d partitions for table: " +
+              "%s.%s. Retry attempt: %d/%d", partNames.size(), dbName, tblName,
+              retryAttempt, numRetries), e);
+          ++retryAttempt;
+        } else {
+          throw e;
+        }
+      }
+    }
+  }
 }
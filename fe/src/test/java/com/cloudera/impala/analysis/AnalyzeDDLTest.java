@@ -14,6 +14,8 @@
 
 package com.cloudera.impala.analysis;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -474,6 +476,47 @@ public class AnalyzeDDLTest extends AnalyzerTest {
     ComputeStatsStmt stmt = (ComputeStatsStmt) parseNode;
     AnalyzesOk(stmt.getTblStatsQuery());
     AnalyzesOk(stmt.getColStatsQuery());
+    // Min/max values and histograms are computed for numeric columns.
+    assertTrue(stmt.getColStatsQuery().contains(
+        "CAST(MIN(int_col) AS DOUBLE), CAST(MAX(int_col) AS DOUBLE), " +
+        "EQUIDEPTH_HISTOGRAM(CAST(int_col AS DOUBLE))"));
+    assertFalse(stmt.getColStatsQuery().contains("MIN(string_col)"));
+
+    // Incremental stats of a partitioned table are computed per partition.
+    parseNode = AnalyzesOk("compute incremental stats functional.alltypes");
+    assertTrue(parseNode instanceof ComputeStatsStmt);
+    stmt = (ComputeStatsStmt) parseNode;
+    assertTrue(stmt.isIncremental());
+    // Histograms cannot be merged, so incremental stats do not compute them.
+    assertFalse(stmt.getColStatsQuery().contains("EQUIDEPTH_HISTOGRAM"));
+    AnalyzesOk(stmt.getTblStatsQuery());
+    AnalyzesOk(stmt.getColStatsQuery());
+    // On unpartitioned tables, COMPUTE INCREMENTAL STATS is the same as COMPUTE STATS.
+    stmt = (ComputeStatsStmt) AnalyzesOk(
+        "compute incremental stats functional.alltypesnopart");
+    assertFalse(stmt.isIncremental());
+    AnalysisError("compute incremental stats functional_hbase.alltypes",
+        "COMPUTE INCREMENTAL STATS is only supported on HDFS tables: " +
+        "functional_hbase.alltypes");
+
+    // Stats computed from a sample scan the sample in both child queries.
+    stmt = (ComputeStatsStmt) AnalyzesOk(
+        "compute stats functional.alltypes tablesample system(10)");
+    assertEquals("COMPUTE STATS functional.alltypes TABLESAMPLE SYSTEM(10)",
+        stmt.toSql());
+    assertTrue(stmt.getTblStatsQuery().contains("TABLESAMPLE SYSTEM(10)"));
+    assertTrue(stmt.getColStatsQuery().contains("TABLESAMPLE SYSTEM(10)"));
+    AnalyzesOk(stmt.getTblStatsQuery());
+    AnalyzesOk(stmt.getColStatsQuery());
+    AnalyzesOk("compute stats functional.alltypesnopart tablesample system(100)");
+    AnalysisError("compute stats functional.alltypes tablesample system(0)",
+        "Invalid percent of bytes value '0'. The percent of bytes to sample must be " +
+        "between 1 and 100.");
+    AnalysisError("compute stats functional.alltypes tablesample system(101)",
+        "Invalid percent of bytes value '101'. The percent of bytes to sample must be " +
+        "between 1 and 100.");
+    AnalysisError("compute stats functional_hbase.alltypes tablesample system(10)",
+        "TABLESAMPLE is only supported on HDFS tables: functional_hbase.alltypes");
 
     parseNode = AnalyzesOk("compute stats functional_hbase.alltypes");
     assertTrue(parseNode instanceof ComputeStatsStmt);
@@ -28,6 +28,26 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
 public class AnalyzeStmtsTest extends AnalyzerTest {
+  @Test
+  public void TestTableSample() throws AnalysisException {
+    AnalyzesOk("select * from functional.alltypes tablesample system(10)");
+    AnalyzesOk("select * from functional.alltypes a tablesample system(100 percent)");
+    AnalyzesOk("select * from functional.alltypesnopart tablesample system(1)");
+    AnalyzesOk("select count(*) from functional.alltypes a tablesample system(50) " +
+        "join functional.alltypessmall b on (a.id = b.id)");
+    AnalysisError("select * from functional.alltypes tablesample system(0)",
+        "Invalid percent of bytes value '0'. The percent of bytes to sample must be " +
+        "between 1 and 100.");
+    AnalysisError("select * from functional.alltypes tablesample system(1000)",
+        "Invalid percent of bytes value '1000'. The percent of bytes to sample must " +
+        "be between 1 and 100.");
+    // Only HDFS tables can be sampled.
+    AnalysisError("select * from functional_hbase.alltypes tablesample system(10)",
+        "TABLESAMPLE is only supported on HDFS tables: functional_hbase.alltypes");
+    AnalysisError("select * from functional.alltypes_view tablesample system(10)",
+        "TABLESAMPLE is only supported on HDFS tables: functional.alltypes_view");
+  }
+
   @Test
   public void TestFromClause() throws AnalysisException {
     AnalyzesOk("select int_col from functional.alltypes");
@@ -954,6 +974,19 @@ public class AnalyzeStmtsTest extends AnalyzerTest {
         "unknown table alias: 'a'");
   }
 
+  @Test
+  public void TestPrepareStmt() throws AnalysisException {
+    AnalyzesOk("prepare s as select * from functional.alltypes where id = ?");
+    AnalyzesOk("prepare s as select ? + 1, ? from functional.alltypes " +
+        "order by 1 limit ? offset ?");
+    AnalyzesOk("prepare s as values(?, 1)");
+    // Errors in the prepared query are reported by PREPARE.
+    AnalysisError("prepare s as select a from functional.alltypes where id = ?",
+        "couldn't resolve column reference: 'a'");
+    AnalysisError("prepare s as select * from functional.notbl where id = ?",
+        "Table does not exist: functional.notbl");
+  }
+
   @Test
   public void TestValuesStmt() throws AnalysisException {
     // Values stmt with a single row.
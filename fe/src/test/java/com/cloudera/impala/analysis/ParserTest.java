@@ -1178,6 +1178,54 @@ public class ParserTest {
     ParsesOk("USE db1");
   }
 
+  @Test
+  public void TestPrepareExecute() {
+    ParsesOk("PREPARE s AS SELECT a FROM t WHERE b = ?");
+    ParsesOk("PREPARE s AS SELECT ? UNION ALL SELECT ?");
+    ParsesOk("PREPARE s AS VALUES(?, 1)");
+    ParsesOk("PREPARE s AS WITH v AS (SELECT ?) SELECT * FROM v");
+    ParsesOk("EXECUTE s");
+    ParsesOk("EXECUTE s USING 1, 'a', 1 + 2");
+    ParsesOk("DEALLOCATE s");
+    ParsesOk("DEALLOCATE PREPARE s");
+    // Only queries can be prepared.
+    ParserError("PREPARE s AS INSERT INTO t SELECT ?");
+    ParserError("PREPARE s AS USE db");
+    ParserError("PREPARE AS SELECT 1");
+    ParserError("EXECUTE s USING");
+    ParserError("DEALLOCATE");
+    ParserError("DEALLOCATE EXECUTE s");
+    ParserError("PREPARE s");
+    ParserError("EXECUTE s AS SELECT 1");
+    ParserError("FOO s AS SELECT 1");
+    ParserError("FOO s USING 1");
+    ParserError("FOO s");
+
+    // PREPARE, EXECUTE and DEALLOCATE are not reserved.
+    ParsesOk("select prepare, execute, deallocate from prepare.execute");
+    ParsesOk("select * from deallocate deallocate where execute = ?");
+    ParsesOk("create table prepare (execute int, deallocate string)");
+    ParsesOk("PREPARE prepare AS SELECT execute FROM deallocate");
+    ParsesOk("EXECUTE execute USING 1");
+    ParsesOk("DEALLOCATE PREPARE prepare");
+
+    // Binding replaces the placeholders in the order of their appearance and
+    // leaves the prepared query untouched.
+    PrepareStmt stmt = (PrepareStmt) ParsesOk("PREPARE S AS SELECT a FROM t " +
+        "WHERE b = ? AND c LIKE ? ORDER BY a + ? LIMIT ?");
+    assertEquals("s", stmt.getName());
+    assertEquals(4, stmt.getNumParams());
+    String preparedSql = stmt.toSql();
+    QueryStmt bound = stmt.bind(Lists.newArrayList(
+        new PlaceholderBinding(new IntLiteral(BigInteger.valueOf(1))),
+        new PlaceholderBinding(new StringLiteral("x")),
+        new PlaceholderBinding(new IntLiteral(BigInteger.valueOf(2))),
+        new PlaceholderBinding(new IntLiteral(BigInteger.valueOf(3)))));
+    assertEquals("SELECT a FROM t WHERE b = 1 AND c LIKE 'x' ORDER BY a + 2 ASC " +
+        "LIMIT 3", bound.toSql());
+    assertEquals(preparedSql, stmt.toSql());
+  }
+
   @Test
   public void TestShow() {
     // Short form ok
@@ -1913,12 +1961,47 @@ public class ParserTest {
     ParserError("refresh");
   }
 
+  @Test
+  public void TestTableSample() {
+    ParsesOk("select * from t tablesample system(10)");
+    ParsesOk("select * from t tablesample system(10 percent)");
+    ParsesOk("select * from t a tablesample system(50)");
+    ParsesOk("select * from db.t as a tablesample system(50) " +
+        "join t2 tablesample system(1) on (a.id = t2.id)");
+    ParsesOk("SELECT * FROM t TABLESAMPLE SYSTEM(10 PERCENT)");
+    // Missing or invalid percent.
+    ParserError("select * from t tablesample system()");
+    ParserError("select * from t tablesample system(1.5)");
+    ParserError("select * from t tablesample system(-1)");
+    ParserError("select * from t tablesample system('10')");
+    // Only SYSTEM sampling is supported.
+    ParserError("select * from t tablesample (10)");
+    ParserError("select * from t tablesample bernoulli(10)");
+    ParserError("select * from t tablesample bernoulli(10 percent)");
+    ParserError("select * from t tablesample system(10 rows)");
+    // The clause follows the alias.
+    ParserError("select * from t tablesample system(10) a");
+    // Inline views cannot be sampled.
+    ParserError("select * from (select * from t) v tablesample system(10)");
+
+    // SYSTEM and PERCENT are not reserved words.
+    ParsesOk("select system, percent from system.percent");
+    ParsesOk("select * from system system tablesample system(10 percent)");
+    ParsesOk("select percent from t percent tablesample system(10) " +
+        "where percent > 10");
+    ParsesOk("create table system (percent int)");
+  }
+
   @Test
   public void TestComputeStats() {
     ParsesOk("compute stats bar");
     ParsesOk("compute stats `bar`");
     ParsesOk("compute stats foo.bar");
     ParsesOk("compute stats `foo`.`bar`");
+    ParsesOk("compute incremental stats bar");
+    ParsesOk("compute incremental stats `foo`.`bar`");
+    ParsesOk("compute stats foo.bar tablesample system(10)");
+    ParsesOk("compute stats bar tablesample system(10 percent)");
 
     // Missing table name.
     ParserError("compute stats");
@@ -1928,6 +2011,10 @@ public class ParserTest {
     ParserError("compute stats 'foo'");
     // Cannot analyze multiple tables in one stmt.
     ParserError("compute stats foo bar");
+    // Wrong order of 'incremental' and 'stats' keywords.
+    ParserError("compute stats incremental foo");
+    // Incremental stats cannot be computed from a sample.
+    ParserError("compute incremental stats foo tablesample system(10)");
   }
 
   @Test
@@ -1939,8 +2026,9 @@ public class ParserTest {
         "c, b, c from t\n" +
         "^\n" +
         "Encountered: IDENTIFIER\n" +
-        "Expected: ALTER, COMPUTE, CREATE, DESCRIBE, DROP, EXPLAIN, INSERT, " +
-        "INVALIDATE, LOAD, REFRESH, SELECT, SHOW, USE, VALUES, WITH\n");
+        "Expected: ALTER, COMPUTE, CREATE, DEALLOCATE, DESCRIBE, DROP, EXECUTE, " +
+        "EXPLAIN, INSERT, INVALIDATE, LOAD, PREPARE, REFRESH, SELECT, SHOW, USE, " +
+        "VALUES, WITH\n");
 
     // missing select list
     ParserError("select from t",
@@ -2035,7 +2123,7 @@ public class ParserTest {
         "                             ^\n" +
         "Encountered: IDENTIFIER\n" +
         "Expected: CROSS, FROM, FULL, GROUP, HAVING, INNER, JOIN, LEFT, LIMIT, ON, " +
-        "ORDER, RIGHT, UNION, USING, WHERE, COMMA\n");
+        "ORDER, RIGHT, TABLESAMPLE, UNION, USING, WHERE, COMMA\n");
 
     // Long line: error close to the start
     ParserError("select a a a, b, c,c,c,c,c,c,c,c,c,c,c,c,c,c,c,c,cd,c,d,d,,c, from t",
@@ -2044,7 +2132,7 @@ public class ParserTest {
         "           ^\n" +
         "Encountered: IDENTIFIER\n" +
         "Expected: CROSS, FROM, FULL, GROUP, HAVING, INNER, JOIN, LEFT, LIMIT, ON, " +
-        "ORDER, RIGHT, UNION, USING, WHERE, COMMA\n");
+        "ORDER, RIGHT, TABLESAMPLE, UNION, USING, WHERE, COMMA\n");
 
     // Long line: error close to the end
     ParserError("select a, b, c,c,c,c,c,c,c,c,c,c,c,c,c,c,c,c,cd,c,d,d, ,c, from t",
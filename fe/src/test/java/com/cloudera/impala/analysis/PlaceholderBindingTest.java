@@ -0,0 +1,85 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.cloudera.impala.catalog.ColumnType;
+
+public class PlaceholderBindingTest {
+  @Test
+  public void TestRebind() throws Exception {
+    PlaceholderBinding binding = new PlaceholderBinding(new IntLiteral("2009"));
+    IntLiteral literal = (IntLiteral) binding.createLiteral();
+    assertSame(binding, literal.getBinding());
+    assertEquals(ColumnType.SMALLINT, literal.getType());
+    // Copies and converted copies of bound literals are bound as well.
+    IntLiteral copy = (IntLiteral) literal.clone(null);
+    assertSame(binding, copy.getBinding());
+    IntLiteral intCopy = (IntLiteral) copy.castTo(ColumnType.INT);
+    FloatLiteral floatCopy = (FloatLiteral) literal.castTo(ColumnType.DOUBLE);
+    assertSame(binding, floatCopy.getBinding());
+
+    assertTrue(binding.canRebind(new IntLiteral("2010")));
+    assertTrue(binding.canRebind(new IntLiteral("1")));
+    // Values of wider types and of other classes would change the analysis.
+    assertFalse(binding.canRebind(new IntLiteral("100000")));
+    assertFalse(binding.canRebind(new FloatLiteral("2010.0")));
+    assertFalse(binding.canRebind(new NullLiteral()));
+    assertFalse(binding.canRebind(new StringLiteral("2010")));
+
+    binding.rebind(new IntLiteral("2010"));
+    assertEquals(2010, ((IntLiteral) binding.getValue()).getValue());
+    assertEquals(2010, literal.getValue());
+    assertEquals(ColumnType.SMALLINT, literal.getType());
+    assertEquals(2010, intCopy.getValue());
+    assertEquals(ColumnType.INT, intCopy.getType());
+    assertEquals(2010.0, floatCopy.getValue(), 0.0);
+    assertEquals(ColumnType.DOUBLE, floatCopy.getType());
+  }
+
+  @Test
+  public void TestEquals() throws Exception {
+    PlaceholderBinding binding = new PlaceholderBinding(new StringLiteral("a"));
+    LiteralExpr literal = binding.createLiteral();
+    assertEquals(literal, binding.createLiteral());
+    // Literals bound to different placeholders differ, even if their values are equal.
+    assertFalse(literal.equals(new PlaceholderBinding(new StringLiteral("a"))
+        .createLiteral()));
+    assertFalse(literal.equals(new StringLiteral("a")));
+    assertNull(new StringLiteral("a").getBinding());
+  }
+
+  @Test
+  public void TestFixedValues() throws Exception {
+    PlaceholderBinding binding = new PlaceholderBinding(new IntLiteral("10"));
+    PlaceholderBinding otherBinding = new PlaceholderBinding(new IntLiteral("20"));
+    Expr expr = new ArithmeticExpr(ArithmeticExpr.Operator.ADD,
+        binding.createLiteral(), new IntLiteral("1"));
+    PlaceholderBinding.fixBoundValues(expr);
+    assertTrue(binding.isValueFixed());
+    assertFalse(otherBinding.isValueFixed());
+    // Fixed values can only be re-bound to the same value.
+    assertTrue(binding.canRebind(new IntLiteral("10")));
+    assertFalse(binding.canRebind(new IntLiteral("11")));
+    assertTrue(otherBinding.canRebind(new IntLiteral("21")));
+  }
+}
@@ -0,0 +1,87 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ValueTransferGraphTest {
+  /**
+   * Checks the closure of random graphs against a closure computed from a boolean
+   * matrix.
+   */
+  @Test
+  public void TestRandomGraphs() {
+    Random random = new Random(0);
+    for (int iter = 0; iter < 200; ++iter) {
+      int numSlots = 1 + random.nextInt(40);
+      int numEdges = random.nextInt(2 * numSlots);
+      ValueTransferGraph graph = new ValueTransferGraph(numSlots);
+      boolean[][] expected = new boolean[numSlots][numSlots];
+      for (int i = 0; i < numSlots; ++i) expected[i][i] = true;
+      for (int i = 0; i < numEdges; ++i) {
+        int src = random.nextInt(numSlots);
+        int dest = random.nextInt(numSlots);
+        graph.addEdge(src, dest);
+        expected[src][dest] = true;
+      }
+      graph.computeTransitiveClosure();
+      for (int k = 0; k < numSlots; ++k) {
+        for (int i = 0; i < numSlots; ++i) {
+          for (int j = 0; j < numSlots; ++j) {
+            if (expected[i][k] && expected[k][j]) expected[i][j] = true;
+          }
+        }
+      }
+
+      for (int i = 0; i < numSlots; ++i) {
+        BitSet connected = graph.getConnectedSlots(i);
+        for (int j = 0; j < numSlots; ++j) {
+          assertEquals(expected[i][j], graph.hasValueTransfer(i, j));
+          assertEquals(expected[i][j] || expected[j][i], connected.get(j));
+        }
+      }
+    }
+  }
+
+  /**
+   * Long chains of value transfers, as created by queries with many joins, do not
+   * require quadratic memory or time per closure step.
+   */
+  @Test
+  public void TestLongChain() {
+    int numSlots = 20000;
+    ValueTransferGraph graph = new ValueTransferGraph(numSlots);
+    // Slots 2i and 2i + 1 are joined with an inner join, and slot 2i + 1 is
+    // left-outer joined with slot 2i + 2.
+    for (int i = 0; i + 1 < numSlots; i += 2) {
+      graph.addEdge(i, i + 1);
+      graph.addEdge(i + 1, i);
+      if (i + 2 < numSlots) graph.addEdge(i + 1, i + 2);
+    }
+    graph.computeTransitiveClosure();
+    assertTrue(graph.hasValueTransfer(0, numSlots - 1));
+    assertTrue(graph.hasValueTransfer(numSlots - 1, numSlots - 2));
+    assertFalse(graph.hasValueTransfer(numSlots - 1, 0));
+    assertFalse(graph.hasValueTransfer(2, 1));
+    assertEquals(numSlots, graph.getConnectedSlots(numSlots / 2).cardinality());
+  }
+}
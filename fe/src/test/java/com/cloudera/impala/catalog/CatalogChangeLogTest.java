@@ -0,0 +1,146 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.cloudera.impala.common.Pair;
+import com.cloudera.impala.thrift.TCatalogObject;
+import com.cloudera.impala.thrift.TCatalogObjectType;
+import com.cloudera.impala.thrift.TDatabase;
+import com.cloudera.impala.thrift.TTable;
+import com.google.common.collect.Lists;
+
+public class CatalogChangeLogTest {
+  private static TCatalogObject createDb(String dbName, long version) {
+    TCatalogObject catalogObject =
+        new TCatalogObject(TCatalogObjectType.DATABASE, version);
+    catalogObject.setDb(new TDatabase(dbName));
+    return catalogObject;
+  }
+
+  private static TCatalogObject createTable(String dbName, String tblName,
+      long version) {
+    TCatalogObject catalogObject = new TCatalogObject(TCatalogObjectType.TABLE, version);
+    catalogObject.setTable(new TTable(dbName, tblName));
+    return catalogObject;
+  }
+
+  private static TCatalogObject createView(String dbName, String tblName,
+      long version) {
+    TCatalogObject catalogObject = new TCatalogObject(TCatalogObjectType.VIEW, version);
+    catalogObject.setTable(new TTable(dbName, tblName));
+    return catalogObject;
+  }
+
+  /**
+   * Returns the versions of the given changes, with the version of removed objects
+   * negated.
+   */
+  private static List<Long> getVersions(List<Pair<TCatalogObject, Boolean>> changes) {
+    List<Long> versions = Lists.newArrayList();
+    for (Pair<TCatalogObject, Boolean> change: changes) {
+      long version = change.first.getCatalog_version();
+      versions.add(change.second ? -version : version);
+    }
+    return versions;
+  }
+
+  /**
+   * Only the latest change of each object is returned, in the order of the latest
+   * changes.
+   */
+  @Test
+  public void TestGetChangesSince() {
+    CatalogChangeLog log = new CatalogChangeLog(100);
+    log.addChange(createDb("db", 1), false);
+    log.addChange(createTable("db", "t1", 2), false);
+    log.addChange(createTable("db", "t2", 3), false);
+    log.addChange(createTable("db", "t1", 4), false);
+    log.addChange(createTable("db", "t2", 5), true);
+    // A view is the same object as the table it replaced.
+    log.addChange(createView("db", "t2", 6), false);
+    log.addChange(createDb("db2", 7), false);
+    log.addChange(createDb("db2", 8), true);
+
+    assertTrue(log.containsChangesSince(1));
+    assertEquals(Lists.newArrayList(4L, 6L, -8L), getVersions(log.getChangesSince(1)));
+    assertEquals(Lists.newArrayList(4L, 6L, -8L), getVersions(log.getChangesSince(3)));
+    assertEquals(Lists.newArrayList(6L, -8L), getVersions(log.getChangesSince(4)));
+    assertEquals(Lists.newArrayList(-8L), getVersions(log.getChangesSince(7)));
+    assertTrue(log.getChangesSince(8).isEmpty());
+    assertTrue(log.getChangesSince(100).isEmpty());
+    // The changes before version 1 are not known to be in the log, and updates from
+    // the initial version contain the complete catalog.
+    assertFalse(log.containsChangesSince(Catalog.INITIAL_CATALOG_VERSION));
+  }
+
+  /**
+   * Changes that no longer fit into the log are discarded, after which the log no
+   * longer covers the versions before them.
+   */
+  @Test
+  public void TestMaxSize() {
+    CatalogChangeLog log = new CatalogChangeLog(3);
+    assertTrue(log.containsChangesSince(1));
+    for (long version = 1; version <= 5; ++version) {
+      log.addChange(createTable("db", "t" + version, version), false);
+    }
+    // Versions 1 and 2 were discarded.
+    assertFalse(log.containsChangesSince(1));
+    assertTrue(log.containsChangesSince(2));
+    assertEquals(Lists.newArrayList(3L, 4L, 5L), getVersions(log.getChangesSince(2)));
+    assertEquals(Lists.newArrayList(5L), getVersions(log.getChangesSince(4)));
+
+    // Changes at or before the discarded versions are ignored.
+    log.addChange(createTable("db", "t0", 2), false);
+    assertEquals(Lists.newArrayList(3L, 4L, 5L), getVersions(log.getChangesSince(2)));
+  }
+
+  /**
+   * After the log was truncated, e.g. by a catalog reset, updates from versions before
+   * the truncation need to contain the complete catalog.
+   */
+  @Test
+  public void TestTruncate() {
+    CatalogChangeLog log = new CatalogChangeLog(100);
+    for (long version = 1; version <= 5; ++version) {
+      log.addChange(createTable("db", "t" + version, version), false);
+    }
+    log.truncate(3);
+    assertFalse(log.containsChangesSince(1));
+    assertFalse(log.containsChangesSince(2));
+    assertTrue(log.containsChangesSince(3));
+    assertEquals(Lists.newArrayList(4L, 5L), getVersions(log.getChangesSince(3)));
+
+    // Truncating at an earlier version does not bring back the discarded changes.
+    log.truncate(1);
+    assertFalse(log.containsChangesSince(2));
+
+    // Truncating after the last change empties the log.
+    log.truncate(10);
+    assertFalse(log.containsChangesSince(5));
+    assertTrue(log.containsChangesSince(10));
+    assertTrue(log.getChangesSince(10).isEmpty());
+    log.addChange(createTable("db", "t1", 11), true);
+    assertEquals(Lists.newArrayList(-11L), getVersions(log.getChangesSince(10)));
+  }
+}
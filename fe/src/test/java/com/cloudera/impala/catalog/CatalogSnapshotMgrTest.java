@@ -0,0 +1,231 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.cloudera.impala.authorization.AuthorizationConfig;
+import com.cloudera.impala.testutil.HdfsTableBuilder;
+import com.cloudera.impala.thrift.TCatalogSnapshotTable;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Tests writing and reading catalog snapshots, and restoring tables from them. Restoring
+ * tables in the catalog server, and their revalidation, is tested in CatalogTest.
+ */
+public class CatalogSnapshotMgrTest {
+  // The snapshot directory is removed after every test.
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private ImpaladCatalog catalog_;
+  private Db db_;
+  private CatalogSnapshotMgr snapshotMgr_;
+  private File snapshotFile_;
+
+  @Before
+  public void setUp() throws IOException {
+    catalog_ = new ImpaladCatalog(AuthorizationConfig.createAuthDisabledConfig());
+    db_ = new Db("db", catalog_);
+    catalog_.addDb(db_);
+    db_.addTable(createTableBuilder("tbl1")
+        .addPartition(1, "2009")
+        .addPartition(2, "2010")
+        .addFile(1, "file1", 100)
+        .addFile(2, "file2", 200)
+        .addFile(2, "file3", 300)
+        .build(db_));
+    db_.addTable(createTableBuilder("tbl2").addPartition(1, (String) null).build(db_));
+    // The catalog is only used by writeSnapshot(), which is given the catalog.
+    snapshotMgr_ = new CatalogSnapshotMgr(null, tempFolder.getRoot().getPath(), 600);
+    snapshotFile_ = new File(tempFolder.getRoot(), "catalog-snapshot");
+  }
+
+  private static HdfsTableBuilder createTableBuilder(String tblName) {
+    return new HdfsTableBuilder("db", tblName)
+        .addClusteringColumn("year", ColumnType.INT)
+        .addColumn("id", ColumnType.INT);
+  }
+
+  private static Map<String, TCatalogSnapshotTable> getTablesByName(
+      List<TCatalogSnapshotTable> snapshotTbls) {
+    Map<String, TCatalogSnapshotTable> tablesByName = Maps.newHashMap();
+    for (TCatalogSnapshotTable snapshotTbl: snapshotTbls) {
+      tablesByName.put(snapshotTbl.getTable().getTbl_name(), snapshotTbl);
+    }
+    return tablesByName;
+  }
+
+  /**
+   * Overwrites the bytes of the snapshot file at the given offset with 'bytes'.
+   */
+  private void modifySnapshot(long offset, byte[] bytes) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(snapshotFile_, "rw");
+    try {
+      file.seek(offset);
+      file.write(bytes);
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * The tables of a snapshot are restored with all of their metadata.
+   */
+  @Test
+  public void TestWriteAndReadSnapshot() throws Exception {
+    assertTrue(snapshotMgr_.readSnapshot().isEmpty());
+    snapshotMgr_.writeSnapshot(catalog_);
+    assertTrue(snapshotFile_.exists());
+    assertFalse(new File(tempFolder.getRoot(), "catalog-snapshot.tmp").exists());
+
+    Map<String, TCatalogSnapshotTable> snapshotTbls =
+        getTablesByName(snapshotMgr_.readSnapshot());
+    assertEquals(2, snapshotTbls.size());
+    for (String tblName: Lists.newArrayList("tbl1", "tbl2")) {
+      HdfsTable tbl = (HdfsTable) db_.getTable(tblName);
+      HdfsTable restoredTbl = HdfsTable.fromSnapshot(db_, tbl.getId(),
+          snapshotTbls.get(tblName));
+      assertTrue(restoredTbl.isRestoredFromSnapshot());
+      assertFalse(tbl.isRestoredFromSnapshot());
+      assertEquals(tbl.toThrift(), restoredTbl.toThrift());
+      assertEquals(tbl.getNumHdfsFiles(), restoredTbl.getNumHdfsFiles());
+      assertEquals(tbl.getTotalHdfsBytes(), restoredTbl.getTotalHdfsBytes());
+    }
+
+    // A new snapshot replaces the previous one.
+    db_.removeTable("tbl2");
+    snapshotMgr_.writeSnapshot(catalog_);
+    snapshotTbls = getTablesByName(snapshotMgr_.readSnapshot());
+    assertEquals(1, snapshotTbls.size());
+    assertTrue(snapshotTbls.containsKey("tbl1"));
+  }
+
+  /**
+   * Restored tables that were not loaded yet are kept in the next snapshot, but other
+   * tables that were not loaded are not.
+   */
+  @Test
+  public void TestRestoredTablesAreKept() throws Exception {
+    snapshotMgr_.writeSnapshot(catalog_);
+    HdfsTable tbl = (HdfsTable) db_.getTable("tbl1");
+    HdfsTable restoredTbl = HdfsTable.fromSnapshot(db_, tbl.getId(),
+        getTablesByName(snapshotMgr_.readSnapshot()).get("tbl1"));
+    IncompleteTable incompleteTbl = IncompleteTable.createRestoredTable(restoredTbl);
+    assertFalse(incompleteTbl.isLoaded());
+    assertSame(restoredTbl, incompleteTbl.getRestoredTable());
+    incompleteTbl.setCatalogVersion(1);
+    db_.addTable(incompleteTbl);
+    assertSame(incompleteTbl, db_.getTable("tbl1"));
+    Table uninitializedTbl =
+        IncompleteTable.createUninitializedTable(tbl.getId(), db_, "tbl2");
+    uninitializedTbl.setCatalogVersion(1);
+    db_.addTable(uninitializedTbl);
+
+    snapshotMgr_.writeSnapshot(catalog_);
+    Map<String, TCatalogSnapshotTable> snapshotTbls =
+        getTablesByName(snapshotMgr_.readSnapshot());
+    assertEquals(Sets.newHashSet("tbl1"), snapshotTbls.keySet());
+    assertEquals(tbl.toThrift(),
+        HdfsTable.fromSnapshot(db_, tbl.getId(), snapshotTbls.get("tbl1")).toThrift());
+  }
+
+  /**
+   * Snapshots that are corrupt or have a different format version are ignored.
+   */
+  @Test
+  public void TestInvalidSnapshot() throws Exception {
+    snapshotMgr_.writeSnapshot(catalog_);
+    long length = snapshotFile_.length();
+    byte[] contents = new byte[(int) length];
+    RandomAccessFile file = new RandomAccessFile(snapshotFile_, "r");
+    try {
+      file.readFully(contents);
+    } finally {
+      file.close();
+    }
+
+    // Different format version.
+    modifySnapshot(4, new byte[] { 0, 0, 0, 2 });
+    assertTrue(snapshotMgr_.readSnapshot().isEmpty());
+    modifySnapshot(0, contents);
+    assertEquals(2, snapshotMgr_.readSnapshot().size());
+
+    // Not a snapshot file.
+    modifySnapshot(0, new byte[] { 'X' });
+    assertTrue(snapshotMgr_.readSnapshot().isEmpty());
+    modifySnapshot(0, contents);
+
+    // Modified table metadata that is still valid thrift.
+    int fileNameOffset = new String(contents, "ISO-8859-1").indexOf("file3");
+    assertTrue(fileNameOffset > 0);
+    modifySnapshot(fileNameOffset, "file4".getBytes("ISO-8859-1"));
+    assertTrue(snapshotMgr_.readSnapshot().isEmpty());
+    modifySnapshot(0, contents);
+
+    // Modified checksum.
+    modifySnapshot(length - 1, new byte[] { (byte) (contents[(int) length - 1] + 1) });
+    assertTrue(snapshotMgr_.readSnapshot().isEmpty());
+    modifySnapshot(0, contents);
+
+    // Truncated file.
+    file = new RandomAccessFile(snapshotFile_, "rw");
+    try {
+      file.setLength(length - 4);
+    } finally {
+      file.close();
+    }
+    assertTrue(snapshotMgr_.readSnapshot().isEmpty());
+  }
+
+  /**
+   * The metastore partitions of a snapshot are restored along with the partitions.
+   */
+  @Test
+  public void TestRestoreMetaStorePartitions() throws Exception {
+    HdfsTable tbl = (HdfsTable) db_.getTable("tbl1");
+    TCatalogSnapshotTable snapshotTbl = tbl.toSnapshot();
+    // Tables built from their thrift representation have no metastore partitions.
+    assertFalse(snapshotTbl.isSetMetastore_partitions());
+    Partition msPartition = new Partition();
+    msPartition.setValues(Lists.newArrayList("2009"));
+    snapshotTbl.putToMetastore_partitions(1L, msPartition);
+
+    HdfsTable restoredTbl = HdfsTable.fromSnapshot(db_, tbl.getId(), snapshotTbl);
+    assertEquals(msPartition, restoredTbl.getPartitionById(1).getMetaStorePartition());
+    assertNull(restoredTbl.getPartitionById(2).getMetaStorePartition());
+    assertEquals(2, restoredTbl.getPartitionById(2).getFileDescriptors().size());
+    assertEquals(msPartition,
+        restoredTbl.toSnapshot().getMetastore_partitions().get(1L));
+  }
+}
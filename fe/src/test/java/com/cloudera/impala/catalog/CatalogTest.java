@@ -4,32 +4,49 @@ package com.cloudera.impala.catalog;
 
 import static com.cloudera.impala.thrift.ImpalaInternalServiceConstants.DEFAULT_PARTITION_ID;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.hadoop.hive.metastore.TableType;
 import org.apache.hadoop.hive.metastore.api.ColumnStatisticsData;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.cloudera.impala.analysis.FunctionName;
 import com.cloudera.impala.analysis.HdfsUri;
 import com.cloudera.impala.analysis.IntLiteral;
 import com.cloudera.impala.analysis.LiteralExpr;
 import com.cloudera.impala.catalog.MetaStoreClientPool.MetaStoreClient;
+import com.cloudera.impala.common.ImpalaException;
+import com.cloudera.impala.thrift.TCatalogObject;
+import com.cloudera.impala.thrift.TCatalogObjectType;
 import com.cloudera.impala.thrift.TFunctionType;
+import com.cloudera.impala.thrift.TGetAllCatalogObjectsResponse;
+import com.cloudera.impala.thrift.TTableName;
+import com.cloudera.impala.thrift.TUniqueId;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 public class CatalogTest {
   private static CatalogServiceCatalog catalog_ =
       CatalogServiceCatalog.createForTesting(false);
 
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
   private void checkTableCols(Db db, String tblName, int numClusteringCols,
       String[] colNames, ColumnType[] colTypes) throws TableLoadingException {
     Table tbl = db.getTable(tblName);
@@ -298,6 +315,117 @@ public class CatalogTest {
     assertEquals(months.size(), 24);
   }
 
+  /**
+   * Reloading some partitions of a table only reloads those partitions from the
+   * metastore; all other partitions are shared with the cached table, along with their
+   * file descriptors.
+   */
+  @Test
+  public void TestReloadPartitions() throws CatalogException {
+    HdfsTable cachedTbl =
+        (HdfsTable) catalog_.getOrLoadTable("functional", "alltypessmall");
+    Map<String, HdfsPartition> cachedPartitions = Maps.newHashMap();
+    for (HdfsPartition partition: cachedTbl.getPartitions()) {
+      if (partition.getId() == DEFAULT_PARTITION_ID) continue;
+      cachedPartitions.put(partition.getPartitionName(), partition);
+    }
+    Set<String> reloadedPartitionNames =
+        Sets.newHashSet("year=2009/month=1", "year=2009/month=4");
+    HdfsTable tbl = (HdfsTable) catalog_.reloadPartitions(
+        new TTableName("functional", "alltypessmall"), reloadedPartitionNames);
+    assertNotSame(cachedTbl, tbl);
+    assertSame(tbl, catalog_.getDb("functional").getTable("alltypessmall"));
+    assertEquals(cachedTbl.getPartitions().size(), tbl.getPartitions().size());
+    assertEquals(cachedTbl.getNumHdfsFiles(), tbl.getNumHdfsFiles());
+    assertEquals(cachedTbl.getTotalHdfsBytes(), tbl.getTotalHdfsBytes());
+
+    int numReloadedPartitions = 0;
+    for (HdfsPartition partition: tbl.getPartitions()) {
+      if (partition.getId() == DEFAULT_PARTITION_ID) continue;
+      assertSame(tbl, partition.getTable());
+      HdfsPartition cachedPartition =
+          cachedPartitions.get(partition.getPartitionName());
+      assertNotNull(cachedPartition);
+      if (reloadedPartitionNames.contains(partition.getPartitionName())) {
+        ++numReloadedPartitions;
+        assertNotSame(cachedPartition.getMetaStorePartition(),
+            partition.getMetaStorePartition());
+        // The files did not change, so their file descriptors are reused.
+        assertEquals(cachedPartition.getFileDescriptors().size(),
+            partition.getFileDescriptors().size());
+        for (int i = 0; i < partition.getFileDescriptors().size(); ++i) {
+          assertSame(cachedPartition.getFileDescriptors().get(i),
+              partition.getFileDescriptors().get(i));
+        }
+      } else {
+        assertSame(cachedPartition.getMetaStorePartition(),
+            partition.getMetaStorePartition());
+        assertSame(cachedPartition.getFileDescriptors(),
+            partition.getFileDescriptors());
+      }
+    }
+    assertEquals(reloadedPartitionNames.size(), numReloadedPartitions);
+    // The partition-key index covers the shared partitions as well.
+    assertEquals(4, tbl.getPartitionKeyIndex().getPartitionIdsEq(
+        0, new IntLiteral(BigInteger.valueOf(2009))).size());
+  }
+
+  /**
+   * Tables restored from a snapshot are not loaded until they are revalidated, which
+   * happens in the background even if background loading is disabled. Revalidated
+   * tables keep the file descriptors of unchanged files.
+   */
+  @Test
+  public void TestRestoreFromSnapshot() throws Exception {
+    String snapshotDir = tempFolder.getRoot().getPath();
+    CatalogServiceCatalog snapshotCatalog = new CatalogServiceCatalog(false, 16, 16, 16,
+        snapshotDir, 3600, new TUniqueId());
+    snapshotCatalog.reset();
+    snapshotCatalog.getOrLoadTable("functional", "alltypessmall");
+    new CatalogSnapshotMgr(snapshotCatalog, snapshotDir, 3600).writeSnapshot();
+
+    CatalogServiceCatalog catalog = new CatalogServiceCatalog(false, 16, 16, 16,
+        snapshotDir, 3600, new TUniqueId());
+    catalog.reset();
+    catalog.restoreFromSnapshot();
+    Table tbl = catalog.getDb("functional").getTable("alltypessmall");
+    // Restored tables are not sent to the impalads before they are revalidated.
+    assertTrue(tbl instanceof IncompleteTable);
+    assertFalse(tbl.isLoaded());
+    assertFalse(tbl.toThrift().isSetHdfs_table());
+    HdfsTable restoredTbl = ((IncompleteTable) tbl).getRestoredTable();
+    assertTrue(restoredTbl.isRestoredFromSnapshot());
+    // Tables that were not loaded when the snapshot was written are not restored.
+    Table unloadedTbl = catalog.getDb("functional").getTable("alltypes");
+    assertFalse(unloadedTbl.isLoaded());
+    assertNull(((IncompleteTable) unloadedTbl).getRestoredTable());
+
+    long deadlineMs = System.currentTimeMillis() + 60000;
+    while (!(tbl instanceof HdfsTable)) {
+      assertTrue("Restored table was not revalidated",
+          System.currentTimeMillis() < deadlineMs);
+      Thread.sleep(100);
+      tbl = catalog.getDb("functional").getTable("alltypessmall");
+    }
+    HdfsTable revalidatedTbl = (HdfsTable) tbl;
+    assertFalse(revalidatedTbl.isRestoredFromSnapshot());
+    assertEquals(restoredTbl.getPartitions().size(),
+        revalidatedTbl.getPartitions().size());
+    for (HdfsPartition partition: revalidatedTbl.getPartitions()) {
+      if (partition.getId() == DEFAULT_PARTITION_ID) continue;
+      assertNotNull(partition.getMetaStorePartition());
+      HdfsPartition restoredPartition = restoredTbl.getPartitionById(partition.getId());
+      assertNotNull(restoredPartition);
+      // The files did not change, so their file descriptors are reused.
+      assertEquals(restoredPartition.getFileDescriptors().size(),
+          partition.getFileDescriptors().size());
+      for (int i = 0; i < partition.getFileDescriptors().size(); ++i) {
+        assertSame(restoredPartition.getFileDescriptors().get(i),
+            partition.getFileDescriptors().get(i));
+      }
+    }
+  }
+
   // TODO: All Hive-stats related tests are temporarily disabled because of an unknown,
   // sporadic issue causing stats of some columns to be absent in Jenkins runs.
   // Investigate this issue further.
@@ -623,4 +751,61 @@ public class CatalogTest {
     fnNames = catalog_.getFunctionSignatures(TFunctionType.SCALAR, "default", null);
     assertEquals(fnNames.size(), 0);
   }
+
+  private static List<TCatalogObjectType> getTypes(List<TCatalogObject> catalogObjects) {
+    List<TCatalogObjectType> types = Lists.newArrayList();
+    for (TCatalogObject catalogObject: catalogObjects) {
+      types.add(catalogObject.getType());
+    }
+    return types;
+  }
+
+  /**
+   * Catalog updates only contain the objects that changed since the requested version,
+   * unless the change log does not cover that version, e.g. after a catalog reset.
+   */
+  @Test
+  public void TestIncrementalCatalogObjects() throws ImpalaException {
+    CatalogServiceCatalog catalog = CatalogServiceCatalog.createForTesting(false);
+    long fromVersion = catalog.getCatalogVersion();
+    catalog.addDb("catalog_delta_test_db");
+    catalog.addTable("catalog_delta_test_db", "tbl");
+    TGetAllCatalogObjectsResponse resp = catalog.getCatalogObjects(fromVersion);
+    assertTrue(resp.isIs_delta());
+    assertEquals(Lists.newArrayList(TCatalogObjectType.DATABASE,
+        TCatalogObjectType.TABLE, TCatalogObjectType.CATALOG),
+        getTypes(resp.getObjects()));
+    assertEquals("catalog_delta_test_db",
+        resp.getObjects().get(0).getDb().getDb_name());
+    assertEquals("tbl", resp.getObjects().get(1).getTable().getTbl_name());
+    // The complete table supersedes any partition delta sent for it.
+    assertEquals(Lists.newArrayList(TCatalogObjectType.HDFS_PARTITION_DELTA),
+        getTypes(resp.getDeleted_objects()));
+
+    fromVersion = resp.getMax_catalog_version();
+    catalog.removeTable("catalog_delta_test_db", "tbl");
+    resp = catalog.getCatalogObjects(fromVersion);
+    assertTrue(resp.isIs_delta());
+    assertEquals(Lists.newArrayList(TCatalogObjectType.CATALOG),
+        getTypes(resp.getObjects()));
+    assertEquals(Lists.newArrayList(TCatalogObjectType.TABLE,
+        TCatalogObjectType.HDFS_PARTITION_DELTA), getTypes(resp.getDeleted_objects()));
+
+    // A reset truncates the change log, so updates from versions before the reset
+    // contain the complete catalog.
+    catalog.reset();
+    resp = catalog.getCatalogObjects(fromVersion);
+    assertFalse(resp.isIs_delta());
+    Set<String> dbNames = Sets.newHashSet();
+    for (TCatalogObject catalogObject: resp.getObjects()) {
+      if (catalogObject.getType() == TCatalogObjectType.DATABASE) {
+        dbNames.add(catalogObject.getDb().getDb_name());
+      }
+    }
+    assertTrue(dbNames.contains("functional"));
+    assertFalse(dbNames.contains("catalog_delta_test_db"));
+    // Updates from the initial version always contain the complete catalog.
+    assertFalse(
+        catalog.getCatalogObjects(Catalog.INITIAL_CATALOG_VERSION).isIs_delta());
+  }
 }
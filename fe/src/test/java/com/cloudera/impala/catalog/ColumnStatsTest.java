@@ -0,0 +1,110 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hive.metastore.api.ColumnStatisticsData;
+import org.apache.hadoop.hive.metastore.api.LongColumnStatsData;
+import org.junit.Test;
+
+import com.cloudera.impala.thrift.TColumnStats;
+import com.google.common.collect.Lists;
+
+public class ColumnStatsTest {
+  private static final double EPSILON = 0.0001;
+  private static final double INF = Double.POSITIVE_INFINITY;
+
+  @Test
+  public void TestUniformRangeSelectivity() {
+    ColumnStats stats = new ColumnStats(ColumnType.INT);
+    assertEquals(-1, stats.estimateRangeSelectivity(0, true, 10, true), EPSILON);
+    stats.setMinMax(0, 100);
+    assertEquals(0.1, stats.estimateRangeSelectivity(10, false, 20, false), EPSILON);
+    assertEquals(0.25, stats.estimateRangeSelectivity(75, true, INF, false), EPSILON);
+    assertEquals(1.0, stats.estimateRangeSelectivity(-INF, false, INF, false), EPSILON);
+    // Ranges outside of the min/max values.
+    assertEquals(0, stats.estimateRangeSelectivity(-INF, false, -5, true), EPSILON);
+    assertEquals(0, stats.estimateRangeSelectivity(200, true, 300, true), EPSILON);
+    assertEquals(0, stats.estimateRangeSelectivity(50, true, 40, true), EPSILON);
+    // Inclusive bounds add the fraction of a single value.
+    stats.setNumDistinctValues(101);
+    assertEquals(0.1 + 1.0 / 101,
+        stats.estimateRangeSelectivity(10, true, 20, true), EPSILON);
+    assertEquals(1.0 / 101, stats.estimateRangeSelectivity(50, true, 50, true), EPSILON);
+  }
+
+  @Test
+  public void TestHistogramRangeSelectivity() {
+    ColumnStats stats = new ColumnStats(ColumnType.BIGINT);
+    // Skewed values: half of the values are between 0 and 1, the other half between
+    // 1 and 1000.
+    stats.setHistogramBounds(new double[] {0, 0.5, 1, 500, 1000});
+    assertTrue(stats.hasMinMax());
+    assertEquals(0, stats.getMinValue(), EPSILON);
+    assertEquals(1000, stats.getMaxValue(), EPSILON);
+    assertEquals(0.5, stats.estimateRangeSelectivity(-INF, false, 1, false), EPSILON);
+    assertEquals(0.5, stats.estimateRangeSelectivity(1, false, INF, false), EPSILON);
+    assertEquals(0.125, stats.estimateRangeSelectivity(0, false, 0.25, false), EPSILON);
+    assertEquals(0.125,
+        stats.estimateRangeSelectivity(750, false, 1000, false), EPSILON);
+
+    // A frequent value is the bound of several buckets.
+    stats.setHistogramBounds(new double[] {0, 7, 7, 7, 10});
+    assertEquals(0.5, stats.estimateRangeSelectivity(7, true, 7, true), EPSILON);
+    assertEquals(0.25, stats.estimateRangeSelectivity(-INF, false, 7, false), EPSILON);
+    assertEquals(0.75, stats.estimateRangeSelectivity(-INF, false, 7, true), EPSILON);
+
+    // Invalid histograms are ignored.
+    stats = new ColumnStats(ColumnType.BIGINT);
+    stats.setHistogramBounds(new double[] {5, 1});
+    assertNull(stats.getHistogramBounds());
+    stats.setHistogramBounds(new double[] {5});
+    assertFalse(stats.hasMinMax());
+  }
+
+  @Test
+  public void TestSerialization() {
+    double[] bounds = new double[] {-1.5, 0, 1e-7, 3, 1e20};
+    assertArrayEquals(bounds, ColumnStats.parseHistogram(ColumnStats.histogramToString(
+        Lists.newArrayList(-1.5, 0.0, 1e-7, 3.0, 1e20))), 0);
+    assertNull(ColumnStats.parseHistogram("1,a,3"));
+
+    // Thrift round trip.
+    ColumnStats stats = new ColumnStats(ColumnType.DOUBLE);
+    stats.setNumDistinctValues(10);
+    stats.setHistogramBounds(bounds);
+    TColumnStats thriftStats = stats.toThrift();
+    ColumnStats copy = new ColumnStats(ColumnType.DOUBLE);
+    copy.update(ColumnType.DOUBLE, thriftStats);
+    assertArrayEquals(bounds, copy.getHistogramBounds(), 0);
+    assertEquals(1e20, copy.getMaxValue(), 0);
+
+    // Metastore stats without min/max values have -1 as both.
+    ColumnStatisticsData statsData = new ColumnStatisticsData();
+    statsData.setLongStats(new LongColumnStatsData(-1, -1, 0, 10));
+    stats = new ColumnStats(ColumnType.INT);
+    assertTrue(stats.update(ColumnType.INT, statsData));
+    assertFalse(stats.hasMinMax());
+    statsData.setLongStats(new LongColumnStatsData(-10, 20, 0, 10));
+    assertTrue(stats.update(ColumnType.INT, statsData));
+    assertEquals(-10, stats.getMinValue(), 0);
+    assertEquals(20, stats.getMaxValue(), 0);
+  }
+}
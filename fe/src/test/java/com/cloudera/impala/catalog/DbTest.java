@@ -0,0 +1,121 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.cloudera.impala.analysis.FunctionName;
+import com.cloudera.impala.catalog.Function.CompareMode;
+import com.google.common.collect.Lists;
+
+public class DbTest {
+  private static Function createFn(String name, ColumnType... argTypes) {
+    return new Function(new FunctionName("db", name), argTypes, ColumnType.DOUBLE,
+        false);
+  }
+
+  @Test
+  public void TestFunctionResolution() {
+    Db db = new Db("db", null);
+    Function doubleFn = createFn("fn", ColumnType.DOUBLE);
+    assertTrue(db.addFunction(doubleFn));
+    // Indistinguishable functions cannot be added.
+    assertFalse(db.addFunction(createFn("fn", ColumnType.DOUBLE)));
+
+    Function intDesc = createFn("fn", ColumnType.INT);
+    assertNull(db.getFunction(intDesc, CompareMode.IS_IDENTICAL));
+    assertSame(doubleFn, db.getFunction(intDesc, CompareMode.IS_SUPERTYPE_OF));
+    // Cached resolutions give the same results.
+    assertNull(db.getFunction(intDesc, CompareMode.IS_IDENTICAL));
+    assertSame(doubleFn, db.getFunction(intDesc, CompareMode.IS_SUPERTYPE_OF));
+    assertNull(db.getFunction(createFn("fn", ColumnType.STRING),
+        CompareMode.IS_SUPERTYPE_OF));
+    assertNull(db.getFunction(createFn("other_fn"), CompareMode.IS_SUPERTYPE_OF));
+
+    // Adding and removing functions invalidates the cached resolutions.
+    Function intFn = createFn("fn", ColumnType.INT);
+    assertTrue(db.addFunction(intFn));
+    assertSame(intFn, db.getFunction(intDesc, CompareMode.IS_IDENTICAL));
+    assertSame(intFn, db.getFunction(intDesc, CompareMode.IS_SUPERTYPE_OF));
+    assertEquals(1, db.numFunctions());
+    assertEquals(2, db.getAllFunctionSignatures(null).size());
+    assertSame(intFn, db.getFunction("fn(INT)"));
+
+    assertSame(intFn, db.removeFunction("fn(INT)"));
+    assertNull(db.getFunction(intDesc, CompareMode.IS_IDENTICAL));
+    assertSame(doubleFn, db.getFunction(intDesc, CompareMode.IS_SUPERTYPE_OF));
+    assertNull(db.getFunction("fn(INT)"));
+    assertSame(doubleFn, db.removeFunction(doubleFn));
+    assertNull(db.getFunction(intDesc, CompareMode.IS_SUPERTYPE_OF));
+    assertEquals(0, db.numFunctions());
+  }
+
+  @Test
+  public void TestAddFunctions() {
+    Db db = new Db("db", null);
+    Function doubleFn = createFn("fn", ColumnType.DOUBLE);
+    assertTrue(db.addFunction(doubleFn));
+    assertSame(doubleFn,
+        db.getFunction(createFn("fn", ColumnType.INT), CompareMode.IS_SUPERTYPE_OF));
+
+    // Functions that are indistinguishable from an existing function or from an
+    // earlier function of the same batch are rejected, all others are added.
+    Function intFn = createFn("fn", ColumnType.INT);
+    Function otherFn = createFn("other_fn");
+    Function duplicateFn = createFn("other_fn");
+    Function existingFn = createFn("fn", ColumnType.DOUBLE);
+    assertEquals(Lists.newArrayList(duplicateFn, existingFn),
+        db.addFunctions(Lists.newArrayList(intFn, otherFn, duplicateFn, existingFn)));
+    assertEquals(2, db.numFunctions());
+    assertEquals(3, db.getAllFunctionSignatures(null).size());
+    // The resolutions cached before the batch was added are discarded.
+    assertSame(intFn,
+        db.getFunction(createFn("fn", ColumnType.INT), CompareMode.IS_SUPERTYPE_OF));
+    assertSame(otherFn, db.getFunction("other_fn()"));
+  }
+
+  @Test
+  public void TestPublishBuiltins() {
+    Db db = new Db("db", null);
+    db.setIsSystemDb(true);
+    Function intFn = createFn("fn", ColumnType.INT);
+    Function doubleFn = createFn("fn", ColumnType.DOUBLE);
+    db.addBuiltin(intFn);
+    db.addBuiltin(doubleFn);
+    // Builtins are not visible before they are published.
+    assertEquals(0, db.numFunctions());
+    assertNull(db.getFunction(intFn, CompareMode.IS_IDENTICAL));
+    db.publishBuiltins();
+    assertEquals(1, db.numFunctions());
+    assertSame(intFn, db.getFunction(intFn, CompareMode.IS_IDENTICAL));
+    assertSame(doubleFn, db.getFunction(doubleFn, CompareMode.IS_IDENTICAL));
+
+    // Publishing a builtin that already exists fails.
+    db.addBuiltin(createFn("fn", ColumnType.INT));
+    try {
+      db.publishBuiltins();
+      fail("Expected publishing a duplicate builtin to fail");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().startsWith("Builtins already exist"));
+    }
+  }
+}
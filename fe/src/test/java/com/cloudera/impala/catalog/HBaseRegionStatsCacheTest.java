@@ -0,0 +1,183 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import com.cloudera.impala.catalog.HBaseRegionStatsCache.RegionStats;
+import com.cloudera.impala.catalog.HBaseRegionStatsCache.TableRegionStats;
+import com.cloudera.impala.common.Pair;
+import com.google.common.collect.Lists;
+
+public class HBaseRegionStatsCacheTest {
+  /**
+   * Returns stats of a table with the regions [, b), [b, d), [d, ), where each region
+   * has 1000 bytes on hdfs and a sample of 10 rows of 10 bytes each.
+   */
+  private static TableRegionStats createTableStats(boolean isCompressed) {
+    List<RegionStats> regions = Lists.newArrayList(
+        new RegionStats(HConstants.EMPTY_START_ROW, Bytes.toBytes("b"), "host1", 1,
+            1000, 10, 100),
+        new RegionStats(Bytes.toBytes("b"), Bytes.toBytes("d"), "host2", 1,
+            1000, 10, 100),
+        new RegionStats(Bytes.toBytes("d"), HConstants.EMPTY_END_ROW, "host1", 1,
+            1000, 10, 100));
+    return new TableRegionStats(regions, isCompressed, System.currentTimeMillis());
+  }
+
+  private static void checkRegionsInRange(TableRegionStats stats, String startKey,
+      String endKey, String... expectedStartKeys) {
+    List<RegionStats> regions = stats.getRegionsInRange(
+        Bytes.toBytes(startKey), Bytes.toBytes(endKey));
+    List<String> startKeys = Lists.newArrayList();
+    for (RegionStats region: regions) startKeys.add(Bytes.toString(region.getStartKey()));
+    assertEquals(Lists.newArrayList(expectedStartKeys), startKeys);
+  }
+
+  @Test
+  public void TestRegionsInRange() {
+    TableRegionStats stats = createTableStats(false);
+    // An empty end key denotes the end of the table.
+    checkRegionsInRange(stats, "", "", "", "b", "d");
+    checkRegionsInRange(stats, "c", "", "b", "d");
+    checkRegionsInRange(stats, "", "b", "");
+    checkRegionsInRange(stats, "a", "ba", "", "b");
+    checkRegionsInRange(stats, "b", "d", "b");
+    checkRegionsInRange(stats, "bb", "bc", "b");
+    checkRegionsInRange(stats, "z", "zz", "d");
+    // The region containing the start key is always returned.
+    checkRegionsInRange(stats, "c", "c", "b");
+    try {
+      checkRegionsInRange(stats, "c", "a");
+      fail("Expected an invalid range");
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void TestEstimatedRowStats() {
+    TableRegionStats stats = createTableStats(false);
+    assertEquals(new Pair<Long, Long>(300L, 10L), stats.getEstimatedRowStats(
+        HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW));
+    assertEquals(new Pair<Long, Long>(100L, 10L),
+        stats.getEstimatedRowStats(Bytes.toBytes("b"), Bytes.toBytes("d")));
+    // Compressed tables are assumed to have twice as many rows.
+    assertEquals(new Pair<Long, Long>(200L, 10L), createTableStats(true)
+        .getEstimatedRowStats(Bytes.toBytes("b"), Bytes.toBytes("d")));
+    // Regions without sampled rows are empty.
+    RegionStats emptyRegion = new RegionStats(HConstants.EMPTY_START_ROW,
+        HConstants.EMPTY_END_ROW, "host1", 1, 1000, 0, 0);
+    assertEquals(new Pair<Long, Long>(0L, 0L),
+        stats.estimateRowStats(Lists.newArrayList(emptyRegion)));
+  }
+
+  /**
+   * Loader that counts the loads of each table.
+   */
+  private static class CountingLoader implements HBaseRegionStatsCache.Loader {
+    public int numLoads = 0;
+    public boolean fail = false;
+
+    @Override
+    public TableRegionStats load(String hbaseTableName) throws IOException {
+      if (fail) throw new IOException("Failed to load " + hbaseTableName);
+      ++numLoads;
+      return createTableStats(false);
+    }
+  }
+
+  /**
+   * Executor that only runs tasks when runAll() is called.
+   */
+  private static class ManualExecutor implements Executor {
+    private final List<Runnable> tasks_ = Lists.newArrayList();
+
+    @Override
+    public void execute(Runnable task) { tasks_.add(task); }
+
+    public int getNumTasks() { return tasks_.size(); }
+
+    public void runAll() {
+      for (Runnable task: tasks_) task.run();
+      tasks_.clear();
+    }
+  }
+
+  @Test
+  public void TestCaching() throws IOException {
+    CountingLoader loader = new CountingLoader();
+    ManualExecutor executor = new ManualExecutor();
+    HBaseRegionStatsCache cache = new HBaseRegionStatsCache(loader, 3600 * 1000L,
+        executor);
+
+    // The first request loads the stats on the calling thread, later requests are
+    // answered from the cache.
+    TableRegionStats stats = cache.get("tbl");
+    assertSame(stats, cache.get("tbl"));
+    assertEquals(1, loader.numLoads);
+    assertEquals(0, executor.getNumTasks());
+
+    // Explicit loads always reload the stats.
+    TableRegionStats reloadedStats = cache.load("tbl");
+    assertEquals(2, loader.numLoads);
+    assertSame(reloadedStats, cache.get("tbl"));
+  }
+
+  @Test
+  public void TestBackgroundRefresh() throws IOException {
+    CountingLoader loader = new CountingLoader();
+    ManualExecutor executor = new ManualExecutor();
+    // With a TTL of 0, the stats are stale as soon as they are loaded.
+    HBaseRegionStatsCache cache = new HBaseRegionStatsCache(loader, 0, executor);
+    TableRegionStats stats = cache.get("tbl");
+    assertEquals(1, loader.numLoads);
+
+    // Stale stats are returned right away, and a single refresh is scheduled.
+    assertSame(stats, cache.get("tbl"));
+    assertSame(stats, cache.get("tbl"));
+    assertEquals(1, executor.getNumTasks());
+    executor.runAll();
+    assertEquals(2, loader.numLoads);
+    TableRegionStats refreshedStats = cache.get("tbl");
+    assertNotSame(stats, refreshedStats);
+
+    // Failed refreshes keep the stale stats.
+    loader.fail = true;
+    executor.runAll();
+    assertSame(refreshedStats, cache.get("tbl"));
+    executor.runAll();
+    assertSame(refreshedStats, cache.get("tbl"));
+
+    // Failed initial loads are reported to the caller.
+    try {
+      cache.get("other_tbl");
+      fail("Expected the load to fail");
+    } catch (IOException e) {
+      assertEquals("Failed to load other_tbl", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,318 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.cloudera.impala.analysis.IntLiteral;
+import com.cloudera.impala.authorization.AuthorizationConfig;
+import com.cloudera.impala.testutil.HdfsTableBuilder;
+import com.cloudera.impala.thrift.TCatalogObject;
+import com.cloudera.impala.thrift.TCatalogObjectType;
+import com.cloudera.impala.thrift.THdfsFileDesc;
+import com.cloudera.impala.thrift.THdfsPartition;
+import com.cloudera.impala.thrift.THdfsPartitionDelta;
+import com.cloudera.impala.thrift.THdfsTable;
+import com.cloudera.impala.thrift.TNetworkAddress;
+import com.cloudera.impala.thrift.TTable;
+import com.cloudera.impala.thrift.TUniqueId;
+import com.cloudera.impala.thrift.TUpdateCatalogCacheRequest;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Tests the partition deltas that the catalog server tracks for HdfsTables, and how the
+ * impalads apply them to their cached tables.
+ */
+public class HdfsPartitionDeltaTest {
+  private static final TNetworkAddress LOCALHOST =
+      new TNetworkAddress("localhost", 50010);
+  private static final TNetworkAddress OTHER_HOST =
+      new TNetworkAddress("otherhost", 50010);
+  private static final TUniqueId CATALOG_SERVICE_ID = new TUniqueId(1, 1);
+
+  private static HdfsTableBuilder createTableBuilder() {
+    return new HdfsTableBuilder("db", "tbl")
+        .addClusteringColumn("year", ColumnType.INT)
+        .addClusteringColumn("month", ColumnType.INT)
+        .addColumn("id", ColumnType.INT);
+  }
+
+  private static Set<Long> getPartitionIds(THdfsTable hdfsTable) {
+    return Sets.newHashSet(hdfsTable.getPartitions().keySet());
+  }
+
+  private static Set<Long> getPartitionIds(HdfsTable tbl) {
+    Set<Long> ids = Sets.newHashSet();
+    for (HdfsPartition partition: tbl.getPartitions()) ids.add(partition.getId());
+    return ids;
+  }
+
+  /**
+   * Checks that 'delta' contains exactly the partitions of 'tbl' with the given ids (and
+   * the default partition), and the given dropped partitions.
+   */
+  private static void checkDelta(HdfsPartitionDelta delta, HdfsTable tbl,
+      Set<Long> modifiedIds, Set<String> droppedNames) {
+    THdfsPartitionDelta thriftDelta = delta.toThrift(tbl);
+    Set<Long> expectedIds = Sets.newHashSet(modifiedIds);
+    expectedIds.add(-1L);
+    assertEquals(expectedIds, getPartitionIds(thriftDelta.getTable().getHdfs_table()));
+    assertEquals(droppedNames, Sets.newHashSet(thriftDelta.getDropped_partition_names()));
+    assertEquals(modifiedIds.size(), delta.getNumModifiedPartitions());
+  }
+
+  /**
+   * A delta records the added, modified and dropped partitions, and successive deltas
+   * are merged relative to the same base version.
+   */
+  @Test
+  public void TestAddChanges() {
+    HdfsTable tbl0 = createTableBuilder()
+        .addPartition(1, "2009", "1")
+        .addPartition(2, "2009", "2")
+        .addPartition(3, "2010", "1")
+        .build();
+    // Partition 2 gets a new file, partition 3 is dropped and partition 4 added.
+    HdfsTable tbl1 = createTableBuilder()
+        .addPartition(1, "2009", "1")
+        .addPartition(2, "2009", "2")
+        .addPartition(4, "2010", "2")
+        .addFile(2, "file", 100)
+        .build();
+    HdfsPartitionDelta emptyDelta = new HdfsPartitionDelta(10);
+    HdfsPartitionDelta delta1 = emptyDelta.addChanges(tbl0, tbl1);
+    assertEquals(10, delta1.getBaseCatalogVersion());
+    checkDelta(delta1, tbl1, Sets.newHashSet(2L, 4L),
+        Sets.newHashSet("year=2010/month=1"));
+    // Deltas are immutable.
+    checkDelta(emptyDelta, tbl1, Sets.<Long>newHashSet(), Sets.<String>newHashSet());
+
+    // Partition 3 is added back, the added partition 4 is dropped again. Partition 2 is
+    // reloaded, which creates new file descriptors.
+    HdfsTable tbl2 = createTableBuilder()
+        .addPartition(1, "2009", "1")
+        .addPartition(2, "2009", "2")
+        .addPartition(5, "2010", "1")
+        .addFile(2, "file", 100)
+        .build();
+    HdfsPartitionDelta delta2 = delta1.addChanges(tbl1, tbl2);
+    assertEquals(10, delta2.getBaseCatalogVersion());
+    checkDelta(delta2, tbl2, Sets.newHashSet(2L, 5L),
+        Sets.newHashSet("year=2010/month=2"));
+
+    // Dropping all partitions except the unchanged one.
+    HdfsTable tbl3 = createTableBuilder().addPartition(1, "2009", "1").build();
+    checkDelta(delta2.addChanges(tbl2, tbl3), tbl3, Sets.<Long>newHashSet(),
+        Sets.newHashSet("year=2009/month=2", "year=2010/month=1", "year=2010/month=2"));
+  }
+
+  /**
+   * Partitions that share their file descriptors with the previous version of the table
+   * are unchanged.
+   */
+  @Test
+  public void TestSharedPartitionsAreUnchanged() throws TableLoadingException {
+    HdfsTable tbl0 = createTableBuilder()
+        .addPartition(1, "2009", "1")
+        .addPartition(2, "2009", "2")
+        .addFile(1, "file1", 100)
+        .addFile(2, "file2", 200)
+        .build();
+    // Only partition 2 is replaced; partition 1 is shared with tbl0.
+    TTable thriftTbl = createTableBuilder()
+        .addPartition(3, "2009", "2")
+        .addFile(3, "file3", 300)
+        .toThrift();
+    HdfsTable tbl1 = HdfsTable.createFromPartitionDelta(tbl0,
+        new THdfsPartitionDelta(10, thriftTbl, Lists.<String>newArrayList()));
+    HdfsPartitionDelta delta = new HdfsPartitionDelta(10).addChanges(tbl0, tbl1);
+    checkDelta(delta, tbl1, Sets.newHashSet(3L), Sets.<String>newHashSet());
+    // Reloading a partition with the same files still creates new file descriptors.
+    HdfsTable tbl2 = createTableBuilder()
+        .addPartition(1, "2009", "1")
+        .addPartition(3, "2009", "2")
+        .addFile(1, "file1", 100)
+        .addFile(3, "file3", 300)
+        .build();
+    checkDelta(delta.addChanges(tbl1, tbl2), tbl2, Sets.newHashSet(1L, 3L),
+        Sets.<String>newHashSet());
+  }
+
+  /**
+   * Changes to the partitioning of a table cannot be expressed as a partition delta.
+   */
+  @Test
+  public void TestChangedPartitioning() {
+    HdfsTable tbl = createTableBuilder().addPartition(1, "2009", "1").build();
+    HdfsPartitionDelta delta = new HdfsPartitionDelta(10);
+    HdfsTable otherColsTbl = new HdfsTableBuilder("db", "tbl")
+        .addClusteringColumn("year", ColumnType.INT)
+        .addClusteringColumn("day", ColumnType.INT)
+        .addPartition(1, "2009", "1")
+        .build();
+    assertNull(delta.addChanges(tbl, otherColsTbl));
+    HdfsTable otherTypesTbl = new HdfsTableBuilder("db", "tbl")
+        .addClusteringColumn("year", ColumnType.INT)
+        .addClusteringColumn("month", ColumnType.STRING)
+        .addPartition(1, "2009", "1")
+        .build();
+    assertNull(delta.addChanges(tbl, otherTypesTbl));
+    HdfsTable fewerColsTbl = new HdfsTableBuilder("db", "tbl")
+        .addClusteringColumn("year", ColumnType.INT)
+        .addPartition(1, "2009")
+        .build();
+    assertNull(delta.addChanges(tbl, fewerColsTbl));
+  }
+
+  /**
+   * Applying a delta replaces the modified partitions, adds the new ones, drops the
+   * dropped ones and shares all other partitions with the cached table, which is not
+   * modified.
+   */
+  @Test
+  public void TestCreateFromPartitionDelta() throws TableLoadingException {
+    HdfsTable cachedTbl = createTableBuilder()
+        .addPartition(1, "2009", "1")
+        .addPartition(2, "2009", "2")
+        .addPartition(3, "2010", "1")
+        .addFile(1, "file1", 10)
+        .addFile(2, "file2", 20)
+        .addFile(3, "file3", 30)
+        .build();
+    // The delta has a different host list than the cached table. The block of the file
+    // of partition 4 is on the host that is new to the cached table.
+    TTable thriftTbl = createTableBuilder()
+        .addPartition(4, "2009", "2")
+        .addPartition(5, "2010", "2")
+        .addFile(4, "file4", 25)
+        .addFile(5, "file5", 40)
+        .toThrift();
+    THdfsTable thriftHdfsTbl = thriftTbl.getHdfs_table();
+    thriftHdfsTbl.setNetwork_addresses(Lists.newArrayList(OTHER_HOST, LOCALHOST));
+    setReplicaHostIdx(thriftHdfsTbl.getPartitions().get(5L), 1);
+    HdfsTable tbl = HdfsTable.createFromPartitionDelta(cachedTbl,
+        new THdfsPartitionDelta(10, thriftTbl,
+            Lists.newArrayList("year=2010/month=1")));
+
+    assertEquals(Sets.newHashSet(-1L, 1L, 4L, 5L), getPartitionIds(tbl));
+    assertEquals(3, tbl.getNumHdfsFiles());
+    assertEquals(10 + 25 + 40, tbl.getTotalHdfsBytes());
+    assertSame(cachedTbl.getPartitionById(1).getFileDescriptors().get(0),
+        tbl.getPartitionById(1).getFileDescriptors().get(0));
+    assertSame(tbl, tbl.getPartitionById(1).getTable());
+    assertEquals("file4",
+        tbl.getPartitionById(4).getFileDescriptors().get(0).getFileName());
+    // The partition-key index covers the shared partitions as well.
+    assertEquals(Sets.newHashSet(1L, 4L),
+        tbl.getPartitionKeyIndex().getPartitionIdsEq(0,
+            new IntLiteral(BigInteger.valueOf(2009))));
+
+    // The hosts of the delta are appended to the host list of the cached table, which
+    // the file descriptors of the shared partitions refer to.
+    THdfsTable newThriftHdfsTbl = tbl.toThrift().getHdfs_table();
+    assertEquals(Lists.newArrayList(LOCALHOST, OTHER_HOST),
+        newThriftHdfsTbl.getNetwork_addresses());
+    assertEquals(0, getReplicaHostIdx(newThriftHdfsTbl.getPartitions().get(1L)));
+    assertEquals(1, getReplicaHostIdx(newThriftHdfsTbl.getPartitions().get(4L)));
+    assertEquals(0, getReplicaHostIdx(newThriftHdfsTbl.getPartitions().get(5L)));
+
+    // The cached table is unchanged.
+    assertEquals(Sets.newHashSet(-1L, 1L, 2L, 3L), getPartitionIds(cachedTbl));
+    assertEquals(3, cachedTbl.getNumHdfsFiles());
+    assertEquals(10 + 20 + 30, cachedTbl.getTotalHdfsBytes());
+    assertSame(cachedTbl, cachedTbl.getPartitionById(1).getTable());
+  }
+
+  /**
+   * Impalads skip partition deltas whose base version they have not cached. The result
+   * of an INSERT, which the coordinator applies to its cached table right away, is the
+   * complete table, so that the coordinator sees the inserted data even if its cached
+   * table is older than the base version of the table's partition delta.
+   */
+  @Test
+  public void TestApplyInsertResultToOlderTable() throws Exception {
+    ImpaladCatalog catalog =
+        new ImpaladCatalog(AuthorizationConfig.createAuthDisabledConfig());
+    Db db = new Db("db", catalog);
+    catalog.addDb(db);
+    HdfsTable cachedTbl = createTableBuilder()
+        .addPartition(1, "2009", "1")
+        .addFile(1, "file1", 100)
+        .build(db);
+    cachedTbl.setCatalogVersion(5);
+    db.addTable(cachedTbl);
+
+    // The catalog server last sent the complete table with version 10, which the
+    // impalad has not received yet. The INSERT then added partition 2.
+    HdfsTable baseTbl = createTableBuilder()
+        .addPartition(1, "2009", "1")
+        .addFile(1, "file1", 100)
+        .addFile(1, "file2", 200)
+        .build(db);
+    HdfsTable insertedTbl = createTableBuilder()
+        .addPartition(1, "2009", "1")
+        .addPartition(2, "2009", "2")
+        .addFile(1, "file1", 100)
+        .addFile(1, "file2", 200)
+        .addFile(2, "file3", 300)
+        .build(db);
+    insertedTbl.setCatalogVersion(20);
+    HdfsPartitionDelta delta =
+        new HdfsPartitionDelta(10).addChanges(baseTbl, insertedTbl);
+    TCatalogObject deltaObject =
+        new TCatalogObject(TCatalogObjectType.HDFS_PARTITION_DELTA, 20);
+    deltaObject.setPartition_delta(delta.toThrift(insertedTbl));
+    applyUpdate(catalog, deltaObject);
+    assertSame(cachedTbl, db.getTable("tbl"));
+
+    applyUpdate(catalog, insertedTbl.toTCatalogObject());
+    HdfsTable tbl = (HdfsTable) db.getTable("tbl");
+    assertEquals(20, tbl.getCatalogVersion());
+    assertEquals(Sets.newHashSet(-1L, 1L, 2L), getPartitionIds(tbl));
+    assertEquals(100 + 200 + 300, tbl.getTotalHdfsBytes());
+  }
+
+  /**
+   * Applies 'catalogObject' to 'catalog' the way coordinators apply the results of
+   * catalog operations.
+   */
+  private static void applyUpdate(ImpaladCatalog catalog, TCatalogObject catalogObject)
+      throws CatalogException {
+    catalog.updateCatalog(new TUpdateCatalogCacheRequest(true, CATALOG_SERVICE_ID,
+        Lists.newArrayList(catalogObject), Lists.<TCatalogObject>newArrayList()));
+  }
+
+  private static void setReplicaHostIdx(THdfsPartition partition, int hostIdx) {
+    for (THdfsFileDesc fileDesc: partition.getFile_desc()) {
+      fileDesc.getFile_blocks().get(0).setReplica_host_idxs(Lists.newArrayList(hostIdx));
+    }
+  }
+
+  private static int getReplicaHostIdx(THdfsPartition partition) {
+    List<Integer> hostIdxs =
+        partition.getFile_desc().get(0).getFile_blocks().get(0).getReplica_host_idxs();
+    assertEquals(1, hostIdxs.size());
+    return hostIdxs.get(0);
+  }
+}
@@ -0,0 +1,179 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.cloudera.impala.analysis.BoolLiteral;
+import com.cloudera.impala.analysis.FloatLiteral;
+import com.cloudera.impala.analysis.IntLiteral;
+import com.cloudera.impala.analysis.LiteralExpr;
+import com.cloudera.impala.analysis.NullLiteral;
+import com.cloudera.impala.analysis.StringLiteral;
+import com.cloudera.impala.testutil.HdfsTableBuilder;
+import com.google.common.collect.Sets;
+
+public class HdfsPartitionKeyIndexTest {
+  private static final int YEAR = 0;
+  private static final int NAME = 1;
+  private static final int FLAG = 2;
+  private static final int SCORE = 3;
+
+  /**
+   * Returns a table partitioned by an int, a string, a boolean and a double column.
+   */
+  private static HdfsTable createTable() {
+    return new HdfsTableBuilder("db", "tbl")
+        .addClusteringColumn("year", ColumnType.INT)
+        .addClusteringColumn("name", ColumnType.STRING)
+        .addClusteringColumn("flag", ColumnType.BOOLEAN)
+        .addClusteringColumn("score", ColumnType.DOUBLE)
+        .addColumn("id", ColumnType.INT)
+        .addPartition(1, "2009", "a", "true", "1.5")
+        .addPartition(2, "2010", "b", "false", "2.5")
+        .addPartition(3, "2011", null, "true", null)
+        .addPartition(4, null, "a", null, "1.5")
+        .addPartition(5, "2010", "é", "false", "2.5")
+        .build();
+  }
+
+  private static LiteralExpr intLiteral(long value) {
+    return new IntLiteral(BigInteger.valueOf(value));
+  }
+
+  private static Set<Long> ids(long... ids) {
+    Set<Long> result = Sets.newHashSet();
+    for (long id: ids) result.add(id);
+    return result;
+  }
+
+  @Test
+  public void TestEqualityLookups() {
+    HdfsPartitionKeyIndex index = createTable().getPartitionKeyIndex();
+    assertEquals(ids(2, 5), index.getPartitionIdsEq(YEAR, intLiteral(2010)));
+    assertEquals(ids(1, 4), index.getPartitionIdsEq(NAME, new StringLiteral("a")));
+    assertEquals(ids(5), index.getPartitionIdsEq(NAME, new StringLiteral("é")));
+    assertEquals(ids(1, 3), index.getPartitionIdsEq(FLAG, new BoolLiteral(true)));
+    // Values that no partition has.
+    assertEquals(ids(), index.getPartitionIdsEq(YEAR, intLiteral(2012)));
+    assertEquals(ids(), index.getPartitionIdsEq(NAME, new StringLiteral("c")));
+    // Comparisons with NULL never match, not even the partitions with a NULL key.
+    assertEquals(ids(), index.getPartitionIdsEq(YEAR, new NullLiteral()));
+    assertEquals(ids(), index.getPartitionIdsEq(NAME, new NullLiteral()));
+  }
+
+  @Test
+  public void TestRangeLookups() {
+    HdfsPartitionKeyIndex index = createTable().getPartitionKeyIndex();
+    // The partitions with NULL keys and the default partition are never in a range.
+    assertEquals(ids(1, 2, 3, 5),
+        index.getPartitionIdsInRange(YEAR, null, false, null, false));
+    assertEquals(ids(1),
+        index.getPartitionIdsInRange(YEAR, intLiteral(2009), true, intLiteral(2010),
+            false));
+    assertEquals(ids(1, 2, 5),
+        index.getPartitionIdsInRange(YEAR, null, false, intLiteral(2010), true));
+    assertEquals(ids(3),
+        index.getPartitionIdsInRange(YEAR, intLiteral(2010), false, null, false));
+    assertEquals(ids(2, 3, 5),
+        index.getPartitionIdsInRange(YEAR, intLiteral(2010), true, null, false));
+    // Single-value and empty ranges.
+    assertEquals(ids(2, 5),
+        index.getPartitionIdsInRange(YEAR, intLiteral(2010), true, intLiteral(2010),
+            true));
+    assertEquals(ids(),
+        index.getPartitionIdsInRange(YEAR, intLiteral(2010), true, intLiteral(2010),
+            false));
+    assertEquals(ids(),
+        index.getPartitionIdsInRange(YEAR, intLiteral(2011), true, intLiteral(2009),
+            true));
+    // Ranges with a NULL bound are empty.
+    assertEquals(ids(),
+        index.getPartitionIdsInRange(YEAR, new NullLiteral(), true, null, false));
+    assertEquals(ids(),
+        index.getPartitionIdsInRange(YEAR, null, false, new NullLiteral(), true));
+
+    // Strings are ordered by code point, like the backend orders their UTF-8 bytes.
+    assertEquals(ids(2, 5),
+        index.getPartitionIdsInRange(NAME, new StringLiteral("a"), false, null, false));
+    assertEquals(ids(5),
+        index.getPartitionIdsInRange(NAME, new StringLiteral("z"), false, null, false));
+    // FALSE sorts before TRUE.
+    assertEquals(ids(1, 3),
+        index.getPartitionIdsInRange(FLAG, new BoolLiteral(false), false, null, false));
+    assertEquals(ids(2, 5),
+        index.getPartitionIdsInRange(FLAG, null, false, new BoolLiteral(true), false));
+  }
+
+  @Test
+  public void TestNullKeys() {
+    HdfsPartitionKeyIndex index = createTable().getPartitionKeyIndex();
+    assertEquals(ids(4), index.getNullPartitionIds(YEAR));
+    assertEquals(ids(3), index.getNullPartitionIds(NAME));
+    assertEquals(ids(4), index.getNullPartitionIds(FLAG));
+    assertNull(index.getNullPartitionIds(SCORE));
+  }
+
+  /**
+   * Lookups that the index cannot answer return null, so that the caller falls back to
+   * evaluating the predicate on all partitions.
+   */
+  @Test
+  public void TestUnsupportedLookups() {
+    HdfsPartitionKeyIndex index = createTable().getPartitionKeyIndex();
+    assertTrue(index.isIndexed(YEAR));
+    assertTrue(index.isIndexed(NAME));
+    assertTrue(index.isIndexed(FLAG));
+    // Floating-point columns are not indexed.
+    assertFalse(index.isIndexed(SCORE));
+    assertNull(index.getPartitionIdsEq(SCORE, new FloatLiteral(1.5)));
+    assertNull(index.getPartitionIdsInRange(SCORE, new FloatLiteral(1.5), true, null,
+        false));
+    // Literals of a different type than the column.
+    assertNull(index.getPartitionIdsEq(YEAR, new StringLiteral("2010")));
+    assertNull(index.getPartitionIdsEq(NAME, intLiteral(1)));
+    assertNull(index.getPartitionIdsInRange(YEAR, null, false, new StringLiteral("1"),
+        true));
+  }
+
+  /**
+   * Every table version gets its own index, built from the partitions it was loaded
+   * with.
+   */
+  @Test
+  public void TestIndexPerTableVersion() {
+    HdfsTable tbl = createTable();
+    HdfsTable reloadedTbl = new HdfsTableBuilder("db", "tbl")
+        .addClusteringColumn("year", ColumnType.INT)
+        .addClusteringColumn("name", ColumnType.STRING)
+        .addClusteringColumn("flag", ColumnType.BOOLEAN)
+        .addClusteringColumn("score", ColumnType.DOUBLE)
+        .addPartition(6, "2010", "b", "false", "2.5")
+        .build();
+    assertEquals(ids(6),
+        reloadedTbl.getPartitionKeyIndex().getPartitionIdsEq(YEAR, intLiteral(2010)));
+    assertEquals(ids(), reloadedTbl.getPartitionKeyIndex().getNullPartitionIds(YEAR));
+    assertEquals(ids(2, 5),
+        tbl.getPartitionKeyIndex().getPartitionIdsEq(YEAR, intLiteral(2010)));
+  }
+}
@@ -0,0 +1,105 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.cloudera.impala.catalog.HdfsPartition.FileBlock;
+import com.cloudera.impala.catalog.HdfsPartition.FileDescriptor;
+import com.google.common.collect.Lists;
+
+public class HdfsPartitionTest {
+  private static final long BLOCK_SIZE = 100;
+
+  /**
+   * Returns a file of the given number of blocks of size BLOCK_SIZE.
+   */
+  private static FileDescriptor createFile(String name, int numBlocks) {
+    FileDescriptor fd = new FileDescriptor(name, numBlocks * BLOCK_SIZE, 0);
+    List<FileBlock> blocks = Lists.newArrayList();
+    for (int i = 0; i < numBlocks; ++i) {
+      blocks.add(new FileBlock(i * BLOCK_SIZE, BLOCK_SIZE, Lists.newArrayList(0)));
+    }
+    fd.setFileBlocks(blocks);
+    return fd;
+  }
+
+  /**
+   * Returns the names and block indexes of the sampled blocks as strings.
+   */
+  private static List<String> getSampledBlocks(Map<FileDescriptor, BitSet> sample) {
+    List<String> result = Lists.newArrayList();
+    for (Map.Entry<FileDescriptor, BitSet> entry: sample.entrySet()) {
+      BitSet blockIdxs = entry.getValue();
+      for (int i = blockIdxs.nextSetBit(0); i >= 0; i = blockIdxs.nextSetBit(i + 1)) {
+        result.add(entry.getKey().getFileName() + ":" + i);
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void TestSampleFileBlocks() {
+    List<FileDescriptor> fds = Lists.newArrayList();
+    for (int i = 0; i < 10; ++i) fds.add(createFile("file" + i, 10));
+
+    // The sample contains at least the requested percent of the bytes.
+    Map<FileDescriptor, BitSet> sample = HdfsPartition.sampleFileBlocks(fds, 15);
+    assertEquals(15 * BLOCK_SIZE, HdfsPartition.getSampledBytes(sample));
+    assertEquals(100 * BLOCK_SIZE,
+        HdfsPartition.getSampledBytes(HdfsPartition.sampleFileBlocks(fds, 100)));
+    assertEquals(BLOCK_SIZE,
+        HdfsPartition.getSampledBytes(HdfsPartition.sampleFileBlocks(fds, 1)));
+
+    // The sample is deterministic and does not depend on the order of the files.
+    List<String> sampledBlocks = getSampledBlocks(sample);
+    List<FileDescriptor> reversedFds = Lists.reverse(fds);
+    List<String> reversedSampledBlocks =
+        getSampledBlocks(HdfsPartition.sampleFileBlocks(reversedFds, 15));
+    assertEquals(sampledBlocks.size(), reversedSampledBlocks.size());
+    assertTrue(sampledBlocks.containsAll(reversedSampledBlocks));
+
+    // A larger sample contains the smaller sample.
+    assertTrue(getSampledBlocks(HdfsPartition.sampleFileBlocks(fds, 30))
+        .containsAll(sampledBlocks));
+
+    // Adding a file only adds its own blocks to the sample.
+    fds.add(createFile("file10", 10));
+    List<String> newSampledBlocks =
+        getSampledBlocks(HdfsPartition.sampleFileBlocks(fds, 15));
+    for (String block: sampledBlocks) {
+      if (!newSampledBlocks.contains(block)) {
+        // A block can only be dropped from the sample if a block of the new file
+        // replaced it.
+        boolean hasNewFileBlock = false;
+        for (String newBlock: newSampledBlocks) {
+          if (newBlock.startsWith("file10:")) hasNewFileBlock = true;
+        }
+        assertTrue(hasNewFileBlock);
+      }
+    }
+
+    // Empty partitions have empty samples.
+    assertTrue(HdfsPartition.sampleFileBlocks(
+        Lists.<FileDescriptor>newArrayList(), 50).isEmpty());
+  }
+}
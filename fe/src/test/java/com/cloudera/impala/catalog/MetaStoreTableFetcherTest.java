@@ -0,0 +1,136 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.apache.hadoop.hive.metastore.api.Table;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import com.cloudera.impala.testutil.StubMetaStoreClient;
+import com.cloudera.impala.testutil.StubMetaStoreClient.MethodHandler;
+import com.google.common.collect.Lists;
+
+public class MetaStoreTableFetcherTest {
+  private static final Logger LOG = Logger.getLogger(MetaStoreTableFetcherTest.class);
+
+  // Time each getTable() call of the stub metastore client takes.
+  private static final long GET_TABLE_LATENCY_MS = 20;
+
+  /**
+   * Handles getTable() calls of the stub metastore by sleeping for
+   * GET_TABLE_LATENCY_MS. Tracks the maximum number of calls in flight.
+   */
+  private static class GetTableHandler implements MethodHandler {
+    private final AtomicInteger numInFlight_ = new AtomicInteger();
+    private final AtomicInteger maxInFlight_ = new AtomicInteger();
+
+    @Override
+    public Object invoke(Object[] args) throws Exception {
+      if (args.length != 2) throw new UnsupportedOperationException("getTable");
+      int inFlight = numInFlight_.incrementAndGet();
+      try {
+        while (true) {
+          int max = maxInFlight_.get();
+          if (inFlight <= max || maxInFlight_.compareAndSet(max, inFlight)) break;
+        }
+        Thread.sleep(GET_TABLE_LATENCY_MS);
+        Table tbl = new Table();
+        tbl.setDbName((String) args[0]);
+        tbl.setTableName((String) args[1]);
+        return tbl;
+      } finally {
+        numInFlight_.decrementAndGet();
+      }
+    }
+
+    public int getMaxInFlight() { return maxInFlight_.get(); }
+  }
+
+  /**
+   * Fetches 'numTables' tables with 'numThreads' threads, each using its own client.
+   * Returns the throughput in tables per second.
+   */
+  private static double fetchTables(final MetaStoreTableFetcher fetcher,
+      GetTableHandler handler, int numThreads, int numTables) throws Exception {
+    final StubMetaStoreClient metaStore =
+        new StubMetaStoreClient().addHandler("getTable", handler);
+    ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+    try {
+      final AtomicInteger nextTable = new AtomicInteger();
+      final int totalTables = numTables;
+      List<Future<Void>> results = Lists.newArrayList();
+      long startTimeNs = System.nanoTime();
+      for (int i = 0; i < numThreads; ++i) {
+        results.add(pool.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            IMetaStoreClient client = metaStore.createClient();
+            for (int tbl = nextTable.getAndIncrement(); tbl < totalTables;
+                 tbl = nextTable.getAndIncrement()) {
+              Table msTbl = fetcher.getTable(client, "db", "tbl" + tbl);
+              assertEquals("tbl" + tbl, msTbl.getTableName());
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> result: results) result.get();
+      double elapsedSecs = (System.nanoTime() - startTimeNs) / 1e9;
+      return numTables / elapsedSecs;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * The loading threads issue concurrent getTable() calls up to the configured
+   * bound. The throughput is only logged, since it depends on the load of the machine.
+   */
+  @Test
+  public void TestConcurrentFetches() throws Exception {
+    int maxConcurrentFetches = 8;
+    MetaStoreTableFetcher fetcher = new MetaStoreTableFetcher(maxConcurrentFetches);
+    for (int numThreads = 1; numThreads <= 2 * maxConcurrentFetches; numThreads *= 2) {
+      GetTableHandler handler = new GetTableHandler();
+      double throughput = fetchTables(fetcher, handler, numThreads, 10 * numThreads);
+      LOG.info(String.format("%d threads: %.1f tables/s (max %d in flight)",
+          numThreads, throughput, handler.getMaxInFlight()));
+      assertTrue(handler.getMaxInFlight() <= maxConcurrentFetches);
+      if (numThreads == 1) assertEquals(1, handler.getMaxInFlight());
+    }
+  }
+
+  /**
+   * A bound of 1 serializes the getTable() calls.
+   */
+  @Test
+  public void TestSerializedFetches() throws Exception {
+    MetaStoreTableFetcher fetcher = new MetaStoreTableFetcher(1);
+    GetTableHandler handler = new GetTableHandler();
+    fetchTables(fetcher, handler, 4, 20);
+    assertEquals(1, handler.getMaxInFlight());
+  }
+}
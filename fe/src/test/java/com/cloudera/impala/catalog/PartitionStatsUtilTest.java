@@ -0,0 +1,237 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.cloudera.impala.analysis.IntLiteral;
+import com.cloudera.impala.analysis.LiteralExpr;
+import com.cloudera.impala.analysis.NullLiteral;
+import com.cloudera.impala.analysis.PartitionKeyValue;
+import com.cloudera.impala.analysis.StringLiteral;
+import com.cloudera.impala.thrift.TColumnStats;
+import com.cloudera.impala.thrift.TIntermediateColumnStats;
+import com.cloudera.impala.thrift.TPartitionStats;
+import com.cloudera.impala.thrift.TTableStats;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class PartitionStatsUtilTest {
+  /**
+   * Returns HyperLogLog registers with random values, as they would be computed for a
+   * column with many distinct values.
+   */
+  private static byte[] randomRegisters(Random random) {
+    byte[] registers = new byte[PartitionStatsUtil.HLL_NUM_REGISTERS];
+    for (int i = 0; i < registers.length; ++i) {
+      registers[i] = (byte) (1 + random.nextInt(12));
+    }
+    return registers;
+  }
+
+  private static TIntermediateColumnStats createColStats(byte[] registers,
+      long numNulls, int maxSize, double avgSize) {
+    TIntermediateColumnStats colStats = new TIntermediateColumnStats();
+    colStats.setIntermediate_ndv(registers);
+    colStats.setNum_nulls(numNulls);
+    colStats.setMax_size(maxSize);
+    colStats.setAvg_size(avgSize);
+    return colStats;
+  }
+
+  private static TPartitionStats createPartStats(long numRows,
+      TIntermediateColumnStats colStats) {
+    TPartitionStats partStats = new TPartitionStats();
+    partStats.setStats(new TTableStats(numRows));
+    partStats.putToIntermediate_col_stats("s", colStats);
+    return partStats;
+  }
+
+  @Test
+  public void TestParametersRoundTrip() throws Exception {
+    Random random = new Random(0);
+    TPartitionStats partStats = new TPartitionStats();
+    partStats.setStats(new TTableStats(1000));
+    // Use enough columns for the encoded stats to span several parameters.
+    for (int i = 0; i < 20; ++i) {
+      partStats.putToIntermediate_col_stats("col" + i,
+          createColStats(randomRegisters(random), i, -1, -1));
+    }
+
+    Map<String, String> params = Maps.newHashMap();
+    params.put("numRows", "1000");
+    assertNull(PartitionStatsUtil.partStatsFromParameters(params));
+    PartitionStatsUtil.partStatsToParameters(partStats, "fp1", params);
+    assertTrue(Integer.parseInt(
+        params.get(PartitionStatsUtil.INCREMENTAL_STATS_NUM_CHUNKS)) > 1);
+    for (String value: params.values()) assertTrue(value.length() <= 4000);
+    assertEquals("fp1", PartitionStatsUtil.getFingerprint(params));
+    assertEquals(partStats, PartitionStatsUtil.partStatsFromParameters(params));
+
+    // Replacing the stats removes the chunks of the old stats.
+    TPartitionStats emptyStats = new TPartitionStats();
+    emptyStats.setStats(new TTableStats(0));
+    PartitionStatsUtil.partStatsToParameters(emptyStats, "fp2", params);
+    assertEquals(4, params.size());
+    assertEquals(emptyStats, PartitionStatsUtil.partStatsFromParameters(params));
+
+    // Invalid stats are ignored.
+    params.remove(PartitionStatsUtil.INCREMENTAL_STATS_CHUNK_PREFIX + "0");
+    assertNull(PartitionStatsUtil.partStatsFromParameters(params));
+    PartitionStatsUtil.clearIncrementalStats(params);
+    assertEquals(1, params.size());
+  }
+
+  @Test
+  public void TestFileFingerprint() {
+    List<HdfsPartition.FileDescriptor> fds = Lists.newArrayList(
+        new HdfsPartition.FileDescriptor("a", 10, 100),
+        new HdfsPartition.FileDescriptor("b", 20, 100));
+    String fingerprint = PartitionStatsUtil.computeFileFingerprint(fds);
+    // The order of the files does not matter.
+    assertEquals(fingerprint, PartitionStatsUtil.computeFileFingerprint(
+        Lists.newArrayList(fds.get(1), fds.get(0))));
+    // Modified, added and removed files change the fingerprint.
+    assertFalse(fingerprint.equals(PartitionStatsUtil.computeFileFingerprint(
+        Lists.newArrayList(fds.get(0), new HdfsPartition.FileDescriptor("b", 20, 200)))));
+    fds.add(new HdfsPartition.FileDescriptor("c", 5, 100));
+    assertFalse(fingerprint.equals(PartitionStatsUtil.computeFileFingerprint(fds)));
+    assertFalse(fingerprint.equals(
+        PartitionStatsUtil.computeFileFingerprint(fds.subList(0, 1))));
+  }
+
+  @Test
+  public void TestMergeStats() {
+    Random random = new Random(0);
+    byte[] registers1 = randomRegisters(random);
+    byte[] registers2 = randomRegisters(random);
+    byte[] mergedRegisters = new byte[registers1.length];
+    for (int i = 0; i < registers1.length; ++i) {
+      mergedRegisters[i] = (byte) Math.max(registers1[i], registers2[i]);
+    }
+
+    PartitionStatsUtil.StatsMerger merger = new PartitionStatsUtil.StatsMerger();
+    TIntermediateColumnStats colStats1 = createColStats(registers1, 20, 10, 5.0);
+    colStats1.setMin_value(-5);
+    colStats1.setMax_value(10);
+    merger.add(createPartStats(100, colStats1));
+    TIntermediateColumnStats colStats2 = createColStats(registers2, 10, 30, 20.0);
+    colStats2.setMin_value(0);
+    colStats2.setMax_value(50);
+    merger.add(createPartStats(50, colStats2));
+    // Partitions without min/max values, e.g., with only null values, are ignored.
+    merger.add(createPartStats(0, createColStats(registers2, 0, 30, 20.0)));
+    // Partitions without incremental stats only contribute their known row counts.
+    merger.addRowCount(25);
+    merger.addRowCount(-1);
+    assertEquals(175, merger.getNumRows());
+
+    TColumnStats colStats = merger.getColumnStats().get("s");
+    assertEquals(PartitionStatsUtil.estimateNdv(mergedRegisters),
+        colStats.getNum_distinct_values());
+    assertEquals(30, colStats.getNum_nulls());
+    assertEquals(30, colStats.getMax_size());
+    // The average sizes are weighted by the number of non-null values.
+    assertEquals((80 * 5.0 + 40 * 20.0) / 120, colStats.getAvg_size(), 0.0001);
+    assertEquals(-5, colStats.getMin_value(), 0);
+    assertEquals(50, colStats.getMax_value(), 0);
+  }
+
+  @Test
+  public void TestEstimateNdv() {
+    // Linear counting is used while some registers are zero.
+    byte[] registers = new byte[PartitionStatsUtil.HLL_NUM_REGISTERS];
+    assertEquals(0, PartitionStatsUtil.estimateNdv(registers));
+    for (int i = 0; i < 10; ++i) registers[i] = 1;
+    assertEquals(10, PartitionStatsUtil.estimateNdv(registers));
+    // With all registers set, the estimate is large.
+    assertTrue(PartitionStatsUtil.estimateNdv(randomRegisters(new Random(0))) > 1000);
+  }
+
+  /**
+   * Returns the partition-key values of the given literals as COMPUTE STATS builds them
+   * during analysis.
+   */
+  private static List<String> analysisKey(String nullPartitionKeyValue,
+      LiteralExpr... values) {
+    List<String> result = Lists.newArrayList();
+    for (LiteralExpr value: values) {
+      result.add(PartitionKeyValue.getPartitionKeyValueString(value,
+          nullPartitionKeyValue));
+    }
+    return result;
+  }
+
+  @Test
+  public void TestCanonicalPartitionKey() throws Exception {
+    String nullKey = "__HIVE_DEFAULT_PARTITION__";
+    List<ColumnType> types = Lists.newArrayList(ColumnType.INT, ColumnType.STRING);
+
+    // A partition with int key "01" and a partition with NULL keys. The metastore
+    // partition values, the analysis-time values and the values in the stats query
+    // results all map to the same key.
+    List<String> intKey = Lists.newArrayList("1", "a");
+    assertEquals(intKey, PartitionStatsUtil.canonicalPartitionKey(
+        Lists.newArrayList("01", "a"), types, nullKey));
+    assertEquals(intKey, PartitionStatsUtil.canonicalPartitionKey(
+        analysisKey(nullKey, new IntLiteral(BigInteger.ONE), new StringLiteral("a")),
+        types, nullKey));
+    assertEquals(intKey, PartitionStatsUtil.canonicalPartitionKey(intKey, types,
+        nullKey));
+
+    List<String> nullKeys = Lists.newArrayList(nullKey, nullKey);
+    assertEquals(nullKeys, PartitionStatsUtil.canonicalPartitionKey(
+        Lists.newArrayList(nullKey, nullKey), types, nullKey));
+    assertEquals(nullKeys, PartitionStatsUtil.canonicalPartitionKey(
+        analysisKey(nullKey, new NullLiteral(), new StringLiteral("")), types,
+        nullKey));
+    // The backend returns NULLs as empty strings.
+    assertEquals(nullKeys, PartitionStatsUtil.canonicalPartitionKey(
+        Lists.newArrayList("", ""), types, nullKey));
+
+    // Other types, and values that do not parse as their type.
+    List<ColumnType> otherTypes = Lists.newArrayList(ColumnType.BOOLEAN,
+        ColumnType.BOOLEAN, ColumnType.DOUBLE, ColumnType.FLOAT, ColumnType.BIGINT);
+    assertEquals(Lists.newArrayList("true", "false", "1.5", "0.1", "x"),
+        PartitionStatsUtil.canonicalPartitionKey(
+            Lists.newArrayList("1", "FALSE", "1.50", "0.100000001", "x"), otherTypes,
+            nullKey));
+
+    // Maps keyed by the values in the query results are looked up with the metastore
+    // partition values.
+    Map<List<String>, TTableStats> queryResults = Maps.newHashMap();
+    queryResults.put(Lists.newArrayList("1", "a"), new TTableStats(10));
+    queryResults.put(Lists.newArrayList("", ""), new TTableStats(20));
+    Map<List<String>, TTableStats> canonical = Maps.newHashMap();
+    for (Map.Entry<List<String>, TTableStats> entry: queryResults.entrySet()) {
+      canonical.put(PartitionStatsUtil.canonicalPartitionKey(entry.getKey(), types,
+          nullKey), entry.getValue());
+    }
+    assertEquals(10, canonical.get(PartitionStatsUtil.canonicalPartitionKey(
+        Lists.newArrayList("01", "a"), types, nullKey)).getNum_rows());
+    assertEquals(20, canonical.get(PartitionStatsUtil.canonicalPartitionKey(
+        Lists.newArrayList(nullKey, nullKey), types, nullKey)).getNum_rows());
+  }
+}
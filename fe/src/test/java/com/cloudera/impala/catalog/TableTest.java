@@ -0,0 +1,205 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.hive.metastore.HiveMetaStoreClient;
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.apache.hadoop.hive.metastore.api.ColumnStatistics;
+import org.apache.hadoop.hive.metastore.api.ColumnStatisticsData;
+import org.apache.hadoop.hive.metastore.api.ColumnStatisticsObj;
+import org.apache.hadoop.hive.metastore.api.LongColumnStatsData;
+import org.junit.Test;
+
+import com.cloudera.impala.testutil.StubMetaStoreClient;
+import com.cloudera.impala.testutil.StubMetaStoreClient.MethodHandler;
+import com.cloudera.impala.thrift.TCatalogObjectType;
+import com.cloudera.impala.thrift.TTableDescriptor;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class TableTest {
+  /**
+   * Table whose columns are loaded by the tests.
+   */
+  private static class TestTable extends Table {
+    public TestTable() {
+      super(TableId.createInvalidId(), null, new Db("db", null), "tbl", null);
+    }
+
+    @Override
+    public int getNumNodes() { return 0; }
+    @Override
+    public TTableDescriptor toThriftDescriptor() { return null; }
+    @Override
+    public TCatalogObjectType getCatalogObjectType() { return TCatalogObjectType.TABLE; }
+    @Override
+    public void load(Table oldValue, HiveMetaStoreClient client,
+        org.apache.hadoop.hive.metastore.api.Table msTbl) {
+    }
+  }
+
+  /**
+   * Stub metastore whose getTableColumnStatistics() calls return stats with the
+   * position of the column as the number of distinct values. Records the fetched
+   * columns.
+   */
+  private static class ColumnStatsMetaStore {
+    private final List<String> fetchedCols_ =
+        Collections.synchronizedList(Lists.<String>newArrayList());
+    private final StubMetaStoreClient metaStore_ = new StubMetaStoreClient()
+        .addHandler("getTableColumnStatistics", new MethodHandler() {
+          @Override
+          public Object invoke(Object[] args) {
+            String colName = (String) args[2];
+            fetchedCols_.add(colName);
+            long numDVs = Long.parseLong(colName.substring(1));
+            ColumnStatisticsData data = ColumnStatisticsData.longStats(
+                new LongColumnStatsData(0, numDVs, 0, numDVs));
+            ColumnStatistics colStats = new ColumnStatistics();
+            colStats.addToStatsObj(new ColumnStatisticsObj(colName, "bigint", data));
+            return colStats;
+          }
+        });
+
+    public IMetaStoreClient createClient() { return metaStore_.createClient(); }
+  }
+
+  /**
+   * Fetcher of the chunks on the metastore fetch pool that fails for the chunks that
+   * contain one of 'failingCols_'. Records the size of each chunk it was asked for.
+   */
+  private static class StubChunkFetcher implements Table.ColumnStatsChunkFetcher {
+    private final IMetaStoreClient client_;
+    private final Set<String> failingCols_;
+    private final List<Integer> chunkSizes_ =
+        Collections.synchronizedList(Lists.<Integer>newArrayList());
+
+    public StubChunkFetcher(IMetaStoreClient client, String... failingCols) {
+      client_ = client;
+      failingCols_ = Sets.newHashSet(failingCols);
+    }
+
+    @Override
+    public List<ColumnStatistics> fetch(List<? extends Column> chunk) {
+      chunkSizes_.add(chunk.size());
+      List<ColumnStatistics> colStats = Lists.newArrayList();
+      for (Column col: chunk) {
+        if (failingCols_.contains(col.getName())) {
+          throw new IllegalStateException("Failed to connect to the metastore");
+        }
+        try {
+          colStats.add(client_.getTableColumnStatistics("db", "tbl", col.getName()));
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      }
+      return colStats;
+    }
+  }
+
+  private static List<Column> createColumns(int numCols) {
+    List<Column> cols = Lists.newArrayList();
+    for (int i = 0; i < numCols; ++i) {
+      cols.add(new Column("c" + i, ColumnType.BIGINT, i));
+    }
+    return cols;
+  }
+
+  /**
+   * The stats of all columns are applied to the right columns, regardless of which
+   * thread fetched their chunk.
+   */
+  @Test
+  public void TestLoadColumnStatsInChunks() {
+    ColumnStatsMetaStore metaStore = new ColumnStatsMetaStore();
+    StubChunkFetcher fetcher = new StubChunkFetcher(metaStore.createClient());
+    List<Column> cols = createColumns(40);
+    new TestTable().loadColumnStats(cols, metaStore.createClient(), fetcher);
+    for (Column col: cols) {
+      assertEquals(col.getPosition(), col.getStats().getNumDistinctValues());
+    }
+    // Every column was fetched exactly once.
+    assertEquals(cols.size(), metaStore.fetchedCols_.size());
+    assertEquals(cols.size(), Sets.newHashSet(metaStore.fetchedCols_).size());
+    // 40 columns are fetched in three chunks, the ones the calling thread did not
+    // claim are fetched on the pool.
+    assertTrue(fetcher.chunkSizes_.size() <= 2);
+    for (int chunkSize: fetcher.chunkSizes_) {
+      assertTrue(chunkSize == 14 || chunkSize == 12);
+    }
+  }
+
+  /**
+   * Narrow tables and tables without a pooled fetcher are fetched in a single chunk on
+   * the calling thread.
+   */
+  @Test
+  public void TestLoadColumnStatsSingleChunk() {
+    ColumnStatsMetaStore metaStore = new ColumnStatsMetaStore();
+    StubChunkFetcher fetcher = new StubChunkFetcher(metaStore.createClient());
+    List<Column> cols = createColumns(16);
+    new TestTable().loadColumnStats(cols, metaStore.createClient(), fetcher);
+    assertEquals(0, fetcher.chunkSizes_.size());
+    for (Column col: cols) {
+      assertEquals(col.getPosition(), col.getStats().getNumDistinctValues());
+    }
+
+    metaStore = new ColumnStatsMetaStore();
+    cols = createColumns(100);
+    new TestTable().loadColumnStats(cols, metaStore.createClient(), null);
+    assertEquals(cols.size(), metaStore.fetchedCols_.size());
+    for (Column col: cols) {
+      assertEquals(col.getPosition(), col.getStats().getNumDistinctValues());
+    }
+  }
+
+  /**
+   * The columns of a chunk that fails to be fetched on the pool are loaded without
+   * stats, the columns of all other chunks with theirs.
+   */
+  @Test
+  public void TestLoadColumnStatsFailingChunk() {
+    ColumnStatsMetaStore metaStore = new ColumnStatsMetaStore();
+    List<Column> cols = createColumns(128);
+    // 128 columns are fetched in 8 chunks of 16 columns. Every column fails on the
+    // pool, so only the chunks claimed by the calling thread have stats.
+    String[] failingCols = new String[cols.size()];
+    for (int i = 0; i < cols.size(); ++i) failingCols[i] = cols.get(i).getName();
+    StubChunkFetcher fetcher =
+        new StubChunkFetcher(metaStore.createClient(), failingCols);
+    new TestTable().loadColumnStats(cols, metaStore.createClient(), fetcher);
+    int numColsWithStats = 0;
+    for (int chunk = 0; chunk < 8; ++chunk) {
+      boolean hasStats = cols.get(chunk * 16).getStats().getNumDistinctValues() != -1;
+      for (int i = chunk * 16; i < (chunk + 1) * 16; ++i) {
+        Column col = cols.get(i);
+        assertEquals(hasStats ? col.getPosition() : -1,
+            col.getStats().getNumDistinctValues());
+        if (hasStats) ++numColsWithStats;
+      }
+    }
+    assertEquals(metaStore.fetchedCols_.size(), numColsWithStats);
+    assertEquals(cols.size(), numColsWithStats + 16 * fetcher.chunkSizes_.size());
+    // The calling thread claims at least one chunk.
+    assertTrue(numColsWithStats >= 16);
+  }
+}
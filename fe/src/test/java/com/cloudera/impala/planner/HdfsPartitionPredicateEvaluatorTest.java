@@ -0,0 +1,182 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.planner;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.cloudera.impala.analysis.Analyzer;
+import com.cloudera.impala.analysis.Expr;
+import com.cloudera.impala.analysis.SelectStmt;
+import com.cloudera.impala.analysis.SqlParser;
+import com.cloudera.impala.analysis.SqlScanner;
+import com.cloudera.impala.authorization.AuthorizationConfig;
+import com.cloudera.impala.catalog.ColumnType;
+import com.cloudera.impala.catalog.Db;
+import com.cloudera.impala.catalog.HdfsPartition;
+import com.cloudera.impala.catalog.HdfsTable;
+import com.cloudera.impala.catalog.ImpaladCatalog;
+import com.cloudera.impala.common.NotImplementedException;
+import com.cloudera.impala.testutil.HdfsTableBuilder;
+import com.cloudera.impala.testutil.TestUtils;
+import com.cloudera.impala.thrift.ImpalaInternalServiceConstants;
+import com.google.common.collect.Sets;
+
+/**
+ * Tests the FE evaluation of partition-filter predicates against the backend evaluation
+ * of the same predicates, which is the path the planner falls back to.
+ */
+public class HdfsPartitionPredicateEvaluatorTest {
+  private static ImpaladCatalog catalog_;
+  private static HdfsTable tbl_;
+
+  @BeforeClass
+  public static void setUp() {
+    catalog_ = new ImpaladCatalog(AuthorizationConfig.createAuthDisabledConfig());
+    catalog_.setIsReady();
+    Db db = new Db("db", catalog_);
+    catalog_.addDb(db);
+    tbl_ = new HdfsTableBuilder("db", "tbl")
+        .addClusteringColumn("year", ColumnType.INT)
+        .addClusteringColumn("name", ColumnType.STRING)
+        .addClusteringColumn("flag", ColumnType.BOOLEAN)
+        .addClusteringColumn("score", ColumnType.DOUBLE)
+        .addColumn("id", ColumnType.INT)
+        .addPartition(1, "2009", "a", "true", "1.5")
+        .addPartition(2, "2010", "Bb ", "false", "2.5")
+        .addPartition(3, "2011", null, "true", null)
+        .addPartition(4, null, "abc", null, "-1")
+        .addPartition(5, "2010", "é", "false", "0")
+        .build(db);
+    db.addTable(tbl_);
+  }
+
+  /**
+   * Analyzes 'predicate' as the where clause of a query on the test table, evaluates it
+   * against every partition and checks that exactly the partitions in 'expectedIds'
+   * match. 'fallbackIds' are the partitions for which the evaluator must fall back to
+   * the backend, or null if the predicate must not be compiled at all. Every result is
+   * also checked against the backend evaluation.
+   */
+  private void checkPredicate(String predicate, Set<Long> fallbackIds,
+      Long... expectedIds) throws Exception {
+    String stmt = "select * from tbl where " + predicate;
+    SqlParser parser = new SqlParser(new SqlScanner(new StringReader(stmt)));
+    SelectStmt selectStmt = (SelectStmt) parser.parse().value;
+    Analyzer analyzer = new Analyzer(catalog_,
+        TestUtils.createQueryContext("db", System.getProperty("user.name")));
+    selectStmt.analyze(analyzer);
+    Expr pred = selectStmt.getWhereClause();
+
+    HdfsPartitionFilter filter = new HdfsPartitionFilter(pred, tbl_, analyzer);
+    HdfsPartitionPredicateEvaluator evaluator = filter.getEvaluator();
+    assertEquals(predicate, fallbackIds == null, evaluator == null);
+    Set<Long> matchingIds = Sets.newHashSet();
+    Set<Long> actualFallbackIds = Sets.newHashSet();
+    for (HdfsPartition partition: tbl_.getPartitions()) {
+      long id = partition.getId();
+      if (id == ImpalaInternalServiceConstants.DEFAULT_PARTITION_ID) continue;
+      String msg = predicate + " on partition " + id;
+      boolean isMatchInBackend = filter.isMatchInBackend(partition, analyzer);
+      if (evaluator != null) {
+        try {
+          assertEquals(msg, isMatchInBackend, evaluator.isMatch(partition));
+        } catch (NotImplementedException e) {
+          actualFallbackIds.add(id);
+        }
+      }
+      boolean isMatch = filter.isMatch(partition, analyzer);
+      assertEquals(msg, isMatchInBackend, isMatch);
+      if (isMatch) matchingIds.add(id);
+    }
+    assertEquals(predicate, Sets.newHashSet(expectedIds), matchingIds);
+    if (fallbackIds != null) assertEquals(predicate, fallbackIds, actualFallbackIds);
+  }
+
+  private void checkPredicate(String predicate, Long... expectedIds) throws Exception {
+    checkPredicate(predicate, Sets.<Long>newHashSet(), expectedIds);
+  }
+
+  private void checkUncompiledPredicate(String predicate, Long... expectedIds)
+      throws Exception {
+    checkPredicate(predicate, (Set<Long>) null, expectedIds);
+  }
+
+  @Test
+  public void TestThreeValuedLogic() throws Exception {
+    checkPredicate("year = 2010", 2L, 5L);
+    checkPredicate("year != 2010", 1L, 3L);
+    checkPredicate("year = null");
+    checkPredicate("not (year = 2010 and flag)", 1L, 2L, 3L, 5L);
+    checkPredicate("year > 2009 or flag", 1L, 2L, 3L, 5L);
+    checkPredicate("year is null or flag", 1L, 3L, 4L);
+    checkPredicate("name is null and flag", 3L);
+    checkPredicate("name is not null and score is not null", 1L, 2L, 4L, 5L);
+    checkPredicate("flag = (year = 2009)", 1L, 2L, 5L);
+    checkPredicate("year in (2009, null)", 1L);
+    checkPredicate("year not in (2009, null)");
+    checkPredicate("year not in (2009)", 2L, 3L, 5L);
+    checkPredicate("year between 2010 and 2011", 2L, 3L, 5L);
+    checkPredicate("year not between 2010 and 2011", 1L);
+  }
+
+  @Test
+  public void TestCasts() throws Exception {
+    checkPredicate("cast(year as string) = '2010'", 2L, 5L);
+    checkPredicate("cast(flag as int) = 1", 1L, 3L);
+    checkPredicate("cast(score as int) = 2", 2L);
+    checkPredicate("cast(score as boolean)", 1L, 2L, 4L);
+    checkPredicate("cast(year as double) > 2009.5", 2L, 3L, 5L);
+    // Narrowing integer casts truncate like the backend.
+    checkPredicate("cast(year as tinyint) = -39", 1L);
+    // Strings that are not integers, or that overflow the target type, are cast in the
+    // backend.
+    checkPredicate("cast(name as int) is null", Sets.newHashSet(1L, 2L, 4L, 5L),
+        1L, 2L, 3L, 4L, 5L);
+    checkPredicate("cast(cast(year as string) as tinyint) is null",
+        Sets.newHashSet(1L, 2L, 3L, 5L), 1L, 2L, 3L, 4L, 5L);
+  }
+
+  @Test
+  public void TestStringFunctions() throws Exception {
+    checkPredicate("substr(name, 2) = 'b '", Sets.newHashSet(5L), 2L);
+    checkPredicate("substr(name, -2, 1) = 'b'", Sets.newHashSet(5L), 2L, 4L);
+    checkPredicate("substring(name, 1, 0) = ''", Sets.newHashSet(5L), 1L, 2L, 4L, 5L);
+    checkPredicate("substr(name, 10) = ''", Sets.newHashSet(5L), 1L, 2L, 4L, 5L);
+    checkPredicate("upper(name) = 'BB '", Sets.newHashSet(5L), 2L);
+    checkPredicate("length(trim(name)) = 2", Sets.newHashSet(5L), 2L);
+    checkPredicate("concat(name, 'x') = 'ax'", 1L);
+    // Non-ASCII strings are handled by the backend.
+    checkPredicate("lower(name) = 'é'", Sets.newHashSet(5L), 5L);
+  }
+
+  /**
+   * Predicates with exprs the evaluator does not support are evaluated in the backend.
+   */
+  @Test
+  public void TestUnsupportedExprs() throws Exception {
+    checkUncompiledPredicate("year % 2 = 0", 2L, 5L);
+    checkUncompiledPredicate("name like 'a%'", 1L, 4L);
+    checkUncompiledPredicate("coalesce(year, 0) = 0", 4L);
+    checkUncompiledPredicate("cast(score as string) = '1.5'", 1L);
+    // A single unsupported expr prevents the compilation of the whole predicate.
+    checkUncompiledPredicate("year = 2010 or name like 'a%'", 1L, 2L, 4L, 5L);
+  }
+}
@@ -0,0 +1,226 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.planner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cloudera.impala.analysis.BinaryPredicate;
+import com.cloudera.impala.analysis.CompoundPredicate;
+import com.cloudera.impala.analysis.DescriptorTable;
+import com.cloudera.impala.analysis.Expr;
+import com.cloudera.impala.analysis.InPredicate;
+import com.cloudera.impala.analysis.IntLiteral;
+import com.cloudera.impala.analysis.IsNullPredicate;
+import com.cloudera.impala.analysis.LiteralExpr;
+import com.cloudera.impala.analysis.NullLiteral;
+import com.cloudera.impala.analysis.SlotDescriptor;
+import com.cloudera.impala.analysis.SlotRef;
+import com.cloudera.impala.analysis.StringLiteral;
+import com.cloudera.impala.analysis.TupleDescriptor;
+import com.cloudera.impala.catalog.ColumnType;
+import com.cloudera.impala.catalog.HdfsTable;
+import com.cloudera.impala.common.AnalysisException;
+import com.cloudera.impala.testutil.HdfsTableBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Tests the use of the partition-key index for partition pruning. The predicates are
+ * built like the analyzer leaves them: the literals compared with a partition column
+ * are cast to the type of the column.
+ */
+public class HdfsScanNodeTest {
+  private HdfsScanNode scanNode_;
+  // Slot refs of the columns year, month, name and id.
+  private SlotRef year_;
+  private SlotRef month_;
+  private SlotRef name_;
+  private SlotRef id_;
+
+  @Before
+  public void setUp() {
+    HdfsTable tbl = new HdfsTableBuilder("db", "tbl")
+        .addClusteringColumn("year", ColumnType.INT)
+        .addClusteringColumn("month", ColumnType.INT)
+        .addClusteringColumn("name", ColumnType.STRING)
+        .addColumn("id", ColumnType.INT)
+        .addPartition(1, "2009", "1", "a")
+        .addPartition(2, "2009", "2", "b")
+        .addPartition(3, "2010", "1", "a")
+        .addPartition(4, "2010", "2", null)
+        .addPartition(5, null, "3", "c")
+        .addPartition(6, "2011", null, "a")
+        .build();
+    DescriptorTable descTbl = new DescriptorTable();
+    TupleDescriptor tupleDesc = descTbl.createTupleDescriptor();
+    tupleDesc.setTable(tbl);
+    List<SlotRef> slotRefs = Lists.newArrayList();
+    for (int i = 0; i < 4; ++i) {
+      SlotDescriptor slotDesc = descTbl.addSlotDescriptor(tupleDesc);
+      slotDesc.setColumn(tbl.getColumns().get(i));
+      slotRefs.add(new SlotRef(slotDesc));
+    }
+    year_ = slotRefs.get(0);
+    month_ = slotRefs.get(1);
+    name_ = slotRefs.get(2);
+    id_ = slotRefs.get(3);
+    scanNode_ = new HdfsScanNode(new PlanNodeId(0), tupleDesc, tbl);
+  }
+
+  private static LiteralExpr intLiteral(long value) {
+    try {
+      return (LiteralExpr) uncastIntLiteral(value).castTo(ColumnType.INT);
+    } catch (AnalysisException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static LiteralExpr uncastIntLiteral(long value) {
+    try {
+      return new IntLiteral(Long.toString(value));
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static Expr binary(BinaryPredicate.Operator op, Expr lhs, Expr rhs) {
+    return new BinaryPredicate(op, lhs, rhs);
+  }
+
+  private static Expr and(Expr lhs, Expr rhs) {
+    return new CompoundPredicate(CompoundPredicate.Operator.AND, lhs, rhs);
+  }
+
+  private static Expr or(Expr lhs, Expr rhs) {
+    return new CompoundPredicate(CompoundPredicate.Operator.OR, lhs, rhs);
+  }
+
+  private static Expr in(Expr compareExpr, boolean isNotIn, Expr... values) {
+    return new InPredicate(compareExpr, Lists.newArrayList(values), isNotIn);
+  }
+
+  private static Set<Long> ids(long... ids) {
+    Set<Long> result = Sets.newHashSet();
+    for (long id: ids) result.add(id);
+    return result;
+  }
+
+  private Set<Long> getCandidates(Expr conjunct) {
+    Set<Long> candidates = scanNode_.getCandidatePartitionIds(conjunct);
+    return candidates == null ? null : Sets.newHashSet(candidates);
+  }
+
+  @Test
+  public void TestBinaryPredicates() {
+    assertEquals(ids(3, 4),
+        getCandidates(binary(BinaryPredicate.Operator.EQ, year_, intLiteral(2010))));
+    assertEquals(ids(1, 2),
+        getCandidates(binary(BinaryPredicate.Operator.LT, year_, intLiteral(2010))));
+    assertEquals(ids(1, 2, 3, 4),
+        getCandidates(binary(BinaryPredicate.Operator.LE, year_, intLiteral(2010))));
+    assertEquals(ids(6),
+        getCandidates(binary(BinaryPredicate.Operator.GT, year_, intLiteral(2010))));
+    assertEquals(ids(3, 4, 6),
+        getCandidates(binary(BinaryPredicate.Operator.GE, year_, intLiteral(2010))));
+    // The literal may be on the left-hand side.
+    assertEquals(ids(6),
+        getCandidates(binary(BinaryPredicate.Operator.LT, intLiteral(2010), year_)));
+    assertEquals(ids(1, 3, 6),
+        getCandidates(binary(BinaryPredicate.Operator.EQ, name_,
+            new StringLiteral("a"))));
+    // != cannot be answered by the index.
+    assertNull(
+        getCandidates(binary(BinaryPredicate.Operator.NE, year_, intLiteral(2010))));
+  }
+
+  @Test
+  public void TestInPredicates() {
+    assertEquals(ids(1, 3, 5),
+        getCandidates(in(month_, false, intLiteral(1), intLiteral(3), intLiteral(4))));
+    assertEquals(ids(1, 2, 3, 6),
+        getCandidates(in(name_, false, new StringLiteral("a"),
+            new StringLiteral("b"))));
+    // NULL in the IN list never matches, not even the partitions with a NULL key.
+    assertEquals(ids(1, 3),
+        getCandidates(in(month_, false, intLiteral(1), new NullLiteral())));
+    assertNull(getCandidates(in(month_, true, intLiteral(1))));
+    // Non-literal IN-list values cannot be looked up.
+    assertNull(getCandidates(in(month_, false, intLiteral(1), year_)));
+  }
+
+  @Test
+  public void TestNullKeys() {
+    assertEquals(ids(5), getCandidates(new IsNullPredicate(year_, false)));
+    assertEquals(ids(6), getCandidates(new IsNullPredicate(month_, false)));
+    assertEquals(ids(4), getCandidates(new IsNullPredicate(name_, false)));
+    assertNull(getCandidates(new IsNullPredicate(year_, true)));
+    // Comparisons with NULL are never true.
+    assertEquals(ids(),
+        getCandidates(binary(BinaryPredicate.Operator.EQ, year_, new NullLiteral())));
+    assertEquals(ids(),
+        getCandidates(binary(BinaryPredicate.Operator.LT, year_, new NullLiteral())));
+    // Range predicates never match the partitions with a NULL key.
+    assertEquals(ids(1, 2, 3, 4, 6),
+        getCandidates(binary(BinaryPredicate.Operator.GE, year_, intLiteral(0))));
+  }
+
+  @Test
+  public void TestCompoundPredicates() {
+    // year = 2010 and month = 1
+    assertEquals(ids(3),
+        getCandidates(and(binary(BinaryPredicate.Operator.EQ, year_, intLiteral(2010)),
+            binary(BinaryPredicate.Operator.EQ, month_, intLiteral(1)))));
+    // year >= 2009 and year < 2010, i.e., the rewrite of a BETWEEN predicate.
+    assertEquals(ids(1, 2),
+        getCandidates(and(binary(BinaryPredicate.Operator.GE, year_, intLiteral(2009)),
+            binary(BinaryPredicate.Operator.LT, year_, intLiteral(2010)))));
+    // year = 2009 or month is null
+    assertEquals(ids(1, 2, 6),
+        getCandidates(or(binary(BinaryPredicate.Operator.EQ, year_, intLiteral(2009)),
+            new IsNullPredicate(month_, false))));
+    // A conjunction can be answered if either side can be answered.
+    assertEquals(ids(3, 4),
+        getCandidates(and(binary(BinaryPredicate.Operator.EQ, year_, intLiteral(2010)),
+            binary(BinaryPredicate.Operator.NE, month_, intLiteral(1)))));
+    // A disjunction can only be answered if both sides can be answered.
+    assertNull(
+        getCandidates(or(binary(BinaryPredicate.Operator.EQ, year_, intLiteral(2010)),
+            binary(BinaryPredicate.Operator.NE, month_, intLiteral(1)))));
+    assertNull(getCandidates(new CompoundPredicate(CompoundPredicate.Operator.NOT,
+        binary(BinaryPredicate.Operator.EQ, year_, intLiteral(2010)), null)));
+  }
+
+  /**
+   * Predicates the index cannot answer are left to the partition filters.
+   */
+  @Test
+  public void TestUnsupportedPredicates() {
+    // Literals that were not cast to the type of the column.
+    assertNull(getCandidates(binary(BinaryPredicate.Operator.EQ, year_,
+        uncastIntLiteral(2010))));
+    // Non-partition columns.
+    assertNull(
+        getCandidates(binary(BinaryPredicate.Operator.EQ, id_, intLiteral(2010))));
+    // Comparisons between columns.
+    assertNull(getCandidates(binary(BinaryPredicate.Operator.EQ, year_, month_)));
+  }
+}
@@ -0,0 +1,142 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.cloudera.impala.analysis.TableName;
+import com.cloudera.impala.service.DdlLockManager.DdlLock;
+
+public class DdlLockManagerTest {
+  private final DdlLockManager lockMgr_ = new DdlLockManager();
+  private final ExecutorService executor_ = Executors.newCachedThreadPool();
+
+  @After
+  public void tearDown() {
+    executor_.shutdownNow();
+  }
+
+  /**
+   * Returns true if the given lock can be acquired on another thread within a timeout.
+   * Locks are released by the thread that acquired them, so 'lockFn' releases the lock
+   * right away.
+   */
+  private boolean canLock(Callable<Void> lockFn) throws Exception {
+    try {
+      executor_.submit(lockFn).get(500, TimeUnit.MILLISECONDS);
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks that the given lock cannot be acquired on another thread while 'heldLock' is
+   * held, and that it is acquired once 'heldLock' is released.
+   */
+  private void assertBlockedBy(Callable<Void> lockFn, DdlLock heldLock)
+      throws Exception {
+    Future<Void> lock = executor_.submit(lockFn);
+    try {
+      lock.get(500, TimeUnit.MILLISECONDS);
+      fail("Lock was acquired while a conflicting lock was held");
+    } catch (TimeoutException e) {
+      // Expected.
+    }
+    heldLock.release();
+    lock.get(10, TimeUnit.SECONDS);
+  }
+
+  private Callable<Void> lockTable(final String db, final String tbl) {
+    return new Callable<Void>() {
+      @Override
+      public Void call() {
+        lockMgr_.lockTable(new TableName(db, tbl)).release();
+        return null;
+      }
+    };
+  }
+
+  private Callable<Void> lockDb(final String db) {
+    return new Callable<Void>() {
+      @Override
+      public Void call() {
+        lockMgr_.lockDb(db).release();
+        return null;
+      }
+    };
+  }
+
+  @Test
+  public void TestTableLocks() throws Exception {
+    DdlLock lock = lockMgr_.lockTable(new TableName("db1", "tbl1"));
+    // Unrelated tables and databases can be locked concurrently.
+    assertTrue(canLock(lockTable("db1", "tbl2")));
+    assertTrue(canLock(lockTable("db2", "tbl1")));
+    assertTrue(canLock(lockDb("db2")));
+    lock.release();
+  }
+
+  @Test
+  public void TestConflictingLocks() throws Exception {
+    // Table names are case insensitive.
+    assertBlockedBy(lockTable("DB1", "Tbl1"),
+        lockMgr_.lockTable(new TableName("db1", "tbl1")));
+    assertBlockedBy(lockDb("db1"), lockMgr_.lockTable(new TableName("db1", "tbl1")));
+    assertBlockedBy(lockTable("db1", "tbl2"), lockMgr_.lockDb("db1"));
+    assertEquals(0, lockMgr_.getNumLockEntries());
+  }
+
+  @Test
+  public void TestMultiTableLocks() throws Exception {
+    // Concurrent renames in opposite directions must not deadlock.
+    final TableName tbl1 = new TableName("db1", "tbl1");
+    final TableName tbl2 = new TableName("db2", "tbl2");
+    Future<?> rename1 = executor_.submit(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 10000; ++i) lockMgr_.lockTables(tbl1, tbl2).release();
+      }
+    });
+    Future<?> rename2 = executor_.submit(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 10000; ++i) lockMgr_.lockTables(tbl2, tbl1).release();
+      }
+    });
+    rename1.get(30, TimeUnit.SECONDS);
+    rename2.get(30, TimeUnit.SECONDS);
+
+    DdlLock lock = lockMgr_.lockTables(tbl1, tbl2);
+    assertBlockedBy(lockTable("db2", "tbl2"), lock);
+    // Releasing twice is a no-op.
+    lock.release();
+
+    // Lock entries are removed once they are no longer used.
+    assertEquals(0, lockMgr_.getNumLockEntries());
+  }
+}
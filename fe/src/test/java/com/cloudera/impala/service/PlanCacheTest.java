@@ -0,0 +1,219 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.cloudera.impala.analysis.FunctionName;
+import com.cloudera.impala.authorization.AuthorizationConfig;
+import com.cloudera.impala.catalog.ColumnType;
+import com.cloudera.impala.catalog.Db;
+import com.cloudera.impala.catalog.Function;
+import com.cloudera.impala.catalog.ImpaladCatalog;
+import com.cloudera.impala.catalog.Table;
+import com.cloudera.impala.catalog.TableId;
+import com.cloudera.impala.catalog.View;
+import com.cloudera.impala.common.Pair;
+import com.cloudera.impala.thrift.TClientRequest;
+import com.cloudera.impala.thrift.TExecRequest;
+import com.cloudera.impala.thrift.TFunctionBinaryType;
+import com.cloudera.impala.thrift.TPlanFragment;
+import com.cloudera.impala.thrift.TQueryContext;
+import com.cloudera.impala.thrift.TQueryExecRequest;
+import com.cloudera.impala.thrift.TQueryOptions;
+import com.cloudera.impala.thrift.TSessionState;
+import com.cloudera.impala.thrift.TSessionType;
+import com.cloudera.impala.thrift.TStmtType;
+import com.cloudera.impala.thrift.TTableName;
+import com.cloudera.impala.thrift.TUniqueId;
+import com.google.common.collect.Lists;
+
+public class PlanCacheTest {
+  private static TQueryContext createQueryCtxt(String stmt, String user) {
+    TClientRequest request = new TClientRequest(stmt, new TQueryOptions());
+    TSessionState session = new TSessionState();
+    session.setSession_id(new TUniqueId());
+    session.setSession_type(TSessionType.BEESWAX);
+    session.setDatabase("default");
+    session.setConnected_user(user);
+    return new TQueryContext(request, session, "2014-01-01 00:00:00", 1);
+  }
+
+  private static TExecRequest createExecRequest(TQueryContext queryCtxt) {
+    TQueryExecRequest queryExecRequest = new TQueryExecRequest();
+    queryExecRequest.setFragments(Lists.<TPlanFragment>newArrayList());
+    queryExecRequest.setQuery_ctxt(queryCtxt);
+    queryExecRequest.setQuery_plan("plan of " + queryCtxt.request.stmt);
+    queryExecRequest.setStmt_type(TStmtType.QUERY);
+    TExecRequest request =
+        new TExecRequest(TStmtType.QUERY, queryCtxt.request.query_options);
+    request.setQuery_exec_request(queryExecRequest);
+    return request;
+  }
+
+  private static Function createUdf(String name, ColumnType argType, long version) {
+    Function fn = new Function(new FunctionName("db", name), new ColumnType[] {argType},
+        ColumnType.DOUBLE, false);
+    fn.setBinaryType(TFunctionBinaryType.HIVE);
+    fn.setCatalogVersion(version);
+    return fn;
+  }
+
+  private static final List<Pair<Function, Function>> NO_FNS = Collections.emptyList();
+  private static final List<Table> NO_TABLES = Collections.emptyList();
+
+  @Test
+  public void TestNormalizeStmt() {
+    assertEquals("select a from t",
+        PlanCache.normalizeStmt("  select  a\tfrom t ; "));
+    assertEquals("select a\nfrom t", PlanCache.normalizeStmt("select a \r\n  from t;;"));
+    // Whitespace in quotes and comments is preserved.
+    assertEquals("select 'a  b', \"c\\\"  d\", `e  f` from t",
+        PlanCache.normalizeStmt("select 'a  b',  \"c\\\"  d\", `e  f` from t"));
+    assertEquals("select 1 -- it's  a comment\nfrom t where s = 'x  y'",
+        PlanCache.normalizeStmt("select 1 -- it's  a comment\nfrom t where s = 'x  y'"));
+    assertEquals("select /* a  'b */ 1",
+        PlanCache.normalizeStmt("select   /* a  'b */   1"));
+    // A line comment does not swallow the rest of the statement.
+    assertFalse(PlanCache.normalizeStmt("select 1 -- c\nfrom t").equals(
+        PlanCache.normalizeStmt("select 1 -- c from t")));
+    // Semicolons in literals are not trailing semicolons.
+    assertEquals("select ';'", PlanCache.normalizeStmt("select ';'"));
+  }
+
+  @Test
+  public void TestCreateKey() {
+    String key = PlanCache.createKey(createQueryCtxt("select 1", "user1"));
+    assertEquals(key, PlanCache.createKey(createQueryCtxt(" select  1; ", "user1")));
+    assertFalse(key.equals(PlanCache.createKey(createQueryCtxt("select 1", "user2"))));
+    TQueryContext otherDb = createQueryCtxt("select 1", "user1");
+    otherDb.session.setDatabase("other");
+    assertFalse(key.equals(PlanCache.createKey(otherDb)));
+    TQueryContext otherOptions = createQueryCtxt("select 1", "user1");
+    otherOptions.request.query_options.setNum_nodes(1);
+    assertFalse(key.equals(PlanCache.createKey(otherOptions)));
+  }
+
+  @Test
+  public void TestHitsAndLruEviction() {
+    ImpaladCatalog catalog =
+        new ImpaladCatalog(AuthorizationConfig.createAuthDisabledConfig());
+    PlanCache cache = new PlanCache(2);
+    String[] stmts = new String[] { "select 1", "select 2", "select 3" };
+    for (String stmt: stmts) {
+      TQueryContext queryCtxt = createQueryCtxt(stmt, "user");
+      String key = PlanCache.createKey(queryCtxt);
+      assertNull(cache.get(key, queryCtxt, catalog));
+      TExecRequest request = createExecRequest(queryCtxt);
+      cache.put(key, request, NO_TABLES, NO_FNS, 5000000L);
+      assertFalse(request.getPlan_cache_stats().isHit());
+      // Touch the first statement so that the second one is evicted.
+      if (stmt.equals("select 2")) {
+        TQueryContext first = createQueryCtxt("select 1", "user");
+        assertNotNull(cache.get(PlanCache.createKey(first), first, catalog));
+      }
+    }
+    assertEquals(2, cache.size());
+    TQueryContext evicted = createQueryCtxt("select 2", "user");
+    assertNull(cache.get(PlanCache.createKey(evicted), evicted, catalog));
+
+    TQueryContext queryCtxt = createQueryCtxt("select  3", "user");
+    TExecRequest request = cache.get(PlanCache.createKey(queryCtxt), queryCtxt, catalog);
+    assertNotNull(request);
+    // Hits carry the query context of the new execution.
+    assertSame(queryCtxt, request.getQuery_exec_request().getQuery_ctxt());
+    assertEquals("plan of select 3", request.getQuery_exec_request().getQuery_plan());
+    assertTrue(request.getPlan_cache_stats().isHit());
+    assertEquals(5, request.getPlan_cache_stats().getSaved_planning_time_ms());
+    assertEquals(2, request.getPlan_cache_stats().getNum_hits());
+    assertEquals(3, request.getPlan_cache_stats().getNum_misses());
+    assertEquals(10, request.getPlan_cache_stats().getTotal_saved_planning_time_ms());
+    // Every hit returns a separate copy.
+    TQueryContext otherCtxt = createQueryCtxt("select 3", "user");
+    assertNotSame(request, cache.get(PlanCache.createKey(otherCtxt), otherCtxt, catalog));
+  }
+
+  @Test
+  public void TestInvalidation() {
+    ImpaladCatalog catalog =
+        new ImpaladCatalog(AuthorizationConfig.createAuthDisabledConfig());
+    Db db = new Db("db", catalog);
+    catalog.addDb(db);
+    View view = new View(TableId.createInvalidId(), null, db, "v", "owner");
+    view.setCatalogVersion(10);
+    db.addTable(view);
+    Function udf = createUdf("fn", ColumnType.DOUBLE, 11);
+    assertTrue(db.addFunction(udf));
+    Function searchDesc = createUdf("fn", ColumnType.INT, 0);
+    List<Pair<Function, Function>> fnResolutions = Lists.newArrayList();
+    fnResolutions.add(Pair.create(searchDesc, udf));
+
+    PlanCache cache = new PlanCache(10);
+    TQueryContext queryCtxt = createQueryCtxt("select db.fn(1) from db.v", "user");
+    String key = PlanCache.createKey(queryCtxt);
+    TExecRequest request = createExecRequest(queryCtxt);
+    request.getQuery_exec_request().getQuery_ctxt().addToTables_missing_stats(
+        new TTableName("db", "t"));
+    cache.put(key, request, Lists.<Table>newArrayList(view), fnResolutions, 0);
+
+    TQueryContext hitCtxt = createQueryCtxt("select db.fn(1) from db.v", "user");
+    assertNotNull(cache.get(key, hitCtxt, catalog));
+    // The tables missing stats of the cached plan are carried over.
+    assertEquals(1, hitCtxt.getTables_missing_stats().size());
+
+    // A new, better matching function overload invalidates the entry.
+    Function intUdf = createUdf("fn", ColumnType.INT, 12);
+    assertTrue(db.addFunction(intUdf));
+    assertNull(cache.get(key, createQueryCtxt("select 1", "user"), catalog));
+    assertEquals(0, cache.size());
+    assertTrue(db.removeFunction(intUdf) != null);
+
+    // So does a new version of a referenced view.
+    cache.put(key, createExecRequest(queryCtxt), Lists.<Table>newArrayList(view),
+        fnResolutions, 0);
+    assertNotNull(cache.get(key, createQueryCtxt("select 1", "user"), catalog));
+    View newView = new View(TableId.createInvalidId(), null, db, "v", "owner");
+    newView.setCatalogVersion(13);
+    db.addTable(newView);
+    assertNull(cache.get(key, createQueryCtxt("select 1", "user"), catalog));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void TestContextDependentFunctions() {
+    Function now = new Function(new FunctionName("_impala_builtins", "now"),
+        new ColumnType[0], ColumnType.TIMESTAMP, false);
+    now.setBinaryType(TFunctionBinaryType.BUILTIN);
+    Function seededRand = new Function(new FunctionName("_impala_builtins", "rand"),
+        new ColumnType[] {ColumnType.INT}, ColumnType.DOUBLE, false);
+    seededRand.setBinaryType(TFunctionBinaryType.BUILTIN);
+    List<Pair<Function, Function>> fnResolutions = Lists.newArrayList();
+    fnResolutions.add(Pair.create(seededRand, seededRand));
+    assertTrue(PlanCache.isCacheable(fnResolutions));
+    fnResolutions.add(Pair.create(now, now));
+    assertFalse(PlanCache.isCacheable(fnResolutions));
+  }
+}
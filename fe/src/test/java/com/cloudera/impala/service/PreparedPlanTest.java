@@ -0,0 +1,169 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cloudera.impala.authorization.AuthorizationConfig;
+import com.cloudera.impala.catalog.ColumnType;
+import com.cloudera.impala.catalog.Db;
+import com.cloudera.impala.catalog.ImpaladCatalog;
+import com.cloudera.impala.common.AnalysisException;
+import com.cloudera.impala.common.ImpalaException;
+import com.cloudera.impala.testutil.HdfsTableBuilder;
+import com.cloudera.impala.thrift.TClientRequest;
+import com.cloudera.impala.thrift.TExecRequest;
+import com.cloudera.impala.thrift.TQueryContext;
+import com.cloudera.impala.thrift.TQueryOptions;
+import com.cloudera.impala.thrift.TScanRangeLocations;
+import com.cloudera.impala.thrift.TSessionState;
+import com.cloudera.impala.thrift.TSessionType;
+import com.cloudera.impala.thrift.TUniqueId;
+import com.google.common.collect.Sets;
+
+/**
+ * Tests re-binding the generic plans of prepared statements on EXECUTE.
+ */
+public class PreparedPlanTest {
+  private static final TUniqueId SESSION_ID = new TUniqueId(1, 2);
+
+  private Db db_;
+  private Frontend frontend_;
+
+  @Before
+  public void setUp() throws Exception {
+    ImpaladCatalog catalog =
+        new ImpaladCatalog(AuthorizationConfig.createAuthDisabledConfig());
+    db_ = new Db("db", catalog);
+    catalog.addDb(db_);
+    db_.addTable(new HdfsTableBuilder("db", "tbl")
+        .addClusteringColumn("year", ColumnType.INT)
+        .addColumn("id", ColumnType.INT)
+        .addPartition(1, "2009")
+        .addPartition(2, "2010")
+        .addFile(1, "file1", 100)
+        .addFile(2, "file2", 200)
+        .addFile(2, "file3", 300)
+        .build(db_));
+    catalog.setIsReady();
+    frontend_ = new Frontend(AuthorizationConfig.createAuthDisabledConfig(), catalog);
+  }
+
+  private static TQueryContext createQueryCtxt(String stmt) {
+    TClientRequest request = new TClientRequest(stmt, new TQueryOptions());
+    TSessionState session = new TSessionState();
+    session.setSession_id(SESSION_ID);
+    session.setSession_type(TSessionType.BEESWAX);
+    session.setDatabase("db");
+    session.setConnected_user("user");
+    return new TQueryContext(request, session, "2014-01-01 00:00:00", 1);
+  }
+
+  private TExecRequest execute(String stmt) throws ImpalaException {
+    return frontend_.createExecRequest(createQueryCtxt(stmt), new StringBuilder());
+  }
+
+  /**
+   * Executes 'stmt' and checks that the exec request scans exactly the partitions with
+   * the given ids.
+   */
+  private void assertScannedPartitions(String stmt, Long... partitionIds)
+      throws ImpalaException {
+    Set<Long> scannedIds = Sets.newHashSet();
+    TExecRequest request = execute(stmt);
+    for (List<TScanRangeLocations> scanRanges:
+         request.getQuery_exec_request().getPer_node_scan_ranges().values()) {
+      for (TScanRangeLocations scanRange: scanRanges) {
+        scannedIds.add(scanRange.getScan_range().getHdfs_file_split().getPartition_id());
+      }
+    }
+    assertEquals(Sets.newHashSet(partitionIds), scannedIds);
+  }
+
+  @Test
+  public void TestRebind() throws ImpalaException {
+    execute("prepare s as select id from tbl where year = ? and id > ?");
+    assertNull(frontend_.getPreparedPlan(SESSION_ID, "s"));
+    assertScannedPartitions("execute s using 2009, 1", 1L);
+    PreparedPlan plan = frontend_.getPreparedPlan(SESSION_ID, "s");
+    assertNotNull(plan);
+
+    // Values of the same types re-bind the plan, and the partitions are pruned anew.
+    assertScannedPartitions("execute s using 2010, 2", 2L);
+    assertSame(plan, frontend_.getPreparedPlan(SESSION_ID, "s"));
+    assertScannedPartitions("execute s using 2011, 2");
+    assertSame(plan, frontend_.getPreparedPlan(SESSION_ID, "s"));
+    assertScannedPartitions("execute s using 2009, 1", 1L);
+    assertSame(plan, frontend_.getPreparedPlan(SESSION_ID, "s"));
+
+    // Values of other types or NULL require a new plan.
+    assertScannedPartitions("execute s using 2009.5, 1");
+    PreparedPlan otherPlan = frontend_.getPreparedPlan(SESSION_ID, "s");
+    assertNotSame(plan, otherPlan);
+    plan = otherPlan;
+    assertScannedPartitions("execute s using NULL, 1");
+    otherPlan = frontend_.getPreparedPlan(SESSION_ID, "s");
+    assertNotSame(plan, otherPlan);
+    assertScannedPartitions("execute s using 2010, 1", 2L);
+    assertNotSame(otherPlan, frontend_.getPreparedPlan(SESSION_ID, "s"));
+
+    // Values that cannot be bound fail analysis and keep the plan.
+    plan = frontend_.getPreparedPlan(SESSION_ID, "s");
+    try {
+      execute("execute s using 'x', 1");
+      fail("Expected an AnalysisException");
+    } catch (AnalysisException e) {
+      // Expected.
+    }
+    assertSame(plan, frontend_.getPreparedPlan(SESSION_ID, "s"));
+  }
+
+  @Test
+  public void TestInvalidation() throws ImpalaException {
+    execute("prepare s as select id from tbl where year = ?");
+    execute("execute s using 2009");
+    PreparedPlan plan = frontend_.getPreparedPlan(SESSION_ID, "s");
+    assertNotNull(plan);
+
+    // Other query options require a new plan.
+    TQueryContext queryCtxt = createQueryCtxt("execute s using 2010");
+    queryCtxt.request.query_options.setNum_nodes(1);
+    frontend_.createExecRequest(queryCtxt, new StringBuilder());
+    PreparedPlan otherPlan = frontend_.getPreparedPlan(SESSION_ID, "s");
+    assertNotSame(plan, otherPlan);
+
+    // So does a new version of a referenced table.
+    db_.getTable("tbl").setCatalogVersion(db_.getTable("tbl").getCatalogVersion() + 1);
+    assertScannedPartitions("execute s using 2010", 2L);
+    assertNotSame(otherPlan, frontend_.getPreparedPlan(SESSION_ID, "s"));
+
+    // A deallocated statement name may be reused for another query.
+    execute("deallocate prepare s");
+    assertNull(frontend_.getPreparedPlan(SESSION_ID, "s"));
+    execute("prepare s as select year from tbl where year = ?");
+    assertScannedPartitions("execute s using 2009", 1L);
+  }
+}
@@ -0,0 +1,204 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.testutil;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.metastore.TableType;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.SerDeInfo;
+import org.apache.hadoop.hive.metastore.api.StorageDescriptor;
+import org.apache.hadoop.mapred.TextInputFormat;
+
+import com.cloudera.impala.analysis.LiteralExpr;
+import com.cloudera.impala.analysis.NullLiteral;
+import com.cloudera.impala.catalog.ColumnType;
+import com.cloudera.impala.catalog.Db;
+import com.cloudera.impala.catalog.HdfsTable;
+import com.cloudera.impala.catalog.Table;
+import com.cloudera.impala.catalog.TableLoadingException;
+import com.cloudera.impala.thrift.ImpalaInternalServiceConstants;
+import com.cloudera.impala.thrift.TColumn;
+import com.cloudera.impala.thrift.TExpr;
+import com.cloudera.impala.thrift.THdfsCompression;
+import com.cloudera.impala.thrift.THdfsFileBlock;
+import com.cloudera.impala.thrift.THdfsFileDesc;
+import com.cloudera.impala.thrift.THdfsFileFormat;
+import com.cloudera.impala.thrift.THdfsPartition;
+import com.cloudera.impala.thrift.THdfsTable;
+import com.cloudera.impala.thrift.TNetworkAddress;
+import com.cloudera.impala.thrift.TTable;
+import com.cloudera.impala.thrift.TTableType;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Builds HdfsTables in memory, without a metastore or file system, by loading them from
+ * their thrift representation like the impalads do. Partitions are identified by the
+ * ids given to addPartition(); the table always has a default partition as well.
+ */
+public class HdfsTableBuilder {
+  public static final String NULL_PARTITION_KEY_VALUE = "__HIVE_DEFAULT_PARTITION__";
+
+  private final String dbName_;
+  private final String tblName_;
+  private final List<TColumn> clusteringCols_ = Lists.newArrayList();
+  private final List<TColumn> cols_ = Lists.newArrayList();
+  private final Map<Long, THdfsPartition> partitions_ = Maps.newHashMap();
+
+  public HdfsTableBuilder(String dbName, String tblName) {
+    dbName_ = dbName;
+    tblName_ = tblName;
+    partitions_.put(ImpalaInternalServiceConstants.DEFAULT_PARTITION_ID,
+        createPartition(Lists.<TExpr>newArrayList(), "/test-warehouse/" + tblName));
+  }
+
+  public HdfsTableBuilder addClusteringColumn(String name, ColumnType type) {
+    Preconditions.checkState(cols_.isEmpty());
+    clusteringCols_.add(createColumn(name, type, clusteringCols_.size()));
+    return this;
+  }
+
+  public HdfsTableBuilder addColumn(String name, ColumnType type) {
+    cols_.add(createColumn(name, type, clusteringCols_.size() + cols_.size()));
+    return this;
+  }
+
+  /**
+   * Adds a partition with the given id and partition-key values, one per clustering
+   * column. The values are given in their SQL literal form without quotes; null stands
+   * for a NULL key value.
+   */
+  public HdfsTableBuilder addPartition(long id, String... keyValues) {
+    Preconditions.checkState(keyValues.length == clusteringCols_.size());
+    List<TExpr> keyExprs = Lists.newArrayList();
+    List<String> partNameParts = Lists.newArrayList();
+    for (int i = 0; i < keyValues.length; ++i) {
+      TColumn col = clusteringCols_.get(i);
+      keyExprs.add(createKeyExpr(keyValues[i],
+          ColumnType.fromThrift(col.getColumnType())));
+      partNameParts.add(col.getColumnName() + "=" +
+          (keyValues[i] == null ? NULL_PARTITION_KEY_VALUE : keyValues[i]));
+    }
+    String location = "/test-warehouse/" + tblName_;
+    for (String partNamePart: partNameParts) location += "/" + partNamePart;
+    partitions_.put(id, createPartition(keyExprs, location));
+    return this;
+  }
+
+  /**
+   * Adds a single-block file of the given length to the partition with the given id.
+   */
+  public HdfsTableBuilder addFile(long partitionId, String fileName, long length) {
+    THdfsPartition partition = partitions_.get(partitionId);
+    Preconditions.checkNotNull(partition);
+    THdfsFileBlock block = new THdfsFileBlock(0, length, Lists.newArrayList(0));
+    partition.addToFile_desc(new THdfsFileDesc(fileName, length, THdfsCompression.NONE,
+        0, Lists.newArrayList(block)));
+    return this;
+  }
+
+  public TTable toThrift() {
+    TTable table = new TTable(dbName_, tblName_);
+    table.setId(1);
+    table.setTable_type(TTableType.HDFS_TABLE);
+    table.setClustering_columns(Lists.newArrayList(clusteringCols_));
+    table.setColumns(Lists.newArrayList(cols_));
+    table.setMetastore_table(createMetaStoreTable());
+    List<String> colNames = Lists.newArrayList();
+    for (TColumn col: clusteringCols_) colNames.add(col.getColumnName());
+    for (TColumn col: cols_) colNames.add(col.getColumnName());
+    Map<Long, THdfsPartition> partitions = Maps.newHashMap();
+    for (Map.Entry<Long, THdfsPartition> entry: partitions_.entrySet()) {
+      partitions.put(entry.getKey(), entry.getValue().deepCopy());
+    }
+    THdfsTable hdfsTable = new THdfsTable("/test-warehouse/" + tblName_, colNames,
+        NULL_PARTITION_KEY_VALUE, "\\N", partitions);
+    hdfsTable.setNetwork_addresses(
+        Lists.newArrayList(new TNetworkAddress("localhost", 50010)));
+    table.setHdfs_table(hdfsTable);
+    return table;
+  }
+
+  /**
+   * Returns a new table in a new database without a parent catalog.
+   */
+  public HdfsTable build() {
+    return build(new Db(dbName_, null));
+  }
+
+  public HdfsTable build(Db db) {
+    try {
+      return (HdfsTable) Table.fromThrift(db, toThrift());
+    } catch (TableLoadingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private org.apache.hadoop.hive.metastore.api.Table createMetaStoreTable() {
+    List<FieldSchema> partitionKeys = Lists.newArrayList();
+    for (TColumn col: clusteringCols_) partitionKeys.add(createFieldSchema(col));
+    List<FieldSchema> fields = Lists.newArrayList();
+    for (TColumn col: cols_) fields.add(createFieldSchema(col));
+    StorageDescriptor sd = new StorageDescriptor();
+    sd.setCols(fields);
+    sd.setInputFormat(TextInputFormat.class.getName());
+    sd.setLocation("/test-warehouse/" + tblName_);
+    sd.setSerdeInfo(new SerDeInfo(null,
+        "org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe",
+        Maps.<String, String>newHashMap()));
+    org.apache.hadoop.hive.metastore.api.Table msTbl =
+        new org.apache.hadoop.hive.metastore.api.Table();
+    msTbl.setDbName(dbName_);
+    msTbl.setTableName(tblName_);
+    msTbl.setTableType(TableType.MANAGED_TABLE.toString());
+    msTbl.setSd(sd);
+    msTbl.setPartitionKeys(partitionKeys);
+    msTbl.setParameters(Maps.<String, String>newHashMap());
+    return msTbl;
+  }
+
+  private static FieldSchema createFieldSchema(TColumn col) {
+    return new FieldSchema(col.getColumnName(),
+        ColumnType.fromThrift(col.getColumnType()).toString().toLowerCase(), null);
+  }
+
+  private static TColumn createColumn(String name, ColumnType type, int position) {
+    TColumn col = new TColumn(name, type.toThrift());
+    col.setPosition(position);
+    return col;
+  }
+
+  private static TExpr createKeyExpr(String value, ColumnType type) {
+    if (value == null) return new NullLiteral().treeToThrift();
+    try {
+      return LiteralExpr.create(value, type).treeToThrift();
+    } catch (Exception e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private static THdfsPartition createPartition(List<TExpr> keyExprs,
+      String location) {
+    THdfsPartition partition = new THdfsPartition((byte) '\n', (byte) ',', (byte) ',',
+        (byte) ',', (byte) '\\', THdfsFileFormat.TEXT, keyExprs, 0,
+        THdfsCompression.NONE);
+    partition.setLocation(location);
+    partition.setFile_desc(Lists.<THdfsFileDesc>newArrayList());
+    return partition;
+  }
+}
@@ -0,0 +1,69 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.testutil;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * Stub metastore that creates IMetaStoreClients without a running metastore. Calls of
+ * the clients are passed to the handler registered for the name of the called method;
+ * calls of all other methods fail with an UnsupportedOperationException. The clients
+ * may be used concurrently if the handlers are thread safe.
+ */
+public class StubMetaStoreClient implements InvocationHandler {
+  /**
+   * Handles the calls of a metastore client method. Exceptions are thrown to the caller
+   * of the client, so they must be declared by the handled method.
+   */
+  public interface MethodHandler {
+    public Object invoke(Object[] args) throws Exception;
+  }
+
+  private final Map<String, MethodHandler> handlers_ = Maps.newConcurrentMap();
+
+  /**
+   * Handles all calls of the methods with the given name, regardless of their
+   * arguments, with 'handler'. Replaces the handler registered before, if any.
+   */
+  public StubMetaStoreClient addHandler(String methodName, MethodHandler handler) {
+    Preconditions.checkNotNull(handler);
+    handlers_.put(methodName, handler);
+    return this;
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    MethodHandler handler = handlers_.get(method.getName());
+    if (handler == null) throw new UnsupportedOperationException(method.getName());
+    return handler.invoke(args);
+  }
+
+  /**
+   * Returns a new client whose calls are handled by this stub.
+   */
+  public IMetaStoreClient createClient() {
+    return (IMetaStoreClient) Proxy.newProxyInstance(
+        IMetaStoreClient.class.getClassLoader(),
+        new Class<?>[] { IMetaStoreClient.class }, this);
+  }
+}
@@ -0,0 +1,222 @@
+// Copyright 2014 Cloudera Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cloudera.impala.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.metastore.api.Partition;
+import org.apache.thrift.TException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cloudera.impala.testutil.StubMetaStoreClient;
+import com.cloudera.impala.testutil.StubMetaStoreClient.MethodHandler;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class MetaStoreUtilTest {
+  private ExecutorService fetchPool_;
+
+  /**
+   * Stub metastore of a table with partitions named "p=<i>". A partition can be
+   * dropped while the partitions are fetched, in which case getPartitionsByNames()
+   * fails with a MetaException, like the metastore may.
+   */
+  private static class PartitionedTableMetaStore {
+    private final Set<String> partNames_ = Collections.newSetFromMap(
+        new ConcurrentHashMap<String, Boolean>());
+    private final AtomicInteger numListCalls_ = new AtomicInteger();
+    // Name of the partition to drop on the next getPartitionsByNames() call.
+    private volatile String partNameToDrop_;
+    private final StubMetaStoreClient metaStore_ = new StubMetaStoreClient();
+
+    public PartitionedTableMetaStore(int numPartitions) {
+      for (int i = 0; i < numPartitions; ++i) partNames_.add("p=" + i);
+      metaStore_.addHandler("listPartitionNames", new MethodHandler() {
+        @Override
+        public Object invoke(Object[] args) {
+          numListCalls_.incrementAndGet();
+          return Lists.newArrayList(partNames_);
+        }
+      });
+      metaStore_.addHandler("getPartitionsByNames", new MethodHandler() {
+        @Override
+        public Object invoke(Object[] args) throws MetaException {
+          if (partNameToDrop_ != null) {
+            partNames_.remove(partNameToDrop_);
+            partNameToDrop_ = null;
+          }
+          List<Partition> partitions = Lists.newArrayList();
+          for (Object partName: (List<?>) args[2]) {
+            if (!partNames_.contains(partName)) {
+              throw new MetaException("Partition was dropped: " + partName);
+            }
+            Partition partition = new Partition();
+            partition.setValues(Lists.newArrayList(((String) partName).substring(2)));
+            partitions.add(partition);
+          }
+          return partitions;
+        }
+      });
+    }
+
+    public IMetaStoreClient createClient() { return metaStore_.createClient(); }
+  }
+
+  private static List<String> getPartNames(int numPartitions) {
+    List<String> partNames = Lists.newArrayList();
+    for (int i = 0; i < numPartitions; ++i) partNames.add("p=" + i);
+    return partNames;
+  }
+
+  private static List<String> getValues(List<Partition> partitions) {
+    List<String> values = Lists.newArrayList();
+    for (Partition partition: partitions) values.add(partition.getValues().get(0));
+    return values;
+  }
+
+  @Before
+  public void setUp() {
+    fetchPool_ = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    fetchPool_.shutdownNow();
+  }
+
+  /**
+   * The batches are returned in the order of the partition names, even if later
+   * batches finish fetching first.
+   */
+  @Test
+  public void TestFetchPartitionBatchesInOrder() throws TException {
+    final PartitionedTableMetaStore metaStore = new PartitionedTableMetaStore(50);
+    List<String> partNames = getPartNames(50);
+    List<Future<List<Partition>>> batches = MetaStoreUtil.fetchPartitionBatches(
+        fetchPool_, partNames, 5, new MetaStoreUtil.PartitionBatchFetcher() {
+          @Override
+          public List<Partition> fetch(List<String> partNames) throws TException {
+            // Earlier batches take longer.
+            int firstPart = Integer.parseInt(partNames.get(0).substring(2));
+            try {
+              Thread.sleep(50 - firstPart);
+            } catch (InterruptedException e) {
+              throw new TException(e);
+            }
+            return MetaStoreUtil.fetchPartitionBatch(
+                metaStore.createClient(), partNames, "db", "tbl", 0);
+          }
+        });
+    assertEquals(10, batches.size());
+    List<Partition> partitions = Lists.newArrayList();
+    for (Future<List<Partition>> batch: batches) {
+      List<Partition> batchPartitions = MetaStoreUtil.getPartitionBatch(batch);
+      assertEquals(5, batchPartitions.size());
+      partitions.addAll(batchPartitions);
+    }
+    List<String> expectedValues = Lists.newArrayList();
+    for (String partName: partNames) expectedValues.add(partName.substring(2));
+    assertEquals(expectedValues, getValues(partitions));
+  }
+
+  /**
+   * The failure of a batch is rethrown when the batch is waited for, and does not
+   * affect the other batches.
+   */
+  @Test
+  public void TestFetchPartitionBatchFailure() throws TException {
+    final PartitionedTableMetaStore metaStore = new PartitionedTableMetaStore(20);
+    List<Future<List<Partition>>> batches = MetaStoreUtil.fetchPartitionBatches(
+        fetchPool_, getPartNames(20), 5, new MetaStoreUtil.PartitionBatchFetcher() {
+          @Override
+          public List<Partition> fetch(List<String> partNames) throws TException {
+            if (partNames.contains("p=10")) throw new TException("Connection reset");
+            return MetaStoreUtil.fetchPartitionBatch(
+                metaStore.createClient(), partNames, "db", "tbl", 0);
+          }
+        });
+    assertEquals(4, batches.size());
+    assertEquals(5, MetaStoreUtil.getPartitionBatch(batches.get(0)).size());
+    assertEquals(5, MetaStoreUtil.getPartitionBatch(batches.get(1)).size());
+    try {
+      MetaStoreUtil.getPartitionBatch(batches.get(2));
+      fail("Expected the fetch of the batch to fail");
+    } catch (TException e) {
+      assertEquals("Connection reset", e.getMessage());
+    }
+    assertEquals(5, MetaStoreUtil.getPartitionBatch(batches.get(3)).size());
+  }
+
+  /**
+   * A batch that fails because a partition was dropped is retried with the partitions
+   * of the batch that still exist, which are listed again.
+   */
+  @Test
+  public void TestFetchPartitionBatchRetry() throws TException {
+    PartitionedTableMetaStore metaStore = new PartitionedTableMetaStore(10);
+    metaStore.partNameToDrop_ = "p=3";
+    List<Partition> partitions = MetaStoreUtil.fetchPartitionBatch(
+        metaStore.createClient(), getPartNames(5), "db", "tbl", 1);
+    assertEquals(Lists.newArrayList("0", "1", "2", "4"), getValues(partitions));
+    assertEquals(1, metaStore.numListCalls_.get());
+
+    // A batch whose partitions were all dropped is empty.
+    metaStore.partNameToDrop_ = "p=5";
+    partitions = MetaStoreUtil.fetchPartitionBatch(
+        metaStore.createClient(), Lists.newArrayList("p=5"), "db", "tbl", 1);
+    assertEquals(0, partitions.size());
+
+    // Without retries, the MetaException is propagated.
+    metaStore.partNameToDrop_ = "p=6";
+    try {
+      MetaStoreUtil.fetchPartitionBatch(
+          metaStore.createClient(), Lists.newArrayList("p=6", "p=7"), "db", "tbl", 0);
+      fail("Expected the fetch of the batch to fail");
+    } catch (MetaException e) {
+      assertEquals("Partition was dropped: p=6", e.getMessage());
+    }
+  }
+
+  /**
+   * fetchAllPartitions() lists the partition names again when it is retried.
+   */
+  @Test
+  public void TestFetchAllPartitionsRetry() throws TException {
+    PartitionedTableMetaStore metaStore = new PartitionedTableMetaStore(10);
+    metaStore.partNameToDrop_ = "p=7";
+    List<Partition> partitions =
+        MetaStoreUtil.fetchAllPartitions(metaStore.createClient(), "db", "tbl", 1);
+    assertEquals(9, partitions.size());
+    assertEquals(2, metaStore.numListCalls_.get());
+    Set<String> values = Sets.newHashSet(getValues(partitions));
+    assertEquals(9, values.size());
+    assertFalse(values.contains("7"));
+  }
+}